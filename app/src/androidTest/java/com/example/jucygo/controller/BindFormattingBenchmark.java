@@ -0,0 +1,132 @@
+package com.example.jucygo.controller;
+
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.example.jucygo.model.Money;
+import com.example.jucygo.model.Order;
+import com.example.jucygo.model.Product;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.text.DecimalFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented benchmark of the work done per bound row: the formatting the adapters used
+ * to do in onBindViewHolder against reading rows formatted beforehand by RowFormatter.
+ * RowFormatterTest checks that both ways show the same text.
+ * Results are logged under the "BindFormattingBenchmark" tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BindFormattingBenchmark {
+
+    private static final String TAG = "BindFormattingBenchmark";
+    private static final String[] NAMES = {"Orange Juice", "Green Apple", "Strawberry Mix", "Lemonade"};
+    private static final String[] STATUSES = {Order.STATUS_PENDING, Order.STATUS_COMPLETED, Order.STATUS_CANCELLED};
+    private static final int ROWS = 1000;
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int MEASURED_ROUNDS = 50;
+
+    private RowFormatter formatter;
+    private final List<Product> products = new ArrayList<>();
+    private final List<ProductRow> productRows = new ArrayList<>();
+    private final List<Order> orders = new ArrayList<>();
+    private final List<OrderRow> orderRows = new ArrayList<>();
+    // Consumes every bound value so the runtime cannot drop the work
+    private long sink;
+
+    @Before
+    public void setUp() {
+        formatter = new RowFormatter(InstrumentationRegistry.getInstrumentation().getTargetContext());
+        for (int i = 0; i < ROWS; i++) {
+            Product product = new Product(i + 1, NAMES[i % NAMES.length] + " " + i, Money.ofCents(150 + i),
+                    i % 40, i % 3 == 0 ? null : "Fresh juice " + i);
+            products.add(product);
+            productRows.add(formatter.formatProduct(product));
+
+            Order order = new Order(i + 1, "Customer " + i, i + 1, NAMES[i % NAMES.length], 1 + i % 5,
+                    Money.ofCents(250), Money.ofCents(250L * (1 + i % 5)), STATUSES[i % STATUSES.length],
+                    1_700_000_000_000L + i * 60_000L);
+            orders.add(order);
+            String status = order.getStatus();
+            orderRows.add(new OrderRow(order.getId(), order.getCustomerName(), order.getProductName(),
+                    String.valueOf(order.getQuantityOrdered()), formatter.formatPrice(order.getTotalAmount()),
+                    formatter.formatPrice(order.getUnitPrice()), formatter.formatDate(order.getDate()),
+                    formatter.statusText(status), formatter.statusColor(status),
+                    Order.STATUS_PENDING.equals(status) ? order : null));
+        }
+    }
+
+    @Test
+    public void formattedRows_bindFasterThanFormattingOnBind() {
+        double productBefore = measure(() -> {
+            for (Product product : products) {
+                // ProductAdapter built its price format on every bind
+                DecimalFormat priceFormat = new DecimalFormat("DT #,##0.00");
+                String description = product.getDescription();
+                sink += priceFormat.format(product.getPrice().toBigDecimal()).length()
+                        + String.valueOf(product.getQuantity()).length()
+                        + (description == null || description.trim().isEmpty() ? 0 : description.length())
+                        + formatter.placeholderTint(product.getName());
+            }
+        });
+        double productAfter = measure(() -> {
+            for (ProductRow row : productRows) {
+                sink += row.getPrice().length() + row.getQuantity().length()
+                        + row.getDescription().length() + row.getPlaceholderTint();
+            }
+        });
+
+        DecimalFormat priceFormat = new DecimalFormat("DT #,##0.00");
+        SimpleDateFormat dateFormat = new SimpleDateFormat("MMM dd, yyyy 'at' HH:mm", Locale.getDefault());
+        double orderBefore = measure(() -> {
+            for (Order order : orders) {
+                sink += String.valueOf(order.getQuantityOrdered()).length()
+                        + priceFormat.format(order.getTotalAmount().toBigDecimal()).length()
+                        + priceFormat.format(order.getUnitPrice().toBigDecimal()).length()
+                        + dateFormat.format(new Date(order.getDate())).length()
+                        + formatter.statusText(order.getStatus()).length() + formatter.statusColor(order.getStatus());
+            }
+        });
+        double orderAfter = measure(() -> {
+            for (OrderRow row : orderRows) {
+                sink += row.getQuantityOrdered().length() + row.getTotalAmount().length()
+                        + row.getUnitPrice().length() + row.getDate().length()
+                        + row.getStatusText().length() + row.getStatusColor();
+            }
+        });
+
+        Log.i(TAG, String.format(Locale.US, "products: formatting on bind %.1f ns/row, formatted rows %.1f ns/row",
+                productBefore, productAfter));
+        Log.i(TAG, String.format(Locale.US, "orders: formatting on bind %.1f ns/row, formatted rows %.1f ns/row",
+                orderBefore, orderAfter));
+        assertNotEquals(0, sink);
+        assertTrue("Formatted product rows should bind faster", productAfter < productBefore);
+        assertTrue("Formatted order rows should bind faster", orderAfter < orderBefore);
+    }
+
+    /**
+     * @return The nanoseconds per row of binding every row, after warming up
+     */
+    private static double measure(Runnable bindAll) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            bindAll.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            bindAll.run();
+        }
+        return (double) (System.nanoTime() - start) / (ROWS * MEASURED_ROUNDS);
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.jucygo.controller;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.Intent;
+
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.example.jucygo.model.DBHelper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test opening every screen with the DBHelper main-thread checks enabled.
+ * A controller that queries SQLite on the main looper instead of going through
+ * JucygoRepository makes DBHelper throw, which crashes the screen and fails the test.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MainThreadDatabaseAccessTest {
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        DBHelper.setMainThreadChecksEnabled(true);
+    }
+
+    @After
+    public void tearDown() {
+        DBHelper.setMainThreadChecksEnabled(false);
+    }
+
+    @Test
+    public void mainThreadAccess_throws() {
+        DBHelper dbHelper = DBHelper.getInstance(context);
+        Throwable[] thrown = new Throwable[1];
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            try {
+                dbHelper.getAllProducts();
+            } catch (IllegalStateException e) {
+                thrown[0] = e;
+            }
+        });
+        assertNotNull("DBHelper should refuse to run on the main thread", thrown[0]);
+    }
+
+    @Test
+    public void productList_doesNotQueryOnMainThread() {
+        launch(ProductListActivity.class);
+    }
+
+    @Test
+    public void salesHistory_doesNotQueryOnMainThread() {
+        launch(SalesHistoryActivity.class);
+    }
+
+    @Test
+    public void orderHistory_doesNotQueryOnMainThread() {
+        launch(OrderHistoryActivity.class);
+    }
+
+    @Test
+    public void addSale_doesNotQueryOnMainThread() {
+        launch(AddSaleActivity.class);
+    }
+
+    @Test
+    public void addOrder_doesNotQueryOnMainThread() {
+        launch(AddOrderActivity.class);
+    }
+
+    @Test
+    public void addProduct_doesNotQueryOnMainThread() {
+        launch(AddProductActivity.class);
+    }
+
+    @Test
+    public void editProduct_doesNotQueryOnMainThread() {
+        Intent intent = new Intent(context, EditProductActivity.class);
+        intent.putExtra("product_id", 1);
+        try (ActivityScenario<EditProductActivity> scenario = ActivityScenario.launch(intent)) {
+            settle();
+        }
+    }
+
+    /**
+     * Open a screen and let its loads complete and their results be delivered.
+     */
+    private <A extends Activity> void launch(Class<A> activityClass) {
+        try (ActivityScenario<A> scenario = ActivityScenario.launch(activityClass)) {
+            settle();
+        }
+    }
+
+    /**
+     * Give background loads time to finish and the main looper time to deliver them.
+     */
+    private void settle() {
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+        try {
+            Thread.sleep(500);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.jucygo.model;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test of sales racing for the last units of a product, on a database file
+ * so concurrent threads go through the WAL connection pool as they do in the app.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ConcurrentSaleTest {
+
+    private static final String DATABASE_NAME = "concurrent_sale_test.db";
+    private static final int STOCK = 10;
+    private static final int ATTEMPTS = 40;
+
+    private Context context;
+    private DBHelper dbHelper;
+    private int productId;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(DATABASE_NAME);
+        dbHelper = new DBHelper(context, DATABASE_NAME);
+        productId = (int) dbHelper.addProduct(new Product("Orange", Money.ofCents(250), STOCK, null));
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void parallelSales_neverOversell() throws Exception {
+        Sale sale = new Sale(productId, "Orange", 1, Money.ofCents(250), Money.ofCents(250));
+        int sold = race(i -> i % 2 == 0
+                ? dbHelper.recordSale(sale) == StockResult.OK
+                : dbHelper.updateStockAfterSale(productId, 1) > 0);
+
+        assertEquals(STOCK, sold);
+        assertEquals(0, storedQuantity());
+        assertEquals(0, dbHelper.getProductById(productId).getQuantity());
+    }
+
+    @Test
+    public void parallelTickets_neverOversell() throws Exception {
+        Sale line = new Sale(productId, "Orange", 2, Money.ofCents(250), Money.ofCents(500));
+        List<Sale> ticket = new ArrayList<>();
+        ticket.add(line);
+        int sold = race(i -> dbHelper.recordSaleTicket(ticket) == StockResult.OK);
+
+        assertEquals(STOCK / 2, sold);
+        assertEquals(0, storedQuantity());
+    }
+
+    /**
+     * Start ATTEMPTS sales at once, each on its own thread, while another thread keeps
+     * checking the stored stock never drops below zero.
+     * @return The number of sales that went through
+     */
+    private int race(Attempt attempt) throws Exception {
+        ExecutorService threads = Executors.newFixedThreadPool(ATTEMPTS + 1);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < ATTEMPTS; i++) {
+                int index = i;
+                results.add(threads.submit((Callable<Boolean>) () -> {
+                    start.await();
+                    return attempt.sell(index);
+                }));
+            }
+            Future<Integer> lowest = threads.submit(() -> {
+                start.await();
+                int min = Integer.MAX_VALUE;
+                for (int i = 0; i < 200; i++) {
+                    min = Math.min(min, storedQuantity());
+                }
+                return min;
+            });
+            start.countDown();
+
+            int sold = 0;
+            for (Future<Boolean> result : results) {
+                if (result.get(30, TimeUnit.SECONDS)) {
+                    sold++;
+                }
+            }
+            assertTrue(lowest.get(30, TimeUnit.SECONDS) >= 0);
+            return sold;
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+
+    /**
+     * Read the quantity from the products table itself, not from the catalog.
+     */
+    private int storedQuantity() {
+        try (Cursor cursor = dbHelper.getReadableDatabase().rawQuery(DBHelper.QUERY_PRODUCT_BY_NAME,
+                new String[]{"Orange"})) {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getInt(cursor.getColumnIndexOrThrow(DBHelper.COLUMN_QUANTITY));
+        }
+    }
+
+    private interface Attempt {
+        boolean sell(int index);
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.jucygo.model;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented benchmark of the CSV import pipeline on a generated file.
+ * Runs against a database file, not an in-memory one, so each chunk pays for its
+ * commit as it does on a real device. Results are logged under the "CsvImportBenchmark" tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CsvImporterBenchmark {
+
+    private static final String TAG = "CsvImportBenchmark";
+    private static final String DATABASE_NAME = "csv_import_benchmark.db";
+    private static final int SALES = 100_000;
+    // Generous bound for slow emulators; a device imports the file in a few seconds
+    private static final long MAX_IMPORT_MILLIS = 60_000;
+
+    private Context context;
+    private DBHelper dbHelper;
+    private CsvImporter importer;
+    private File csv;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(DATABASE_NAME);
+        dbHelper = new DBHelper(context, DATABASE_NAME);
+        importer = new CsvImporter(dbHelper, DatabaseExecutors.getInstance());
+        csv = new File(context.getCacheDir(), "csv_import_benchmark.csv");
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+        context.deleteDatabase(DATABASE_NAME);
+        csv.delete();
+    }
+
+    @Test
+    public void importSales_ingestsGeneratedFile() throws IOException {
+        writeSales(csv, SALES);
+
+        long start = System.nanoTime();
+        CsvImporter.Result result;
+        try (InputStream in = new FileInputStream(csv)) {
+            result = importer.importSales(in, csv.length(), null);
+        }
+        long millis = (System.nanoTime() - start) / 1_000_000;
+
+        Log.i(TAG, String.format("sales: %d rows in %d ms (%.0f rows/s)",
+                SALES, millis, SALES / (millis / 1000.0)));
+        assertEquals(SALES, result.getAdded());
+        assertEquals(0, result.getRejected());
+        assertEquals(SALES, dbHelper.countSalesBetween(0, Long.MAX_VALUE));
+        assertTrue("Import took " + millis + " ms", millis < MAX_IMPORT_MILLIS);
+    }
+
+    @Test
+    public void importProducts_updatesByNameAndReportsRejects() throws IOException {
+        dbHelper.addProduct(new Product("Orange", Money.ofCents(250), 10, "Fresh"));
+        String file = "id,name,price,quantity,description\r\n"
+                + "7,Orange,3.00,4,\r\n"
+                + "8,\"Apple, green\",1.20,20,\"Crisp \"\"Granny\"\"\"\r\n"
+                + "9,Pear,abc,1,\r\n"
+                + "10,,1.00,1,\r\n";
+
+        CsvImporter.Result result = importer.importProducts(
+                new ByteArrayInputStream(file.getBytes(StandardCharsets.UTF_8)), -1, null);
+
+        assertEquals(1, result.getAdded());
+        assertEquals(1, result.getUpdated());
+        assertEquals(2, result.getRejected());
+        assertEquals(4, result.getRejects().get(0).getLine());
+        assertEquals(5, result.getRejects().get(1).getLine());
+
+        Product orange = dbHelper.getProductByName("Orange");
+        assertEquals(Money.ofCents(300), orange.getPrice());
+        assertEquals(4, orange.getQuantity());
+        assertEquals("Fresh", orange.getDescription());
+        assertEquals("Crisp \"Granny\"", dbHelper.getProductByName("Apple, green").getDescription());
+        // The overwritten quantity is recorded as an adjustment of the stock
+        assertEquals(4, dbHelper.getStockAsOf(orange.getId(), Long.MAX_VALUE));
+    }
+
+    private static void writeSales(File file, int count) throws IOException {
+        try (BufferedWriter out = new BufferedWriter(new FileWriter(file))) {
+            out.write("id,date,productId,productName,quantitySold,unitPrice,totalAmount\r\n");
+            for (int i = 0; i < count; i++) {
+                int quantity = 1 + i % 5;
+                out.write(i + ",2024-" + String.format("%02d-%02d", 1 + i % 12, 1 + i % 28)
+                        + " 10:30:00,,Juice " + (i % 50) + "," + quantity + ",2.50,"
+                        + Money.ofCents(250L * quantity) + "\r\n");
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.jucygo.model;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented benchmark comparing the bulk insert path with one insert per row.
+ * Runs against a database file, not an in-memory one, so each per-row commit pays
+ * for its journal sync as it does on a real device.
+ * Results are logged under the "BulkInsertBenchmark" tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DBHelperBulkInsertBenchmark {
+
+    private static final String TAG = "BulkInsertBenchmark";
+    private static final String DATABASE_NAME = "bulk_insert_benchmark.db";
+    private static final int ROWS = 2000;
+
+    private Context context;
+    private DBHelper dbHelper;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(DATABASE_NAME);
+        dbHelper = new DBHelper(context, DATABASE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void addSales_isFasterThanPerRowInserts() {
+        List<Sale> sales = createSales(ROWS);
+
+        long start = System.nanoTime();
+        for (Sale sale : sales) {
+            dbHelper.addSale(sale);
+        }
+        double perRow = rowsPerSecond(ROWS, System.nanoTime() - start);
+
+        start = System.nanoTime();
+        int inserted = dbHelper.addSales(sales);
+        double batched = rowsPerSecond(ROWS, System.nanoTime() - start);
+
+        Log.i(TAG, String.format("sales: per-row %.0f rows/s, batched %.0f rows/s (x%.1f)",
+                perRow, batched, batched / perRow));
+        assertEquals(ROWS, inserted);
+        assertTrue("Batched inserts should beat per-row inserts", batched > perRow);
+    }
+
+    @Test
+    public void addProducts_isFasterThanPerRowInserts() {
+        List<Product> first = createProducts("Juice ", ROWS);
+        List<Product> second = createProducts("Smoothie ", ROWS);
+
+        long start = System.nanoTime();
+        for (Product product : first) {
+            dbHelper.addProduct(product);
+        }
+        double perRow = rowsPerSecond(ROWS, System.nanoTime() - start);
+
+        start = System.nanoTime();
+        int inserted = dbHelper.addProducts(second);
+        double batched = rowsPerSecond(ROWS, System.nanoTime() - start);
+
+        Log.i(TAG, String.format("products: per-row %.0f rows/s, batched %.0f rows/s (x%.1f)",
+                perRow, batched, batched / perRow));
+        assertEquals(ROWS, inserted);
+        assertTrue("Batched inserts should beat per-row inserts", batched > perRow);
+    }
+
+    @Test
+    public void addProducts_skipsDuplicateNames() {
+        List<Product> products = createProducts("Juice ", 10);
+        products.add(new Product("Juice 0", Money.ofCents(100), 1, null, null));
+
+        assertEquals(10, dbHelper.addProducts(products, 3));
+        assertEquals(10, dbHelper.getAllProducts().size());
+    }
+
+    private static List<Sale> createSales(int count) {
+        List<Sale> sales = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            sales.add(new Sale(0, "Orange", 1 + i % 5, Money.ofCents(250), Money.ofCents(250 * (1 + i % 5))));
+        }
+        return sales;
+    }
+
+    private static List<Product> createProducts(String prefix, int count) {
+        List<Product> products = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            products.add(new Product(prefix + i, Money.ofCents(250), 100, null, null));
+        }
+        return products;
+    }
+
+    private static double rowsPerSecond(int rows, long nanos) {
+        return rows / (nanos / 1_000_000_000.0);
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.jucygo.model;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test checking that the hot DBHelper queries are answered from an index.
+ * Guards against schema or query changes silently turning them back into table scans.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DBHelperQueryPlanTest {
+
+    // One day of epoch milliseconds used as the range for date queries
+    private static final String FROM = "1705276800000";
+    private static final String TO = "1705363200000";
+
+    private DBHelper dbHelper;
+    private SQLiteDatabase db;
+
+    @Before
+    public void setUp() {
+        Context appContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        dbHelper = new DBHelper(appContext, null);
+        db = dbHelper.getWritableDatabase();
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+    }
+
+    @Test
+    public void productByName_usesNameIndex() {
+        assertUsesIndex(DBHelper.QUERY_PRODUCT_BY_NAME, "idx_products_name", "Orange");
+    }
+
+    @Test
+    public void salesBetween_usesDateIndex() {
+        assertUsesIndex(DBHelper.QUERY_SALES_BETWEEN, "idx_sales_date", FROM, TO);
+    }
+
+    @Test
+    public void totalSalesForDays_readsDailySummary() {
+        assertUsesIndex(DBHelper.QUERY_TOTAL_SALES_FOR_DAYS, "PRIMARY KEY", "20240101", "20240131");
+    }
+
+    @Test
+    public void ordersByStatus_usesStatusIndex() {
+        assertUsesIndex(DBHelper.QUERY_ORDERS_BY_STATUS, "idx_orders_status", Order.STATUS_PENDING);
+    }
+
+    @Test
+    public void ordersBetween_usesDateIndex() {
+        assertUsesIndex(DBHelper.QUERY_ORDERS_BETWEEN, "idx_orders_date", FROM, TO);
+    }
+
+    @Test
+    public void stockSnapshotAt_usesPrimaryKey() {
+        assertUsesIndex(DBHelper.QUERY_STOCK_SNAPSHOT_AT, "PRIMARY KEY", "1", TO);
+    }
+
+    @Test
+    public void stockMovementsSum_readsOneRangeOfProductIndex() {
+        assertUsesIndex(DBHelper.QUERY_STOCK_MOVEMENTS_SUM, "idx_stock_movements_product_id", "1", "0", "64", TO);
+    }
+
+    /**
+     * Assert that the plan of a query searches through the given index and never scans a table.
+     */
+    private void assertUsesIndex(String sql, String indexName, String... args) {
+        StringBuilder plan = new StringBuilder();
+        boolean scans = false;
+        Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, args);
+        int detailIndex = cursor.getColumnIndexOrThrow("detail");
+        while (cursor.moveToNext()) {
+            String detail = cursor.getString(detailIndex);
+            scans |= detail.startsWith("SCAN ");
+            plan.append(detail).append('\n');
+        }
+        cursor.close();
+
+        String planText = plan.toString();
+        assertTrue("Expected " + indexName + " in plan:\n" + planText, planText.contains(indexName));
+        assertFalse("Unexpected full scan in plan:\n" + planText, scans);
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.jucygo.model;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented benchmark comparing a database opened and closed around every call, as
+ * each screen used to do, with the one shared handle kept open by DBHelper.getInstance.
+ * Runs against a database file, so every open pays for reading the schema and warming
+ * the page cache again as it does on a real device.
+ * Results are logged under the "SharedHandleBenchmark" tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DBHelperSharedHandleBenchmark {
+
+    private static final String TAG = "SharedHandleBenchmark";
+    private static final String DATABASE_NAME = "shared_handle_benchmark.db";
+    private static final int SALES = 2000;
+    // Searches per run, one per keystroke of a user typing into the sales history
+    private static final int CALLS = 200;
+
+    private Context context;
+    private DBHelper dbHelper;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(DATABASE_NAME);
+        dbHelper = new DBHelper(context, DATABASE_NAME);
+        int productId = (int) dbHelper.addProduct(new Product("Orange", Money.ofCents(250), 100, null));
+        List<Sale> sales = new ArrayList<>(SALES);
+        for (int i = 0; i < SALES; i++) {
+            sales.add(new Sale(productId, "Orange", 1, Money.ofCents(250), Money.ofCents(250)));
+        }
+        assertEquals(SALES, dbHelper.addSales(sales));
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void sharedHandle_isFasterThanOpeningPerCall() {
+        long start = System.nanoTime();
+        int perCallFound = 0;
+        for (int i = 0; i < CALLS; i++) {
+            DBHelper opened = new DBHelper(context, DATABASE_NAME);
+            try {
+                perCallFound += opened.searchSales("Orange").size();
+            } finally {
+                opened.close();
+            }
+        }
+        double perCall = callsPerSecond(System.nanoTime() - start);
+
+        start = System.nanoTime();
+        int sharedFound = 0;
+        for (int i = 0; i < CALLS; i++) {
+            sharedFound += dbHelper.searchSales("Orange").size();
+        }
+        double shared = callsPerSecond(System.nanoTime() - start);
+
+        Log.i(TAG, String.format("searches: open per call %.0f calls/s, shared handle %.0f calls/s (x%.1f)",
+                perCall, shared, shared / perCall));
+        assertEquals(perCallFound, sharedFound);
+        assertTrue("The shared handle should beat opening the database per call", shared > perCall);
+    }
+
+    private static double callsPerSecond(long nanos) {
+        return CALLS / (nanos / 1_000_000_000.0);
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.jucygo.model;
+
+import android.content.Context;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test of incremental backups and their restore, on a database file.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DatabaseBackupTest {
+
+    private static final String DATABASE_NAME = "backup_test.db";
+
+    private Context context;
+    private DBHelper dbHelper;
+    private File directory;
+    private DatabaseBackup backup;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(DATABASE_NAME);
+        dbHelper = new DBHelper(context, DATABASE_NAME);
+        directory = new File(context.getCacheDir(), "backup_test");
+        deleteRecursively(directory);
+        backup = new DatabaseBackup(dbHelper, directory);
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+        context.deleteDatabase(DATABASE_NAME);
+        deleteRecursively(directory);
+    }
+
+    @Test
+    public void backup_skipsUnchangedFiles() throws IOException {
+        dbHelper.addProduct(new Product("Orange", Money.ofCents(250), 10, null));
+
+        DatabaseBackup.Result first = backup.backup();
+        DatabaseBackup.Result second = backup.backup();
+
+        assertTrue(first.getChunksWritten() > 0);
+        assertEquals(first.getFiles(), second.getFiles());
+        assertEquals(second.getFiles(), second.getFilesUnchanged());
+        assertEquals(0, second.getChunksWritten());
+    }
+
+    @Test
+    public void backup_rewritesOnlyChangedChunks() throws IOException {
+        // Enough rows for the database to span many chunks
+        List<Product> products = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            products.add(new Product("Juice " + i, Money.ofCents(250), 10, "A juice for the backup test"));
+        }
+        dbHelper.addProducts(products);
+        DatabaseBackup.Result first = backup.backup();
+
+        dbHelper.addProduct(new Product("Orange", Money.ofCents(250), 10, null));
+        DatabaseBackup.Result second = backup.backup();
+
+        assertTrue(second.getChunksWritten() > 0);
+        assertTrue(second.getChunksWritten() < first.getChunksWritten());
+    }
+
+    @Test
+    public void restore_bringsBackBackedUpState() throws IOException {
+        dbHelper.addProduct(new Product("Orange", Money.ofCents(250), 10, null));
+        backup.backup();
+        dbHelper.addProduct(new Product("Apple", Money.ofCents(120), 5, null));
+
+        backup.restore();
+
+        assertNotNull(dbHelper.getProductByName("Orange"));
+        assertNull(dbHelper.getProductByName("Apple"));
+    }
+
+    @Test
+    public void backup_storesTheSnapshotNotLaterWrites() throws IOException {
+        dbHelper.addProduct(new Product("Orange", Money.ofCents(250), 10, null));
+        DatabaseBackup.Snapshot snapshot = backup.snapshot();
+        // Written after the snapshot, while it is still being stored
+        dbHelper.addProduct(new Product("Apple", Money.ofCents(120), 5, null));
+        backup.backup(snapshot);
+
+        backup.restore();
+
+        assertNotNull(dbHelper.getProductByName("Orange"));
+        assertNull(dbHelper.getProductByName("Apple"));
+    }
+
+    @Test
+    public void snapshot_whileABackupIsStored_isRefused() throws IOException {
+        DatabaseBackup.Snapshot snapshot = backup.snapshot();
+        try {
+            backup.snapshot();
+            fail("A second snapshot was taken");
+        } catch (IOException expected) {
+            // The first backup still owns the snapshot copies
+        }
+        backup.backup(snapshot);
+
+        assertEquals(0, backup.backup().getChunksWritten());
+    }
+
+    @Test
+    public void snapshotTakenBeforeARestore_isNotStored() throws IOException {
+        dbHelper.addProduct(new Product("Orange", Money.ofCents(250), 10, null));
+        backup.backup();
+        dbHelper.addProduct(new Product("Apple", Money.ofCents(120), 5, null));
+        DatabaseBackup.Snapshot stale = backup.snapshot();
+        long backupTime = backup.getBackupTime();
+
+        backup.restore();
+        try {
+            backup.backup(stale);
+            fail("A snapshot taken before the restore was stored");
+        } catch (IOException expected) {
+            // The manifest still lists the backup that was restored
+        }
+
+        assertEquals(backupTime, backup.getBackupTime());
+        backup.restore();
+        assertNull(dbHelper.getProductByName("Apple"));
+    }
+
+    @Test(expected = IOException.class)
+    public void restore_rejectsDamagedChunk() throws IOException {
+        dbHelper.addProduct(new Product("Orange", Money.ofCents(250), 10, null));
+        backup.backup();
+        File[] chunks = new File(directory, "chunks").listFiles();
+        assertNotNull(chunks);
+        assertTrue(chunks[0].delete());
+
+        backup.restore();
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,232 @@
+package com.example.jucygo.model;
+
+import android.content.Context;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test of the monthly history archives, on a database file so the archives
+ * are written beside it as they are in the app. History is dated over the last four months
+ * and everything before the previous month is archived.
+ */
+@RunWith(AndroidJUnit4.class)
+public class HistoryArchiveTest {
+
+    private static final String DATABASE_NAME = "archive_test.db";
+    private static final Money PRICE = Money.ofCents(250);
+    // Sales per month, and the months of history back from the current one
+    private static final int SALES_PER_MONTH = 4;
+    private static final int MONTHS = 4;
+    private static final int KEEP_MONTHS = 1;
+
+    private Context context;
+    private DBHelper dbHelper;
+    private int productId;
+    // Dates of the sales written, oldest first
+    private final List<Long> saleDates = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        deleteDatabases();
+        dbHelper = new DBHelper(context, DATABASE_NAME);
+        productId = (int) dbHelper.addProduct(new Product("Orange", PRICE, 100, null));
+
+        // Written oldest first, so ids follow dates as they do when sales are recorded live
+        List<Sale> sales = new ArrayList<>();
+        for (int month = MONTHS - 1; month >= 0; month--) {
+            for (int i = 0; i < SALES_PER_MONTH; i++) {
+                long date = dateIn(month, i);
+                saleDates.add(date);
+                sales.add(new Sale(0, productId, "Orange", 1 + i, PRICE, PRICE.times(1 + i), date));
+            }
+        }
+        assertEquals(sales.size(), dbHelper.addSales(sales));
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+        deleteDatabases();
+    }
+
+    @Test
+    public void allSales_spanLiveAndArchivedMonths_newestFirst() {
+        List<Sale> before = dbHelper.getAllSales();
+        int moved = dbHelper.archiveHistory(KEEP_MONTHS);
+
+        assertEquals((MONTHS - KEEP_MONTHS - 1) * SALES_PER_MONTH, moved);
+        List<Sale> after = dbHelper.getAllSales();
+        assertEquals(saleDates.size(), after.size());
+        assertNewestFirstOnce(after);
+        assertEquals(ids(before), ids(after));
+    }
+
+    @Test
+    public void salesBetween_acrossTheArchiveBoundary_readsEveryMonth() {
+        dbHelper.archiveHistory(KEEP_MONTHS);
+
+        // From the oldest archived month up to the current one, which it leaves out
+        List<Sale> sales = dbHelper.getSalesBetween(monthStart(MONTHS - 1), monthStart(0));
+
+        assertEquals((MONTHS - 1) * SALES_PER_MONTH, sales.size());
+        assertNewestFirstOnce(sales);
+        assertEquals(saleDates.get(0), (Long) sales.get(sales.size() - 1).getDate());
+    }
+
+    @Test
+    public void salesPages_acrossTheArchiveBoundary_returnEverySaleOnce() {
+        dbHelper.archiveHistory(KEEP_MONTHS);
+
+        // Pages that do not line up with the months, so one page straddles the live rows and an archive
+        List<Sale> paged = new ArrayList<>();
+        Sale last = null;
+        List<Sale> page;
+        while (!(page = dbHelper.getSalesPage(last, 3)).isEmpty()) {
+            paged.addAll(page);
+            last = page.get(page.size() - 1);
+        }
+
+        assertEquals(saleDates.size(), paged.size());
+        assertNewestFirstOnce(paged);
+    }
+
+    @Test
+    public void archivingAgain_movesNothing() {
+        dbHelper.archiveHistory(KEEP_MONTHS);
+
+        assertEquals(0, dbHelper.archiveHistory(KEEP_MONTHS));
+        assertEquals(saleDates.size(), dbHelper.getAllSales().size());
+    }
+
+    @Test
+    public void renamedProduct_isRenamedInArchivedSales() {
+        dbHelper.archiveHistory(KEEP_MONTHS);
+
+        assertEquals(1, dbHelper.updateProduct(new Product(productId, "Blood orange", PRICE, 100, null), 0));
+
+        List<Sale> sales = dbHelper.getAllSales();
+        assertEquals(saleDates.size(), sales.size());
+        for (Sale sale : sales) {
+            assertEquals("Blood orange", sale.getProductName());
+        }
+        // The search index of the archives follows the new name
+        assertEquals(saleDates.size(), dbHelper.searchSales("blood").size());
+    }
+
+    @Test
+    public void dailySummary_keepsArchivedSales() {
+        int firstDay = DBHelper.dayOf(monthStart(MONTHS - 1));
+        int lastDay = DBHelper.dayOf(System.currentTimeMillis());
+        int archivedLastDay = DBHelper.dayOf(monthStart(KEEP_MONTHS) - 1);
+        Money total = dbHelper.getTotalSalesForDays(firstDay, lastDay);
+        Money archivedTotal = dbHelper.getTotalSalesForDays(firstDay, archivedLastDay);
+        assertTrue(archivedTotal.compareTo(Money.ZERO) > 0);
+
+        dbHelper.archiveHistory(KEEP_MONTHS);
+
+        assertEquals(total, dbHelper.getTotalSalesForDays(firstDay, lastDay));
+        assertEquals(archivedTotal, dbHelper.getTotalSalesForDays(firstDay, archivedLastDay));
+        // The delete trigger lifted for the move is back for the live sales
+        assertEquals(1, DatabaseUtils.longForQuery(dbHelper.getReadableDatabase(),
+                "SELECT COUNT(*) FROM sqlite_master WHERE type = 'trigger' AND name = 'daily_sales_delete'", null));
+    }
+
+    @Test
+    public void pendingOrder_keepsItAndLaterOrdersLive() {
+        List<Order> orders = new ArrayList<>();
+        for (int month = MONTHS - 1; month >= 0; month--) {
+            String status = month == MONTHS - 2 ? Order.STATUS_PENDING : Order.STATUS_COMPLETED;
+            orders.add(new Order(0, "Amira", productId, "Orange", 1, PRICE, PRICE, status, dateIn(month, 0)));
+        }
+        dbHelper.addOrders(orders);
+
+        dbHelper.archiveHistory(KEEP_MONTHS);
+
+        // Only the completed order placed before the pending one is archived
+        List<Order> all = dbHelper.getAllOrders();
+        assertEquals(MONTHS, all.size());
+        for (int i = 1; i < all.size(); i++) {
+            assertTrue(all.get(i - 1).getDate() > all.get(i).getDate());
+        }
+        assertEquals(1, dbHelper.getPendingOrders().size());
+        assertEquals(1, dbHelper.cancelOrder(dbHelper.getPendingOrders().get(0)));
+        assertEquals(0, dbHelper.getPendingOrders().size());
+    }
+
+    /**
+     * Check that sales are newest first, with no sale listed twice.
+     */
+    private static void assertNewestFirstOnce(List<Sale> sales) {
+        Set<Integer> seen = new HashSet<>();
+        for (int i = 0; i < sales.size(); i++) {
+            assertTrue("sale " + sales.get(i).getId() + " listed twice", seen.add(sales.get(i).getId()));
+            if (i > 0) {
+                assertTrue(sales.get(i - 1).getDate() > sales.get(i).getDate());
+            }
+        }
+    }
+
+    private static List<Integer> ids(List<Sale> sales) {
+        List<Integer> ids = new ArrayList<>();
+        for (Sale sale : sales) {
+            ids.add(sale.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * @param monthsAgo 0 for the current month
+     * @return The start of that local month in epoch milliseconds
+     */
+    private static long monthStart(int monthsAgo) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(Calendar.DAY_OF_MONTH, 1);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        calendar.add(Calendar.MONTH, -monthsAgo);
+        return calendar.getTimeInMillis();
+    }
+
+    /**
+     * @return A date early in a month, an hour apart for each index, never later than now
+     */
+    private static long dateIn(int monthsAgo, int index) {
+        return Math.min(monthStart(monthsAgo) + (index + 1) * 3_600_000L,
+                System.currentTimeMillis() - 1000L * (10 - index));
+    }
+
+    /**
+     * Delete the test database and its monthly archives.
+     */
+    private void deleteDatabases() {
+        context.deleteDatabase(DATABASE_NAME);
+        File[] files = context.getDatabasePath(DATABASE_NAME).getParentFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().matches(DATABASE_NAME.replace(".", "\\.") + "-archive-\\d{6}")) {
+                    SQLiteDatabase.deleteDatabase(file);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.jucygo.model;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.net.Uri;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test of the stored renditions of a photo and of the image cache in front of them.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ImageLoaderTest {
+
+    private static final int SIZE = 100;
+
+    private File directory;
+    private ProductImages images;
+    private ImageLoader loader;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        directory = new File(context.getCacheDir(), "image_test");
+        directory.mkdirs();
+        images = new ProductImages(context.getContentResolver(), directory);
+        loader = ImageLoader.getInstance();
+        loader.trimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void save_writesBoundedRenditions() throws IOException {
+        ProductImages.Renditions renditions = images.save(Uri.fromFile(writePhoto(4000, 3000)));
+
+        Bitmap detail = ProductImages.decode(renditions.getImagePath(), Integer.MAX_VALUE);
+        Bitmap thumbnail = ProductImages.decode(renditions.getThumbnailPath(), Integer.MAX_VALUE);
+        assertEquals(ProductImages.DETAIL_SIZE, detail.getWidth());
+        assertEquals(960, detail.getHeight());
+        assertEquals(ProductImages.THUMBNAIL_SIZE, thumbnail.getWidth());
+        assertEquals(ProductImages.THUMBNAIL_SIZE, thumbnail.getHeight());
+    }
+
+    @Test
+    public void save_reusesTheFilesOfTheSamePhoto() throws IOException {
+        File photo = writePhoto(800, 600);
+        ProductImages.Renditions first = images.save(Uri.fromFile(photo));
+        ProductImages.Renditions second = images.save(Uri.fromFile(photo));
+
+        assertEquals(first.getImagePath(), second.getImagePath());
+        assertEquals(first.getThumbnailPath(), second.getThumbnailPath());
+    }
+
+    @Test
+    public void sweep_deletesOnlyOldUnreferencedFiles() throws IOException {
+        ProductImages.Renditions kept = images.save(Uri.fromFile(writePhoto(800, 600)));
+        ProductImages.Renditions dropped = images.save(Uri.fromFile(writePhoto(600, 800)));
+        ProductImages.Renditions recent = images.save(Uri.fromFile(writePhoto(640, 640)));
+        long old = System.currentTimeMillis() - 2 * ProductImages.ORPHAN_GRACE_MILLIS;
+        for (String path : new String[]{kept.getImagePath(), kept.getThumbnailPath(),
+                dropped.getImagePath(), dropped.getThumbnailPath()}) {
+            assertTrue(new File(path).setLastModified(old));
+        }
+        new File(directory, "photo.jpg").delete();
+
+        Set<String> referenced = new HashSet<>(Arrays.asList(kept.getImagePath(), kept.getThumbnailPath()));
+        List<File> orphans = images.findOrphans(referenced);
+        assertEquals(2, images.deleteOrphans(orphans, referenced));
+
+        assertTrue(new File(kept.getImagePath()).exists());
+        assertTrue(new File(kept.getThumbnailPath()).exists());
+        assertFalse(new File(dropped.getImagePath()).exists());
+        assertFalse(new File(dropped.getThumbnailPath()).exists());
+        assertTrue(new File(recent.getImagePath()).exists());
+    }
+
+    @Test
+    public void sweep_keepsOrphanReferencedBeforeItIsDeleted() throws IOException {
+        ProductImages.Renditions taken = images.save(Uri.fromFile(writePhoto(800, 600)));
+        long old = System.currentTimeMillis() - 2 * ProductImages.ORPHAN_GRACE_MILLIS;
+        for (String path : new String[]{taken.getImagePath(), taken.getThumbnailPath()}) {
+            assertTrue(new File(path).setLastModified(old));
+        }
+        new File(directory, "photo.jpg").delete();
+        List<File> orphans = images.findOrphans(new HashSet<>());
+        assertEquals(2, orphans.size());
+
+        // A product took up the photo after the orphans were listed, its files still old
+        Set<String> referenced = new HashSet<>(Arrays.asList(taken.getImagePath(), taken.getThumbnailPath()));
+        assertEquals(0, images.deleteOrphans(orphans, referenced));
+
+        assertTrue(new File(taken.getImagePath()).exists());
+        assertTrue(new File(taken.getThumbnailPath()).exists());
+    }
+
+    @Test
+    public void load_decodesOnceThenServesFromMemory() throws Exception {
+        String path = images.save(Uri.fromFile(writePhoto(800, 600))).getThumbnailPath();
+        long decodes = loader.getDecodeCount();
+
+        assertNull(loader.getCached(path, SIZE));
+        Bitmap loaded = load(path);
+
+        assertNotNull(loaded);
+        assertEquals(decodes + 1, loader.getDecodeCount());
+        assertSame(loaded, loader.getCached(path, SIZE));
+
+        loader.trimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+        assertNull(loader.getCached(path, SIZE));
+    }
+
+    @Test
+    public void cancel_dropsTheResult() throws Exception {
+        String path = images.save(Uri.fromFile(writePhoto(800, 600))).getThumbnailPath();
+        CountDownLatch delivered = new CountDownLatch(1);
+
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() ->
+                loader.load(path, SIZE, bitmap -> delivered.countDown()).cancel());
+
+        assertFalse(delivered.await(1, TimeUnit.SECONDS));
+    }
+
+    private Bitmap load(String path) throws InterruptedException {
+        AtomicReference<Bitmap> result = new AtomicReference<>();
+        CountDownLatch delivered = new CountDownLatch(1);
+        loader.load(path, SIZE, bitmap -> {
+            result.set(bitmap);
+            delivered.countDown();
+        });
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        return result.get();
+    }
+
+    private File writePhoto(int width, int height) throws IOException {
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(Color.rgb(255, 140, 0));
+        File file = new File(directory, "photo.jpg");
+        try (OutputStream out = new FileOutputStream(file)) {
+            bitmap.compress(Bitmap.CompressFormat.JPEG, 90, out);
+        }
+        bitmap.recycle();
+        return file;
+    }
+}
@@ -0,0 +1,232 @@
+package com.example.jucygo.model;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.os.SystemClock;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test of the stock ledger: the movement written by each stock change,
+ * the snapshots taken by trigger and the past stock levels rebuilt from them.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StockLedgerTest {
+
+    private static final int STOCK = 1000;
+    private static final Money PRICE = Money.ofCents(250);
+
+    private DBHelper dbHelper;
+    private int productId;
+
+    @Before
+    public void setUp() {
+        Context appContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        dbHelper = new DBHelper(appContext, null);
+        productId = (int) dbHelper.addProduct(new Product("Orange", PRICE, STOCK, null));
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+    }
+
+    @Test
+    public void saleOrderAndCancel_eachWriteAMovement() {
+        assertEquals(StockResult.OK, dbHelper.recordSale(sale(1)));
+        assertEquals(StockResult.OK, dbHelper.placeOrder(new Order("Amira", productId, "Orange", 3, PRICE,
+                PRICE.times(3))));
+        assertEquals(1, dbHelper.cancelOrder(dbHelper.getPendingOrders().get(0)));
+        // A cancelled order is not pending any more, so cancelling it again restores nothing
+        assertEquals(0, dbHelper.cancelOrder(dbHelper.getAllOrders().get(0)));
+
+        List<StockMovement> movements = movements();
+        assertEquals(4, movements.size());
+        assertMovement(movements.get(0), StockMovement.REASON_INITIAL, STOCK);
+        assertMovement(movements.get(1), StockMovement.REASON_SALE, -1);
+        assertMovement(movements.get(2), StockMovement.REASON_ORDER, -3);
+        assertMovement(movements.get(3), StockMovement.REASON_CANCEL, 3);
+        assertEquals(STOCK - 1, dbHelper.getProductById(productId).getQuantity());
+    }
+
+    @Test
+    public void failedSale_writesNoMovement() {
+        assertEquals(StockResult.INSUFFICIENT_STOCK, dbHelper.recordSale(sale(STOCK + 1)));
+        assertEquals(0, dbHelper.updateStockAfterSale(productId, STOCK + 1));
+
+        assertEquals(1, movements().size());
+    }
+
+    @Test
+    public void editedProduct_keepsSalesRecordedSinceItWasLoaded() {
+        Product loaded = dbHelper.getProductById(productId);
+        sell(2);
+
+        // The screen was opened before the sales; 5 more are added by hand
+        Product edited = new Product(productId, "Orange", PRICE, loaded.getQuantity() + 5, null);
+        assertEquals(1, dbHelper.updateProduct(edited, 5));
+
+        assertEquals(STOCK - 2 + 5, dbHelper.getProductById(productId).getQuantity());
+        List<StockMovement> movements = movements();
+        assertEquals(4, movements.size());
+        assertMovement(movements.get(3), StockMovement.REASON_ADJUST, 5);
+
+        // Saving without touching the quantity leaves the stock and the ledger alone
+        assertEquals(1, dbHelper.updateProduct(new Product(productId, "Orange", PRICE, loaded.getQuantity(), null), 0));
+        assertEquals(STOCK - 2 + 5, dbHelper.getProductById(productId).getQuantity());
+        assertEquals(4, movements().size());
+    }
+
+    @Test
+    public void snapshot_isTakenEveryIntervalMovements() {
+        // The initial stock is the first movement
+        sell(DBHelper.STOCK_SNAPSHOT_INTERVAL - 2);
+        assertNull(latestSnapshot());
+
+        sell(1);
+        List<StockMovement> movements = movements();
+        long[] snapshot = latestSnapshot();
+        assertNotNull(snapshot);
+        assertEquals(movements.get(DBHelper.STOCK_SNAPSHOT_INTERVAL - 1).getId(), snapshot[0]);
+        assertEquals(STOCK - (DBHelper.STOCK_SNAPSHOT_INTERVAL - 1), snapshot[1]);
+
+        sell(DBHelper.STOCK_SNAPSHOT_INTERVAL - 1);
+        assertEquals(snapshot[0], latestSnapshot()[0]);
+
+        sell(1);
+        movements = movements();
+        snapshot = latestSnapshot();
+        assertEquals(movements.get(2 * DBHelper.STOCK_SNAPSHOT_INTERVAL - 1).getId(), snapshot[0]);
+        assertEquals(STOCK - (2 * DBHelper.STOCK_SNAPSHOT_INTERVAL - 1), snapshot[1]);
+        assertEquals(dbHelper.getProductById(productId).getQuantity(), snapshot[1]);
+    }
+
+    @Test
+    public void importAdjustment_takingTheSnapshot_holdsTheImportedStock() {
+        sell(DBHelper.STOCK_SNAPSHOT_INTERVAL - 2);
+        int previous = dbHelper.getProductById(productId).getQuantity();
+        int imported = previous + 40;
+        List<Product> products = new ArrayList<>();
+        products.add(new Product("Orange", PRICE, imported, null));
+        products.add(new Product("Lemon", PRICE, 5, null));
+
+        DBHelper.ImportCount count = dbHelper.upsertProducts(products);
+
+        assertEquals(1, count.getAdded());
+        assertEquals(1, count.getUpdated());
+        List<StockMovement> movements = movements();
+        assertEquals(DBHelper.STOCK_SNAPSHOT_INTERVAL, movements.size());
+        StockMovement adjustment = movements.get(DBHelper.STOCK_SNAPSHOT_INTERVAL - 1);
+        assertMovement(adjustment, StockMovement.REASON_ADJUST, imported - previous);
+        long[] snapshot = latestSnapshot();
+        assertNotNull(snapshot);
+        assertEquals(adjustment.getId(), snapshot[0]);
+        assertEquals(imported, snapshot[1]);
+        assertEquals(imported, dbHelper.getStockAsOf(productId, Long.MAX_VALUE));
+
+        // Importing the same quantity again updates the product without a movement
+        assertEquals(1, dbHelper.upsertProducts(products.subList(0, 1)).getUpdated());
+        assertEquals(DBHelper.STOCK_SNAPSHOT_INTERVAL, movements().size());
+    }
+
+    @Test
+    public void stockAsOf_matchesTheStockAfterEachMovement() {
+        long beforeProduct = System.currentTimeMillis() - 60_000L;
+        // Past the second snapshot, so dates fall on, between and after snapshots
+        int changes = 2 * DBHelper.STOCK_SNAPSHOT_INTERVAL + DBHelper.STOCK_SNAPSHOT_INTERVAL / 2;
+        long[] times = new long[changes + 1];
+        int[] expected = new int[changes + 1];
+        int stock = STOCK;
+        times[0] = afterLastMovement();
+        expected[0] = stock;
+        for (int i = 1; i <= changes; i++) {
+            // Cycle through a sale, an order and the cancel of that order
+            if (i % 3 == 1) {
+                assertEquals(StockResult.OK, dbHelper.recordSale(sale(1)));
+                stock -= 1;
+            } else if (i % 3 == 2) {
+                assertEquals(StockResult.OK, dbHelper.placeOrder(new Order("Amira", productId, "Orange", 2, PRICE,
+                        PRICE.times(2))));
+                stock -= 2;
+            } else {
+                assertEquals(1, dbHelper.cancelOrder(dbHelper.getPendingOrders().get(0)));
+                stock += 2;
+            }
+            times[i] = afterLastMovement();
+            expected[i] = stock;
+        }
+
+        assertEquals(0, dbHelper.getStockAsOf(productId, beforeProduct));
+        for (int i = 0; i <= changes; i++) {
+            assertEquals("stock after change " + i, expected[i], dbHelper.getStockAsOf(productId, times[i]));
+        }
+        assertEquals(stock, dbHelper.getProductById(productId).getQuantity());
+    }
+
+    @Test
+    public void stockAsOf_atASnapshotDate_isTheSnapshotQuantity() {
+        sell(DBHelper.STOCK_SNAPSHOT_INTERVAL - 2);
+        afterLastMovement();
+        sell(1);
+        long snapshotTime = afterLastMovement();
+        // Short of the next snapshot, so the latest one is still the one taken above
+        sell(DBHelper.STOCK_SNAPSHOT_INTERVAL - 1);
+        long[] snapshot = latestSnapshot();
+        assertNotNull(snapshot);
+
+        StockMovement snapshotMovement = movements().get(DBHelper.STOCK_SNAPSHOT_INTERVAL - 1);
+        assertEquals(snapshotMovement.getId(), snapshot[0]);
+        assertEquals(snapshot[1], dbHelper.getStockAsOf(productId, snapshotMovement.getDate()));
+        assertEquals(snapshot[1], dbHelper.getStockAsOf(productId, snapshotTime));
+    }
+
+    private void sell(int count) {
+        for (int i = 0; i < count; i++) {
+            assertEquals(StockResult.OK, dbHelper.recordSale(sale(1)));
+        }
+    }
+
+    private Sale sale(int quantity) {
+        return new Sale(productId, "Orange", quantity, PRICE, PRICE.times(quantity));
+    }
+
+    private List<StockMovement> movements() {
+        return dbHelper.getStockMovements(productId, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * Take the time once the last movement is written, and wait for the clock to move on
+     * so the next movement is dated strictly after it.
+     */
+    private static long afterLastMovement() {
+        long now = System.currentTimeMillis();
+        SystemClock.sleep(2);
+        return now;
+    }
+
+    /**
+     * @return The movement id and quantity of the latest snapshot of the product, or null if none was taken
+     */
+    private long[] latestSnapshot() {
+        try (Cursor cursor = dbHelper.getReadableDatabase().rawQuery(DBHelper.QUERY_STOCK_SNAPSHOT_AT,
+                new String[]{String.valueOf(productId), String.valueOf(Long.MAX_VALUE)})) {
+            return cursor.moveToFirst() ? new long[]{cursor.getLong(0), cursor.getLong(1)} : null;
+        }
+    }
+
+    private static void assertMovement(StockMovement movement, String reason, int delta) {
+        assertEquals(reason, movement.getReason());
+        assertEquals(delta, movement.getDelta());
+    }
+}
@@ -13,9 +13,11 @@ import android.widget.Toast;
 import androidx.appcompat.app.AppCompatActivity;
 
 import com.example.jucygo.R;
-import com.example.jucygo.model.DBHelper;
+import com.example.jucygo.model.JucygoRepository;
+import com.example.jucygo.model.Money;
 import com.example.jucygo.model.Order;
 import com.example.jucygo.model.Product;
+import com.example.jucygo.model.StockResult;
 import com.google.android.material.button.MaterialButton;
 import com.google.android.material.textfield.TextInputEditText;
 
@@ -26,6 +28,7 @@ import java.util.List;
 /**
  * Activity to create a new order (commande) for a customer.
  * The vendor manually places the order and stock is updated immediately.
+ * Several products can be added to a cart and placed together as one ticket.
  */
 public class AddOrderActivity extends AppCompatActivity {
 
@@ -34,27 +37,32 @@ public class AddOrderActivity extends AppCompatActivity {
     private TextInputEditText editTextQuantityOrdered;
     private MaterialButton buttonConfirmOrder;
     private MaterialButton buttonCancel;
+    private MaterialButton buttonAddToCart;
+    private MaterialButton buttonClearCart;
+    private android.widget.TextView textViewCartItems;
     private android.widget.TextView textViewCurrentStock;
     private android.widget.TextView textViewUnitPrice;
     private android.widget.TextView textViewTotalAmount;
 
-    private DBHelper dbHelper;
+    private JucygoRepository repository;
     private List<Product> productList;
     private Product selectedProduct;
+    // Product whose details were last requested; earlier lookups still in flight are ignored
+    private int requestedProductId;
     private ArrayAdapter<String> productAdapter;
     private DecimalFormat priceFormat;
+    private final Cart cart = new Cart();
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_add_order);
 
-        dbHelper = new DBHelper(this);
+        repository = JucygoRepository.getInstance(this);
         priceFormat = new DecimalFormat("DT #,##0.00");
 
         initializeViews();
         loadProducts();
-        setupProductSpinner();
         setupQuantityListener();
         setupButtons();
     }
@@ -68,22 +76,36 @@ public class AddOrderActivity extends AppCompatActivity {
         editTextQuantityOrdered = findViewById(R.id.editTextQuantityOrdered);
         buttonConfirmOrder = findViewById(R.id.buttonConfirmOrder);
         buttonCancel = findViewById(R.id.buttonCancel);
+        buttonAddToCart = findViewById(R.id.buttonAddToCart);
+        buttonClearCart = findViewById(R.id.buttonClearCart);
+        textViewCartItems = findViewById(R.id.textViewCartItems);
         textViewCurrentStock = findViewById(R.id.textViewCurrentStock);
         textViewUnitPrice = findViewById(R.id.textViewUnitPrice);
         textViewTotalAmount = findViewById(R.id.textViewTotalAmount);
     }
 
     /**
-     * Load all products from database.
+     * Load all products from database, then fill the product spinner.
      */
     private void loadProducts() {
-        productList = dbHelper.getAllProducts();
-        
+        repository.getAllProducts(this::onProductsLoaded);
+    }
+
+    /**
+     * Fill the product spinner once the products are loaded.
+     */
+    private void onProductsLoaded(List<Product> products) {
+        if (isFinishing() || isDestroyed()) {
+            return;
+        }
+        productList = products;
+
         if (productList.isEmpty()) {
             Toast.makeText(this, R.string.no_products_for_order, Toast.LENGTH_LONG).show();
             finish();
             return;
         }
+        setupProductSpinner();
     }
 
     /**
@@ -111,11 +133,35 @@ public class AddOrderActivity extends AppCompatActivity {
      * Select a product and update the display.
      */
     private void selectProduct(String productName) {
-        selectedProduct = dbHelper.getProductByName(productName);
-        
+        for (Product product : productList) {
+            if (product.getName().equals(productName)) {
+                // Re-read by primary key so the current stock level is shown
+                int productId = product.getId();
+                requestedProductId = productId;
+                repository.getProductById(productId, loaded -> {
+                    if (productId == requestedProductId) {
+                        onProductSelected(loaded);
+                    }
+                });
+                return;
+            }
+        }
+        requestedProductId = 0;
+        onProductSelected(null);
+    }
+
+    /**
+     * Show the stock and price of the product picked in the spinner.
+     */
+    private void onProductSelected(Product product) {
+        if (isFinishing() || isDestroyed()) {
+            return;
+        }
+        selectedProduct = product;
+
         if (selectedProduct != null) {
             textViewCurrentStock.setText(String.valueOf(selectedProduct.getQuantity()));
-            textViewUnitPrice.setText(priceFormat.format(selectedProduct.getPrice()));
+            textViewUnitPrice.setText(priceFormat.format(selectedProduct.getPrice().toBigDecimal()));
             
             // Clear quantity and recalculate total
             editTextQuantityOrdered.setText("");
@@ -144,32 +190,41 @@ public class AddOrderActivity extends AppCompatActivity {
     }
 
     /**
-     * Calculate and display the total amount based on selected product and quantity.
+     * Calculate and display the total amount of the cart and the quantity being entered.
      */
     private void calculateTotal() {
-        if (selectedProduct == null) {
-            textViewTotalAmount.setText("$0.00");
-            return;
-        }
-
-        String quantityStr = editTextQuantityOrdered.getText().toString().trim();
-        if (TextUtils.isEmpty(quantityStr)) {
-            textViewTotalAmount.setText("$0.00");
-            return;
+        Money total = cart.getTotal();
+        if (selectedProduct != null) {
+            try {
+                int quantity = Integer.parseInt(editTextQuantityOrdered.getText().toString().trim());
+                if (quantity > 0) {
+                    total = total.plus(selectedProduct.getPrice().times(quantity));
+                }
+            } catch (NumberFormatException | ArithmeticException e) {
+                // No quantity entered yet, or one too large to price: show the cart alone
+            }
         }
+        textViewTotalAmount.setText(priceFormat.format(total.toBigDecimal()));
+    }
 
-        try {
-            int quantity = Integer.parseInt(quantityStr);
-            if (quantity <= 0) {
-                textViewTotalAmount.setText("$0.00");
-                return;
+    /**
+     * List the cart lines and refresh the total.
+     */
+    private void showCart() {
+        if (cart.isEmpty()) {
+            textViewCartItems.setText(R.string.cart_empty);
+        } else {
+            StringBuilder items = new StringBuilder();
+            for (Cart.Line line : cart.getLines()) {
+                if (items.length() > 0) {
+                    items.append('\n');
+                }
+                items.append(getString(R.string.cart_line, line.quantity, line.product.getName(),
+                        priceFormat.format(line.getTotal().toBigDecimal())));
             }
-
-            double total = selectedProduct.getPrice() * quantity;
-            textViewTotalAmount.setText(priceFormat.format(total));
-        } catch (NumberFormatException e) {
-            textViewTotalAmount.setText("$0.00");
+            textViewCartItems.setText(items);
         }
+        calculateTotal();
     }
 
     /**
@@ -178,25 +233,23 @@ public class AddOrderActivity extends AppCompatActivity {
     private void setupButtons() {
         buttonConfirmOrder.setOnClickListener(v -> confirmOrder());
         buttonCancel.setOnClickListener(v -> finish());
+        buttonAddToCart.setOnClickListener(v -> addToCart());
+        buttonClearCart.setOnClickListener(v -> {
+            cart.clear();
+            showCart();
+        });
     }
 
     /**
-     * Validate and confirm the order.
+     * Validate the selected product and quantity and add them to the cart.
+     * @return true if they were added, false if an error was shown instead
      */
-    private void confirmOrder() {
-        // Validate customer name
-        String customerName = editTextCustomerName.getText().toString().trim();
-        if (TextUtils.isEmpty(customerName)) {
-            editTextCustomerName.setError(getString(R.string.customer_name_required));
-            editTextCustomerName.requestFocus();
-            return;
-        }
-
+    private boolean addToCart() {
         // Validate product selection
         if (selectedProduct == null) {
             Toast.makeText(this, R.string.select_product_message, Toast.LENGTH_SHORT).show();
             spinnerProduct.requestFocus();
-            return;
+            return false;
         }
 
         // Validate quantity
@@ -204,7 +257,7 @@ public class AddOrderActivity extends AppCompatActivity {
         if (TextUtils.isEmpty(quantityStr)) {
             editTextQuantityOrdered.setError(getString(R.string.quantity_required));
             editTextQuantityOrdered.requestFocus();
-            return;
+            return false;
         }
 
         int quantityOrdered;
@@ -213,52 +266,90 @@ public class AddOrderActivity extends AppCompatActivity {
             if (quantityOrdered <= 0) {
                 editTextQuantityOrdered.setError(getString(R.string.quantity_greater_than_zero));
                 editTextQuantityOrdered.requestFocus();
-                return;
+                return false;
             }
         } catch (NumberFormatException e) {
             editTextQuantityOrdered.setError(getString(R.string.invalid_quantity_format));
             editTextQuantityOrdered.requestFocus();
-            return;
+            return false;
         }
 
-        // Check stock availability
-        if (!dbHelper.isStockSufficient(selectedProduct.getName(), quantityOrdered)) {
-            Toast.makeText(this, getString(R.string.insufficient_stock_order) + selectedProduct.getQuantity(), 
+        // Check against the stock shown, counting what is already in the cart
+        if (cart.getQuantity(selectedProduct.getId()) + quantityOrdered > selectedProduct.getQuantity()) {
+            Toast.makeText(this, getString(R.string.insufficient_stock_order) + selectedProduct.getQuantity(),
                     Toast.LENGTH_LONG).show();
             editTextQuantityOrdered.setError(getString(R.string.insufficient_stock));
             editTextQuantityOrdered.requestFocus();
+            return false;
+        }
+
+        // The cart total must still fit in a Money, or pricing it would throw
+        try {
+            cart.getTotal().plus(selectedProduct.getPrice().times(quantityOrdered));
+        } catch (ArithmeticException e) {
+            editTextQuantityOrdered.setError(getString(R.string.quantity_too_large));
+            editTextQuantityOrdered.requestFocus();
+            return false;
+        }
+
+        cart.add(selectedProduct, quantityOrdered);
+        editTextQuantityOrdered.setText("");
+        showCart();
+        return true;
+    }
+
+    /**
+     * Validate and confirm the order of everything in the cart.
+     * A product and quantity still in the form are added to the cart first.
+     */
+    private void confirmOrder() {
+        // Validate customer name
+        String customerName = editTextCustomerName.getText().toString().trim();
+        if (TextUtils.isEmpty(customerName)) {
+            editTextCustomerName.setError(getString(R.string.customer_name_required));
+            editTextCustomerName.requestFocus();
             return;
         }
 
-        // Calculate total amount
-        double totalAmount = selectedProduct.getPrice() * quantityOrdered;
-
-        // Create and save order
-        Order order = new Order(
-                customerName,
-                selectedProduct.getName(),
-                quantityOrdered,
-                selectedProduct.getPrice(),
-                totalAmount
-        );
-
-        long orderResult = dbHelper.addOrder(order);
-        
-        if (orderResult > 0) {
-            // Update stock immediately when order is placed
-            int updateResult = dbHelper.updateStockAfterSale(selectedProduct.getName(), quantityOrdered);
-            
-            if (updateResult > 0) {
+        boolean lineEntered = !TextUtils.isEmpty(editTextQuantityOrdered.getText().toString().trim());
+        if ((lineEntered || cart.isEmpty()) && !addToCart()) {
+            return;
+        }
+
+        List<Order> lines = cart.toOrders(customerName);
+        Money totalAmount = cart.getTotal();
+
+        // Place every line and take them out of stock in one transaction on the writer thread
+        buttonConfirmOrder.setEnabled(false);
+        repository.placeOrderTicket(customerName, lines, result -> onOrderPlaced(result, customerName, totalAmount));
+    }
+
+    /**
+     * Report the outcome of an order recorded on the writer thread.
+     */
+    private void onOrderPlaced(StockResult result, String customerName, Money totalAmount) {
+        if (isFinishing() || isDestroyed()) {
+            return;
+        }
+        buttonConfirmOrder.setEnabled(true);
+
+        switch (result) {
+            case OK:
                 String message = getString(R.string.order_success) + "\n" +
                         getString(R.string.customer_label) + " " + customerName + "\n" +
-                        getString(R.string.total_label) + " " + priceFormat.format(totalAmount);
+                        getString(R.string.total_label) + " " + priceFormat.format(totalAmount.toBigDecimal());
                 Toast.makeText(this, message, Toast.LENGTH_LONG).show();
                 finish();
-            } else {
-                Toast.makeText(this, R.string.order_stock_update_failed, Toast.LENGTH_SHORT).show();
-            }
-        } else {
-            Toast.makeText(this, R.string.order_failed, Toast.LENGTH_SHORT).show();
+                break;
+            case INSUFFICIENT_STOCK:
+                Toast.makeText(this, R.string.insufficient_stock_cart, Toast.LENGTH_LONG).show();
+                break;
+            case UNKNOWN_PRODUCT:
+                Toast.makeText(this, R.string.order_product_not_found, Toast.LENGTH_SHORT).show();
+                break;
+            default:
+                Toast.makeText(this, R.string.order_failed, Toast.LENGTH_SHORT).show();
+                break;
         }
     }
 }
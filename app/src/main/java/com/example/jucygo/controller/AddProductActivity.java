@@ -3,6 +3,7 @@ package com.example.jucygo.controller;
 import android.Manifest;
 import android.content.Intent;
 import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Environment;
@@ -19,16 +20,16 @@ import androidx.core.content.ContextCompat;
 import androidx.core.content.FileProvider;
 
 import com.example.jucygo.R;
-import com.example.jucygo.model.DBHelper;
+import com.example.jucygo.model.ImageLoader;
+import com.example.jucygo.model.JucygoRepository;
+import com.example.jucygo.model.Money;
 import com.example.jucygo.model.Product;
+import com.example.jucygo.model.ProductImages;
 import com.google.android.material.button.MaterialButton;
 import com.google.android.material.textfield.TextInputEditText;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
@@ -47,10 +48,14 @@ public class AddProductActivity extends AppCompatActivity {
     private MaterialButton buttonSelectImage;
     private MaterialButton buttonAddProduct;
     private MaterialButton buttonCancel;
-    private DBHelper dbHelper;
+    private JucygoRepository repository;
     
+    // Side of the image view, in dp
+    private static final int PREVIEW_SIZE_DP = 120;
+
     private String currentImagePath = "";
-    private Uri photoUri;
+    private String currentThumbnailPath = "";
+    private File photoFile;
     
     private ActivityResultLauncher<Intent> galleryLauncher;
     private ActivityResultLauncher<Uri> cameraLauncher;
@@ -61,7 +66,7 @@ public class AddProductActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_add_product);
 
-        dbHelper = new DBHelper(this);
+        repository = JucygoRepository.getInstance(this);
         
         setupActivityResultLaunchers();
         initializeViews();
@@ -76,11 +81,8 @@ public class AddProductActivity extends AppCompatActivity {
                 if (result.getResultCode() == RESULT_OK && result.getData() != null) {
                     Uri selectedImageUri = result.getData().getData();
                     if (selectedImageUri != null) {
-                        currentImagePath = copyImageToAppStorage(selectedImageUri);
-                        if (!currentImagePath.isEmpty()) {
-                            imageViewProduct.setImageURI(Uri.parse(currentImagePath));
-                            imageViewProduct.setPadding(0, 0, 0, 0);
-                        }
+                        buttonAddProduct.setEnabled(false);
+                        repository.saveProductImage(selectedImageUri, this::onImageStored);
                     }
                 }
             }
@@ -90,10 +92,9 @@ public class AddProductActivity extends AppCompatActivity {
         cameraLauncher = registerForActivityResult(
             new ActivityResultContracts.TakePicture(),
             success -> {
-                if (success && photoUri != null) {
-                    currentImagePath = photoUri.toString();
-                    imageViewProduct.setImageURI(photoUri);
-                    imageViewProduct.setPadding(0, 0, 0, 0);
+                if (success && photoFile != null) {
+                    buttonAddProduct.setEnabled(false);
+                    repository.saveCapturedImage(photoFile, this::onImageStored);
                 }
             }
         );
@@ -154,8 +155,8 @@ public class AddProductActivity extends AppCompatActivity {
     
     private void openCamera() {
         try {
-            File photoFile = createImageFile();
-            photoUri = FileProvider.getUriForFile(this, 
+            photoFile = createImageFile();
+            Uri photoUri = FileProvider.getUriForFile(this, 
                     getPackageName() + ".fileprovider", photoFile);
             cameraLauncher.launch(photoUri);
         } catch (IOException e) {
@@ -172,33 +173,50 @@ public class AddProductActivity extends AppCompatActivity {
         String timeStamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
         String imageFileName = "PRODUCT_" + timeStamp + "_";
         File storageDir = getExternalFilesDir(Environment.DIRECTORY_PICTURES);
-        File image = File.createTempFile(imageFileName, ".jpg", storageDir);
-        currentImagePath = image.getAbsolutePath();
-        return image;
+        return File.createTempFile(imageFileName, ".jpg", storageDir);
     }
     
-    private String copyImageToAppStorage(Uri sourceUri) {
-        try {
-            File destFile = createImageFile();
-            InputStream inputStream = getContentResolver().openInputStream(sourceUri);
-            OutputStream outputStream = new FileOutputStream(destFile);
-            
-            byte[] buffer = new byte[1024];
-            int length;
-            while ((length = inputStream.read(buffer)) > 0) {
-                outputStream.write(buffer, 0, length);
-            }
-            
-            inputStream.close();
-            outputStream.close();
-            
-            return destFile.getAbsolutePath();
-        } catch (IOException e) {
+    /**
+     * Keep the renditions of the picked or captured photo, written on the image thread.
+     * The product cannot be saved while they are being written.
+     */
+    private void onImageStored(ProductImages.Renditions renditions) {
+        if (isFinishing() || isDestroyed()) {
+            return;
+        }
+        buttonAddProduct.setEnabled(true);
+        if (renditions == null) {
             Toast.makeText(this, R.string.error_saving_image, Toast.LENGTH_SHORT).show();
-            return "";
+            return;
+        }
+        currentImagePath = renditions.getImagePath();
+        currentThumbnailPath = renditions.getThumbnailPath();
+        showImage(currentImagePath);
+    }
+
+    /**
+     * Show an image decoded at the size of the image view.
+     */
+    private void showImage(String path) {
+        int size = Math.round(PREVIEW_SIZE_DP * getResources().getDisplayMetrics().density);
+        ImageLoader loader = ImageLoader.getInstance();
+        Bitmap cached = loader.getCached(path, size);
+        if (cached != null) {
+            setImage(cached);
+        } else {
+            loader.load(path, size, bitmap -> {
+                if (bitmap != null && !isDestroyed()) {
+                    setImage(bitmap);
+                }
+            });
         }
     }
 
+    private void setImage(Bitmap bitmap) {
+        imageViewProduct.setImageBitmap(bitmap);
+        imageViewProduct.setPadding(0, 0, 0, 0);
+    }
+
     /**
      * Validates and adds a new product to the database.
      */
@@ -221,10 +239,10 @@ public class AddProductActivity extends AppCompatActivity {
             return;
         }
 
-        double price;
+        Money price;
         try {
-            price = Double.parseDouble(priceStr);
-            if (price < 0) {
+            price = Money.parse(priceStr);
+            if (price.isNegative()) {
                 editTextProductPrice.setError("Price must be positive");
                 editTextProductPrice.requestFocus();
                 return;
@@ -256,8 +274,20 @@ public class AddProductActivity extends AppCompatActivity {
         }
 
         // Create product and add to database
-        Product product = new Product(name, price, quantity, description, currentImagePath);
-        long result = dbHelper.addProduct(product);
+        Product product = new Product(name, price, quantity, description, currentImagePath,
+                currentThumbnailPath);
+        buttonAddProduct.setEnabled(false);
+        repository.addProduct(product, this::onProductAdded);
+    }
+
+    /**
+     * Report the outcome of a product insert performed on the writer thread.
+     */
+    private void onProductAdded(long result) {
+        if (isFinishing() || isDestroyed()) {
+            return;
+        }
+        buttonAddProduct.setEnabled(true);
 
         if (result > 0) {
             Toast.makeText(this, "Product added successfully", Toast.LENGTH_SHORT).show();
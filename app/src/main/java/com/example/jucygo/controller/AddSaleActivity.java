@@ -13,9 +13,11 @@ import android.widget.Toast;
 import androidx.appcompat.app.AppCompatActivity;
 
 import com.example.jucygo.R;
-import com.example.jucygo.model.DBHelper;
+import com.example.jucygo.model.JucygoRepository;
+import com.example.jucygo.model.Money;
 import com.example.jucygo.model.Product;
 import com.example.jucygo.model.Sale;
+import com.example.jucygo.model.StockResult;
 import com.google.android.material.button.MaterialButton;
 import com.google.android.material.textfield.TextInputEditText;
 
@@ -26,6 +28,7 @@ import java.util.List;
 /**
  * Activity to record a new sale.
  * Handles product selection, quantity input, total calculation, and stock validation.
+ * Several products can be added to a cart and checked out together as one ticket.
  */
 public class AddSaleActivity extends AppCompatActivity {
 
@@ -33,27 +36,32 @@ public class AddSaleActivity extends AppCompatActivity {
     private TextInputEditText editTextQuantitySold;
     private MaterialButton buttonConfirmSale;
     private MaterialButton buttonCancel;
+    private MaterialButton buttonAddToCart;
+    private MaterialButton buttonClearCart;
+    private android.widget.TextView textViewCartItems;
     private android.widget.TextView textViewCurrentStock;
     private android.widget.TextView textViewUnitPrice;
     private android.widget.TextView textViewTotalAmount;
 
-    private DBHelper dbHelper;
+    private JucygoRepository repository;
     private List<Product> productList;
     private Product selectedProduct;
+    // Product whose details were last requested; earlier lookups still in flight are ignored
+    private int requestedProductId;
     private ArrayAdapter<String> productAdapter;
     private DecimalFormat priceFormat;
+    private final Cart cart = new Cart();
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_add_sale);
 
-        dbHelper = new DBHelper(this);
+        repository = JucygoRepository.getInstance(this);
         priceFormat = new DecimalFormat("DT #,##0.00");
 
         initializeViews();
         loadProducts();
-        setupProductSpinner();
         setupQuantityListener();
         setupButtons();
     }
@@ -66,22 +74,36 @@ public class AddSaleActivity extends AppCompatActivity {
         editTextQuantitySold = findViewById(R.id.editTextQuantitySold);
         buttonConfirmSale = findViewById(R.id.buttonConfirmSale);
         buttonCancel = findViewById(R.id.buttonCancel);
+        buttonAddToCart = findViewById(R.id.buttonAddToCart);
+        buttonClearCart = findViewById(R.id.buttonClearCart);
+        textViewCartItems = findViewById(R.id.textViewCartItems);
         textViewCurrentStock = findViewById(R.id.textViewCurrentStock);
         textViewUnitPrice = findViewById(R.id.textViewUnitPrice);
         textViewTotalAmount = findViewById(R.id.textViewTotalAmount);
     }
 
     /**
-     * Load all products from database.
+     * Load all products from database, then fill the product spinner.
      */
     private void loadProducts() {
-        productList = dbHelper.getAllProducts();
-        
+        repository.getAllProducts(this::onProductsLoaded);
+    }
+
+    /**
+     * Fill the product spinner once the products are loaded.
+     */
+    private void onProductsLoaded(List<Product> products) {
+        if (isFinishing() || isDestroyed()) {
+            return;
+        }
+        productList = products;
+
         if (productList.isEmpty()) {
             Toast.makeText(this, "No products available. Please add products first.", Toast.LENGTH_LONG).show();
             finish();
             return;
         }
+        setupProductSpinner();
     }
 
     /**
@@ -109,11 +131,35 @@ public class AddSaleActivity extends AppCompatActivity {
      * Select a product and update the display.
      */
     private void selectProduct(String productName) {
-        selectedProduct = dbHelper.getProductByName(productName);
-        
+        for (Product product : productList) {
+            if (product.getName().equals(productName)) {
+                // Re-read by primary key so the current stock level is shown
+                int productId = product.getId();
+                requestedProductId = productId;
+                repository.getProductById(productId, loaded -> {
+                    if (productId == requestedProductId) {
+                        onProductSelected(loaded);
+                    }
+                });
+                return;
+            }
+        }
+        requestedProductId = 0;
+        onProductSelected(null);
+    }
+
+    /**
+     * Show the stock and price of the product picked in the spinner.
+     */
+    private void onProductSelected(Product product) {
+        if (isFinishing() || isDestroyed()) {
+            return;
+        }
+        selectedProduct = product;
+
         if (selectedProduct != null) {
             textViewCurrentStock.setText(String.valueOf(selectedProduct.getQuantity()));
-            textViewUnitPrice.setText(priceFormat.format(selectedProduct.getPrice()));
+            textViewUnitPrice.setText(priceFormat.format(selectedProduct.getPrice().toBigDecimal()));
             
             // Clear quantity and recalculate total
             editTextQuantitySold.setText("");
@@ -142,32 +188,41 @@ public class AddSaleActivity extends AppCompatActivity {
     }
 
     /**
-     * Calculate and display the total amount based on selected product and quantity.
+     * Calculate and display the total amount of the cart and the quantity being entered.
      */
     private void calculateTotal() {
-        if (selectedProduct == null) {
-            textViewTotalAmount.setText("$0.00");
-            return;
-        }
-
-        String quantityStr = editTextQuantitySold.getText().toString().trim();
-        if (TextUtils.isEmpty(quantityStr)) {
-            textViewTotalAmount.setText("$0.00");
-            return;
+        Money total = cart.getTotal();
+        if (selectedProduct != null) {
+            try {
+                int quantity = Integer.parseInt(editTextQuantitySold.getText().toString().trim());
+                if (quantity > 0) {
+                    total = total.plus(selectedProduct.getPrice().times(quantity));
+                }
+            } catch (NumberFormatException | ArithmeticException e) {
+                // No quantity entered yet, or one too large to price: show the cart alone
+            }
         }
+        textViewTotalAmount.setText(priceFormat.format(total.toBigDecimal()));
+    }
 
-        try {
-            int quantity = Integer.parseInt(quantityStr);
-            if (quantity <= 0) {
-                textViewTotalAmount.setText("$0.00");
-                return;
+    /**
+     * List the cart lines and refresh the total.
+     */
+    private void showCart() {
+        if (cart.isEmpty()) {
+            textViewCartItems.setText(R.string.cart_empty);
+        } else {
+            StringBuilder items = new StringBuilder();
+            for (Cart.Line line : cart.getLines()) {
+                if (items.length() > 0) {
+                    items.append('\n');
+                }
+                items.append(getString(R.string.cart_line, line.quantity, line.product.getName(),
+                        priceFormat.format(line.getTotal().toBigDecimal())));
             }
-
-            double total = selectedProduct.getPrice() * quantity;
-            textViewTotalAmount.setText(priceFormat.format(total));
-        } catch (NumberFormatException e) {
-            textViewTotalAmount.setText("$0.00");
+            textViewCartItems.setText(items);
         }
+        calculateTotal();
     }
 
     /**
@@ -176,17 +231,23 @@ public class AddSaleActivity extends AppCompatActivity {
     private void setupButtons() {
         buttonConfirmSale.setOnClickListener(v -> confirmSale());
         buttonCancel.setOnClickListener(v -> finish());
+        buttonAddToCart.setOnClickListener(v -> addToCart());
+        buttonClearCart.setOnClickListener(v -> {
+            cart.clear();
+            showCart();
+        });
     }
 
     /**
-     * Validate and confirm the sale.
+     * Validate the selected product and quantity and add them to the cart.
+     * @return true if they were added, false if an error was shown instead
      */
-    private void confirmSale() {
+    private boolean addToCart() {
         // Validate product selection
         if (selectedProduct == null) {
             Toast.makeText(this, "Please select a product", Toast.LENGTH_SHORT).show();
             spinnerProduct.requestFocus();
-            return;
+            return false;
         }
 
         // Validate quantity
@@ -194,7 +255,7 @@ public class AddSaleActivity extends AppCompatActivity {
         if (TextUtils.isEmpty(quantityStr)) {
             editTextQuantitySold.setError("Quantity is required");
             editTextQuantitySold.requestFocus();
-            return;
+            return false;
         }
 
         int quantitySold;
@@ -203,49 +264,79 @@ public class AddSaleActivity extends AppCompatActivity {
             if (quantitySold <= 0) {
                 editTextQuantitySold.setError("Quantity must be greater than 0");
                 editTextQuantitySold.requestFocus();
-                return;
+                return false;
             }
         } catch (NumberFormatException e) {
             editTextQuantitySold.setError("Invalid quantity format");
             editTextQuantitySold.requestFocus();
-            return;
+            return false;
         }
 
-        // Check stock availability
-        if (!dbHelper.isStockSufficient(selectedProduct.getName(), quantitySold)) {
+        // Check against the stock shown, counting what is already in the cart
+        if (cart.getQuantity(selectedProduct.getId()) + quantitySold > selectedProduct.getQuantity()) {
             Toast.makeText(this, "Insufficient stock. Available: " + selectedProduct.getQuantity(), Toast.LENGTH_LONG).show();
             editTextQuantitySold.setError("Insufficient stock");
             editTextQuantitySold.requestFocus();
+            return false;
+        }
+
+        // The cart total must still fit in a Money, or pricing it would throw
+        try {
+            cart.getTotal().plus(selectedProduct.getPrice().times(quantitySold));
+        } catch (ArithmeticException e) {
+            editTextQuantitySold.setError("Quantity too large");
+            editTextQuantitySold.requestFocus();
+            return false;
+        }
+
+        cart.add(selectedProduct, quantitySold);
+        editTextQuantitySold.setText("");
+        showCart();
+        return true;
+    }
+
+    /**
+     * Validate and confirm the sale of everything in the cart.
+     * A product and quantity still in the form are added to the cart first.
+     */
+    private void confirmSale() {
+        boolean lineEntered = !TextUtils.isEmpty(editTextQuantitySold.getText().toString().trim());
+        if ((lineEntered || cart.isEmpty()) && !addToCart()) {
             return;
         }
 
-        // Calculate total amount
-        double totalAmount = selectedProduct.getPrice() * quantitySold;
+        List<Sale> lines = cart.toSales();
+        Money totalAmount = cart.getTotal();
 
-        // Create and save sale
-        Sale sale = new Sale(
-                selectedProduct.getName(),
-                quantitySold,
-                selectedProduct.getPrice(),
-                totalAmount
-        );
+        // Record every line and take them out of stock in one transaction on the writer thread
+        buttonConfirmSale.setEnabled(false);
+        repository.recordSaleTicket(lines, result -> onSaleRecorded(result, totalAmount));
+    }
 
-        long saleResult = dbHelper.addSale(sale);
-        
-        if (saleResult > 0) {
-            // Update stock
-            int updateResult = dbHelper.updateStockAfterSale(selectedProduct.getName(), quantitySold);
-            
-            if (updateResult > 0) {
-                String message = "Sale recorded successfully!\nTotal: " + priceFormat.format(totalAmount);
+    /**
+     * Report the outcome of a sale recorded on the writer thread.
+     */
+    private void onSaleRecorded(StockResult result, Money totalAmount) {
+        if (isFinishing() || isDestroyed()) {
+            return;
+        }
+        buttonConfirmSale.setEnabled(true);
+
+        switch (result) {
+            case OK:
+                String message = "Sale recorded successfully!\nTotal: " + priceFormat.format(totalAmount.toBigDecimal());
                 Toast.makeText(this, message, Toast.LENGTH_LONG).show();
                 finish();
-            } else {
-                Toast.makeText(this, "Sale recorded but failed to update stock", Toast.LENGTH_SHORT).show();
-            }
-        } else {
-            Toast.makeText(this, "Failed to record sale", Toast.LENGTH_SHORT).show();
+                break;
+            case INSUFFICIENT_STOCK:
+                Toast.makeText(this, R.string.insufficient_stock_cart, Toast.LENGTH_LONG).show();
+                break;
+            case UNKNOWN_PRODUCT:
+                Toast.makeText(this, "This product no longer exists", Toast.LENGTH_SHORT).show();
+                break;
+            default:
+                Toast.makeText(this, "Failed to record sale", Toast.LENGTH_SHORT).show();
+                break;
         }
     }
 }
-
@@ -0,0 +1,85 @@
+package com.example.jucygo.controller;
+
+import android.app.Activity;
+import android.widget.Toast;
+
+import androidx.appcompat.app.AlertDialog;
+
+import com.example.jucygo.R;
+import com.example.jucygo.model.JucygoRepository;
+
+import java.text.DateFormat;
+import java.util.Date;
+
+/**
+ * Runs a backup, or a restore after confirmation, showing a progress dialog meanwhile.
+ */
+class BackupDialog {
+    private final Activity activity;
+    private final JucygoRepository repository;
+    private final Runnable onRestored;
+
+    /**
+     * @param activity The activity showing the dialogs
+     * @param onRestored Run on the main thread once a backup has been restored
+     */
+    BackupDialog(Activity activity, Runnable onRestored) {
+        this.activity = activity;
+        this.repository = JucygoRepository.getInstance(activity);
+        this.onRestored = onRestored;
+    }
+
+    void backUp() {
+        TaskProgressDialog dialog = new TaskProgressDialog(activity, R.string.backup_in_progress);
+        repository.backup(result -> {
+            if (activity.isDestroyed()) {
+                return;
+            }
+            dialog.dismiss();
+            if (result == null) {
+                Toast.makeText(activity, R.string.backup_failed, Toast.LENGTH_SHORT).show();
+            } else {
+                Toast.makeText(activity, activity.getString(R.string.backup_done, result.getFiles(),
+                        result.getBytesWritten() / 1024), Toast.LENGTH_LONG).show();
+            }
+        });
+    }
+
+    /**
+     * Ask to confirm the restore of the last backup, naming its date, then restore it.
+     */
+    void restore() {
+        repository.getBackupTime(time -> {
+            if (activity.isDestroyed()) {
+                return;
+            }
+            if (time == 0) {
+                Toast.makeText(activity, R.string.restore_none, Toast.LENGTH_SHORT).show();
+                return;
+            }
+            String date = DateFormat.getDateTimeInstance(DateFormat.MEDIUM, DateFormat.SHORT).format(new Date(time));
+            new AlertDialog.Builder(activity)
+                    .setTitle(R.string.restore_title)
+                    .setMessage(activity.getString(R.string.restore_message, date))
+                    .setPositiveButton(R.string.action_restore, (d, which) -> runRestore())
+                    .setNegativeButton(R.string.button_cancel, null)
+                    .show();
+        });
+    }
+
+    private void runRestore() {
+        TaskProgressDialog dialog = new TaskProgressDialog(activity, R.string.restore_in_progress);
+        repository.restoreBackup(restored -> {
+            if (activity.isDestroyed()) {
+                return;
+            }
+            dialog.dismiss();
+            if (restored) {
+                Toast.makeText(activity, R.string.restore_done, Toast.LENGTH_SHORT).show();
+                onRestored.run();
+            } else {
+                Toast.makeText(activity, R.string.restore_failed, Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+}
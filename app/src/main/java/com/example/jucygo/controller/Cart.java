@@ -0,0 +1,111 @@
+package com.example.jucygo.controller;
+
+import com.example.jucygo.model.Money;
+import com.example.jucygo.model.Order;
+import com.example.jucygo.model.Product;
+import com.example.jucygo.model.Sale;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The lines picked for one checkout, checked out together as a single ticket.
+ * Adding a product that is already in the cart adds to its line.
+ */
+class Cart {
+
+    /**
+     * One product in the cart, at the price it had when it was added.
+     */
+    static final class Line {
+        final Product product;
+        int quantity;
+
+        Line(Product product, int quantity) {
+            this.product = product;
+            this.quantity = quantity;
+        }
+
+        Money getTotal() {
+            return product.getPrice().times(quantity);
+        }
+    }
+
+    private final List<Line> lines = new ArrayList<>();
+
+    /**
+     * Add a quantity of a product, merging it with the line of that product if there is one.
+     */
+    void add(Product product, int quantity) {
+        for (Line line : lines) {
+            if (line.product.getId() == product.getId()) {
+                line.quantity += quantity;
+                return;
+            }
+        }
+        lines.add(new Line(product, quantity));
+    }
+
+    /**
+     * @return The quantity of a product already in the cart, 0 if none
+     */
+    int getQuantity(int productId) {
+        for (Line line : lines) {
+            if (line.product.getId() == productId) {
+                return line.quantity;
+            }
+        }
+        return 0;
+    }
+
+    List<Line> getLines() {
+        return Collections.unmodifiableList(lines);
+    }
+
+    boolean isEmpty() {
+        return lines.isEmpty();
+    }
+
+    Money getTotal() {
+        Money total = Money.ZERO;
+        for (Line line : lines) {
+            total = total.plus(line.getTotal());
+        }
+        return total;
+    }
+
+    void clear() {
+        lines.clear();
+    }
+
+    /**
+     * @return One sale per line, all dated now
+     */
+    List<Sale> toSales() {
+        long now = System.currentTimeMillis();
+        List<Sale> sales = new ArrayList<>(lines.size());
+        for (Line line : lines) {
+            Sale sale = new Sale(line.product.getId(), line.product.getName(), line.quantity,
+                    line.product.getPrice(), line.getTotal());
+            sale.setDate(now);
+            sales.add(sale);
+        }
+        return sales;
+    }
+
+    /**
+     * @return One pending order per line for a customer, all dated now
+     */
+    List<Order> toOrders(String customerName) {
+        long now = System.currentTimeMillis();
+        List<Order> orders = new ArrayList<>(lines.size());
+        for (Line line : lines) {
+            Order order = new Order(customerName, line.product.getId(), line.product.getName(), line.quantity,
+                    line.product.getPrice(), line.getTotal());
+            order.setDate(now);
+            orders.add(order);
+        }
+        return orders;
+    }
+}
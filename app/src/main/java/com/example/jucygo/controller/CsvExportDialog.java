@@ -0,0 +1,146 @@
+package com.example.jucygo.controller;
+
+import android.app.Activity;
+import android.content.Intent;
+import android.net.Uri;
+import android.widget.Toast;
+
+import androidx.appcompat.app.AlertDialog;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.core.content.FileProvider;
+import androidx.core.util.Pair;
+
+import com.example.jucygo.R;
+import com.example.jucygo.model.CsvExporter;
+import com.example.jucygo.model.JucygoRepository;
+import com.google.android.material.datepicker.MaterialDatePicker;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Asks what to export, runs the export in the background while showing its progress,
+ * then offers the CSV file to share through the FileProvider.
+ */
+class CsvExportDialog {
+    private static final String DIRECTORY = "Exports";
+
+    private final AppCompatActivity activity;
+    private final JucygoRepository repository;
+
+    CsvExportDialog(AppCompatActivity activity) {
+        this.activity = activity;
+        this.repository = JucygoRepository.getInstance(activity);
+    }
+
+    /**
+     * Show the choice between sales, orders and products.
+     */
+    void show() {
+        String[] items = {
+                activity.getString(R.string.export_sales),
+                activity.getString(R.string.export_orders),
+                activity.getString(R.string.export_products)};
+        new AlertDialog.Builder(activity)
+                .setTitle(R.string.export_title)
+                .setItems(items, (dialog, which) -> {
+                    if (which == 0) {
+                        pickRange("sales");
+                    } else if (which == 1) {
+                        pickRange("orders");
+                    } else {
+                        File target = newFile("products");
+                        Progress progress = new Progress();
+                        repository.exportProductsCsv(target, progress, progress.done(target));
+                    }
+                })
+                .setNegativeButton(R.string.button_cancel, null)
+                .show();
+    }
+
+    /**
+     * Ask for the days to export, then export the sales or orders of those days.
+     */
+    private void pickRange(String kind) {
+        MaterialDatePicker<Pair<Long, Long>> picker = MaterialDatePicker.Builder.dateRangePicker()
+                .setTitleText(R.string.export_pick_range)
+                .build();
+        picker.addOnPositiveButtonClickListener(selection -> {
+            // The picker selects UTC midnights; export from the first local day to the end of the last
+            long from = localMidnight(selection.first, 0);
+            long to = localMidnight(selection.second, 1);
+            File target = newFile(kind);
+            Progress progress = new Progress();
+            if (kind.equals("sales")) {
+                repository.exportSalesCsv(target, from, to, progress, progress.done(target));
+            } else {
+                repository.exportOrdersCsv(target, from, to, progress, progress.done(target));
+            }
+        });
+        picker.show(activity.getSupportFragmentManager(), "export_range");
+    }
+
+    private File newFile(String kind) {
+        File directory = activity.getExternalFilesDir(DIRECTORY);
+        String stamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.ROOT).format(new Date());
+        return new File(directory, kind + "_" + stamp + ".csv");
+    }
+
+    /**
+     * @param utcMidnight A day as picked, at midnight UTC
+     * @param plusDays Days to add to that day
+     * @return Local midnight of the resulting day, in epoch milliseconds
+     */
+    private static long localMidnight(long utcMidnight, int plusDays) {
+        Calendar utc = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        utc.setTimeInMillis(utcMidnight);
+        Calendar local = Calendar.getInstance();
+        local.clear();
+        local.set(utc.get(Calendar.YEAR), utc.get(Calendar.MONTH), utc.get(Calendar.DAY_OF_MONTH));
+        local.add(Calendar.DAY_OF_MONTH, plusDays);
+        return local.getTimeInMillis();
+    }
+
+    /**
+     * The progress of one export, shown in a dialog until it finishes.
+     */
+    private final class Progress implements CsvExporter.ProgressListener {
+        private final TaskProgressDialog dialog = new TaskProgressDialog(activity, R.string.export_in_progress);
+
+        @Override
+        public void onProgress(int rowsWritten, int totalRows) {
+            dialog.setProgress(rowsWritten, totalRows,
+                    activity.getString(R.string.export_progress, rowsWritten, totalRows));
+        }
+
+        /**
+         * @return The callback closing this dialog and sharing the file once the export has finished
+         */
+        JucygoRepository.Callback<Integer> done(File target) {
+            return rows -> {
+                if (activity.isDestroyed()) {
+                    return;
+                }
+                dialog.dismiss();
+                if (rows < 0) {
+                    Toast.makeText(activity, R.string.export_failed, Toast.LENGTH_SHORT).show();
+                    return;
+                }
+                share(activity, target);
+            };
+        }
+    }
+
+    private static void share(Activity activity, File file) {
+        Uri uri = FileProvider.getUriForFile(activity, activity.getPackageName() + ".fileprovider", file);
+        Intent intent = new Intent(Intent.ACTION_SEND);
+        intent.setType("text/csv");
+        intent.putExtra(Intent.EXTRA_STREAM, uri);
+        intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        activity.startActivity(Intent.createChooser(intent, activity.getString(R.string.export_share)));
+    }
+}
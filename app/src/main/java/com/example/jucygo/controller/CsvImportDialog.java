@@ -0,0 +1,127 @@
+package com.example.jucygo.controller;
+
+import android.content.res.AssetFileDescriptor;
+import android.net.Uri;
+import android.widget.Toast;
+
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
+import androidx.appcompat.app.AlertDialog;
+import androidx.appcompat.app.AppCompatActivity;
+
+import com.example.jucygo.R;
+import com.example.jucygo.model.CsvImporter;
+import com.example.jucygo.model.JucygoRepository;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Asks what to import and from which file, runs the import in the background while
+ * showing its progress, then reports how many rows were added, updated and rejected.
+ * Must be created while its activity is being created, as it registers for the file picker result.
+ */
+class CsvImportDialog {
+    // Types offered by the file picker; many apps label CSV files as plain text
+    private static final String[] CSV_TYPES = {"text/csv", "text/comma-separated-values", "text/plain"};
+    // Rejected rows listed in the result
+    private static final int LISTED_REJECTS = 20;
+
+    private final AppCompatActivity activity;
+    private final JucygoRepository repository;
+    private final Runnable onImported;
+    private final ActivityResultLauncher<String[]> pickProducts;
+    private final ActivityResultLauncher<String[]> pickSales;
+
+    /**
+     * @param activity The activity showing the dialogs
+     * @param onImported Run on the main thread after an import that added or updated rows
+     */
+    CsvImportDialog(AppCompatActivity activity, Runnable onImported) {
+        this.activity = activity;
+        this.repository = JucygoRepository.getInstance(activity);
+        this.onImported = onImported;
+        pickProducts = activity.registerForActivityResult(new ActivityResultContracts.OpenDocument(), uri -> {
+            if (uri != null) {
+                importFile(uri, false);
+            }
+        });
+        pickSales = activity.registerForActivityResult(new ActivityResultContracts.OpenDocument(), uri -> {
+            if (uri != null) {
+                importFile(uri, true);
+            }
+        });
+    }
+
+    /**
+     * Show the choice between products and sales, then the file picker.
+     */
+    void show() {
+        String[] items = {
+                activity.getString(R.string.export_products),
+                activity.getString(R.string.export_sales)};
+        new AlertDialog.Builder(activity)
+                .setTitle(R.string.import_title)
+                .setItems(items, (dialog, which) -> (which == 0 ? pickProducts : pickSales).launch(CSV_TYPES))
+                .setNegativeButton(R.string.button_cancel, null)
+                .show();
+    }
+
+    private void importFile(Uri uri, boolean sales) {
+        InputStream in;
+        long size;
+        try {
+            AssetFileDescriptor descriptor = activity.getContentResolver().openAssetFileDescriptor(uri, "r");
+            if (descriptor == null) {
+                throw new IOException("No file at " + uri);
+            }
+            size = descriptor.getLength();
+            // Closing the stream closes the descriptor
+            in = descriptor.createInputStream();
+        } catch (IOException e) {
+            Toast.makeText(activity, R.string.import_failed, Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        TaskProgressDialog dialog = new TaskProgressDialog(activity, R.string.import_in_progress);
+        CsvImporter.ProgressListener progress = (read, total) -> dialog.setProgress(read, total,
+                activity.getString(R.string.import_progress, read / 1024));
+        JucygoRepository.Callback<CsvImporter.Result> done = result -> {
+            if (activity.isDestroyed()) {
+                return;
+            }
+            dialog.dismiss();
+            if (result == null) {
+                Toast.makeText(activity, R.string.import_failed, Toast.LENGTH_SHORT).show();
+                return;
+            }
+            if (result.getAdded() + result.getUpdated() > 0) {
+                onImported.run();
+            }
+            showResult(result);
+        };
+        if (sales) {
+            repository.importSalesCsv(in, size, progress, done);
+        } else {
+            repository.importProductsCsv(in, size, progress, done);
+        }
+    }
+
+    private void showResult(CsvImporter.Result result) {
+        StringBuilder message = new StringBuilder(activity.getString(R.string.import_result,
+                result.getAdded(), result.getUpdated(), result.getRejected()));
+        int listed = 0;
+        for (CsvImporter.Reject reject : result.getRejects()) {
+            if (listed++ == LISTED_REJECTS) {
+                break;
+            }
+            message.append('\n').append(activity.getString(R.string.import_reject, reject.getLine(),
+                    reject.getReason()));
+        }
+        new AlertDialog.Builder(activity)
+                .setTitle(R.string.import_done)
+                .setMessage(message)
+                .setPositiveButton(android.R.string.ok, null)
+                .show();
+    }
+}
@@ -4,6 +4,7 @@ import android.Manifest;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Environment;
@@ -20,16 +21,16 @@ import androidx.core.content.ContextCompat;
 import androidx.core.content.FileProvider;
 
 import com.example.jucygo.R;
-import com.example.jucygo.model.DBHelper;
+import com.example.jucygo.model.ImageLoader;
+import com.example.jucygo.model.JucygoRepository;
+import com.example.jucygo.model.Money;
 import com.example.jucygo.model.Product;
+import com.example.jucygo.model.ProductImages;
 import com.google.android.material.button.MaterialButton;
 import com.google.android.material.textfield.TextInputEditText;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
@@ -49,12 +50,16 @@ public class EditProductActivity extends AppCompatActivity {
     private MaterialButton buttonUpdateProduct;
     private MaterialButton buttonDeleteProduct;
     private MaterialButton buttonCancel;
-    private DBHelper dbHelper;
+    private JucygoRepository repository;
     private int productId;
     private Product currentProduct;
     
+    // Side of the image view, in dp
+    private static final int PREVIEW_SIZE_DP = 120;
+
     private String currentImagePath = "";
-    private Uri photoUri;
+    private String currentThumbnailPath = "";
+    private File photoFile;
     
     private ActivityResultLauncher<Intent> galleryLauncher;
     private ActivityResultLauncher<Uri> cameraLauncher;
@@ -65,7 +70,7 @@ public class EditProductActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_edit_product);
 
-        dbHelper = new DBHelper(this);
+        repository = JucygoRepository.getInstance(this);
         productId = getIntent().getIntExtra("product_id", -1);
 
         if (productId == -1) {
@@ -87,11 +92,8 @@ public class EditProductActivity extends AppCompatActivity {
                 if (result.getResultCode() == RESULT_OK && result.getData() != null) {
                     Uri selectedImageUri = result.getData().getData();
                     if (selectedImageUri != null) {
-                        currentImagePath = copyImageToAppStorage(selectedImageUri);
-                        if (!currentImagePath.isEmpty()) {
-                            imageViewProduct.setImageURI(Uri.parse(currentImagePath));
-                            imageViewProduct.setPadding(0, 0, 0, 0);
-                        }
+                        buttonUpdateProduct.setEnabled(false);
+                        repository.saveProductImage(selectedImageUri, this::onImageStored);
                     }
                 }
             }
@@ -100,10 +102,9 @@ public class EditProductActivity extends AppCompatActivity {
         cameraLauncher = registerForActivityResult(
             new ActivityResultContracts.TakePicture(),
             success -> {
-                if (success && photoUri != null) {
-                    currentImagePath = photoUri.toString();
-                    imageViewProduct.setImageURI(photoUri);
-                    imageViewProduct.setPadding(0, 0, 0, 0);
+                if (success && photoFile != null) {
+                    buttonUpdateProduct.setEnabled(false);
+                    repository.saveCapturedImage(photoFile, this::onImageStored);
                 }
             }
         );
@@ -165,8 +166,8 @@ public class EditProductActivity extends AppCompatActivity {
     
     private void openCamera() {
         try {
-            File photoFile = createImageFile();
-            photoUri = FileProvider.getUriForFile(this, 
+            photoFile = createImageFile();
+            Uri photoUri = FileProvider.getUriForFile(this, 
                     getPackageName() + ".fileprovider", photoFile);
             cameraLauncher.launch(photoUri);
         } catch (IOException e) {
@@ -183,38 +184,68 @@ public class EditProductActivity extends AppCompatActivity {
         String timeStamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
         String imageFileName = "PRODUCT_" + timeStamp + "_";
         File storageDir = getExternalFilesDir(Environment.DIRECTORY_PICTURES);
-        File image = File.createTempFile(imageFileName, ".jpg", storageDir);
-        currentImagePath = image.getAbsolutePath();
-        return image;
+        return File.createTempFile(imageFileName, ".jpg", storageDir);
     }
     
-    private String copyImageToAppStorage(Uri sourceUri) {
-        try {
-            File destFile = createImageFile();
-            InputStream inputStream = getContentResolver().openInputStream(sourceUri);
-            OutputStream outputStream = new FileOutputStream(destFile);
-            
-            byte[] buffer = new byte[1024];
-            int length;
-            while ((length = inputStream.read(buffer)) > 0) {
-                outputStream.write(buffer, 0, length);
-            }
-            
-            inputStream.close();
-            outputStream.close();
-            
-            return destFile.getAbsolutePath();
-        } catch (IOException e) {
+    /**
+     * Keep the renditions of the picked or captured photo, written on the image thread.
+     * The product cannot be saved while they are being written.
+     */
+    private void onImageStored(ProductImages.Renditions renditions) {
+        if (isFinishing() || isDestroyed()) {
+            return;
+        }
+        buttonUpdateProduct.setEnabled(true);
+        if (renditions == null) {
             Toast.makeText(this, R.string.error_saving_image, Toast.LENGTH_SHORT).show();
-            return "";
+            return;
+        }
+        currentImagePath = renditions.getImagePath();
+        currentThumbnailPath = renditions.getThumbnailPath();
+        showImage(currentImagePath);
+    }
+
+    /**
+     * Show an image decoded at the size of the image view.
+     */
+    private void showImage(String path) {
+        int size = Math.round(PREVIEW_SIZE_DP * getResources().getDisplayMetrics().density);
+        ImageLoader loader = ImageLoader.getInstance();
+        Bitmap cached = loader.getCached(path, size);
+        if (cached != null) {
+            setImage(cached);
+        } else {
+            loader.load(path, size, bitmap -> {
+                if (bitmap != null && !isDestroyed()) {
+                    setImage(bitmap);
+                }
+            });
         }
     }
 
+    private void setImage(Bitmap bitmap) {
+        imageViewProduct.setImageBitmap(bitmap);
+        imageViewProduct.setPadding(0, 0, 0, 0);
+    }
+
     /**
      * Loads the product data from database and populates the form fields.
      */
     private void loadProduct() {
-        currentProduct = dbHelper.getProductById(productId);
+        // Nothing can be saved or deleted until the product is on screen
+        buttonUpdateProduct.setEnabled(false);
+        buttonDeleteProduct.setEnabled(false);
+        repository.getProductById(productId, this::onProductLoaded);
+    }
+
+    /**
+     * Populate the form with the product loaded from the database.
+     */
+    private void onProductLoaded(Product product) {
+        if (isFinishing() || isDestroyed()) {
+            return;
+        }
+        currentProduct = product;
 
         if (currentProduct == null) {
             Toast.makeText(this, "Product not found", Toast.LENGTH_SHORT).show();
@@ -223,19 +254,18 @@ public class EditProductActivity extends AppCompatActivity {
         }
 
         editTextProductName.setText(currentProduct.getName());
-        editTextProductPrice.setText(String.valueOf(currentProduct.getPrice()));
+        editTextProductPrice.setText(currentProduct.getPrice().toString());
         editTextProductQuantity.setText(String.valueOf(currentProduct.getQuantity()));
         editTextProductDescription.setText(currentProduct.getDescription());
         
         // Load existing image
         currentImagePath = currentProduct.getImagePath();
+        currentThumbnailPath = currentProduct.getThumbnailPath();
         if (currentProduct.hasImage()) {
-            File imageFile = new File(currentImagePath);
-            if (imageFile.exists()) {
-                imageViewProduct.setImageURI(Uri.fromFile(imageFile));
-                imageViewProduct.setPadding(0, 0, 0, 0);
-            }
+            showImage(currentImagePath);
         }
+        buttonUpdateProduct.setEnabled(true);
+        buttonDeleteProduct.setEnabled(true);
     }
 
     /**
@@ -260,10 +290,10 @@ public class EditProductActivity extends AppCompatActivity {
             return;
         }
 
-        double price;
+        Money price;
         try {
-            price = Double.parseDouble(priceStr);
-            if (price < 0) {
+            price = Money.parse(priceStr);
+            if (price.isNegative()) {
                 editTextProductPrice.setError("Price must be positive");
                 editTextProductPrice.requestFocus();
                 return;
@@ -294,9 +324,22 @@ public class EditProductActivity extends AppCompatActivity {
             return;
         }
 
-        // Update product in database
-        Product updatedProduct = new Product(productId, name, price, quantity, description, currentImagePath);
-        int result = dbHelper.updateProduct(updatedProduct);
+        // Update product in database; only the change typed in is applied, so sales
+        // recorded since the screen opened still count against the stock
+        Product updatedProduct = new Product(productId, name, price, quantity, description, currentImagePath,
+                currentThumbnailPath);
+        buttonUpdateProduct.setEnabled(false);
+        repository.updateProduct(updatedProduct, quantity - currentProduct.getQuantity(), this::onProductUpdated);
+    }
+
+    /**
+     * Report the outcome of a product update performed on the writer thread.
+     */
+    private void onProductUpdated(int result) {
+        if (isFinishing() || isDestroyed()) {
+            return;
+        }
+        buttonUpdateProduct.setEnabled(true);
 
         if (result > 0) {
             Toast.makeText(this, "Product updated successfully", Toast.LENGTH_SHORT).show();
@@ -332,15 +375,20 @@ public class EditProductActivity extends AppCompatActivity {
      * Deletes the product from the database.
      */
     private void deleteProduct() {
-        // Delete associated image file
-        if (currentProduct.hasImage()) {
-            File imageFile = new File(currentProduct.getImagePath());
-            if (imageFile.exists()) {
-                imageFile.delete();
-            }
+        // Its image files may be shared with other products; the repository
+        // deletes them once no product refers to them
+        buttonDeleteProduct.setEnabled(false);
+        repository.deleteProduct(productId, this::onProductDeleted);
+    }
+
+    /**
+     * Report the outcome of a product delete performed on the writer thread.
+     */
+    private void onProductDeleted(int result) {
+        if (isFinishing() || isDestroyed()) {
+            return;
         }
-        
-        int result = dbHelper.deleteProduct(productId);
+        buttonDeleteProduct.setEnabled(true);
 
         if (result > 0) {
             Toast.makeText(this, "Product deleted successfully", Toast.LENGTH_SHORT).show();
@@ -0,0 +1,125 @@
+package com.example.jucygo.controller;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.example.jucygo.model.HistoryCursor;
+import com.example.jucygo.model.JucygoRepository;
+
+/**
+ * Loads a history list page by page while the user scrolls.
+ * Each page is read through JucygoRepository starting after the last row
+ * already shown, so only the rows the user actually scrolls to are loaded.
+ * Pages are delivered as cursors, which the listener takes ownership of.
+ *
+ * @param <C> The type of cursor holding each page
+ */
+public class HistoryPager<C extends HistoryCursor> {
+
+    // Rows fetched per query
+    static final int PAGE_SIZE = 50;
+    // Start loading the next page when this many rows remain below the last visible one
+    private static final int PREFETCH_DISTANCE = 15;
+
+    /**
+     * Reads one page from the database and delivers it on the main thread.
+     */
+    public interface PageSource<C> {
+        void loadPage(HistoryCursor.Key after, int pageSize, JucygoRepository.Callback<C> callback);
+    }
+
+    /**
+     * Receives loaded pages on the main thread.
+     */
+    public interface PageListener<C> {
+        void onPageLoaded(C page, boolean firstPage);
+    }
+
+    private final RecyclerView recyclerView;
+    private final PageSource<C> source;
+    private final PageListener<C> listener;
+
+    private HistoryCursor.Key lastKey;
+    private boolean loading;
+    private boolean endReached;
+    private boolean enabled;
+    // Incremented on every refresh so pages requested before it are dropped
+    private int generation;
+
+    public HistoryPager(RecyclerView recyclerView, PageSource<C> source, PageListener<C> listener) {
+        this.recyclerView = recyclerView;
+        this.source = source;
+        this.listener = listener;
+
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView view, int dx, int dy) {
+                if (dy > 0) {
+                    loadMoreIfNeeded();
+                }
+            }
+        });
+    }
+
+    /**
+     * Drop everything loaded so far and load the first page again.
+     */
+    public void refresh() {
+        generation++;
+        enabled = true;
+        lastKey = null;
+        endReached = false;
+        loading = false;
+        loadNextPage();
+    }
+
+    /**
+     * Stop paging, e.g. while search results are displayed instead of the history.
+     */
+    public void stop() {
+        generation++;
+        enabled = false;
+        loading = false;
+    }
+
+    private void loadMoreIfNeeded() {
+        RecyclerView.LayoutManager layoutManager = recyclerView.getLayoutManager();
+        if (!(layoutManager instanceof LinearLayoutManager)) {
+            return;
+        }
+        int lastVisible = ((LinearLayoutManager) layoutManager).findLastVisibleItemPosition();
+        if (lastVisible >= layoutManager.getItemCount() - PREFETCH_DISTANCE) {
+            loadNextPage();
+        }
+    }
+
+    private void loadNextPage() {
+        if (!enabled || loading || endReached) {
+            return;
+        }
+        loading = true;
+
+        final int requestGeneration = generation;
+        final HistoryCursor.Key after = lastKey;
+        source.loadPage(after, PAGE_SIZE, page -> {
+            if (page == null) {
+                // The read failed; the next scroll asks for the page again
+                if (requestGeneration == generation) {
+                    loading = false;
+                }
+                return;
+            }
+            if (requestGeneration != generation) {
+                page.close();
+                return;
+            }
+            loading = false;
+            endReached = page.getCount() < PAGE_SIZE;
+            if (page.getCount() > 0) {
+                lastKey = page.getLastKey();
+            }
+            listener.onPageLoaded(page, after == null);
+        });
+    }
+}
@@ -0,0 +1,183 @@
+package com.example.jucygo.controller;
+
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.example.jucygo.model.HistoryCursor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * The pages of history shown by an adapter, as rows formatted for display.
+ * Each page cursor is read once on the list thread, every row formatted there and the
+ * cursor closed, so binding a row only sets text formatted beforehand. Owns the cursors
+ * handed to it and closes them.
+ * <p>
+ * A refreshed first page is compared with the rows on screen on the list thread too,
+ * and the adapter told only what changed, rather than rebinding every visible row.
+ * Pages are applied in the order they were handed over. Must be used on the main thread.
+ *
+ * @param <C> The type of cursor holding each page
+ * @param <R> The type of the formatted rows
+ */
+class HistoryPages<C extends HistoryCursor, R extends HistoryPages.Row<R>> {
+
+    /**
+     * A history row formatted for display.
+     */
+    interface Row<R> {
+        /**
+         * @return The id of the sale or order, the stable adapter id of its row
+         */
+        int getId();
+
+        /**
+         * @return Whether both rows show the same, apart from their state
+         */
+        boolean sameDetails(R other);
+    }
+
+    /**
+     * Payload of a row whose state alone changed, so only its state has to be bound again.
+     */
+    static final Object PAYLOAD_STATE = new Object();
+
+    private final RecyclerView.Adapter<?> adapter;
+    private final Function<C, R> format;
+    // The rows the adapter shows; main thread only
+    private List<R> rows = Collections.emptyList();
+    // The rows the adapter will show once every change posted is applied; list thread only
+    private List<R> latestRows = Collections.emptyList();
+    private boolean closed;
+
+    /**
+     * @param adapter The adapter to tell about changes
+     * @param format Formats the row a cursor is positioned on; called on the list thread
+     */
+    HistoryPages(RecyclerView.Adapter<?> adapter, Function<C, R> format) {
+        this.adapter = adapter;
+        this.format = format;
+    }
+
+    /**
+     * @return The number of rows across all pages
+     */
+    int getCount() {
+        return rows.size();
+    }
+
+    /**
+     * @param position The adapter position
+     * @return The row at that position
+     */
+    R get(int position) {
+        return rows.get(position);
+    }
+
+    /**
+     * Drop all pages and start over with a single one, telling the adapter which rows
+     * were inserted, removed or changed.
+     * @param first The new first page
+     */
+    void replace(C first) {
+        ListThread.execute(() -> {
+            List<R> oldRows = latestRows;
+            List<R> newRows = read(first);
+            latestRows = newRows;
+            DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new RowsDiff<>(oldRows, newRows));
+            ListThread.post(() -> {
+                if (!closed) {
+                    rows = newRows;
+                    diff.dispatchUpdatesTo(adapter);
+                }
+            });
+        });
+    }
+
+    /**
+     * Add a page after the last one, telling the adapter its rows were inserted.
+     * @param page The page to add
+     */
+    void append(C page) {
+        ListThread.execute(() -> {
+            List<R> pageRows = read(page);
+            int start = latestRows.size();
+            List<R> newRows = new ArrayList<>(start + pageRows.size());
+            newRows.addAll(latestRows);
+            newRows.addAll(pageRows);
+            latestRows = newRows;
+            ListThread.post(() -> {
+                if (!closed) {
+                    rows = newRows;
+                    adapter.notifyItemRangeInserted(start, pageRows.size());
+                }
+            });
+        });
+    }
+
+    /**
+     * Stop showing pages, without telling the adapter. Pages still being read are closed
+     * once read.
+     */
+    void close() {
+        closed = true;
+        rows = Collections.emptyList();
+    }
+
+    /**
+     * Format every row of a page and close it. Runs on the list thread.
+     */
+    private List<R> read(C page) {
+        try {
+            List<R> pageRows = new ArrayList<>(page.getCount());
+            // The pager leaves the cursor on its last row
+            for (int i = 0; page.moveToPosition(i); i++) {
+                pageRows.add(format.apply(page));
+            }
+            return pageRows;
+        } finally {
+            page.close();
+        }
+    }
+
+    /**
+     * Compares two lists of rows by id, then by what they show.
+     */
+    private static final class RowsDiff<R extends Row<R>> extends DiffUtil.Callback {
+        private final List<R> oldRows;
+        private final List<R> newRows;
+
+        RowsDiff(List<R> oldRows, List<R> newRows) {
+            this.oldRows = oldRows;
+            this.newRows = newRows;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return oldRows.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return newRows.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldPosition, int newPosition) {
+            return oldRows.get(oldPosition).getId() == newRows.get(newPosition).getId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldPosition, int newPosition) {
+            return oldRows.get(oldPosition).equals(newRows.get(newPosition));
+        }
+
+        @Override
+        public Object getChangePayload(int oldPosition, int newPosition) {
+            return oldRows.get(oldPosition).sameDetails(newRows.get(newPosition)) ? PAYLOAD_STATE : null;
+        }
+    }
+}
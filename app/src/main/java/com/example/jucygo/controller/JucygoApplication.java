@@ -0,0 +1,58 @@
+package com.example.jucygo.controller;
+
+import android.app.Application;
+import android.os.StrictMode;
+
+import com.example.jucygo.BuildConfig;
+import com.example.jucygo.model.DBHelper;
+import com.example.jucygo.model.ImageLoader;
+import com.example.jucygo.model.JucygoRepository;
+
+/**
+ * Application entry point.
+ * Debug builds turn on StrictMode and the DBHelper main-thread checks so any
+ * disk or database access left on the UI thread shows up during development.
+ * Every launch moves history that has aged out of the live database into the archives,
+ * gives thumbnails to product photos stored before photos were downsampled, and
+ * deletes the image files no product refers to any more.
+ * Decoded images are given back when the system asks the app to trim its memory.
+ */
+public class JucygoApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        if (BuildConfig.DEBUG) {
+            enableStrictMode();
+        }
+        JucygoRepository repository = JucygoRepository.getInstance(this);
+        repository.archiveHistory(DBHelper.DEFAULT_KEEP_MONTHS, null);
+        // The originals of converted photos are orphans once it is done
+        repository.createMissingThumbnails(converted -> repository.sweepImages(null));
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        ImageLoader.getInstance().trimMemory(level);
+    }
+
+    /**
+     * Log disk and network access on the main thread and leaked database cursors,
+     * and make DBHelper throw when it is used from the main thread.
+     */
+    private void enableStrictMode() {
+        StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder()
+                .detectDiskReads()
+                .detectDiskWrites()
+                .detectNetwork()
+                .penaltyLog()
+                .build());
+        StrictMode.setVmPolicy(new StrictMode.VmPolicy.Builder()
+                .detectLeakedSqlLiteObjects()
+                .detectLeakedClosableObjects()
+                .penaltyLog()
+                .build());
+        DBHelper.setMainThreadChecksEnabled(true);
+    }
+}
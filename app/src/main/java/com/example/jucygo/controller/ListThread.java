@@ -0,0 +1,51 @@
+package com.example.jucygo.controller;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The background thread list rows are formatted and compared on before the adapters show them.
+ * A single thread, so the work for one list runs in the order it was handed over, and its
+ * results, posted back with post, reach the main thread in that order too.
+ */
+final class ListThread {
+
+    private static ExecutorService executor;
+    private static Handler mainHandler;
+
+    private ListThread() {
+    }
+
+    /**
+     * Run work on the list thread.
+     * @param work The work, which may call post to hand its result to the main thread
+     */
+    static synchronized void execute(Runnable work) {
+        if (executor == null) {
+            executor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(() -> {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }, "jucygo-list");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        executor.execute(work);
+    }
+
+    /**
+     * Run a result on the main thread.
+     * @param result Applies the result to an adapter
+     */
+    static synchronized void post(Runnable result) {
+        if (mainHandler == null) {
+            mainHandler = new Handler(Looper.getMainLooper());
+        }
+        mainHandler.post(result);
+    }
+}
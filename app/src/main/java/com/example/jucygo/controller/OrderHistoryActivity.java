@@ -10,10 +10,8 @@ import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.jucygo.R;
-import com.example.jucygo.model.DBHelper;
-import com.example.jucygo.model.Order;
-
-import java.util.List;
+import com.example.jucygo.model.JucygoRepository;
+import com.example.jucygo.model.OrderCursor;
 
 /**
  * Activity to display the history of all orders.
@@ -25,14 +23,17 @@ public class OrderHistoryActivity extends AppCompatActivity {
     private TextView textViewEmpty;
     private SearchView searchViewOrders;
     private OrderHistoryAdapter orderAdapter;
-    private DBHelper dbHelper;
+    private JucygoRepository repository;
+    private HistoryPager<OrderCursor> ordersPager;
+    // Query whose results should be shown; null while the paged history is shown
+    private String currentQuery;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_order_history);
 
-        dbHelper = new DBHelper(this);
+        repository = JucygoRepository.getInstance(this);
 
         initializeViews();
         setupRecyclerView();
@@ -46,6 +47,13 @@ public class OrderHistoryActivity extends AppCompatActivity {
         loadOrders();
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        ordersPager.stop();
+        orderAdapter.close();
+    }
+
     /**
      * Initialize all view components.
      */
@@ -60,8 +68,9 @@ public class OrderHistoryActivity extends AppCompatActivity {
      */
     private void setupRecyclerView() {
         recyclerViewOrders.setLayoutManager(new LinearLayoutManager(this));
-        orderAdapter = new OrderHistoryAdapter(null, dbHelper, this::loadOrders);
+        orderAdapter = new OrderHistoryAdapter(this, repository, this::loadOrders);
         recyclerViewOrders.setAdapter(orderAdapter);
+        ordersPager = new HistoryPager<>(recyclerViewOrders, repository::queryOrdersPage, this::onOrdersPageLoaded);
     }
 
     /**
@@ -88,46 +97,60 @@ public class OrderHistoryActivity extends AppCompatActivity {
     }
 
     /**
-     * Load all orders from database.
+     * Load the order history from its first page; later pages load while scrolling.
      */
     private void loadOrders() {
-        List<Order> orders = dbHelper.getAllOrders();
-        updateUI(orders);
+        currentQuery = null;
+        ordersPager.refresh();
+    }
+
+    /**
+     * Show a page of the order history delivered by the pager.
+     */
+    private void onOrdersPageLoaded(OrderCursor page, boolean firstPage) {
+        if (isDestroyed()) {
+            page.close();
+            return;
+        }
+        if (firstPage) {
+            updateUI(page);
+        } else {
+            orderAdapter.appendOrders(page);
+        }
     }
 
     /**
      * Search orders based on query (customer name, product name, or date).
      */
     private void searchOrders(String query) {
-        List<Order> orders;
-        
-        // Check if query looks like a date (starts with digits)
-        if (query.matches("^\\d{4}-.*")) {
-            orders = dbHelper.searchOrdersByDate(query);
-        } else {
-            // Search by customer name first
-            orders = dbHelper.searchOrdersByCustomerName(query);
-            
-            // If no results, try searching by product name
-            if (orders.isEmpty()) {
-                orders = dbHelper.searchOrdersByProductName(query);
+        // Search results replace the paged history until the query is cleared
+        ordersPager.stop();
+        currentQuery = query;
+        // Customer names, product names and dates are all matched in a single query
+        repository.querySearchOrders(query, orders -> {
+            if (orders == null) {
+                return;
             }
-        }
-        
-        updateUI(orders);
+            // Drop results of a query the user has typed past
+            if (query.equals(currentQuery) && !isDestroyed()) {
+                updateUI(orders);
+            } else {
+                orders.close();
+            }
+        });
     }
 
     /**
      * Update the UI based on the order list.
      */
-    private void updateUI(List<Order> orders) {
-        if (orders.isEmpty()) {
+    private void updateUI(OrderCursor orders) {
+        if (orders.getCount() == 0) {
             recyclerViewOrders.setVisibility(View.GONE);
             textViewEmpty.setVisibility(View.VISIBLE);
         } else {
             recyclerViewOrders.setVisibility(View.VISIBLE);
             textViewEmpty.setVisibility(View.GONE);
-            orderAdapter.updateOrderList(orders);
         }
+        orderAdapter.swapOrders(orders);
     }
 }
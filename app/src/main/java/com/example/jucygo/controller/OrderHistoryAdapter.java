@@ -1,6 +1,7 @@
 package com.example.jucygo.controller;
 
 import android.app.AlertDialog;
+import android.content.Context;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -11,38 +12,33 @@ import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.jucygo.R;
-import com.example.jucygo.model.DBHelper;
+import com.example.jucygo.model.JucygoRepository;
 import com.example.jucygo.model.Order;
+import com.example.jucygo.model.OrderCursor;
 import com.google.android.material.button.MaterialButton;
 import com.google.android.material.card.MaterialCardView;
 
-import java.text.DecimalFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
 import java.util.List;
-import java.util.Locale;
 
 /**
  * Adapter for displaying orders in RecyclerView.
  * Shows order details with customer name, product, quantity, total, status, and date.
+ * Rows are formatted in the background as their page loads, so binding only sets their
+ * text and colours. A refreshed list only binds the rows that changed again, and an order
+ * whose status alone changed only binds its status and buttons.
  */
 public class OrderHistoryAdapter extends RecyclerView.Adapter<OrderHistoryAdapter.OrderViewHolder> {
 
-    private List<Order> orderList;
-    private DBHelper dbHelper;
+    private final HistoryPages<OrderCursor, OrderRow> pages;
+    private JucygoRepository repository;
     private Runnable onOrderUpdated;
-    private DecimalFormat priceFormat;
-    private SimpleDateFormat inputFormat;
-    private SimpleDateFormat outputFormat;
 
-    public OrderHistoryAdapter(List<Order> orderList, DBHelper dbHelper, Runnable onOrderUpdated) {
-        this.orderList = orderList;
-        this.dbHelper = dbHelper;
+    public OrderHistoryAdapter(Context context, JucygoRepository repository, Runnable onOrderUpdated) {
+        this.repository = repository;
         this.onOrderUpdated = onOrderUpdated;
-        this.priceFormat = new DecimalFormat("DT #,##0.00");
-        this.inputFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault());
-        this.outputFormat = new SimpleDateFormat("MMM dd, yyyy 'at' HH:mm", Locale.getDefault());
+        RowFormatter formatter = new RowFormatter(context);
+        this.pages = new HistoryPages<>(this, formatter::formatOrder);
+        setHasStableIds(true);
     }
 
     @NonNull
@@ -50,73 +46,66 @@ public class OrderHistoryAdapter extends RecyclerView.Adapter<OrderHistoryAdapte
     public OrderViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
         View view = LayoutInflater.from(parent.getContext())
                 .inflate(R.layout.item_order, parent, false);
-        return new OrderViewHolder(view);
+        OrderViewHolder holder = new OrderViewHolder(view);
+        // Set once per row rather than on every bind; only pending orders show the buttons
+        holder.buttonComplete.setOnClickListener(v -> {
+            Order order = pendingOrderAt(holder);
+            if (order != null) {
+                showCompleteConfirmation(holder, order);
+            }
+        });
+        holder.buttonCancel.setOnClickListener(v -> {
+            Order order = pendingOrderAt(holder);
+            if (order != null) {
+                showCancelConfirmation(holder, order);
+            }
+        });
+        return holder;
     }
 
     @Override
     public void onBindViewHolder(@NonNull OrderViewHolder holder, int position) {
-        Order order = orderList.get(position);
-        
+        OrderRow order = pages.get(position);
+
         holder.textViewCustomerName.setText(order.getCustomerName());
         holder.textViewProductName.setText(order.getProductName());
-        holder.textViewQuantityOrdered.setText(String.valueOf(order.getQuantityOrdered()));
-        holder.textViewTotalAmount.setText(priceFormat.format(order.getTotalAmount()));
-        holder.textViewUnitPrice.setText(priceFormat.format(order.getUnitPrice()));
-        
-        // Format and display date
-        try {
-            Date date = inputFormat.parse(order.getDate());
-            holder.textViewDate.setText(outputFormat.format(date));
-        } catch (ParseException e) {
-            holder.textViewDate.setText(order.getDate());
-        }
-        
-        // Display status with appropriate styling
-        String status = order.getStatus();
-        holder.textViewStatus.setText(getStatusDisplayText(status));
-        
-        // Set status background color
-        int statusColor;
-        switch (status) {
-            case Order.STATUS_COMPLETED:
-                statusColor = holder.itemView.getContext().getColor(R.color.green_juice);
-                break;
-            case Order.STATUS_CANCELLED:
-                statusColor = holder.itemView.getContext().getColor(R.color.red_error);
-                break;
-            default: // pending
-                statusColor = holder.itemView.getContext().getColor(R.color.orange_juice);
-                break;
-        }
-        holder.cardStatus.setCardBackgroundColor(statusColor);
-        
-        // Show/hide action buttons based on status
-        if (order.isPending()) {
-            holder.buttonComplete.setVisibility(View.VISIBLE);
-            holder.buttonCancel.setVisibility(View.VISIBLE);
-            
-            holder.buttonComplete.setOnClickListener(v -> {
-                showCompleteConfirmation(holder, order);
-            });
-            
-            holder.buttonCancel.setOnClickListener(v -> {
-                showCancelConfirmation(holder, order);
-            });
+        holder.textViewQuantityOrdered.setText(order.getQuantityOrdered());
+        holder.textViewTotalAmount.setText(order.getTotalAmount());
+        holder.textViewUnitPrice.setText(order.getUnitPrice());
+        holder.textViewDate.setText(order.getDate());
+
+        bindStatus(holder, order);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull OrderViewHolder holder, int position, @NonNull List<Object> payloads) {
+        // Payloads are dropped as soon as one change needs a full bind
+        if (payloads.contains(HistoryPages.PAYLOAD_STATE)) {
+            bindStatus(holder, pages.get(position));
         } else {
-            holder.buttonComplete.setVisibility(View.GONE);
-            holder.buttonCancel.setVisibility(View.GONE);
+            onBindViewHolder(holder, position);
         }
     }
 
-    private String getStatusDisplayText(String status) {
-        switch (status) {
-            case Order.STATUS_COMPLETED:
-                return "✓ Completed";
-            case Order.STATUS_CANCELLED:
-                return "✗ Cancelled";
-            default:
-                return "⏳ Pending";
-        }
+    /**
+     * Bind the status of an order and the actions it allows.
+     */
+    private void bindStatus(OrderViewHolder holder, OrderRow order) {
+        holder.textViewStatus.setText(order.getStatusText());
+        holder.cardStatus.setCardBackgroundColor(order.getStatusColor());
+
+        // Show/hide action buttons based on status
+        int actionsVisibility = order.getPendingOrder() != null ? View.VISIBLE : View.GONE;
+        holder.buttonComplete.setVisibility(actionsVisibility);
+        holder.buttonCancel.setVisibility(actionsVisibility);
+    }
+
+    /**
+     * @return The pending order a row shows, or null if the row is being removed or the order is settled
+     */
+    private Order pendingOrderAt(OrderViewHolder holder) {
+        int position = holder.getBindingAdapterPosition();
+        return position != RecyclerView.NO_POSITION ? pages.get(position).getPendingOrder() : null;
     }
 
     private void showCompleteConfirmation(OrderViewHolder holder, Order order) {
@@ -124,14 +113,15 @@ public class OrderHistoryAdapter extends RecyclerView.Adapter<OrderHistoryAdapte
                 .setTitle(R.string.complete_order_title)
                 .setMessage(R.string.complete_order_message)
                 .setPositiveButton(R.string.yes, (dialog, which) -> {
-                    int result = dbHelper.updateOrderStatus(order.getId(), Order.STATUS_COMPLETED);
-                    if (result > 0) {
-                        Toast.makeText(holder.itemView.getContext(), 
-                                R.string.order_completed_success, Toast.LENGTH_SHORT).show();
-                        if (onOrderUpdated != null) {
-                            onOrderUpdated.run();
+                    repository.updateOrderStatus(order.getId(), Order.STATUS_COMPLETED, result -> {
+                        if (result > 0) {
+                            Toast.makeText(holder.itemView.getContext(),
+                                    R.string.order_completed_success, Toast.LENGTH_SHORT).show();
+                            if (onOrderUpdated != null) {
+                                onOrderUpdated.run();
+                            }
                         }
-                    }
+                    });
                 })
                 .setNegativeButton(R.string.no, null)
                 .show();
@@ -142,43 +132,50 @@ public class OrderHistoryAdapter extends RecyclerView.Adapter<OrderHistoryAdapte
                 .setTitle(R.string.cancel_order_title)
                 .setMessage(R.string.cancel_order_message)
                 .setPositiveButton(R.string.yes, (dialog, which) -> {
-                    // Cancel order and restore stock
-                    int result = dbHelper.updateOrderStatus(order.getId(), Order.STATUS_CANCELLED);
-                    if (result > 0) {
-                        // Restore the stock that was deducted when order was placed
-                        restoreStock(holder, order);
-                        Toast.makeText(holder.itemView.getContext(), 
-                                R.string.order_cancelled_success, Toast.LENGTH_SHORT).show();
-                        if (onOrderUpdated != null) {
-                            onOrderUpdated.run();
+                    // Cancel order and restore its stock in one transaction on the writer thread
+                    repository.cancelOrder(order, result -> {
+                        if (result > 0) {
+                            Toast.makeText(holder.itemView.getContext(),
+                                    R.string.order_cancelled_success, Toast.LENGTH_SHORT).show();
+                            if (onOrderUpdated != null) {
+                                onOrderUpdated.run();
+                            }
                         }
-                    }
+                    });
                 })
                 .setNegativeButton(R.string.no, null)
                 .show();
     }
 
-    private void restoreStock(OrderViewHolder holder, Order order) {
-        // Get the product and restore stock
-        var product = dbHelper.getProductByName(order.getProductName());
-        if (product != null) {
-            int newQuantity = product.getQuantity() + order.getQuantityOrdered();
-            product.setQuantity(newQuantity);
-            dbHelper.updateProduct(product);
-        }
+    @Override
+    public int getItemCount() {
+        return pages.getCount();
     }
 
     @Override
-    public int getItemCount() {
-        return orderList != null ? orderList.size() : 0;
+    public long getItemId(int position) {
+        return pages.get(position).getId();
+    }
+
+    /**
+     * Replace the list with a new first page of orders; the adapter takes ownership of the cursor.
+     */
+    public void swapOrders(OrderCursor orders) {
+        pages.replace(orders);
+    }
+
+    /**
+     * Add the next page of orders at the end of the list; the adapter takes ownership of the cursor.
+     */
+    public void appendOrders(OrderCursor page) {
+        pages.append(page);
     }
 
     /**
-     * Update the order list and refresh the RecyclerView.
+     * Stop showing orders; call when the screen is destroyed.
      */
-    public void updateOrderList(List<Order> newOrderList) {
-        this.orderList = newOrderList;
-        notifyDataSetChanged();
+    public void close() {
+        pages.close();
     }
 
     static class OrderViewHolder extends RecyclerView.ViewHolder {
@@ -0,0 +1,107 @@
+package com.example.jucygo.controller;
+
+import com.example.jucygo.model.Order;
+
+import java.util.Objects;
+
+/**
+ * An order as shown in the order history, formatted by RowFormatter.
+ */
+final class OrderRow implements HistoryPages.Row<OrderRow> {
+    private final int id;
+    private final CharSequence customerName;
+    private final CharSequence productName;
+    private final CharSequence quantityOrdered;
+    private final CharSequence totalAmount;
+    private final CharSequence unitPrice;
+    private final CharSequence date;
+    private final CharSequence statusText;
+    private final int statusColor;
+    private final Order pendingOrder;
+
+    OrderRow(int id, CharSequence customerName, CharSequence productName, CharSequence quantityOrdered,
+             CharSequence totalAmount, CharSequence unitPrice, CharSequence date,
+             CharSequence statusText, int statusColor, Order pendingOrder) {
+        this.id = id;
+        this.customerName = customerName;
+        this.productName = productName;
+        this.quantityOrdered = quantityOrdered;
+        this.totalAmount = totalAmount;
+        this.unitPrice = unitPrice;
+        this.date = date;
+        this.statusText = statusText;
+        this.statusColor = statusColor;
+        this.pendingOrder = pendingOrder;
+    }
+
+    @Override
+    public int getId() {
+        return id;
+    }
+
+    CharSequence getCustomerName() {
+        return customerName;
+    }
+
+    CharSequence getProductName() {
+        return productName;
+    }
+
+    CharSequence getQuantityOrdered() {
+        return quantityOrdered;
+    }
+
+    CharSequence getTotalAmount() {
+        return totalAmount;
+    }
+
+    CharSequence getUnitPrice() {
+        return unitPrice;
+    }
+
+    CharSequence getDate() {
+        return date;
+    }
+
+    CharSequence getStatusText() {
+        return statusText;
+    }
+
+    int getStatusColor() {
+        return statusColor;
+    }
+
+    /**
+     * @return The order to complete or cancel, or null if it is no longer pending
+     */
+    Order getPendingOrder() {
+        return pendingOrder;
+    }
+
+    @Override
+    public boolean sameDetails(OrderRow other) {
+        return id == other.id
+                && Objects.equals(customerName, other.customerName)
+                && Objects.equals(productName, other.productName)
+                && Objects.equals(quantityOrdered, other.quantityOrdered)
+                && Objects.equals(totalAmount, other.totalAmount)
+                && Objects.equals(unitPrice, other.unitPrice)
+                && Objects.equals(date, other.date);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof OrderRow)) {
+            return false;
+        }
+        OrderRow other = (OrderRow) o;
+        return sameDetails(other)
+                && Objects.equals(statusText, other.statusText)
+                && statusColor == other.statusColor;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, customerName, productName, quantityOrdered, totalAmount, unitPrice, date, statusText);
+    }
+}
@@ -1,6 +1,7 @@
 package com.example.jucygo.controller;
 
-import android.net.Uri;
+import android.content.Context;
+import android.graphics.Bitmap;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -8,30 +9,63 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.jucygo.R;
+import com.example.jucygo.model.ImageLoader;
 import com.example.jucygo.model.Product;
 
-import java.io.File;
-import java.text.DecimalFormat;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Adapter for RecyclerView to display products in a list.
+ * Thumbnails come from ImageLoader: from memory when a row is rebound, otherwise decoded
+ * in the background while the row shows its placeholder. A recycled row cancels its
+ * pending decode, so a fast fling only decodes the rows it stops on.
+ * A new list is formatted and compared with the one shown on a background thread, so
+ * binding only sets text formatted beforehand, and only the rows that changed are bound
+ * again; a row whose stock alone changed only sets its quantity.
  */
 public class ProductAdapter extends RecyclerView.Adapter<ProductAdapter.ProductViewHolder> {
+    // Side of the product image in item_product, in dp
+    private static final int IMAGE_SIZE_DP = 100;
+    // Payload of a row whose quantity alone changed
+    private static final Object PAYLOAD_QUANTITY = new Object();
+
+    private static final DiffUtil.ItemCallback<ProductRow> DIFF_CALLBACK = new DiffUtil.ItemCallback<ProductRow>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull ProductRow oldRow, @NonNull ProductRow newRow) {
+            return oldRow.getProduct().getId() == newRow.getProduct().getId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull ProductRow oldRow, @NonNull ProductRow newRow) {
+            return oldRow.equals(newRow);
+        }
 
-    private List<Product> productList;
+        @Override
+        public Object getChangePayload(@NonNull ProductRow oldRow, @NonNull ProductRow newRow) {
+            return oldRow.sameExceptQuantity(newRow) ? PAYLOAD_QUANTITY : null;
+        }
+    };
+
+    private final AsyncListDiffer<ProductRow> differ = new AsyncListDiffer<>(this, DIFF_CALLBACK);
+    private final RowFormatter formatter;
     private OnProductClickListener listener;
+    private final ImageLoader imageLoader = ImageLoader.getInstance();
+    private int imageSize;
 
     public interface OnProductClickListener {
         void onProductClick(Product product);
     }
 
-    public ProductAdapter(List<Product> productList, OnProductClickListener listener) {
-        this.productList = productList;
+    public ProductAdapter(Context context, OnProductClickListener listener) {
+        this.formatter = new RowFormatter(context);
         this.listener = listener;
+        setHasStableIds(true);
     }
 
     @NonNull
@@ -39,23 +73,53 @@ public class ProductAdapter extends RecyclerView.Adapter<ProductAdapter.ProductV
     public ProductViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
         View view = LayoutInflater.from(parent.getContext())
                 .inflate(R.layout.item_product, parent, false);
+        imageSize = Math.round(IMAGE_SIZE_DP * parent.getResources().getDisplayMetrics().density);
         return new ProductViewHolder(view);
     }
 
     @Override
     public void onBindViewHolder(@NonNull ProductViewHolder holder, int position) {
-        Product product = productList.get(position);
+        ProductRow product = differ.getCurrentList().get(position);
         holder.bind(product);
     }
 
+    @Override
+    public void onBindViewHolder(@NonNull ProductViewHolder holder, int position, @NonNull List<Object> payloads) {
+        // Payloads are dropped as soon as one change needs a full bind
+        if (payloads.contains(PAYLOAD_QUANTITY)) {
+            holder.bindQuantity(differ.getCurrentList().get(position));
+        } else {
+            onBindViewHolder(holder, position);
+        }
+    }
+
+    @Override
+    public void onViewRecycled(@NonNull ProductViewHolder holder) {
+        holder.cancelImage();
+    }
+
     @Override
     public int getItemCount() {
-        return productList != null ? productList.size() : 0;
+        return differ.getCurrentList().size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return differ.getCurrentList().get(position).getProduct().getId();
     }
 
+    /**
+     * Show a new list of products, once formatted on the list thread. Lists are shown
+     * in the order they were passed; the products must not be changed afterwards.
+     */
     public void updateProductList(List<Product> newProductList) {
-        this.productList = newProductList;
-        notifyDataSetChanged();
+        ListThread.execute(() -> {
+            List<ProductRow> rows = new ArrayList<>(newProductList.size());
+            for (Product product : newProductList) {
+                rows.add(formatter.formatProduct(product));
+            }
+            ListThread.post(() -> differ.submitList(rows));
+        });
     }
 
     class ProductViewHolder extends RecyclerView.ViewHolder {
@@ -64,6 +128,7 @@ public class ProductAdapter extends RecyclerView.Adapter<ProductAdapter.ProductV
         private TextView textViewProductPrice;
         private TextView textViewProductQuantity;
         private TextView textViewProductDescription;
+        private ImageLoader.Request imageRequest;
 
         ProductViewHolder(View itemView) {
             super(itemView);
@@ -76,58 +141,68 @@ public class ProductAdapter extends RecyclerView.Adapter<ProductAdapter.ProductV
             itemView.setOnClickListener(v -> {
                 int position = getBindingAdapterPosition();
                 if (position != RecyclerView.NO_POSITION && listener != null) {
-                    listener.onProductClick(productList.get(position));
+                    listener.onProductClick(differ.getCurrentList().get(position).getProduct());
                 }
             });
         }
 
-        void bind(Product product) {
-            textViewProductName.setText(product.getName());
-            
-            DecimalFormat priceFormat = new DecimalFormat("DT #,##0.00");
-            textViewProductPrice.setText(priceFormat.format(product.getPrice()));
-            
-            textViewProductQuantity.setText(String.valueOf(product.getQuantity()));
-            
-            String description = product.getDescription();
-            if (description == null || description.trim().isEmpty()) {
-                textViewProductDescription.setText("No description");
-            } else {
-                textViewProductDescription.setText(description);
-            }
-
-            // Set product image - use custom image if available, otherwise use placeholder
-            if (product.hasImage()) {
-                File imageFile = new File(product.getImagePath());
-                if (imageFile.exists()) {
-                    imageViewProduct.setImageURI(Uri.fromFile(imageFile));
-                    imageViewProduct.clearColorFilter();
-                    imageViewProduct.setScaleType(ImageView.ScaleType.CENTER_CROP);
-                    imageViewProduct.setPadding(0, 0, 0, 0);
+        void bind(ProductRow row) {
+            textViewProductName.setText(row.getName());
+            textViewProductPrice.setText(row.getPrice());
+            bindQuantity(row);
+            textViewProductDescription.setText(row.getDescription());
+
+            // Set product image - use its thumbnail if available, otherwise use placeholder.
+            // The full photo is never decoded here; a photo still waiting for its
+            // thumbnail shows the placeholder until ProductImages has made one.
+            cancelImage();
+            Product product = row.getProduct();
+            if (product.hasThumbnail()) {
+                Bitmap cached = imageLoader.getCached(product.getThumbnailPath(), imageSize);
+                if (cached != null) {
+                    setProductImage(cached);
                 } else {
-                    setProductPlaceholder(product.getName().toLowerCase());
+                    setProductPlaceholder(row.getPlaceholderTint());
+                    imageRequest = imageLoader.load(product.getThumbnailPath(), imageSize, bitmap -> {
+                        imageRequest = null;
+                        // A missing file keeps the placeholder
+                        if (bitmap != null) {
+                            setProductImage(bitmap);
+                        }
+                    });
                 }
             } else {
-                setProductPlaceholder(product.getName().toLowerCase());
+                setProductPlaceholder(row.getPlaceholderTint());
+            }
+        }
+
+        void bindQuantity(ProductRow row) {
+            textViewProductQuantity.setText(row.getQuantity());
+        }
+
+        /**
+         * Drop the thumbnail still being decoded for the product this row showed.
+         */
+        void cancelImage() {
+            if (imageRequest != null) {
+                imageRequest.cancel();
+                imageRequest = null;
             }
         }
 
-        private void setProductPlaceholder(String productName) {
-            // Set placeholder image
+        private void setProductImage(Bitmap bitmap) {
+            imageViewProduct.setImageBitmap(bitmap);
+            imageViewProduct.clearColorFilter();
+            imageViewProduct.setScaleType(ImageView.ScaleType.CENTER_CROP);
+            imageViewProduct.setPadding(0, 0, 0, 0);
+        }
+
+        private void setProductPlaceholder(int tint) {
+            // Set placeholder image, tinted after the product name for visual variety
             imageViewProduct.setImageResource(R.drawable.ic_product_placeholder);
             imageViewProduct.setScaleType(ImageView.ScaleType.CENTER);
             imageViewProduct.setPadding(12, 12, 12, 12);
-            
-            // Add color tint based on product name for visual variety
-            if (productName.contains("orange") || productName.contains("mango") || productName.contains("peach")) {
-                imageViewProduct.setColorFilter(itemView.getContext().getColor(R.color.orange_juice));
-            } else if (productName.contains("apple") || productName.contains("green")) {
-                imageViewProduct.setColorFilter(itemView.getContext().getColor(R.color.green_juice));
-            } else if (productName.contains("strawberry") || productName.contains("berry") || productName.contains("grape")) {
-                imageViewProduct.setColorFilter(itemView.getContext().getColor(R.color.purple_500));
-            } else {
-                imageViewProduct.setColorFilter(itemView.getContext().getColor(R.color.teal_500));
-            }
+            imageViewProduct.setColorFilter(tint);
         }
     }
 }
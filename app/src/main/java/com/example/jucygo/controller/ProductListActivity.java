@@ -2,6 +2,8 @@ package com.example.jucygo.controller;
 
 import android.content.Intent;
 import android.os.Bundle;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
 import android.widget.TextView;
 import android.widget.Toast;
@@ -11,7 +13,7 @@ import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.jucygo.R;
-import com.example.jucygo.model.DBHelper;
+import com.example.jucygo.model.JucygoRepository;
 import com.example.jucygo.model.Product;
 import com.google.android.material.button.MaterialButton;
 
@@ -30,15 +32,19 @@ public class ProductListActivity extends AppCompatActivity {
     private MaterialButton buttonSalesHistory;
     private MaterialButton buttonNewOrder;
     private MaterialButton buttonOrderHistory;
+    private MaterialButton buttonImportCsv;
+    private MaterialButton buttonExportCsv;
     private ProductAdapter productAdapter;
-    private DBHelper dbHelper;
+    private CsvImportDialog csvImportDialog;
+    private BackupDialog backupDialog;
+    private JucygoRepository repository;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_product_list);
 
-        dbHelper = new DBHelper(this);
+        repository = JucygoRepository.getInstance(this);
 
         recyclerViewProducts = findViewById(R.id.recyclerViewProducts);
         textViewEmpty = findViewById(R.id.textViewEmpty);
@@ -47,9 +53,14 @@ public class ProductListActivity extends AppCompatActivity {
         buttonSalesHistory = findViewById(R.id.buttonSalesHistory);
         buttonNewOrder = findViewById(R.id.buttonNewOrder);
         buttonOrderHistory = findViewById(R.id.buttonOrderHistory);
+        buttonImportCsv = findViewById(R.id.buttonImportCsv);
+        buttonExportCsv = findViewById(R.id.buttonExportCsv);
+        // Registers for the file picker result, so it must be created here
+        csvImportDialog = new CsvImportDialog(this, this::loadProducts);
+        backupDialog = new BackupDialog(this, this::loadProducts);
 
         recyclerViewProducts.setLayoutManager(new LinearLayoutManager(this));
-        productAdapter = new ProductAdapter(null, product -> {
+        productAdapter = new ProductAdapter(this, product -> {
             // Navigate to EditProductActivity when a product is clicked
             Intent intent = new Intent(ProductListActivity.this, EditProductActivity.class);
             intent.putExtra("product_id", product.getId());
@@ -82,9 +93,31 @@ public class ProductListActivity extends AppCompatActivity {
             startActivity(intent);
         });
 
+        buttonImportCsv.setOnClickListener(v -> csvImportDialog.show());
+
+        buttonExportCsv.setOnClickListener(v -> new CsvExportDialog(this).show());
+
         loadProducts();
     }
 
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.menu_product_list, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == R.id.action_backup) {
+            backupDialog.backUp();
+            return true;
+        } else if (item.getItemId() == R.id.action_restore) {
+            backupDialog.restore();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
     @Override
     protected void onResume() {
         super.onResume();
@@ -95,8 +128,16 @@ public class ProductListActivity extends AppCompatActivity {
      * Load all products from database and update the RecyclerView.
      */
     private void loadProducts() {
-        List<Product> products = dbHelper.getAllProducts();
-        
+        repository.getAllProducts(this::displayProducts);
+    }
+
+    /**
+     * Show the loaded products, or the empty message when there are none.
+     */
+    private void displayProducts(List<Product> products) {
+        if (isFinishing() || isDestroyed()) {
+            return;
+        }
         if (products.isEmpty()) {
             recyclerViewProducts.setVisibility(View.GONE);
             textViewEmpty.setVisibility(View.VISIBLE);
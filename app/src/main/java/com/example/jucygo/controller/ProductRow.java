@@ -0,0 +1,79 @@
+package com.example.jucygo.controller;
+
+import com.example.jucygo.model.Product;
+
+import java.util.Objects;
+
+/**
+ * A product as shown in the product list, formatted by RowFormatter.
+ */
+final class ProductRow {
+    private final Product product;
+    private final CharSequence name;
+    private final CharSequence price;
+    private final CharSequence quantity;
+    private final CharSequence description;
+    private final int placeholderTint;
+
+    ProductRow(Product product, CharSequence name, CharSequence price, CharSequence quantity,
+               CharSequence description, int placeholderTint) {
+        this.product = product;
+        this.name = name;
+        this.price = price;
+        this.quantity = quantity;
+        this.description = description;
+        this.placeholderTint = placeholderTint;
+    }
+
+    /** @return The product the row shows */
+    Product getProduct() {
+        return product;
+    }
+
+    CharSequence getName() {
+        return name;
+    }
+
+    CharSequence getPrice() {
+        return price;
+    }
+
+    CharSequence getQuantity() {
+        return quantity;
+    }
+
+    CharSequence getDescription() {
+        return description;
+    }
+
+    /** @return The colour of the placeholder shown while the product has no thumbnail */
+    int getPlaceholderTint() {
+        return placeholderTint;
+    }
+
+    /**
+     * @return Whether both rows show the same product the same way, apart from its quantity
+     */
+    boolean sameExceptQuantity(ProductRow other) {
+        return product.getId() == other.product.getId()
+                && Objects.equals(name, other.name)
+                && Objects.equals(price, other.price)
+                && Objects.equals(description, other.description)
+                && Objects.equals(product.getThumbnailPath(), other.product.getThumbnailPath())
+                && placeholderTint == other.placeholderTint;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof ProductRow)) {
+            return false;
+        }
+        ProductRow other = (ProductRow) o;
+        return sameExceptQuantity(other) && Objects.equals(quantity, other.quantity);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(product.getId(), name, price, quantity, description);
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.jucygo.controller;
+
+import android.content.Context;
+
+import com.example.jucygo.R;
+import com.example.jucygo.model.Money;
+import com.example.jucygo.model.Order;
+import com.example.jucygo.model.OrderCursor;
+import com.example.jucygo.model.Product;
+import com.example.jucygo.model.SaleCursor;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Formats list rows for display when they are loaded, so binding a row only sets text and
+ * colours computed beforehand: prices, dates and quantities are formatted, the placeholder
+ * tint of a product is matched from its name and the status of an order turned into its
+ * label and colour once per row instead of on every bind.
+ * Runs on the list thread; its DecimalFormat and SimpleDateFormat must not be shared between threads.
+ */
+final class RowFormatter {
+    private static final String NO_DESCRIPTION = "No description";
+
+    private final DecimalFormat priceFormat;
+    private final SimpleDateFormat dateFormat;
+    private final Date date = new Date();
+    private final int orangeColor;
+    private final int greenColor;
+    private final int purpleColor;
+    private final int tealColor;
+    private final int redColor;
+
+    /**
+     * @param context Resolves the colours used by rows
+     */
+    RowFormatter(Context context) {
+        this(Locale.getDefault(), context.getColor(R.color.orange_juice), context.getColor(R.color.green_juice),
+                context.getColor(R.color.purple_500), context.getColor(R.color.teal_500),
+                context.getColor(R.color.red_error));
+    }
+
+    RowFormatter(Locale locale, int orangeColor, int greenColor, int purpleColor, int tealColor, int redColor) {
+        priceFormat = new DecimalFormat("DT #,##0.00", DecimalFormatSymbols.getInstance(locale));
+        dateFormat = new SimpleDateFormat("MMM dd, yyyy 'at' HH:mm", locale);
+        this.orangeColor = orangeColor;
+        this.greenColor = greenColor;
+        this.purpleColor = purpleColor;
+        this.tealColor = tealColor;
+        this.redColor = redColor;
+    }
+
+    ProductRow formatProduct(Product product) {
+        String description = product.getDescription();
+        if (description == null || description.trim().isEmpty()) {
+            description = NO_DESCRIPTION;
+        }
+        return new ProductRow(product, product.getName(), formatPrice(product.getPrice()),
+                String.valueOf(product.getQuantity()), description, placeholderTint(product.getName()));
+    }
+
+    /**
+     * @param sale A cursor positioned on the sale
+     */
+    SaleRow formatSale(SaleCursor sale) {
+        return new SaleRow(sale.getId(), sale.getProductName(), formatPrice(sale.getTotalAmount()),
+                String.valueOf(sale.getQuantitySold()), formatPrice(sale.getUnitPrice()),
+                formatDate(sale.getDate()));
+    }
+
+    /**
+     * @param order A cursor positioned on the order
+     */
+    OrderRow formatOrder(OrderCursor order) {
+        String status = order.getStatus();
+        // Only pending orders can be acted on, so only they are read into an Order
+        Order pendingOrder = Order.STATUS_PENDING.equals(status) ? order.toOrder() : null;
+        return new OrderRow(order.getId(), order.getCustomerName(), order.getProductName(),
+                String.valueOf(order.getQuantityOrdered()), formatPrice(order.getTotalAmount()),
+                formatPrice(order.getUnitPrice()), formatDate(order.getDate()),
+                statusText(status), statusColor(status), pendingOrder);
+    }
+
+    String formatPrice(Money amount) {
+        return priceFormat.format(amount.toBigDecimal());
+    }
+
+    /**
+     * @param millis A date stored as epoch milliseconds
+     */
+    String formatDate(long millis) {
+        date.setTime(millis);
+        return dateFormat.format(date);
+    }
+
+    /**
+     * Pick the tint of a product placeholder from its name, for visual variety.
+     */
+    int placeholderTint(String productName) {
+        String name = productName.toLowerCase();
+        if (name.contains("orange") || name.contains("mango") || name.contains("peach")) {
+            return orangeColor;
+        } else if (name.contains("apple") || name.contains("green")) {
+            return greenColor;
+        } else if (name.contains("strawberry") || name.contains("berry") || name.contains("grape")) {
+            return purpleColor;
+        }
+        return tealColor;
+    }
+
+    String statusText(String status) {
+        switch (status) {
+            case Order.STATUS_COMPLETED:
+                return "✓ Completed";
+            case Order.STATUS_CANCELLED:
+                return "✗ Cancelled";
+            default:
+                return "⏳ Pending";
+        }
+    }
+
+    int statusColor(String status) {
+        switch (status) {
+            case Order.STATUS_COMPLETED:
+                return greenColor;
+            case Order.STATUS_CANCELLED:
+                return redColor;
+            default: // pending
+                return orangeColor;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.jucygo.controller;
+
+import java.util.Objects;
+
+/**
+ * A sale as shown in the sales history, formatted by RowFormatter.
+ */
+final class SaleRow implements HistoryPages.Row<SaleRow> {
+    private final int id;
+    private final CharSequence productName;
+    private final CharSequence totalAmount;
+    private final CharSequence quantitySold;
+    private final CharSequence unitPrice;
+    private final CharSequence date;
+
+    SaleRow(int id, CharSequence productName, CharSequence totalAmount, CharSequence quantitySold,
+            CharSequence unitPrice, CharSequence date) {
+        this.id = id;
+        this.productName = productName;
+        this.totalAmount = totalAmount;
+        this.quantitySold = quantitySold;
+        this.unitPrice = unitPrice;
+        this.date = date;
+    }
+
+    @Override
+    public int getId() {
+        return id;
+    }
+
+    CharSequence getProductName() {
+        return productName;
+    }
+
+    CharSequence getTotalAmount() {
+        return totalAmount;
+    }
+
+    CharSequence getQuantitySold() {
+        return quantitySold;
+    }
+
+    CharSequence getUnitPrice() {
+        return unitPrice;
+    }
+
+    CharSequence getDate() {
+        return date;
+    }
+
+    @Override
+    public boolean sameDetails(SaleRow other) {
+        // A sale never changes state once recorded
+        return equals(other);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof SaleRow)) {
+            return false;
+        }
+        SaleRow other = (SaleRow) o;
+        return id == other.id
+                && Objects.equals(productName, other.productName)
+                && Objects.equals(totalAmount, other.totalAmount)
+                && Objects.equals(quantitySold, other.quantitySold)
+                && Objects.equals(unitPrice, other.unitPrice)
+                && Objects.equals(date, other.date);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, productName, totalAmount, quantitySold, unitPrice, date);
+    }
+}
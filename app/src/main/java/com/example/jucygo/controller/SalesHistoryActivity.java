@@ -12,12 +12,10 @@ import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.jucygo.R;
-import com.example.jucygo.model.DBHelper;
-import com.example.jucygo.model.Sale;
+import com.example.jucygo.model.JucygoRepository;
+import com.example.jucygo.model.SaleCursor;
 import com.google.android.material.button.MaterialButton;
 
-import java.util.List;
-
 /**
  * Activity to display the sales history with search/filter functionality.
  */
@@ -27,15 +25,17 @@ public class SalesHistoryActivity extends AppCompatActivity {
     private TextView textViewEmpty;
     private SearchView searchViewSales;
     private SalesHistoryAdapter salesAdapter;
-    private DBHelper dbHelper;
-    private List<Sale> allSales;
+    private JucygoRepository repository;
+    private HistoryPager<SaleCursor> salesPager;
+    // Query whose results should be shown; null while the paged history is shown
+    private String currentQuery;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_sales_history);
 
-        dbHelper = new DBHelper(this);
+        repository = JucygoRepository.getInstance(this);
 
         initializeViews();
         setupRecyclerView();
@@ -57,8 +57,9 @@ public class SalesHistoryActivity extends AppCompatActivity {
      */
     private void setupRecyclerView() {
         recyclerViewSales.setLayoutManager(new LinearLayoutManager(this));
-        salesAdapter = new SalesHistoryAdapter(null);
+        salesAdapter = new SalesHistoryAdapter(this);
         recyclerViewSales.setAdapter(salesAdapter);
+        salesPager = new HistoryPager<>(recyclerViewSales, repository::querySalesPage, this::onSalesPageLoaded);
     }
 
     /**
@@ -92,11 +93,26 @@ public class SalesHistoryActivity extends AppCompatActivity {
     }
 
     /**
-     * Load all sales from database.
+     * Load the sales history from its first page; later pages load while scrolling.
      */
     private void loadSales() {
-        allSales = dbHelper.getAllSales();
-        displaySales(allSales);
+        currentQuery = null;
+        salesPager.refresh();
+    }
+
+    /**
+     * Show a page of the sales history delivered by the pager.
+     */
+    private void onSalesPageLoaded(SaleCursor page, boolean firstPage) {
+        if (isDestroyed()) {
+            page.close();
+            return;
+        }
+        if (firstPage) {
+            displaySales(page);
+        } else {
+            salesAdapter.appendSales(page);
+        }
     }
 
     /**
@@ -104,35 +120,39 @@ public class SalesHistoryActivity extends AppCompatActivity {
      */
     private void filterSales(String query) {
         if (TextUtils.isEmpty(query)) {
-            displaySales(allSales);
+            loadSales();
             return;
         }
 
-        List<Sale> filteredSales;
-        
-        // Try to match as date first (format: YYYY-MM-DD)
-        if (query.matches("\\d{4}-\\d{2}-\\d{2}")) {
-            filteredSales = dbHelper.searchSalesByDate(query);
-        } else {
-            // Otherwise search by product name
-            filteredSales = dbHelper.searchSalesByProductName(query);
-        }
-
-        displaySales(filteredSales);
+        // Search results replace the paged history until the query is cleared
+        salesPager.stop();
+        currentQuery = query;
+        // Product names and dates are both matched by the full-text search
+        repository.querySearchSales(query, filteredSales -> {
+            if (filteredSales == null) {
+                return;
+            }
+            // Drop results of a query the user has typed past
+            if (query.equals(currentQuery) && !isDestroyed()) {
+                displaySales(filteredSales);
+            } else {
+                filteredSales.close();
+            }
+        });
     }
 
     /**
      * Display sales in RecyclerView or show empty message.
      */
-    private void displaySales(List<Sale> sales) {
-        if (sales == null || sales.isEmpty()) {
+    private void displaySales(SaleCursor sales) {
+        if (sales.getCount() == 0) {
             recyclerViewSales.setVisibility(View.GONE);
             textViewEmpty.setVisibility(View.VISIBLE);
         } else {
             recyclerViewSales.setVisibility(View.VISIBLE);
             textViewEmpty.setVisibility(View.GONE);
-            salesAdapter.updateSaleList(sales);
         }
+        salesAdapter.swapSales(sales);
     }
 
     @Override
@@ -141,5 +161,12 @@ public class SalesHistoryActivity extends AppCompatActivity {
         // Refresh sales when returning to this activity
         loadSales();
     }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        salesPager.stop();
+        salesAdapter.close();
+    }
 }
 
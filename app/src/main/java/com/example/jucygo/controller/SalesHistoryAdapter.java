@@ -1,5 +1,6 @@
 package com.example.jucygo.controller;
 
+import android.content.Context;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -9,30 +10,21 @@ import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.jucygo.R;
-import com.example.jucygo.model.Sale;
-
-import java.text.DecimalFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.List;
-import java.util.Locale;
+import com.example.jucygo.model.SaleCursor;
 
 /**
  * Adapter for RecyclerView to display sales history.
+ * Rows are formatted in the background as their page loads, so binding only sets their text.
+ * A refreshed list only binds the rows that changed again.
  */
 public class SalesHistoryAdapter extends RecyclerView.Adapter<SalesHistoryAdapter.SaleViewHolder> {
 
-    private List<Sale> saleList;
-    private DecimalFormat priceFormat;
-    private SimpleDateFormat inputFormat;
-    private SimpleDateFormat outputFormat;
+    private final HistoryPages<SaleCursor, SaleRow> pages;
 
-    public SalesHistoryAdapter(List<Sale> saleList) {
-        this.saleList = saleList;
-        this.priceFormat = new DecimalFormat("DT #,##0.00");
-        this.inputFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault());
-        this.outputFormat = new SimpleDateFormat("MMM dd, yyyy 'at' HH:mm", Locale.getDefault());
+    public SalesHistoryAdapter(Context context) {
+        RowFormatter formatter = new RowFormatter(context);
+        this.pages = new HistoryPages<>(this, formatter::formatSale);
+        setHasStableIds(true);
     }
 
     @NonNull
@@ -45,21 +37,41 @@ public class SalesHistoryAdapter extends RecyclerView.Adapter<SalesHistoryAdapte
 
     @Override
     public void onBindViewHolder(@NonNull SaleViewHolder holder, int position) {
-        Sale sale = saleList.get(position);
-        holder.bind(sale);
+        holder.bind(pages.get(position));
     }
 
     @Override
     public int getItemCount() {
-        return saleList != null ? saleList.size() : 0;
+        return pages.getCount();
     }
 
-    public void updateSaleList(List<Sale> newSaleList) {
-        this.saleList = newSaleList;
-        notifyDataSetChanged();
+    @Override
+    public long getItemId(int position) {
+        return pages.get(position).getId();
     }
 
-    class SaleViewHolder extends RecyclerView.ViewHolder {
+    /**
+     * Replace the list with a new first page of sales; the adapter takes ownership of the cursor.
+     */
+    public void swapSales(SaleCursor sales) {
+        pages.replace(sales);
+    }
+
+    /**
+     * Add the next page of sales at the end of the list; the adapter takes ownership of the cursor.
+     */
+    public void appendSales(SaleCursor page) {
+        pages.append(page);
+    }
+
+    /**
+     * Stop showing sales; call when the screen is destroyed.
+     */
+    public void close() {
+        pages.close();
+    }
+
+    static class SaleViewHolder extends RecyclerView.ViewHolder {
         private TextView textViewProductName;
         private TextView textViewTotalAmount;
         private TextView textViewQuantitySold;
@@ -75,24 +87,12 @@ public class SalesHistoryAdapter extends RecyclerView.Adapter<SalesHistoryAdapte
             textViewSaleDate = itemView.findViewById(R.id.textViewSaleDate);
         }
 
-        void bind(Sale sale) {
+        void bind(SaleRow sale) {
             textViewProductName.setText(sale.getProductName());
-            textViewTotalAmount.setText(priceFormat.format(sale.getTotalAmount()));
-            textViewQuantitySold.setText(String.valueOf(sale.getQuantitySold()));
-            textViewUnitPrice.setText(priceFormat.format(sale.getUnitPrice()));
-            
-            // Format date
-            try {
-                Date date = inputFormat.parse(sale.getDate());
-                if (date != null) {
-                    textViewSaleDate.setText(outputFormat.format(date));
-                } else {
-                    textViewSaleDate.setText(sale.getDate());
-                }
-            } catch (ParseException e) {
-                textViewSaleDate.setText(sale.getDate());
-            }
+            textViewTotalAmount.setText(sale.getTotalAmount());
+            textViewQuantitySold.setText(sale.getQuantitySold());
+            textViewUnitPrice.setText(sale.getUnitPrice());
+            textViewSaleDate.setText(sale.getDate());
         }
     }
 }
-
@@ -0,0 +1,63 @@
+package com.example.jucygo.controller;
+
+import android.app.Activity;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+
+import androidx.appcompat.app.AlertDialog;
+
+import com.google.android.material.progressindicator.LinearProgressIndicator;
+
+/**
+ * A dialog showing the progress of a long background task, such as a CSV import or export.
+ * Indeterminate until the first progress update; must be used on the main thread.
+ */
+class TaskProgressDialog {
+    private final Activity activity;
+    private final LinearProgressIndicator indicator;
+    private final TextView textView;
+    private final AlertDialog dialog;
+
+    TaskProgressDialog(Activity activity, int titleResId) {
+        this.activity = activity;
+        int padding = Math.round(24 * activity.getResources().getDisplayMetrics().density);
+        LinearLayout layout = new LinearLayout(activity);
+        layout.setOrientation(LinearLayout.VERTICAL);
+        layout.setPadding(padding, padding, padding, 0);
+        indicator = new LinearProgressIndicator(activity);
+        indicator.setIndeterminate(true);
+        textView = new TextView(activity);
+        layout.addView(indicator);
+        layout.addView(textView);
+        dialog = new AlertDialog.Builder(activity)
+                .setTitle(titleResId)
+                .setView(layout)
+                .setCancelable(false)
+                .show();
+    }
+
+    /**
+     * @param done The work done so far
+     * @param total The total work, or a negative number if unknown
+     * @param text The progress as text
+     */
+    void setProgress(long done, long total, String text) {
+        if (activity.isDestroyed()) {
+            return;
+        }
+        if (total >= 0) {
+            // Scaled to an int range; file sizes may exceed it
+            int max = 1000;
+            indicator.setIndeterminate(false);
+            indicator.setMax(max);
+            indicator.setProgressCompat(total == 0 ? max : (int) (done * max / total), true);
+        }
+        textView.setText(text);
+    }
+
+    void dismiss() {
+        if (!activity.isDestroyed()) {
+            dialog.dismiss();
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package com.example.jucygo.model;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Writes sales, orders and products to CSV files.
+ * Rows are streamed from DBHelper chunk by chunk straight into a buffered file writer,
+ * without building model objects or lists, so an export of millions of rows uses the
+ * same small amount of memory as an export of ten. Must be run off the main thread.
+ */
+public final class CsvExporter {
+
+    /**
+     * Receives the progress of an export, on the thread running it.
+     */
+    public interface ProgressListener {
+        void onProgress(int rowsWritten, int totalRows);
+    }
+
+    /**
+     * Writes the rows of an export to a CSV writer.
+     */
+    private interface RowSource {
+        void writeRows(CsvWriter out) throws IOException;
+    }
+
+    // Characters buffered before each write to the file
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String[] SALES_HEADER = {
+            "id", "date", "productId", "productName", "quantitySold", "unitPrice", "totalAmount"};
+    private static final String[] ORDERS_HEADER = {
+            "id", "date", "customerName", "productId", "productName", "quantityOrdered", "unitPrice",
+            "totalAmount", "status"};
+    private static final String[] PRODUCTS_HEADER = {
+            "id", "name", "price", "quantity", "description"};
+
+    private final DBHelper dbHelper;
+
+    public CsvExporter(DBHelper dbHelper) {
+        this.dbHelper = dbHelper;
+    }
+
+    /**
+     * Export the sales of a time range, oldest first, including the archived ones.
+     * @param target The file to write; replaced only once the export is complete
+     * @param from Start of the range in epoch milliseconds (inclusive)
+     * @param to End of the range in epoch milliseconds (exclusive)
+     * @param listener Receives the progress after every chunk, or null
+     * @return The number of sales written
+     * @throws IOException if the file could not be written
+     */
+    public int exportSales(File target, long from, long to, ProgressListener listener) throws IOException {
+        int total = dbHelper.countSalesBetween(from, to);
+        return write(target, SALES_HEADER, total, listener, out -> dbHelper.forEachSaleChunk(from, to, sales -> {
+            while (sales.moveToNext()) {
+                out.number(sales.getId());
+                out.date(sales.getDate());
+                out.productId(sales.getProductId());
+                out.text(sales.getProductName());
+                out.number(sales.getQuantitySold());
+                out.money(sales.getUnitPrice());
+                out.money(sales.getTotalAmount());
+                out.endRow();
+            }
+            out.reportProgress();
+        }));
+    }
+
+    /**
+     * Export the orders of a time range, oldest first, including the archived ones.
+     * @param target The file to write; replaced only once the export is complete
+     * @param from Start of the range in epoch milliseconds (inclusive)
+     * @param to End of the range in epoch milliseconds (exclusive)
+     * @param listener Receives the progress after every chunk, or null
+     * @return The number of orders written
+     * @throws IOException if the file could not be written
+     */
+    public int exportOrders(File target, long from, long to, ProgressListener listener) throws IOException {
+        int total = dbHelper.countOrdersBetween(from, to);
+        return write(target, ORDERS_HEADER, total, listener, out -> dbHelper.forEachOrderChunk(from, to, orders -> {
+            while (orders.moveToNext()) {
+                out.number(orders.getId());
+                out.date(orders.getDate());
+                out.text(orders.getCustomerName());
+                out.productId(orders.getProductId());
+                out.text(orders.getProductName());
+                out.number(orders.getQuantityOrdered());
+                out.money(orders.getUnitPrice());
+                out.money(orders.getTotalAmount());
+                out.text(orders.getStatus());
+                out.endRow();
+            }
+            out.reportProgress();
+        }));
+    }
+
+    /**
+     * Export every product, by id.
+     * @param target The file to write; replaced only once the export is complete
+     * @param listener Receives the progress after every chunk, or null
+     * @return The number of products written
+     * @throws IOException if the file could not be written
+     */
+    public int exportProducts(File target, ProgressListener listener) throws IOException {
+        int total = dbHelper.countProducts();
+        return write(target, PRODUCTS_HEADER, total, listener, out -> dbHelper.forEachProductChunk(products -> {
+            int idIndex = products.getColumnIndexOrThrow(DBHelper.COLUMN_ID);
+            int nameIndex = products.getColumnIndexOrThrow(DBHelper.COLUMN_NAME);
+            int priceIndex = products.getColumnIndexOrThrow(DBHelper.COLUMN_PRICE);
+            int quantityIndex = products.getColumnIndexOrThrow(DBHelper.COLUMN_QUANTITY);
+            int descriptionIndex = products.getColumnIndexOrThrow(DBHelper.COLUMN_DESCRIPTION);
+            while (products.moveToNext()) {
+                out.number(products.getLong(idIndex));
+                out.text(products.getString(nameIndex));
+                out.money(Money.ofCents(products.getLong(priceIndex)));
+                out.number(products.getLong(quantityIndex));
+                out.text(products.getString(descriptionIndex));
+                out.endRow();
+            }
+            out.reportProgress();
+        }));
+    }
+
+    /**
+     * Write a CSV file beside the target and move it into place once it is complete,
+     * so a failed or interrupted export never leaves a truncated file behind.
+     * @return The number of rows written, header excluded
+     */
+    private static int write(File target, String[] header, int total, ProgressListener listener, RowSource rows)
+            throws IOException {
+        File partial = new File(target.getPath() + ".part");
+        int written;
+        try (CsvWriter out = new CsvWriter(partial, total, listener)) {
+            for (String column : header) {
+                out.text(column);
+            }
+            out.endRow();
+            rows.writeRows(out);
+            written = out.rowsWritten - 1;
+        } catch (IOException | RuntimeException e) {
+            partial.delete();
+            throw e;
+        }
+        if (!partial.renameTo(target)) {
+            partial.delete();
+            throw new IOException("Could not move the export to " + target);
+        }
+        return written;
+    }
+
+    /**
+     * RFC 4180 CSV output: comma separated, CRLF line ends, fields quoted when needed.
+     * Starts with a UTF-8 byte order mark so spreadsheets detect the encoding of product names.
+     */
+    private static final class CsvWriter implements Closeable {
+        private final Writer writer;
+        private final int totalRows;
+        private final ProgressListener listener;
+        // One formatter and date per export, reused for every row
+        private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.ROOT);
+        private final Date date = new Date();
+        private boolean firstField = true;
+        private int rowsWritten;
+
+        CsvWriter(File file, int totalRows, ProgressListener listener) throws IOException {
+            this.writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file),
+                    StandardCharsets.UTF_8), BUFFER_SIZE);
+            this.totalRows = totalRows;
+            this.listener = listener;
+            writer.write('\uFEFF');
+        }
+
+        void text(String value) throws IOException {
+            separate();
+            if (value == null) {
+                return;
+            }
+            boolean quote = false;
+            for (int i = 0; i < value.length() && !quote; i++) {
+                char c = value.charAt(i);
+                quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (!quote) {
+                writer.write(value);
+                return;
+            }
+            writer.write('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"') {
+                    writer.write('"');
+                }
+                writer.write(c);
+            }
+            writer.write('"');
+        }
+
+        void number(long value) throws IOException {
+            separate();
+            writer.write(Long.toString(value));
+        }
+
+        /**
+         * Write a product reference, left empty for a product that no longer exists.
+         */
+        void productId(int productId) throws IOException {
+            if (productId > 0) {
+                number(productId);
+            } else {
+                separate();
+            }
+        }
+
+        void money(Money value) throws IOException {
+            separate();
+            writer.write(value.toString());
+        }
+
+        void date(long epochMillis) throws IOException {
+            separate();
+            date.setTime(epochMillis);
+            writer.write(dateFormat.format(date));
+        }
+
+        void endRow() throws IOException {
+            writer.write("\r\n");
+            firstField = true;
+            rowsWritten++;
+        }
+
+        void reportProgress() {
+            if (listener != null) {
+                // The header row is not counted
+                listener.onProgress(rowsWritten - 1, totalRows);
+            }
+        }
+
+        private void separate() throws IOException {
+            if (!firstField) {
+                writer.write(',');
+            }
+            firstField = false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,557 @@
+package com.example.jucygo.model;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Reads products and historic sales from CSV files, in the format written by CsvExporter.
+ * The import is a pipeline: the calling thread splits the file into chunks of records,
+ * parser threads turn each chunk into validated rows in parallel, and each parsed chunk
+ * is written by the database writer thread in a single transaction, in file order.
+ * Only a few chunks are in flight at a time, so memory stays bounded for any file size.
+ * Must be run off the main thread, and never on the database writer thread.
+ */
+public final class CsvImporter {
+
+    /**
+     * Receives the progress of an import, on the thread running it.
+     */
+    public interface ProgressListener {
+        /**
+         * @param bytesRead Bytes of the file read so far
+         * @param totalBytes Size of the file, or -1 if unknown
+         */
+        void onProgress(long bytesRead, long totalBytes);
+    }
+
+    /**
+     * A row that was not imported, with the line it starts on.
+     */
+    public static final class Reject {
+        private final int line;
+        private final String reason;
+
+        Reject(int line, String reason) {
+            this.line = line;
+            this.reason = reason;
+        }
+
+        public int getLine() {
+            return line;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+    }
+
+    /**
+     * The outcome of an import.
+     */
+    public static final class Result {
+        private int added;
+        private int updated;
+        private int rejected;
+        private final List<Reject> rejects = new ArrayList<>();
+
+        /**
+         * @return The number of rows added to the database
+         */
+        public int getAdded() {
+            return added;
+        }
+
+        /**
+         * @return The number of rows that updated an existing product
+         */
+        public int getUpdated() {
+            return updated;
+        }
+
+        /**
+         * @return The number of rows rejected
+         */
+        public int getRejected() {
+            return rejected;
+        }
+
+        /**
+         * @return The first rejected rows, in file order (at most MAX_REPORTED_REJECTS)
+         */
+        public List<Reject> getRejects() {
+            return Collections.unmodifiableList(rejects);
+        }
+
+        private void reject(Reject reject) {
+            rejected++;
+            if (rejects.size() < MAX_REPORTED_REJECTS) {
+                rejects.add(reject);
+            }
+        }
+    }
+
+    /**
+     * Turns the fields of one record into a row, or throws IllegalArgumentException
+     * with the reason it is rejected.
+     */
+    private interface RowParser<T> {
+        T parse(Fields fields);
+    }
+
+    /**
+     * Writes a parsed chunk in one transaction.
+     * @return The number of rows added and of existing rows updated
+     */
+    private interface ChunkWriter<T> {
+        DBHelper.ImportCount write(List<T> rows);
+    }
+
+    // Records parsed and written together, in one transaction
+    static final int CHUNK_SIZE = 1000;
+    // Rejected rows kept in a Result; the others are only counted
+    public static final int MAX_REPORTED_REJECTS = 100;
+    private static final int MAX_PARSER_THREADS = 4;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private static final String[] PRODUCT_COLUMNS = {"name", "price", "quantity", "description"};
+    private static final int PRODUCT_REQUIRED = 3;
+    private static final String[] SALE_COLUMNS = {"productName", "quantitySold", "unitPrice", "date", "totalAmount"};
+    private static final int SALE_REQUIRED = 4;
+
+    private final DBHelper dbHelper;
+    private final DatabaseExecutors executors;
+
+    public CsvImporter(DBHelper dbHelper, DatabaseExecutors executors) {
+        this.dbHelper = dbHelper;
+        this.executors = executors;
+    }
+
+    /**
+     * Import products, adding new names and updating the products already known by name.
+     * Columns are found by header name: name, price and quantity are required, description
+     * is optional and any other column (such as an exported id) is ignored.
+     * @param in The CSV file; closed when done
+     * @param totalBytes The size of the file for progress, or -1 if unknown
+     * @param listener Receives the progress after every chunk, or null
+     * @return The number of products added, updated and rejected
+     * @throws IOException if the file could not be read or lacks a required column
+     */
+    public Result importProducts(InputStream in, long totalBytes, ProgressListener listener) throws IOException {
+        return run(in, totalBytes, listener, PRODUCT_COLUMNS, PRODUCT_REQUIRED, fields -> {
+            String name = fields.required(0);
+            Money price = fields.money(1);
+            int quantity = fields.integer(2);
+            if (quantity < 0) {
+                throw new IllegalArgumentException("Negative quantity");
+            }
+            return new Product(name, price, quantity, fields.optional(3));
+        }, dbHelper::upsertProducts);
+    }
+
+    /**
+     * Import historic sales. They are added to the history without touching the stock,
+     * linked to the product of the same name if there is one.
+     * Columns are found by header name: productName, quantitySold, unitPrice and date are
+     * required; totalAmount defaults to unitPrice times quantitySold.
+     * A date is yyyy-MM-dd HH:mm:ss or yyyy-MM-dd in local time, or epoch milliseconds.
+     * @param in The CSV file; closed when done
+     * @param totalBytes The size of the file for progress, or -1 if unknown
+     * @param listener Receives the progress after every chunk, or null
+     * @return The number of sales added and rejected
+     * @throws IOException if the file could not be read or lacks a required column
+     */
+    public Result importSales(InputStream in, long totalBytes, ProgressListener listener) throws IOException {
+        return run(in, totalBytes, listener, SALE_COLUMNS, SALE_REQUIRED, fields -> {
+            String productName = fields.required(0);
+            int quantity = fields.integer(1);
+            if (quantity <= 0) {
+                throw new IllegalArgumentException("Quantity must be positive");
+            }
+            Money unitPrice = fields.money(2);
+            long date = fields.date(3);
+            Money total = fields.optional(4) == null ? unitPrice.times(quantity) : fields.money(4);
+            return new Sale(0, 0, productName, quantity, unitPrice, total, date);
+        }, rows -> new DBHelper.ImportCount(dbHelper.importSales(rows), 0));
+    }
+
+    /**
+     * Run the pipeline over a file.
+     * @param columns The columns looked up in the header
+     * @param required How many of the first columns must be present
+     */
+    private <T> Result run(InputStream in, long totalBytes, ProgressListener listener, String[] columns,
+                           int required, RowParser<T> parser, ChunkWriter<T> writer) throws IOException {
+        int threads = Math.max(1, Math.min(MAX_PARSER_THREADS, Runtime.getRuntime().availableProcessors() - 1));
+        ExecutorService parsers = Executors.newFixedThreadPool(threads);
+        Result result = new Result();
+        CountingInputStream counter = new CountingInputStream(in);
+        try (RecordReader reader = new RecordReader(counter)) {
+            int[] positions = readHeader(reader, columns, required);
+            // Chunks being parsed, oldest first; the oldest is written once enough are queued
+            ArrayDeque<Future<ParsedChunk<T>>> parsing = new ArrayDeque<>();
+            PendingWrite pending = null;
+            List<String> chunk;
+            while (!(chunk = reader.readChunk()).isEmpty()) {
+                List<String> records = chunk;
+                int[] lines = reader.chunkLines.clone();
+                parsing.add(parsers.submit(() -> parse(records, lines, columns, positions, parser)));
+                if (parsing.size() > threads * 2) {
+                    pending = write(await(parsing.remove()), pending, writer, result);
+                }
+                if (listener != null) {
+                    listener.onProgress(counter.count, totalBytes);
+                }
+            }
+            while (!parsing.isEmpty()) {
+                pending = write(await(parsing.remove()), pending, writer, result);
+            }
+            finish(pending, result);
+            if (listener != null) {
+                listener.onProgress(counter.count, totalBytes);
+            }
+        } finally {
+            parsers.shutdownNow();
+        }
+        return result;
+    }
+
+    /**
+     * Read the header and find the position of each column in it.
+     * @return The position of each column, -1 for an optional column that is absent
+     */
+    private static int[] readHeader(RecordReader reader, String[] columns, int required) throws IOException {
+        String header = reader.readRecord();
+        if (header == null) {
+            throw new IOException("The file is empty");
+        }
+        List<String> names = split(header);
+        int[] positions = new int[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            positions[i] = -1;
+            for (int j = 0; j < names.size(); j++) {
+                if (names.get(j).trim().equalsIgnoreCase(columns[i])) {
+                    positions[i] = j;
+                    break;
+                }
+            }
+            if (positions[i] < 0 && i < required) {
+                throw new IOException("Missing column: " + columns[i]);
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * Parse and validate the records of one chunk, on a parser thread.
+     */
+    private static <T> ParsedChunk<T> parse(List<String> records, int[] lines, String[] columns,
+                                            int[] positions, RowParser<T> parser) {
+        ParsedChunk<T> chunk = new ParsedChunk<>(records.size());
+        Fields fields = new Fields(columns, positions);
+        for (int i = 0; i < records.size(); i++) {
+            String record = records.get(i);
+            if (record.trim().isEmpty()) {
+                continue;
+            }
+            try {
+                fields.values = split(record);
+                chunk.rows.add(parser.parse(fields));
+            } catch (IllegalArgumentException | ArithmeticException e) {
+                // ArithmeticException: a total overflowing the cents range
+                chunk.rejects.add(new Reject(lines[i], e.getMessage()));
+            }
+        }
+        return chunk;
+    }
+
+    /**
+     * Hand a parsed chunk to the database writer, after collecting the write before it.
+     * Waiting for the previous write keeps at most one chunk queued on the writer, so
+     * other writes of the app are never stuck behind the whole import.
+     */
+    private <T> PendingWrite write(ParsedChunk<T> chunk, PendingWrite previous, ChunkWriter<T> writer,
+                                   Result result) throws IOException {
+        finish(previous, result);
+        for (Reject reject : chunk.rejects) {
+            result.reject(reject);
+        }
+        if (chunk.rows.isEmpty()) {
+            return null;
+        }
+        return new PendingWrite(executors.write(() -> writer.write(chunk.rows)));
+    }
+
+    private static void finish(PendingWrite write, Result result) throws IOException {
+        if (write != null) {
+            DBHelper.ImportCount count = await(write.count);
+            result.added += count.getAdded();
+            result.updated += count.getUpdated();
+        }
+    }
+
+    private static <V> V await(Future<V> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Import interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Split a record into its fields: comma separated, quoted with double quotes when
+     * needed, a doubled quote standing for one quote inside a quoted field.
+     */
+    static List<String> split(String record) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < record.length(); i++) {
+            char c = record.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < record.length() && record.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    /**
+     * The fields of the current record, looked up by column.
+     */
+    private static final class Fields {
+        private final String[] columns;
+        private final int[] positions;
+        // Parses dates of one chunk on one thread; SimpleDateFormat is not thread-safe
+        private final SimpleDateFormat dateTimeFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.ROOT);
+        private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.ROOT);
+        List<String> values;
+
+        Fields(String[] columns, int[] positions) {
+            this.columns = columns;
+            this.positions = positions;
+            dateTimeFormat.setLenient(false);
+            dateFormat.setLenient(false);
+        }
+
+        /**
+         * @return The trimmed value of a column, or null if it is absent or blank
+         */
+        String optional(int column) {
+            int position = positions[column];
+            if (position < 0 || position >= values.size()) {
+                return null;
+            }
+            String value = values.get(position).trim();
+            return value.isEmpty() ? null : value;
+        }
+
+        String required(int column) {
+            String value = optional(column);
+            if (value == null) {
+                throw new IllegalArgumentException("Missing " + columns[column]);
+            }
+            return value;
+        }
+
+        int integer(int column) {
+            String value = required(column);
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid " + columns[column] + ": " + value);
+            }
+        }
+
+        Money money(int column) {
+            String value = required(column);
+            Money money;
+            try {
+                money = Money.parse(value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid " + columns[column] + ": " + value);
+            }
+            if (money.isNegative()) {
+                throw new IllegalArgumentException("Negative " + columns[column]);
+            }
+            return money;
+        }
+
+        long date(int column) {
+            String value = required(column);
+            if (value.chars().allMatch(Character::isDigit) && value.length() > 8) {
+                return Long.parseLong(value);
+            }
+            for (SimpleDateFormat format : new SimpleDateFormat[]{dateTimeFormat, dateFormat}) {
+                ParsePosition position = new ParsePosition(0);
+                Date date = format.parse(value, position);
+                if (date != null && position.getIndex() == value.length()) {
+                    return date.getTime();
+                }
+            }
+            throw new IllegalArgumentException("Invalid " + columns[column] + ": " + value);
+        }
+
+    }
+
+    /**
+     * Reads a CSV file one record at a time; a record spans several lines while a quoted
+     * field is open. Splitting records only counts quotes, leaving the parsing of their
+     * fields to the parser threads.
+     */
+    private static final class RecordReader implements AutoCloseable {
+        private final BufferedReader reader;
+        private final int[] chunkLines = new int[CHUNK_SIZE];
+        private int line;
+
+        RecordReader(InputStream in) {
+            reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), READ_BUFFER_SIZE);
+        }
+
+        /**
+         * @return The next record, or null at the end of the file
+         */
+        String readRecord() throws IOException {
+            String text = reader.readLine();
+            if (text == null) {
+                return null;
+            }
+            line++;
+            if (line == 1 && text.startsWith("\uFEFF")) {
+                text = text.substring(1);
+            }
+            if (quotes(text) % 2 == 0) {
+                return text;
+            }
+            StringBuilder record = new StringBuilder(text);
+            int open = quotes(text);
+            while (open % 2 != 0 && (text = reader.readLine()) != null) {
+                line++;
+                record.append('\n').append(text);
+                open += quotes(text);
+            }
+            return record.toString();
+        }
+
+        /**
+         * Read up to CHUNK_SIZE records, noting the line each one starts on in chunkLines.
+         * @return The records, empty at the end of the file
+         */
+        List<String> readChunk() throws IOException {
+            List<String> records = new ArrayList<>(CHUNK_SIZE);
+            String record;
+            while (records.size() < CHUNK_SIZE) {
+                int start = line + 1;
+                if ((record = readRecord()) == null) {
+                    break;
+                }
+                chunkLines[records.size()] = start;
+                records.add(record);
+            }
+            return records;
+        }
+
+        private static int quotes(String text) {
+            int count = 0;
+            for (int i = 0; i < text.length(); i++) {
+                if (text.charAt(i) == '"') {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    /**
+     * The rows and rejects of one chunk.
+     */
+    private static final class ParsedChunk<T> {
+        final List<T> rows;
+        final List<Reject> rejects = new ArrayList<>();
+
+        ParsedChunk(int capacity) {
+            rows = new ArrayList<>(capacity);
+        }
+    }
+
+    /**
+     * A chunk handed to the database writer.
+     */
+    private static final class PendingWrite {
+        final Future<DBHelper.ImportCount> count;
+
+        PendingWrite(Future<DBHelper.ImportCount> count) {
+            this.count = count;
+        }
+    }
+
+    /**
+     * Counts the bytes read from a file, for progress.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+}
@@ -3,11 +3,30 @@ package com.example.jucygo.model;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.database.DatabaseUtils;
+import android.database.MergeCursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteConstraintException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Looper;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+import java.util.regex.Pattern;
 
 /**
  * Database Helper class extending SQLiteOpenHelper.
@@ -16,84 +35,563 @@ import java.util.List;
 public class DBHelper extends SQLiteOpenHelper {
     // Database name and version
     private static final String DATABASE_NAME = "JucygoDB";
-    private static final int DATABASE_VERSION = 4;
+    private static final int DATABASE_VERSION = 13;
 
     // Table names
     private static final String TABLE_PRODUCTS = "products";
     private static final String TABLE_SALES = "sales";
     private static final String TABLE_ORDERS = "orders";
-
-    // Product column names
-    private static final String COLUMN_ID = "id";
-    private static final String COLUMN_NAME = "name";
-    private static final String COLUMN_PRICE = "price";
-    private static final String COLUMN_QUANTITY = "quantity";
-    private static final String COLUMN_DESCRIPTION = "description";
-    private static final String COLUMN_IMAGE_PATH = "imagePath";
-
-    // Sale column names
-    private static final String COLUMN_SALE_ID = "id";
-    private static final String COLUMN_PRODUCT_NAME = "productName";
-    private static final String COLUMN_QUANTITY_SOLD = "quantitySold";
-    private static final String COLUMN_UNIT_PRICE = "unitPrice";
-    private static final String COLUMN_TOTAL_AMOUNT = "totalAmount";
-    private static final String COLUMN_DATE = "date";
-
-    // Order column names
-    private static final String COLUMN_ORDER_ID = "id";
-    private static final String COLUMN_CUSTOMER_NAME = "customerName";
-    private static final String COLUMN_ORDER_PRODUCT_NAME = "productName";
-    private static final String COLUMN_QUANTITY_ORDERED = "quantityOrdered";
-    private static final String COLUMN_ORDER_UNIT_PRICE = "unitPrice";
-    private static final String COLUMN_ORDER_TOTAL_AMOUNT = "totalAmount";
-    private static final String COLUMN_ORDER_STATUS = "status";
-    private static final String COLUMN_ORDER_DATE = "date";
-
-    // SQL query to create the products table
-    private static final String CREATE_TABLE_PRODUCTS = "CREATE TABLE " + TABLE_PRODUCTS + "("
-            + COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT,"
-            + COLUMN_NAME + " TEXT NOT NULL,"
-            + COLUMN_PRICE + " REAL NOT NULL,"
-            + COLUMN_QUANTITY + " INTEGER NOT NULL,"
-            + COLUMN_DESCRIPTION + " TEXT,"
-            + COLUMN_IMAGE_PATH + " TEXT"
-            + ")";
-
-    // SQL query to create the sales table
+    private static final String TABLE_DAILY_SALES = "daily_sales_summary";
+    private static final String TABLE_SALE_TICKETS = "sale_tickets";
+    private static final String TABLE_ORDER_TICKETS = "order_tickets";
+    private static final String TABLE_STOCK_MOVEMENTS = "stock_movements";
+    private static final String TABLE_STOCK_SNAPSHOTS = "stock_snapshots";
+
+    // Product column names, also read by CsvExporter
+    static final String COLUMN_ID = "id";
+    static final String COLUMN_NAME = "name";
+    static final String COLUMN_PRICE = "price";
+    static final String COLUMN_QUANTITY = "quantity";
+    static final String COLUMN_DESCRIPTION = "description";
+    static final String COLUMN_IMAGE_PATH = "imagePath";
+    static final String COLUMN_THUMBNAIL_PATH = "thumbnailPath";
+
+    // Sale column names, also read by SaleCursor
+    static final String COLUMN_SALE_ID = "id";
+    static final String COLUMN_PRODUCT_ID = "productId";
+    static final String COLUMN_PRODUCT_NAME = "productName";
+    static final String COLUMN_QUANTITY_SOLD = "quantitySold";
+    static final String COLUMN_UNIT_PRICE = "unitPrice";
+    static final String COLUMN_TOTAL_AMOUNT = "totalAmount";
+    static final String COLUMN_DATE = "date";
+    static final String COLUMN_SALE_TICKET_ID = "ticketId";
+
+    // Order column names, also read by OrderCursor
+    static final String COLUMN_ORDER_ID = "id";
+    static final String COLUMN_CUSTOMER_NAME = "customerName";
+    static final String COLUMN_ORDER_PRODUCT_ID = "productId";
+    static final String COLUMN_ORDER_PRODUCT_NAME = "productName";
+    static final String COLUMN_QUANTITY_ORDERED = "quantityOrdered";
+    static final String COLUMN_ORDER_UNIT_PRICE = "unitPrice";
+    static final String COLUMN_ORDER_TOTAL_AMOUNT = "totalAmount";
+    static final String COLUMN_ORDER_STATUS = "status";
+    static final String COLUMN_ORDER_DATE = "date";
+    static final String COLUMN_ORDER_TICKET_ID = "ticketId";
+
+    // Ticket column names, shared by sale and order tickets
+    private static final String COLUMN_TICKET_ID = "id";
+    private static final String COLUMN_TICKET_CUSTOMER_NAME = "customerName";
+    private static final String COLUMN_TICKET_TOTAL_AMOUNT = "totalAmount";
+    private static final String COLUMN_TICKET_DATE = "date";
+
+    // Daily sales summary column names
+    private static final String COLUMN_SUMMARY_DAY = "day";
+    private static final String COLUMN_SUMMARY_PRODUCT_ID = "productId";
+    private static final String COLUMN_SUMMARY_UNITS = "units";
+    private static final String COLUMN_SUMMARY_REVENUE = "revenue";
+    private static final String COLUMN_SUMMARY_SALE_COUNT = "saleCount";
+
+    // Stock ledger column names
+    private static final String COLUMN_MOVEMENT_ID = "id";
+    private static final String COLUMN_MOVEMENT_PRODUCT_ID = "productId";
+    private static final String COLUMN_MOVEMENT_DELTA = "delta";
+    private static final String COLUMN_MOVEMENT_REASON = "reason";
+    private static final String COLUMN_MOVEMENT_DATE = "date";
+    private static final String COLUMN_SNAPSHOT_PRODUCT_ID = "productId";
+    private static final String COLUMN_SNAPSHOT_MOVEMENT_ID = "movementId";
+    private static final String COLUMN_SNAPSHOT_QUANTITY = "quantity";
+    private static final String COLUMN_SNAPSHOT_DATE = "date";
+
+    // SQL query to create the products table.
+    // Every amount in the database (prices, totals, revenue) is a whole number of cents.
+    private static final String CREATE_TABLE_PRODUCTS = createProductsTable(TABLE_PRODUCTS);
+
+    // SQL query to create the sales table.
+    // productId is cleared when the product is deleted; productName keeps the history readable.
     private static final String CREATE_TABLE_SALES = "CREATE TABLE " + TABLE_SALES + "("
             + COLUMN_SALE_ID + " INTEGER PRIMARY KEY AUTOINCREMENT,"
+            + COLUMN_PRODUCT_ID + " INTEGER REFERENCES " + TABLE_PRODUCTS + "(" + COLUMN_ID + ") ON DELETE SET NULL,"
             + COLUMN_PRODUCT_NAME + " TEXT NOT NULL,"
             + COLUMN_QUANTITY_SOLD + " INTEGER NOT NULL,"
-            + COLUMN_UNIT_PRICE + " REAL NOT NULL,"
-            + COLUMN_TOTAL_AMOUNT + " REAL NOT NULL,"
-            + COLUMN_DATE + " TEXT NOT NULL"
+            + COLUMN_UNIT_PRICE + " INTEGER NOT NULL,"
+            + COLUMN_TOTAL_AMOUNT + " INTEGER NOT NULL,"
+            + COLUMN_DATE + " INTEGER NOT NULL,"
+            + COLUMN_SALE_TICKET_ID + " INTEGER REFERENCES " + TABLE_SALE_TICKETS
+            + "(" + COLUMN_TICKET_ID + ") ON DELETE CASCADE"
             + ")";
 
     // SQL query to create the orders table
     private static final String CREATE_TABLE_ORDERS = "CREATE TABLE " + TABLE_ORDERS + "("
             + COLUMN_ORDER_ID + " INTEGER PRIMARY KEY AUTOINCREMENT,"
             + COLUMN_CUSTOMER_NAME + " TEXT NOT NULL,"
+            + COLUMN_ORDER_PRODUCT_ID + " INTEGER REFERENCES " + TABLE_PRODUCTS + "(" + COLUMN_ID + ") ON DELETE SET NULL,"
             + COLUMN_ORDER_PRODUCT_NAME + " TEXT NOT NULL,"
             + COLUMN_QUANTITY_ORDERED + " INTEGER NOT NULL,"
-            + COLUMN_ORDER_UNIT_PRICE + " REAL NOT NULL,"
-            + COLUMN_ORDER_TOTAL_AMOUNT + " REAL NOT NULL,"
+            + COLUMN_ORDER_UNIT_PRICE + " INTEGER NOT NULL,"
+            + COLUMN_ORDER_TOTAL_AMOUNT + " INTEGER NOT NULL,"
             + COLUMN_ORDER_STATUS + " TEXT NOT NULL,"
-            + COLUMN_ORDER_DATE + " TEXT NOT NULL"
+            + COLUMN_ORDER_DATE + " INTEGER NOT NULL,"
+            + COLUMN_ORDER_TICKET_ID + " INTEGER REFERENCES " + TABLE_ORDER_TICKETS
+            + "(" + COLUMN_TICKET_ID + ") ON DELETE CASCADE"
+            + ")";
+
+    // SQL queries to create the ticket headers. A ticket groups the sale or order rows
+    // (its lines) checked out together; rows recorded on their own have no ticket.
+    private static final String CREATE_TABLE_SALE_TICKETS = "CREATE TABLE " + TABLE_SALE_TICKETS + "("
+            + COLUMN_TICKET_ID + " INTEGER PRIMARY KEY AUTOINCREMENT,"
+            + COLUMN_TICKET_TOTAL_AMOUNT + " INTEGER NOT NULL,"
+            + COLUMN_TICKET_DATE + " INTEGER NOT NULL"
+            + ")";
+    private static final String CREATE_TABLE_ORDER_TICKETS = "CREATE TABLE " + TABLE_ORDER_TICKETS + "("
+            + COLUMN_TICKET_ID + " INTEGER PRIMARY KEY AUTOINCREMENT,"
+            + COLUMN_TICKET_CUSTOMER_NAME + " TEXT NOT NULL,"
+            + COLUMN_TICKET_TOTAL_AMOUNT + " INTEGER NOT NULL,"
+            + COLUMN_TICKET_DATE + " INTEGER NOT NULL"
+            + ")";
+
+    // SQL query to create the daily sales summary: one row per local day (yyyyMMdd) and product.
+    // Sales whose product was deleted are counted under product id 0.
+    private static final String CREATE_TABLE_DAILY_SALES = "CREATE TABLE " + TABLE_DAILY_SALES + "("
+            + COLUMN_SUMMARY_DAY + " INTEGER NOT NULL,"
+            + COLUMN_SUMMARY_PRODUCT_ID + " INTEGER NOT NULL,"
+            + COLUMN_SUMMARY_UNITS + " INTEGER NOT NULL,"
+            + COLUMN_SUMMARY_REVENUE + " INTEGER NOT NULL,"
+            + COLUMN_SUMMARY_SALE_COUNT + " INTEGER NOT NULL,"
+            + "PRIMARY KEY (" + COLUMN_SUMMARY_DAY + ", " + COLUMN_SUMMARY_PRODUCT_ID + ")"
+            + ") WITHOUT ROWID";
+
+    // SQL query to create the stock ledger: one row per change to the stock of a product,
+    // never updated or deleted. productId is not a foreign key so the ledger of a
+    // deleted product is kept.
+    private static final String CREATE_TABLE_STOCK_MOVEMENTS = "CREATE TABLE " + TABLE_STOCK_MOVEMENTS + "("
+            + COLUMN_MOVEMENT_ID + " INTEGER PRIMARY KEY AUTOINCREMENT,"
+            + COLUMN_MOVEMENT_PRODUCT_ID + " INTEGER NOT NULL,"
+            + COLUMN_MOVEMENT_DELTA + " INTEGER NOT NULL,"
+            + COLUMN_MOVEMENT_REASON + " TEXT NOT NULL,"
+            + COLUMN_MOVEMENT_DATE + " INTEGER NOT NULL"
             + ")";
 
-    public DBHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    // SQL query to create the stock snapshots: the stock of a product once every movement
+    // up to and including movementId is applied, written every STOCK_SNAPSHOT_INTERVAL movements
+    private static final String CREATE_TABLE_STOCK_SNAPSHOTS = "CREATE TABLE " + TABLE_STOCK_SNAPSHOTS + "("
+            + COLUMN_SNAPSHOT_PRODUCT_ID + " INTEGER NOT NULL,"
+            + COLUMN_SNAPSHOT_MOVEMENT_ID + " INTEGER NOT NULL,"
+            + COLUMN_SNAPSHOT_QUANTITY + " INTEGER NOT NULL,"
+            + COLUMN_SNAPSHOT_DATE + " INTEGER NOT NULL,"
+            + "PRIMARY KEY (" + COLUMN_SNAPSHOT_PRODUCT_ID + ", " + COLUMN_SNAPSHOT_MOVEMENT_ID + ")"
+            + ") WITHOUT ROWID";
+
+    // Movements of a product between two snapshots, so a past stock level never sums more than this
+    static final int STOCK_SNAPSHOT_INTERVAL = 64;
+    // The current time in epoch milliseconds, for rows written by triggers
+    private static final String NOW_MILLIS = "CAST((julianday('now') - 2440587.5) * 86400000 AS INTEGER)";
+
+    // Secondary indexes backing the lookup, search and report queries
+    private static final String[] CREATE_INDEXES = {
+            "CREATE UNIQUE INDEX IF NOT EXISTS idx_products_name ON "
+                    + TABLE_PRODUCTS + "(" + COLUMN_NAME + ")",
+            "CREATE INDEX IF NOT EXISTS idx_sales_date ON "
+                    + TABLE_SALES + "(" + COLUMN_DATE + ")",
+            "CREATE INDEX IF NOT EXISTS idx_sales_product_id ON "
+                    + TABLE_SALES + "(" + COLUMN_PRODUCT_ID + ")",
+            "CREATE INDEX IF NOT EXISTS idx_orders_status ON "
+                    + TABLE_ORDERS + "(" + COLUMN_ORDER_STATUS + ")",
+            "CREATE INDEX IF NOT EXISTS idx_orders_date ON "
+                    + TABLE_ORDERS + "(" + COLUMN_ORDER_DATE + ")",
+            "CREATE INDEX IF NOT EXISTS idx_orders_customer_name ON "
+                    + TABLE_ORDERS + "(" + COLUMN_CUSTOMER_NAME + ")",
+            "CREATE INDEX IF NOT EXISTS idx_orders_product_id ON "
+                    + TABLE_ORDERS + "(" + COLUMN_ORDER_PRODUCT_ID + ")",
+            "CREATE INDEX IF NOT EXISTS idx_sales_ticket_id ON "
+                    + TABLE_SALES + "(" + COLUMN_SALE_TICKET_ID + ")",
+            "CREATE INDEX IF NOT EXISTS idx_orders_ticket_id ON "
+                    + TABLE_ORDERS + "(" + COLUMN_ORDER_TICKET_ID + ")",
+            // Entries are ordered by (productId, id), so the movements after a snapshot are one range
+            "CREATE INDEX IF NOT EXISTS idx_stock_movements_product_id ON "
+                    + TABLE_STOCK_MOVEMENTS + "(" + COLUMN_MOVEMENT_PRODUCT_ID + ")"
+    };
+
+    // Full-text search tables: one document per sale/order, keyed by its row id.
+    // The day column holds the date as yyyyMMdd so dates can be searched as tokens.
+    private static final String TABLE_SALES_SEARCH = "sales_fts";
+    private static final String TABLE_ORDERS_SEARCH = "orders_fts";
+    private static final String COLUMN_SEARCH_DAY = "day";
+    private static final String SALE_DAY = "strftime('%Y%m%d', new." + COLUMN_DATE
+            + " / 1000, 'unixepoch', 'localtime')";
+    private static final String ORDER_DAY = "strftime('%Y%m%d', new." + COLUMN_ORDER_DATE
+            + " / 1000, 'unixepoch', 'localtime')";
+
+    // Search tables
+    private static final String[] CREATE_SEARCH_TABLES = {
+            "CREATE VIRTUAL TABLE " + TABLE_SALES_SEARCH + " USING fts4("
+                    + COLUMN_PRODUCT_NAME + ", " + COLUMN_SEARCH_DAY + ", tokenize=unicode61)",
+            "CREATE VIRTUAL TABLE " + TABLE_ORDERS_SEARCH + " USING fts4("
+                    + COLUMN_CUSTOMER_NAME + ", " + COLUMN_ORDER_PRODUCT_NAME + ", " + COLUMN_SEARCH_DAY
+                    + ", tokenize=unicode61)"
+    };
+
+    // Triggers keeping the search tables in sync with sales and orders
+    private static final String[] CREATE_SEARCH_TRIGGERS = {
+            "CREATE TRIGGER IF NOT EXISTS sales_fts_insert AFTER INSERT ON " + TABLE_SALES + " BEGIN"
+                    + " INSERT INTO " + TABLE_SALES_SEARCH + "(docid, " + COLUMN_PRODUCT_NAME + ", " + COLUMN_SEARCH_DAY + ")"
+                    + " VALUES (new." + COLUMN_SALE_ID + ", new." + COLUMN_PRODUCT_NAME + ", " + SALE_DAY + ");"
+                    + " END",
+            "CREATE TRIGGER IF NOT EXISTS sales_fts_update AFTER UPDATE OF " + COLUMN_PRODUCT_NAME + ", " + COLUMN_DATE
+                    + " ON " + TABLE_SALES + " BEGIN"
+                    + " UPDATE " + TABLE_SALES_SEARCH + " SET " + COLUMN_PRODUCT_NAME + " = new." + COLUMN_PRODUCT_NAME
+                    + ", " + COLUMN_SEARCH_DAY + " = " + SALE_DAY + " WHERE docid = old." + COLUMN_SALE_ID + ";"
+                    + " END",
+            "CREATE TRIGGER IF NOT EXISTS sales_fts_delete AFTER DELETE ON " + TABLE_SALES + " BEGIN"
+                    + " DELETE FROM " + TABLE_SALES_SEARCH + " WHERE docid = old." + COLUMN_SALE_ID + ";"
+                    + " END",
+            "CREATE TRIGGER IF NOT EXISTS orders_fts_insert AFTER INSERT ON " + TABLE_ORDERS + " BEGIN"
+                    + " INSERT INTO " + TABLE_ORDERS_SEARCH + "(docid, " + COLUMN_CUSTOMER_NAME + ", "
+                    + COLUMN_ORDER_PRODUCT_NAME + ", " + COLUMN_SEARCH_DAY + ")"
+                    + " VALUES (new." + COLUMN_ORDER_ID + ", new." + COLUMN_CUSTOMER_NAME + ", new."
+                    + COLUMN_ORDER_PRODUCT_NAME + ", " + ORDER_DAY + ");"
+                    + " END",
+            "CREATE TRIGGER IF NOT EXISTS orders_fts_update AFTER UPDATE OF " + COLUMN_CUSTOMER_NAME + ", "
+                    + COLUMN_ORDER_PRODUCT_NAME + ", " + COLUMN_ORDER_DATE + " ON " + TABLE_ORDERS + " BEGIN"
+                    + " UPDATE " + TABLE_ORDERS_SEARCH + " SET " + COLUMN_CUSTOMER_NAME + " = new." + COLUMN_CUSTOMER_NAME
+                    + ", " + COLUMN_ORDER_PRODUCT_NAME + " = new." + COLUMN_ORDER_PRODUCT_NAME
+                    + ", " + COLUMN_SEARCH_DAY + " = " + ORDER_DAY + " WHERE docid = old." + COLUMN_ORDER_ID + ";"
+                    + " END",
+            "CREATE TRIGGER IF NOT EXISTS orders_fts_delete AFTER DELETE ON " + TABLE_ORDERS + " BEGIN"
+                    + " DELETE FROM " + TABLE_ORDERS_SEARCH + " WHERE docid = old." + COLUMN_ORDER_ID + ";"
+                    + " END"
+    };
+
+    // Trigger taking a deleted sale out of the daily sales summary, lifted while sales are archived
+    private static final String CREATE_DAILY_SALES_DELETE_TRIGGER = "CREATE TRIGGER IF NOT EXISTS daily_sales_delete"
+            + " AFTER DELETE ON " + TABLE_SALES + " BEGIN"
+            + removeFromDailySales("old")
+            + " END";
+
+    // Triggers adding every sale to, and taking it back out of, the daily sales summary
+    private static final String[] CREATE_SUMMARY_TRIGGERS = {
+            "CREATE TRIGGER IF NOT EXISTS daily_sales_insert AFTER INSERT ON " + TABLE_SALES + " BEGIN"
+                    + addToDailySales("new")
+                    + " END",
+            "CREATE TRIGGER IF NOT EXISTS daily_sales_update AFTER UPDATE OF " + COLUMN_PRODUCT_ID + ", "
+                    + COLUMN_QUANTITY_SOLD + ", " + COLUMN_TOTAL_AMOUNT + ", " + COLUMN_DATE
+                    + " ON " + TABLE_SALES + " BEGIN"
+                    + removeFromDailySales("old")
+                    + addToDailySales("new")
+                    + " END",
+            CREATE_DAILY_SALES_DELETE_TRIGGER
+    };
+
+    // Triggers keeping the stock ledger append-only, recording the stock of new products
+    // and snapshotting a product every STOCK_SNAPSHOT_INTERVAL movements
+    private static final String[] CREATE_STOCK_TRIGGERS = {
+            "CREATE TRIGGER IF NOT EXISTS stock_movements_no_update BEFORE UPDATE ON " + TABLE_STOCK_MOVEMENTS
+                    + " BEGIN SELECT RAISE(ABORT, 'stock movements are append-only'); END",
+            "CREATE TRIGGER IF NOT EXISTS stock_movements_no_delete BEFORE DELETE ON " + TABLE_STOCK_MOVEMENTS
+                    + " BEGIN SELECT RAISE(ABORT, 'stock movements are append-only'); END",
+            "CREATE TRIGGER IF NOT EXISTS stock_initial AFTER INSERT ON " + TABLE_PRODUCTS
+                    + " WHEN new." + COLUMN_QUANTITY + " <> 0 BEGIN"
+                    + " INSERT INTO " + TABLE_STOCK_MOVEMENTS + " (" + COLUMN_MOVEMENT_PRODUCT_ID + ", "
+                    + COLUMN_MOVEMENT_DELTA + ", " + COLUMN_MOVEMENT_REASON + ", " + COLUMN_MOVEMENT_DATE + ")"
+                    + " VALUES (new." + COLUMN_ID + ", new." + COLUMN_QUANTITY + ", '"
+                    + StockMovement.REASON_INITIAL + "', " + NOW_MILLIS + ");"
+                    + " END",
+            // Movements are written after the stock change they record, so the product row
+            // already holds the stock including the new movement
+            "CREATE TRIGGER IF NOT EXISTS stock_snapshot AFTER INSERT ON " + TABLE_STOCK_MOVEMENTS
+                    + " WHEN (SELECT COUNT(*) FROM " + TABLE_STOCK_MOVEMENTS
+                    + " WHERE " + COLUMN_MOVEMENT_PRODUCT_ID + " = new." + COLUMN_MOVEMENT_PRODUCT_ID
+                    + " AND " + COLUMN_MOVEMENT_ID + " > IFNULL((SELECT MAX(" + COLUMN_SNAPSHOT_MOVEMENT_ID + ") FROM "
+                    + TABLE_STOCK_SNAPSHOTS + " WHERE " + COLUMN_SNAPSHOT_PRODUCT_ID + " = new."
+                    + COLUMN_MOVEMENT_PRODUCT_ID + "), 0)) >= " + STOCK_SNAPSHOT_INTERVAL + " BEGIN"
+                    + " INSERT INTO " + TABLE_STOCK_SNAPSHOTS + " SELECT new." + COLUMN_MOVEMENT_PRODUCT_ID
+                    + ", new." + COLUMN_MOVEMENT_ID + ", " + COLUMN_QUANTITY + ", new." + COLUMN_MOVEMENT_DATE
+                    + " FROM " + TABLE_PRODUCTS + " WHERE " + COLUMN_ID + " = new." + COLUMN_MOVEMENT_PRODUCT_ID + ";"
+                    + " END"
+    };
+
+    // Hot queries, kept as constants so their query plans can be checked by tests
+    static final String QUERY_ALL_PRODUCTS = "SELECT * FROM " + TABLE_PRODUCTS
+            + " ORDER BY " + COLUMN_ID + " DESC";
+    static final String QUERY_PRODUCT_BY_NAME = "SELECT * FROM " + TABLE_PRODUCTS
+            + " WHERE " + COLUMN_NAME + " = ?";
+    static final String QUERY_SALES_BETWEEN = "SELECT * FROM " + TABLE_SALES
+            + " WHERE " + COLUMN_DATE + " >= ? AND " + COLUMN_DATE + " < ?"
+            + " ORDER BY " + COLUMN_SALE_ID + " DESC";
+    static final String QUERY_TOTAL_SALES_FOR_DAYS = "SELECT SUM(" + COLUMN_SUMMARY_REVENUE + ") FROM "
+            + TABLE_DAILY_SALES + " WHERE " + COLUMN_SUMMARY_DAY + " BETWEEN ? AND ?";
+    static final String QUERY_ORDERS_BY_STATUS = "SELECT * FROM " + TABLE_ORDERS
+            + " WHERE " + COLUMN_ORDER_STATUS + " = ?"
+            + " ORDER BY " + COLUMN_ORDER_ID + " DESC";
+    static final String QUERY_ORDERS_BETWEEN = "SELECT * FROM " + TABLE_ORDERS
+            + " WHERE " + COLUMN_ORDER_DATE + " >= ? AND " + COLUMN_ORDER_DATE + " < ?"
+            + " ORDER BY " + COLUMN_ORDER_ID + " DESC";
+
+    // Past stock levels: the last snapshot taken by a date, the next one after it, and
+    // the movements between the two made by the date
+    static final String QUERY_STOCK_SNAPSHOT_AT = "SELECT " + COLUMN_SNAPSHOT_MOVEMENT_ID + ", "
+            + COLUMN_SNAPSHOT_QUANTITY + " FROM " + TABLE_STOCK_SNAPSHOTS
+            + " WHERE " + COLUMN_SNAPSHOT_PRODUCT_ID + " = ? AND " + COLUMN_SNAPSHOT_DATE + " <= ?"
+            + " ORDER BY " + COLUMN_SNAPSHOT_MOVEMENT_ID + " DESC LIMIT 1";
+    static final String QUERY_NEXT_STOCK_SNAPSHOT = "SELECT " + COLUMN_SNAPSHOT_MOVEMENT_ID + " FROM "
+            + TABLE_STOCK_SNAPSHOTS + " WHERE " + COLUMN_SNAPSHOT_PRODUCT_ID + " = ? AND "
+            + COLUMN_SNAPSHOT_MOVEMENT_ID + " > ? ORDER BY " + COLUMN_SNAPSHOT_MOVEMENT_ID + " LIMIT 1";
+    static final String QUERY_STOCK_MOVEMENTS_SUM = "SELECT IFNULL(SUM(" + COLUMN_MOVEMENT_DELTA + "), 0) FROM "
+            + TABLE_STOCK_MOVEMENTS + " WHERE " + COLUMN_MOVEMENT_PRODUCT_ID + " = ?"
+            + " AND " + COLUMN_MOVEMENT_ID + " > ? AND " + COLUMN_MOVEMENT_ID + " <= ?"
+            + " AND " + COLUMN_MOVEMENT_DATE + " <= ?";
+    static final String QUERY_STOCK_MOVEMENTS_BETWEEN = "SELECT * FROM " + TABLE_STOCK_MOVEMENTS
+            + " WHERE " + COLUMN_MOVEMENT_PRODUCT_ID + " = ? AND " + COLUMN_MOVEMENT_DATE + " >= ?"
+            + " AND " + COLUMN_MOVEMENT_DATE + " < ? ORDER BY " + COLUMN_MOVEMENT_ID;
+
+    // Full-text searches: newest matching documents first, straight from the docid order
+    static final String QUERY_SEARCH_SALES = "SELECT * FROM " + TABLE_SALES
+            + " WHERE " + COLUMN_SALE_ID + " IN (SELECT docid FROM " + TABLE_SALES_SEARCH
+            + " WHERE " + TABLE_SALES_SEARCH + " MATCH ? ORDER BY docid DESC LIMIT ?)"
+            + " ORDER BY " + COLUMN_SALE_ID + " DESC";
+    static final String QUERY_SEARCH_ORDERS = "SELECT * FROM " + TABLE_ORDERS
+            + " WHERE " + COLUMN_ORDER_ID + " IN (SELECT docid FROM " + TABLE_ORDERS_SEARCH
+            + " WHERE " + TABLE_ORDERS_SEARCH + " MATCH ? ORDER BY docid DESC LIMIT ?)"
+            + " ORDER BY " + COLUMN_ORDER_ID + " DESC";
+    // Maximum number of results returned by a search
+    private static final int SEARCH_LIMIT = 200;
+    // A full or partial date typed as yyyy-MM-dd, searched against the yyyyMMdd day token
+    private static final Pattern DATE_TOKEN = Pattern.compile("\\d{4}(-\\d{0,2}){1,2}");
+    // Anything that is not part of a word separates search terms
+    private static final Pattern TERM_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    // Exports read the history oldest first in chunks keyed on (date, id), and the products by id
+    static final String QUERY_SALES_EXPORT_CHUNK = "SELECT * FROM " + TABLE_SALES
+            + " WHERE (" + COLUMN_DATE + ", " + COLUMN_SALE_ID + ") > (?, ?) AND " + COLUMN_DATE + " < ?"
+            + " ORDER BY " + COLUMN_DATE + ", " + COLUMN_SALE_ID + " LIMIT ?";
+    static final String QUERY_ORDERS_EXPORT_CHUNK = "SELECT * FROM " + TABLE_ORDERS
+            + " WHERE (" + COLUMN_ORDER_DATE + ", " + COLUMN_ORDER_ID + ") > (?, ?) AND " + COLUMN_ORDER_DATE + " < ?"
+            + " ORDER BY " + COLUMN_ORDER_DATE + ", " + COLUMN_ORDER_ID + " LIMIT ?";
+    static final String QUERY_PRODUCTS_EXPORT_CHUNK = "SELECT * FROM " + TABLE_PRODUCTS
+            + " WHERE " + COLUMN_ID + " > ? ORDER BY " + COLUMN_ID + " LIMIT ?";
+    // Rows per export chunk: one cursor window, so the query never has to be stepped through twice
+    private static final int EXPORT_CHUNK_SIZE = 1000;
+
+    // Keyset pagination over the history, newest first
+    static final String QUERY_SALES_FIRST_PAGE = "SELECT * FROM " + TABLE_SALES
+            + " ORDER BY " + COLUMN_DATE + " DESC, " + COLUMN_SALE_ID + " DESC LIMIT ?";
+    static final String QUERY_SALES_NEXT_PAGE = "SELECT * FROM " + TABLE_SALES
+            + " WHERE (" + COLUMN_DATE + ", " + COLUMN_SALE_ID + ") < (?, ?)"
+            + " ORDER BY " + COLUMN_DATE + " DESC, " + COLUMN_SALE_ID + " DESC LIMIT ?";
+    static final String QUERY_ORDERS_FIRST_PAGE = "SELECT * FROM " + TABLE_ORDERS
+            + " ORDER BY " + COLUMN_ORDER_DATE + " DESC, " + COLUMN_ORDER_ID + " DESC LIMIT ?";
+    static final String QUERY_ORDERS_NEXT_PAGE = "SELECT * FROM " + TABLE_ORDERS
+            + " WHERE (" + COLUMN_ORDER_DATE + ", " + COLUMN_ORDER_ID + ") < (?, ?)"
+            + " ORDER BY " + COLUMN_ORDER_DATE + " DESC, " + COLUMN_ORDER_ID + " DESC LIMIT ?";
+
+    // Stock adjustments done in a single statement on the primary key, without reading the product first
+    private static final String SQL_DECREMENT_STOCK = "UPDATE " + TABLE_PRODUCTS
+            + " SET " + COLUMN_QUANTITY + " = " + COLUMN_QUANTITY + " - ?"
+            + " WHERE " + COLUMN_ID + " = ? AND " + COLUMN_QUANTITY + " >= ?";
+    private static final String SQL_INCREMENT_STOCK = "UPDATE " + TABLE_PRODUCTS
+            + " SET " + COLUMN_QUANTITY + " = " + COLUMN_QUANTITY + " + ?"
+            + " WHERE " + COLUMN_ID + " = ?";
+    private static final String SQL_INSERT_STOCK_MOVEMENT = "INSERT INTO " + TABLE_STOCK_MOVEMENTS + " ("
+            + COLUMN_MOVEMENT_PRODUCT_ID + ", " + COLUMN_MOVEMENT_DELTA + ", " + COLUMN_MOVEMENT_REASON + ", "
+            + COLUMN_MOVEMENT_DATE + ") VALUES (?, ?, ?, ?)";
+
+    // Row inserts compiled once and reused by the bulk insert methods
+    private static final String SQL_INSERT_PRODUCT = "INSERT INTO " + TABLE_PRODUCTS + " ("
+            + COLUMN_NAME + ", " + COLUMN_PRICE + ", " + COLUMN_QUANTITY + ", "
+            + COLUMN_DESCRIPTION + ", " + COLUMN_IMAGE_PATH + ", " + COLUMN_THUMBNAIL_PATH
+            + ") VALUES (?, ?, ?, ?, ?, ?)";
+    private static final String SQL_INSERT_SALE = "INSERT INTO " + TABLE_SALES + " ("
+            + COLUMN_PRODUCT_ID + ", " + COLUMN_PRODUCT_NAME + ", " + COLUMN_QUANTITY_SOLD + ", "
+            + COLUMN_UNIT_PRICE + ", " + COLUMN_TOTAL_AMOUNT + ", " + COLUMN_DATE + ") VALUES (?, ?, ?, ?, ?, ?)";
+    private static final String SQL_INSERT_ORDER = "INSERT INTO " + TABLE_ORDERS + " ("
+            + COLUMN_CUSTOMER_NAME + ", " + COLUMN_ORDER_PRODUCT_ID + ", " + COLUMN_ORDER_PRODUCT_NAME + ", "
+            + COLUMN_QUANTITY_ORDERED + ", " + COLUMN_ORDER_UNIT_PRICE + ", " + COLUMN_ORDER_TOTAL_AMOUNT + ", "
+            + COLUMN_ORDER_STATUS + ", " + COLUMN_ORDER_DATE + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    // Ticket headers and lines, compiled once per checkout
+    private static final String SQL_INSERT_SALE_TICKET = "INSERT INTO " + TABLE_SALE_TICKETS + " ("
+            + COLUMN_TICKET_TOTAL_AMOUNT + ", " + COLUMN_TICKET_DATE + ") VALUES (?, ?)";
+    private static final String SQL_INSERT_ORDER_TICKET = "INSERT INTO " + TABLE_ORDER_TICKETS + " ("
+            + COLUMN_TICKET_CUSTOMER_NAME + ", " + COLUMN_TICKET_TOTAL_AMOUNT + ", " + COLUMN_TICKET_DATE
+            + ") VALUES (?, ?, ?)";
+    private static final String SQL_INSERT_SALE_LINE = "INSERT INTO " + TABLE_SALES + " ("
+            + COLUMN_PRODUCT_ID + ", " + COLUMN_PRODUCT_NAME + ", " + COLUMN_QUANTITY_SOLD + ", "
+            + COLUMN_UNIT_PRICE + ", " + COLUMN_TOTAL_AMOUNT + ", " + COLUMN_DATE + ", "
+            + COLUMN_SALE_TICKET_ID + ") VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String SQL_INSERT_ORDER_LINE = "INSERT INTO " + TABLE_ORDERS + " ("
+            + COLUMN_CUSTOMER_NAME + ", " + COLUMN_ORDER_PRODUCT_ID + ", " + COLUMN_ORDER_PRODUCT_NAME + ", "
+            + COLUMN_QUANTITY_ORDERED + ", " + COLUMN_ORDER_UNIT_PRICE + ", " + COLUMN_ORDER_TOTAL_AMOUNT + ", "
+            + COLUMN_ORDER_STATUS + ", " + COLUMN_ORDER_DATE + ", " + COLUMN_ORDER_TICKET_ID
+            + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    // Imports: a product is matched by name, and its stock change recorded from the quantity
+    // it had before the update, once the update is written
+    private static final String SQL_QUANTITY_BY_NAME = "SELECT IFNULL((SELECT " + COLUMN_QUANTITY + " FROM "
+            + TABLE_PRODUCTS + " WHERE " + COLUMN_NAME + " = ?), 0)";
+    private static final String SQL_ADJUST_IMPORTED_STOCK = "INSERT INTO " + TABLE_STOCK_MOVEMENTS + " ("
+            + COLUMN_MOVEMENT_PRODUCT_ID + ", " + COLUMN_MOVEMENT_DELTA + ", " + COLUMN_MOVEMENT_REASON + ", "
+            + COLUMN_MOVEMENT_DATE + ") SELECT " + COLUMN_ID + ", " + COLUMN_QUANTITY + " - ?, ?, ? FROM "
+            + TABLE_PRODUCTS + " WHERE " + COLUMN_NAME + " = ? AND " + COLUMN_QUANTITY + " <> ?";
+    private static final String SQL_UPDATE_PRODUCT_BY_NAME = "UPDATE " + TABLE_PRODUCTS
+            + " SET " + COLUMN_PRICE + " = ?, " + COLUMN_QUANTITY + " = ?, "
+            + COLUMN_DESCRIPTION + " = IFNULL(?, " + COLUMN_DESCRIPTION + ")"
+            + " WHERE " + COLUMN_NAME + " = ?";
+    private static final String SQL_IMPORT_SALE = "INSERT INTO " + TABLE_SALES + " ("
+            + COLUMN_PRODUCT_ID + ", " + COLUMN_PRODUCT_NAME + ", " + COLUMN_QUANTITY_SOLD + ", "
+            + COLUMN_UNIT_PRICE + ", " + COLUMN_TOTAL_AMOUNT + ", " + COLUMN_DATE + ") VALUES (("
+            + "SELECT " + COLUMN_ID + " FROM " + TABLE_PRODUCTS + " WHERE " + COLUMN_NAME + " = ?"
+            + "), ?, ?, ?, ?, ?)";
+
+    // Backups and the orphan sweep: the product images in use, both renditions,
+    // and the checkpoint emptying the write-ahead log
+    private static final String QUERY_IMAGE_PATHS = "SELECT " + COLUMN_IMAGE_PATH + " FROM "
+            + TABLE_PRODUCTS + " WHERE " + COLUMN_IMAGE_PATH + " <> '' UNION SELECT " + COLUMN_THUMBNAIL_PATH
+            + " FROM " + TABLE_PRODUCTS + " WHERE " + COLUMN_THUMBNAIL_PATH + " <> ''";
+    private static final String PRAGMA_CHECKPOINT = "PRAGMA wal_checkpoint(TRUNCATE)";
+    // A reader still on an old snapshot keeps the log busy; it is retried for about a second
+    private static final int CHECKPOINT_ATTEMPTS = 20;
+    private static final long CHECKPOINT_RETRY_MILLIS = 50;
+
+    // Rows committed per transaction by the bulk insert methods unless told otherwise
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    // Whole months of history kept in the live database, besides the current one, by default
+    public static final int DEFAULT_KEEP_MONTHS = 6;
+    // Schema of a monthly archive: the history tables and their search index. Foreign keys
+    // are never enabled on an archive, so the productId references are inert there.
+    private static final String[] ARCHIVE_SCHEMA = archiveSchema();
+
+
+    // Process-wide instance, kept open for the lifetime of the application
+    private static DBHelper instance;
+    // When set, opening the database from the main thread throws (enabled in debug builds)
+    private static volatile boolean mainThreadChecksEnabled;
+
+    // Products answered from memory; every product and stock write below goes through it
+    private final ProductCatalog catalog = new ProductCatalog();
+    // Monthly archives of the sales and orders moved out of this database
+    private final HistoryArchive archive;
+
+    /**
+     * Get the shared database helper.
+     * The underlying connection is opened once and reused by every controller,
+     * so callers must not close it.
+     * @param context Any context; only the application context is retained
+     * @return The process-wide DBHelper instance
+     */
+    public static synchronized DBHelper getInstance(Context context) {
+        if (instance == null) {
+            instance = new DBHelper(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private DBHelper(Context context) {
+        this(context, DATABASE_NAME);
+    }
+
+    /**
+     * Create a helper on a specific database file.
+     * Used by tests; pass a null name for a private in-memory database.
+     */
+    DBHelper(Context context, String databaseName) {
+        super(context, databaseName, null, DATABASE_VERSION);
+        // Write-ahead logging lets history scans run while a sale is being written
+        setWriteAheadLoggingEnabled(true);
+        archive = new HistoryArchive(databaseName == null ? null : context.getDatabasePath(databaseName).getParentFile(),
+                databaseName == null ? DATABASE_NAME : databaseName, ARCHIVE_SCHEMA);
+    }
+
+    /**
+     * Make every database access from the main thread fail fast.
+     * Enabled by debug builds so a controller bypassing JucygoRepository is caught in development.
+     * @param enabled true to throw on main-thread access
+     */
+    public static void setMainThreadChecksEnabled(boolean enabled) {
+        mainThreadChecksEnabled = enabled;
+    }
+
+    @Override
+    public SQLiteDatabase getReadableDatabase() {
+        checkNotMainThread();
+        return super.getReadableDatabase();
+    }
+
+    @Override
+    public SQLiteDatabase getWritableDatabase() {
+        checkNotMainThread();
+        return super.getWritableDatabase();
+    }
+
+    /**
+     * Throw if the database is used from the main thread while checks are enabled.
+     */
+    private static void checkNotMainThread() {
+        if (mainThreadChecksEnabled && Looper.getMainLooper().isCurrentThread()) {
+            throw new IllegalStateException("Database accessed on the main thread; use JucygoRepository");
+        }
+    }
+
+    /**
+     * Get the in-memory product catalog, e.g. to read its hit and miss counters.
+     * @return The catalog backing the product lookups of this helper
+     */
+    public ProductCatalog getProductCatalog() {
+        return catalog;
+    }
+
+    /**
+     * Load the product catalog if it is not loaded yet.
+     * If a product write lands while the products are being read, or a stock change is
+     * still being committed, the products read are served for this lookup only rather than
+     * cached, so a stale snapshot is never cached and the lookup never waits for the writer.
+     * @return The loaded catalog, or a catalog of the products read for this lookup only
+     */
+    private ProductCatalog loadedCatalog() {
+        checkNotMainThread();
+        if (catalog.isLoaded()) {
+            return catalog;
+        }
+        long version = catalog.getVersion();
+        List<Product> products = readProducts(this.getReadableDatabase().rawQuery(QUERY_ALL_PRODUCTS, null));
+        return catalog.load(products, version) ? catalog : ProductCatalog.of(products);
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        // Enforce the productId references of sales and orders. Enabled once the schema is
+        // up to date rather than in onConfigure, so an upgrade can rebuild the products
+        // table without its drop clearing every reference to it.
+        db.setForeignKeyConstraintsEnabled(true);
     }
 
     @Override
     public void onCreate(SQLiteDatabase db) {
         db.execSQL(CREATE_TABLE_PRODUCTS);
+        db.execSQL(CREATE_TABLE_SALE_TICKETS);
+        db.execSQL(CREATE_TABLE_ORDER_TICKETS);
         db.execSQL(CREATE_TABLE_SALES);
         db.execSQL(CREATE_TABLE_ORDERS);
+        db.execSQL(CREATE_TABLE_DAILY_SALES);
+        db.execSQL(CREATE_TABLE_STOCK_MOVEMENTS);
+        db.execSQL(CREATE_TABLE_STOCK_SNAPSHOTS);
+        createIndexes(db);
+        createSearchIndex(db);
+        createSummaryTriggers(db);
+        createStockTriggers(db);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // Tables created by this upgrade already have their current definition
+        // and are left out of the later rebuild steps
+        boolean salesExisted = oldVersion >= 2;
+        boolean ordersExisted = oldVersion >= 3;
+
+        if (oldVersion < 11) {
+            // Ticket headers for version 11, referenced by the sales and orders definitions
+            db.execSQL(CREATE_TABLE_SALE_TICKETS);
+            db.execSQL(CREATE_TABLE_ORDER_TICKETS);
+        }
+
         if (oldVersion < 2) {
             // Create sales table for version 2
             db.execSQL(CREATE_TABLE_SALES);
@@ -106,6 +604,299 @@ public class DBHelper extends SQLiteOpenHelper {
             // Add imagePath column to products table for version 4
             db.execSQL("ALTER TABLE " + TABLE_PRODUCTS + " ADD COLUMN " + COLUMN_IMAGE_PATH + " TEXT");
         }
+        if (oldVersion < 5) {
+            // Product names become unique for version 5: rename older duplicates
+            // so the unique index can be built without losing any product
+            db.execSQL("UPDATE " + TABLE_PRODUCTS + " SET " + COLUMN_NAME + " = "
+                    + COLUMN_NAME + " || ' (' || " + COLUMN_ID + " || ')'"
+                    + " WHERE " + COLUMN_ID + " NOT IN (SELECT MIN(" + COLUMN_ID + ") FROM "
+                    + TABLE_PRODUCTS + " GROUP BY " + COLUMN_NAME + ")");
+        }
+        if (oldVersion < 6) {
+            // Full-text search over sales and orders for version 6
+            createSearchIndex(db);
+            db.execSQL("INSERT INTO " + TABLE_SALES_SEARCH + "(docid, " + COLUMN_PRODUCT_NAME + ", "
+                    + COLUMN_SEARCH_DAY + ") SELECT " + COLUMN_SALE_ID + ", " + COLUMN_PRODUCT_NAME + ", "
+                    + "replace(substr(" + COLUMN_DATE + ", 1, 10), '-', '') FROM " + TABLE_SALES);
+            db.execSQL("INSERT INTO " + TABLE_ORDERS_SEARCH + "(docid, " + COLUMN_CUSTOMER_NAME + ", "
+                    + COLUMN_ORDER_PRODUCT_NAME + ", " + COLUMN_SEARCH_DAY + ") SELECT " + COLUMN_ORDER_ID + ", "
+                    + COLUMN_CUSTOMER_NAME + ", " + COLUMN_ORDER_PRODUCT_NAME + ", "
+                    + "replace(substr(" + COLUMN_ORDER_DATE + ", 1, 10), '-', '') FROM " + TABLE_ORDERS);
+        }
+        if (oldVersion < 10) {
+            // Amounts become INTEGER cents for version 10
+            rebuildProducts(db);
+        }
+        if (oldVersion < 7) {
+            // Dates become INTEGER epoch milliseconds for version 7. The old text dates
+            // were written in local time, which the 'utc' modifier converts from.
+            // Sales and orders also reference their product by id for version 8,
+            // matched on the name they were recorded with.
+            // Their amounts become INTEGER cents for version 10.
+            String epochDate = "COALESCE(CAST(strftime('%s', " + COLUMN_DATE + ", 'utc') AS INTEGER) * 1000, 0)";
+            if (salesExisted) {
+                rebuildSales(db, productIdByName(TABLE_SALES, COLUMN_PRODUCT_NAME), epochDate);
+            }
+            if (ordersExisted) {
+                rebuildOrders(db, productIdByName(TABLE_ORDERS, COLUMN_ORDER_PRODUCT_NAME), epochDate);
+            }
+        } else if (oldVersion < 8) {
+            // Sales and orders reference their product by id for version 8,
+            // matched on the name they were recorded with, and their amounts
+            // become INTEGER cents for version 10
+            rebuildSales(db, productIdByName(TABLE_SALES, COLUMN_PRODUCT_NAME), COLUMN_DATE);
+            rebuildOrders(db, productIdByName(TABLE_ORDERS, COLUMN_ORDER_PRODUCT_NAME), COLUMN_ORDER_DATE);
+        } else if (oldVersion < 10) {
+            // Amounts become INTEGER cents for version 10
+            rebuildSales(db, COLUMN_PRODUCT_ID, COLUMN_DATE);
+            rebuildOrders(db, COLUMN_ORDER_PRODUCT_ID, COLUMN_ORDER_DATE);
+        }
+        if (oldVersion < 10) {
+            // Daily sales summary for version 9, filled from the existing sales.
+            // Rebuilt from the sales in cents for version 10 so it matches them exactly.
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_DAILY_SALES);
+            db.execSQL(CREATE_TABLE_DAILY_SALES);
+            db.execSQL("INSERT INTO " + TABLE_DAILY_SALES + " SELECT " + localDay(COLUMN_DATE) + ", "
+                    + "IFNULL(" + COLUMN_PRODUCT_ID + ", 0), SUM(" + COLUMN_QUANTITY_SOLD + "), "
+                    + "SUM(" + COLUMN_TOTAL_AMOUNT + "), COUNT(*) FROM " + TABLE_SALES + " GROUP BY 1, 2");
+        }
+        if (oldVersion == 10) {
+            // Sales and orders lines point at their ticket for version 11. Older
+            // tables were rebuilt or created above with the column.
+            db.execSQL("ALTER TABLE " + TABLE_SALES + " ADD COLUMN " + COLUMN_SALE_TICKET_ID
+                    + " INTEGER REFERENCES " + TABLE_SALE_TICKETS + "(" + COLUMN_TICKET_ID + ") ON DELETE CASCADE");
+            db.execSQL("ALTER TABLE " + TABLE_ORDERS + " ADD COLUMN " + COLUMN_ORDER_TICKET_ID
+                    + " INTEGER REFERENCES " + TABLE_ORDER_TICKETS + "(" + COLUMN_TICKET_ID + ") ON DELETE CASCADE");
+        }
+        if (oldVersion < 12) {
+            // Stock ledger for version 12, opened with the current stock of every product
+            db.execSQL(CREATE_TABLE_STOCK_MOVEMENTS);
+            db.execSQL(CREATE_TABLE_STOCK_SNAPSHOTS);
+            db.execSQL("INSERT INTO " + TABLE_STOCK_MOVEMENTS + " (" + COLUMN_MOVEMENT_PRODUCT_ID + ", "
+                    + COLUMN_MOVEMENT_DELTA + ", " + COLUMN_MOVEMENT_REASON + ", " + COLUMN_MOVEMENT_DATE + ")"
+                    + " SELECT " + COLUMN_ID + ", " + COLUMN_QUANTITY + ", '" + StockMovement.REASON_INITIAL + "', "
+                    + NOW_MILLIS + " FROM " + TABLE_PRODUCTS + " WHERE " + COLUMN_QUANTITY + " <> 0");
+        }
+        if (oldVersion >= 10 && oldVersion < 13) {
+            // Thumbnails of product photos for version 13; older tables were rebuilt
+            // above with the column. Existing photos get theirs from ProductImages.
+            db.execSQL("ALTER TABLE " + TABLE_PRODUCTS + " ADD COLUMN " + COLUMN_THUMBNAIL_PATH + " TEXT");
+        }
+        // Triggers and indexes are dropped along with rebuilt tables; both are
+        // created last, once every table has its final columns
+        createSearchTriggers(db);
+        createSummaryTriggers(db);
+        createStockTriggers(db);
+        createIndexes(db);
+    }
+
+    /**
+     * Create the triggers keeping the daily sales summary in step with the sales table.
+     * @param db The database being created or upgraded
+     */
+    private void createSummaryTriggers(SQLiteDatabase db) {
+        for (String statement : CREATE_SUMMARY_TRIGGERS) {
+            db.execSQL(statement);
+        }
+    }
+
+    /**
+     * Create the triggers guarding the stock ledger and writing its snapshots.
+     * @param db The database being created or upgraded
+     */
+    private void createStockTriggers(SQLiteDatabase db) {
+        for (String statement : CREATE_STOCK_TRIGGERS) {
+            db.execSQL(statement);
+        }
+    }
+
+    /**
+     * Build the expression turning an epoch milliseconds column into its local yyyyMMdd day.
+     * @param dateColumn The date column or expression
+     * @return The day expression
+     */
+    private static String localDay(String dateColumn) {
+        return "CAST(strftime('%Y%m%d', " + dateColumn + " / 1000, 'unixepoch', 'localtime') AS INTEGER)";
+    }
+
+    /**
+     * Build the trigger statements adding a sale row to its summary row, creating it if needed.
+     * @param row The trigger row, "new" or "old"
+     * @return The statements, each terminated by a semicolon
+     */
+    private static String addToDailySales(String row) {
+        String day = localDay(row + "." + COLUMN_DATE);
+        String productId = "IFNULL(" + row + "." + COLUMN_PRODUCT_ID + ", 0)";
+        return " INSERT OR IGNORE INTO " + TABLE_DAILY_SALES + " VALUES (" + day + ", " + productId + ", 0, 0, 0);"
+                + " UPDATE " + TABLE_DAILY_SALES + " SET "
+                + COLUMN_SUMMARY_UNITS + " = " + COLUMN_SUMMARY_UNITS + " + " + row + "." + COLUMN_QUANTITY_SOLD + ", "
+                + COLUMN_SUMMARY_REVENUE + " = " + COLUMN_SUMMARY_REVENUE + " + " + row + "." + COLUMN_TOTAL_AMOUNT + ", "
+                + COLUMN_SUMMARY_SALE_COUNT + " = " + COLUMN_SUMMARY_SALE_COUNT + " + 1"
+                + " WHERE " + COLUMN_SUMMARY_DAY + " = " + day + " AND " + COLUMN_SUMMARY_PRODUCT_ID + " = " + productId + ";";
+    }
+
+    /**
+     * Build the trigger statements taking a sale row out of its summary row, dropping it once empty.
+     * @param row The trigger row, "new" or "old"
+     * @return The statements, each terminated by a semicolon
+     */
+    private static String removeFromDailySales(String row) {
+        String day = localDay(row + "." + COLUMN_DATE);
+        String productId = "IFNULL(" + row + "." + COLUMN_PRODUCT_ID + ", 0)";
+        String key = " WHERE " + COLUMN_SUMMARY_DAY + " = " + day + " AND " + COLUMN_SUMMARY_PRODUCT_ID + " = " + productId;
+        return " UPDATE " + TABLE_DAILY_SALES + " SET "
+                + COLUMN_SUMMARY_UNITS + " = " + COLUMN_SUMMARY_UNITS + " - " + row + "." + COLUMN_QUANTITY_SOLD + ", "
+                + COLUMN_SUMMARY_REVENUE + " = " + COLUMN_SUMMARY_REVENUE + " - " + row + "." + COLUMN_TOTAL_AMOUNT + ", "
+                + COLUMN_SUMMARY_SALE_COUNT + " = " + COLUMN_SUMMARY_SALE_COUNT + " - 1" + key + ";"
+                + " DELETE FROM " + TABLE_DAILY_SALES + key + " AND " + COLUMN_SUMMARY_SALE_COUNT + " = 0;";
+    }
+
+    /**
+     * Build the CREATE TABLE statement of the products table under a given name.
+     * @param table The name of the table to create
+     * @return The statement
+     */
+    private static String createProductsTable(String table) {
+        return "CREATE TABLE " + table + "("
+                + COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT,"
+                + COLUMN_NAME + " TEXT NOT NULL,"
+                + COLUMN_PRICE + " INTEGER NOT NULL,"
+                + COLUMN_QUANTITY + " INTEGER NOT NULL,"
+                + COLUMN_DESCRIPTION + " TEXT,"
+                + COLUMN_IMAGE_PATH + " TEXT,"
+                + COLUMN_THUMBNAIL_PATH + " TEXT"
+                + ")";
+    }
+
+    /**
+     * Build the statements creating a monthly archive: the ticket, sales and orders tables
+     * as defined in the live schema, their date indexes and their search index.
+     * @return The statements, in order
+     */
+    private static String[] archiveSchema() {
+        List<String> schema = new ArrayList<>();
+        schema.add(CREATE_TABLE_SALE_TICKETS);
+        schema.add(CREATE_TABLE_ORDER_TICKETS);
+        schema.add(CREATE_TABLE_SALES);
+        schema.add(CREATE_TABLE_ORDERS);
+        schema.add("CREATE INDEX idx_sales_date ON " + TABLE_SALES + "(" + COLUMN_DATE + ")");
+        schema.add("CREATE INDEX idx_orders_date ON " + TABLE_ORDERS + "(" + COLUMN_ORDER_DATE + ")");
+        Collections.addAll(schema, CREATE_SEARCH_TABLES);
+        Collections.addAll(schema, CREATE_SEARCH_TRIGGERS);
+        return schema.toArray(new String[0]);
+    }
+
+    /**
+     * Build the expression turning an old REAL amount column into whole cents.
+     * @param column The amount column, in currency units
+     * @return The cents expression
+     */
+    private static String cents(String column) {
+        return "CAST(ROUND(" + column + " * 100) AS INTEGER)";
+    }
+
+    /**
+     * Rebuild the products table with the current definition.
+     * Sales and orders reference it by name, and renaming it away would make SQLite
+     * rewrite those references to the old table. The new table is therefore built
+     * beside it and renamed into place once the old one is dropped. This relies on
+     * foreign keys being off during upgrades, see onOpen.
+     * @param db The database being upgraded
+     */
+    private void rebuildProducts(SQLiteDatabase db) {
+        String newTable = TABLE_PRODUCTS + "_new";
+        db.execSQL(createProductsTable(newTable));
+        db.execSQL("INSERT INTO " + newTable + " (" + COLUMN_ID + ", " + COLUMN_NAME + ", " + COLUMN_PRICE + ", "
+                + COLUMN_QUANTITY + ", " + COLUMN_DESCRIPTION + ", " + COLUMN_IMAGE_PATH + ") SELECT "
+                + COLUMN_ID + ", " + COLUMN_NAME + ", " + cents(COLUMN_PRICE) + ", " + COLUMN_QUANTITY + ", "
+                + COLUMN_DESCRIPTION + ", " + COLUMN_IMAGE_PATH + " FROM " + TABLE_PRODUCTS);
+        db.execSQL("DROP TABLE " + TABLE_PRODUCTS);
+        db.execSQL("ALTER TABLE " + newTable + " RENAME TO " + TABLE_PRODUCTS);
+    }
+
+    /**
+     * Rebuild the sales table with the current definition, converting its amounts to cents.
+     * @param db The database being upgraded
+     * @param productIdColumn The expression producing the productId column from the old table
+     * @param dateColumn The expression producing the date column from the old table
+     */
+    private void rebuildSales(SQLiteDatabase db, String productIdColumn, String dateColumn) {
+        rebuildTable(db, TABLE_SALES, CREATE_TABLE_SALES,
+                COLUMN_SALE_ID + ", " + productIdColumn + ", "
+                        + COLUMN_PRODUCT_NAME + ", " + COLUMN_QUANTITY_SOLD + ", " + cents(COLUMN_UNIT_PRICE) + ", "
+                        + cents(COLUMN_TOTAL_AMOUNT) + ", " + dateColumn + ", NULL");
+    }
+
+    /**
+     * Rebuild the orders table with the current definition, converting its amounts to cents.
+     * @param db The database being upgraded
+     * @param productIdColumn The expression producing the productId column from the old table
+     * @param dateColumn The expression producing the date column from the old table
+     */
+    private void rebuildOrders(SQLiteDatabase db, String productIdColumn, String dateColumn) {
+        rebuildTable(db, TABLE_ORDERS, CREATE_TABLE_ORDERS,
+                COLUMN_ORDER_ID + ", " + COLUMN_CUSTOMER_NAME + ", " + productIdColumn + ", "
+                        + COLUMN_ORDER_PRODUCT_NAME + ", " + COLUMN_QUANTITY_ORDERED + ", "
+                        + cents(COLUMN_ORDER_UNIT_PRICE) + ", " + cents(COLUMN_ORDER_TOTAL_AMOUNT) + ", "
+                        + COLUMN_ORDER_STATUS + ", " + dateColumn + ", NULL");
+    }
+
+    /**
+     * Build the expression looking up a product id from the name copied into a row.
+     * @param table The table being rebuilt, read under the temporary name given by rebuildTable
+     * @param productNameColumn The column holding the product name
+     * @return The subquery to use as a select column of rebuildTable
+     */
+    private String productIdByName(String table, String productNameColumn) {
+        return "(SELECT p." + COLUMN_ID + " FROM " + TABLE_PRODUCTS + " p WHERE p." + COLUMN_NAME + " = "
+                + table + "_old." + productNameColumn + ")";
+    }
+
+    /**
+     * Create the secondary indexes used by lookups, searches and reports.
+     * @param db The database being created or upgraded
+     */
+    private void createIndexes(SQLiteDatabase db) {
+        for (String createIndex : CREATE_INDEXES) {
+            db.execSQL(createIndex);
+        }
+    }
+
+    /**
+     * Create the full-text search tables and their sync triggers.
+     * @param db The database being created or upgraded
+     */
+    private void createSearchIndex(SQLiteDatabase db) {
+        for (String statement : CREATE_SEARCH_TABLES) {
+            db.execSQL(statement);
+        }
+        createSearchTriggers(db);
+    }
+
+    /**
+     * Create the triggers keeping the search tables in sync with sales and orders.
+     * @param db The database being created or upgraded
+     */
+    private void createSearchTriggers(SQLiteDatabase db) {
+        for (String statement : CREATE_SEARCH_TRIGGERS) {
+            db.execSQL(statement);
+        }
+    }
+
+    /**
+     * Recreate a table with a new definition, copying its rows across.
+     * Indexes and triggers of the old table are dropped with it and must be recreated.
+     * @param db The database being upgraded
+     * @param table The table to rebuild
+     * @param createTable The CREATE TABLE statement of the new definition
+     * @param selectColumns The old-table expressions producing each new column, in order
+     */
+    private void rebuildTable(SQLiteDatabase db, String table, String createTable, String selectColumns) {
+        String oldTable = table + "_old";
+        db.execSQL("ALTER TABLE " + table + " RENAME TO " + oldTable);
+        db.execSQL(createTable);
+        db.execSQL("INSERT INTO " + table + " SELECT " + selectColumns + " FROM " + oldTable);
+        db.execSQL("DROP TABLE " + oldTable);
     }
 
     /**
@@ -118,95 +909,125 @@ public class DBHelper extends SQLiteOpenHelper {
         ContentValues values = new ContentValues();
 
         values.put(COLUMN_NAME, product.getName());
-        values.put(COLUMN_PRICE, product.getPrice());
+        values.put(COLUMN_PRICE, product.getPrice().getCents());
         values.put(COLUMN_QUANTITY, product.getQuantity());
         values.put(COLUMN_DESCRIPTION, product.getDescription());
         values.put(COLUMN_IMAGE_PATH, product.getImagePath());
+        values.put(COLUMN_THUMBNAIL_PATH, product.getThumbnailPath());
 
         long result = db.insert(TABLE_PRODUCTS, null, values);
-        db.close();
+        if (result != -1) {
+            catalog.put(new Product((int) result, product.getName(), product.getPrice(),
+                    product.getQuantity(), product.getDescription(), product.getImagePath(),
+                    product.getThumbnailPath()));
+        }
         return result;
     }
 
     /**
-     * Retrieve all products from the database.
-     * @return List of all products
+     * Retrieve all products, from the catalog once it is loaded.
+     * @return List of all products, newest first
      */
     public List<Product> getAllProducts() {
-        List<Product> productList = new ArrayList<>();
-        String selectQuery = "SELECT * FROM " + TABLE_PRODUCTS + " ORDER BY " + COLUMN_ID + " DESC";
-
-        SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.rawQuery(selectQuery, null);
-
-        if (cursor.moveToFirst()) {
-            do {
-                Product product = new Product(
-                        cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_ID)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_NAME)),
-                        cursor.getDouble(cursor.getColumnIndexOrThrow(COLUMN_PRICE)),
-                        cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_QUANTITY)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_DESCRIPTION)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_IMAGE_PATH))
-                );
-                productList.add(product);
-            } while (cursor.moveToNext());
-        }
-
-        cursor.close();
-        db.close();
-        return productList;
+        return loadedCatalog().getAll();
     }
 
     /**
-     * Retrieve a product by its ID from the database.
+     * Retrieve a product by its ID, from the catalog once it is loaded.
      * @param id The id of the product to retrieve
      * @return The product if found, null otherwise
      */
     public Product getProductById(int id) {
-        SQLiteDatabase db = this.getReadableDatabase();
-        String selectQuery = "SELECT * FROM " + TABLE_PRODUCTS + " WHERE " + COLUMN_ID + " = ?";
-
-        Cursor cursor = db.rawQuery(selectQuery, new String[]{String.valueOf(id)});
-
-        Product product = null;
-        if (cursor.moveToFirst()) {
-            product = new Product(
-                    cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_ID)),
-                    cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_NAME)),
-                    cursor.getDouble(cursor.getColumnIndexOrThrow(COLUMN_PRICE)),
-                    cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_QUANTITY)),
-                    cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_DESCRIPTION)),
-                    cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_IMAGE_PATH))
-            );
-        }
-
-        cursor.close();
-        db.close();
-        return product;
+        return loadedCatalog().getById(id);
     }
 
     /**
      * Update an existing product in the database.
+     * The stock is changed by the amount edited by hand rather than set to the quantity of the
+     * product, so sales recorded since it was loaded are kept; the product's quantity is then
+     * set to the stock saved.
      * @param product The product to update (must have a valid id)
+     * @param stockChange The change made to the stock by hand, 0 to leave it alone; the stock never goes below 0
      * @return The number of rows affected
      */
-    public int updateProduct(Product product) {
+    public int updateProduct(Product product, int stockChange) {
         SQLiteDatabase db = this.getWritableDatabase();
         ContentValues values = new ContentValues();
 
         values.put(COLUMN_NAME, product.getName());
-        values.put(COLUMN_PRICE, product.getPrice());
-        values.put(COLUMN_QUANTITY, product.getQuantity());
+        values.put(COLUMN_PRICE, product.getPrice().getCents());
         values.put(COLUMN_DESCRIPTION, product.getDescription());
         values.put(COLUMN_IMAGE_PATH, product.getImagePath());
-
-        int result = db.update(TABLE_PRODUCTS, values, COLUMN_ID + " = ?",
-                new String[]{String.valueOf(product.getId())});
-        db.close();
+        values.put(COLUMN_THUMBNAIL_PATH, product.getThumbnailPath());
+
+        String[] idArgs = new String[]{String.valueOf(product.getId())};
+        int result;
+        boolean renamed = false;
+        db.beginTransaction();
+        try {
+            int previousQuantity = quantityOf(db, product.getId());
+            renamed = !product.getName().equals(nameOf(db, product.getId()));
+            int quantity = Math.max(0, previousQuantity + stockChange);
+            values.put(COLUMN_QUANTITY, quantity);
+            result = db.update(TABLE_PRODUCTS, values, COLUMN_ID + " = ?", idArgs);
+            if (result > 0) {
+                product.setQuantity(quantity);
+                // A quantity typed in by hand is a manual adjustment of the stock
+                if (quantity != previousQuantity) {
+                    recordMovement(db, product.getId(), quantity - previousQuantity, StockMovement.REASON_ADJUST);
+                }
+                if (renamed) {
+                    renameInHistory(db, product);
+                }
+            }
+            db.setTransactionSuccessful();
+        } catch (SQLiteConstraintException e) {
+            // Another product already uses this name
+            result = 0;
+        } finally {
+            db.endTransaction();
+        }
+        if (result > 0) {
+            catalog.put(product);
+            if (renamed) {
+                // The archives are separate files, so they are renamed after the live database commits
+                for (int month : archive.getMonths()) {
+                    SQLiteDatabase archiveDb = archive.openForReading(month);
+                    if (archiveDb == null) {
+                        continue;
+                    }
+                    try {
+                        archiveDb.beginTransaction();
+                        try {
+                            renameInHistory(archiveDb, product);
+                            archiveDb.setTransactionSuccessful();
+                        } finally {
+                            archiveDb.endTransaction();
+                        }
+                    } finally {
+                        archiveDb.close();
+                    }
+                }
+            }
+        }
         return result;
     }
 
+    /**
+     * Give the sales and orders of a product in one partition its current name, so its
+     * history is listed and searched under that name; the search triggers follow.
+     */
+    private static void renameInHistory(SQLiteDatabase db, Product product) {
+        String[] args = new String[]{String.valueOf(product.getId()), product.getName()};
+        ContentValues saleName = new ContentValues();
+        saleName.put(COLUMN_PRODUCT_NAME, product.getName());
+        db.update(TABLE_SALES, saleName, COLUMN_PRODUCT_ID + " = ? AND " + COLUMN_PRODUCT_NAME + " <> ?", args);
+        ContentValues orderName = new ContentValues();
+        orderName.put(COLUMN_ORDER_PRODUCT_NAME, product.getName());
+        db.update(TABLE_ORDERS, orderName, COLUMN_ORDER_PRODUCT_ID + " = ? AND "
+                + COLUMN_ORDER_PRODUCT_NAME + " <> ?", args);
+    }
+
     /**
      * Delete a product from the database.
      * @param id The id of the product to delete
@@ -216,46 +1037,29 @@ public class DBHelper extends SQLiteOpenHelper {
         SQLiteDatabase db = this.getWritableDatabase();
         int result = db.delete(TABLE_PRODUCTS, COLUMN_ID + " = ?",
                 new String[]{String.valueOf(id)});
-        db.close();
+        if (result > 0) {
+            catalog.remove(id);
+        }
         return result;
     }
 
     /**
-     * Get a product by name.
+     * Get a product by name, from the catalog once it is loaded.
      * @param productName The name of the product
      * @return The product if found, null otherwise
      */
     public Product getProductByName(String productName) {
-        SQLiteDatabase db = this.getReadableDatabase();
-        String selectQuery = "SELECT * FROM " + TABLE_PRODUCTS + " WHERE " + COLUMN_NAME + " = ?";
-
-        Cursor cursor = db.rawQuery(selectQuery, new String[]{productName});
-
-        Product product = null;
-        if (cursor.moveToFirst()) {
-            product = new Product(
-                    cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_ID)),
-                    cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_NAME)),
-                    cursor.getDouble(cursor.getColumnIndexOrThrow(COLUMN_PRICE)),
-                    cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_QUANTITY)),
-                    cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_DESCRIPTION)),
-                    cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_IMAGE_PATH))
-            );
-        }
-
-        cursor.close();
-        db.close();
-        return product;
+        return loadedCatalog().getByName(productName);
     }
 
     /**
      * Check if a product has sufficient stock for a sale.
-     * @param productName The name of the product
+     * @param productId The id of the product
      * @param quantityRequested The quantity to be sold
      * @return true if stock is sufficient, false otherwise
      */
-    public boolean isStockSufficient(String productName, int quantityRequested) {
-        Product product = getProductByName(productName);
+    public boolean isStockSufficient(int productId, int quantityRequested) {
+        Product product = getProductById(productId);
         if (product == null) {
             return false;
         }
@@ -264,28 +1068,143 @@ public class DBHelper extends SQLiteOpenHelper {
 
     /**
      * Update product stock after a sale.
-     * @param productName The name of the product
+     * @param productId The id of the product
      * @param quantitySold The quantity sold
      * @return The number of rows affected
      */
-    public int updateStockAfterSale(String productName, int quantitySold) {
-        Product product = getProductByName(productName);
-        if (product == null) {
-            return 0;
+    public int updateStockAfterSale(int productId, int quantitySold) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        int result;
+        catalog.beginStockChange();
+        try {
+            db.beginTransaction();
+            try {
+                // Single conditional statement: never lets stock go negative
+                result = decrementStock(db, productId, quantitySold, StockMovement.REASON_SALE);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            if (result > 0) {
+                catalog.adjustQuantity(productId, -quantitySold);
+            }
+        } finally {
+            catalog.endStockChange();
+        }
+        return result;
+    }
+
+    /**
+     * Take a quantity out of stock, only if enough units are available, and record the
+     * movement in the stock ledger. Must be called inside the caller's transaction.
+     * @param db The writable database
+     * @param productId The id of the product
+     * @param quantity The quantity to remove
+     * @param reason Why the stock is taken, one of the StockMovement reasons
+     * @return The number of rows affected (0 if the product is unknown or stock is insufficient)
+     */
+    private int decrementStock(SQLiteDatabase db, int productId, int quantity, String reason) {
+        SQLiteStatement statement = db.compileStatement(SQL_DECREMENT_STOCK);
+        int result;
+        try {
+            statement.bindLong(1, quantity);
+            statement.bindLong(2, productId);
+            statement.bindLong(3, quantity);
+            result = statement.executeUpdateDelete();
+        } finally {
+            statement.close();
         }
+        if (result > 0) {
+            recordMovement(db, productId, -quantity, reason);
+        }
+        return result;
+    }
 
-        int newQuantity = product.getQuantity() - quantitySold;
-        if (newQuantity < 0) {
-            return 0; // Prevent negative stock
+    /**
+     * Put a quantity back into stock and record the movement in the stock ledger.
+     * Must be called inside the caller's transaction.
+     * @param db The writable database
+     * @param productId The id of the product
+     * @param quantity The quantity to add back
+     * @param reason Why the stock is put back, one of the StockMovement reasons
+     * @return The number of rows affected
+     */
+    private int incrementStock(SQLiteDatabase db, int productId, int quantity, String reason) {
+        SQLiteStatement statement = db.compileStatement(SQL_INCREMENT_STOCK);
+        int result;
+        try {
+            statement.bindLong(1, quantity);
+            statement.bindLong(2, productId);
+            result = statement.executeUpdateDelete();
+        } finally {
+            statement.close();
         }
+        if (result > 0) {
+            recordMovement(db, productId, quantity, reason);
+        }
+        return result;
+    }
 
-        SQLiteDatabase db = this.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        values.put(COLUMN_QUANTITY, newQuantity);
+    /**
+     * Work out why a conditional stock decrement did not update any row.
+     * @param db The database
+     * @param productId The id of the product
+     * @return UNKNOWN_PRODUCT if no such product exists, INSUFFICIENT_STOCK otherwise
+     */
+    private StockResult stockFailureReason(SQLiteDatabase db, int productId) {
+        long count = DatabaseUtils.queryNumEntries(db, TABLE_PRODUCTS, COLUMN_ID + " = ?",
+                new String[]{String.valueOf(productId)});
+        return count == 0 ? StockResult.UNKNOWN_PRODUCT : StockResult.INSUFFICIENT_STOCK;
+    }
+
+    /**
+     * Record a sale and take its quantity out of stock in one transaction.
+     * The stock check and the decrement are a single conditional UPDATE, so two
+     * tills selling the last units at the same time can never oversell.
+     * @param sale The sale to record
+     * @return OK if the sale was saved, otherwise the reason nothing was saved
+     */
+    public StockResult recordSale(Sale sale) {
+        return insertTakingStock(TABLE_SALES, saleValues(sale), sale.getProductId(), sale.getQuantitySold(),
+                StockMovement.REASON_SALE);
+    }
 
-        int result = db.update(TABLE_PRODUCTS, values, COLUMN_NAME + " = ?",
-                new String[]{productName});
-        db.close();
+    /**
+     * Insert a sale or order row and take its quantity out of stock in one transaction.
+     * The catalog only sees the stock change once the transaction has committed.
+     * @param table The table to insert into
+     * @param values The row to insert
+     * @param productId The id of the product
+     * @param quantity The quantity to take out of stock
+     * @param reason The reason recorded in the stock ledger
+     * @return OK if the row was saved, otherwise the reason nothing was saved
+     */
+    private StockResult insertTakingStock(String table, ContentValues values, int productId, int quantity,
+                                          String reason) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        StockResult result;
+        catalog.beginStockChange();
+        try {
+            db.beginTransaction();
+            try {
+                if (decrementStock(db, productId, quantity, reason) == 0) {
+                    result = stockFailureReason(db, productId);
+                } else {
+                    db.insertOrThrow(table, null, values);
+                    db.setTransactionSuccessful();
+                    result = StockResult.OK;
+                }
+            } catch (SQLException e) {
+                result = StockResult.FAILED;
+            } finally {
+                db.endTransaction();
+            }
+            if (result == StockResult.OK) {
+                catalog.adjustQuantity(productId, -quantity);
+            }
+        } finally {
+            catalog.endStockChange();
+        }
         return result;
     }
 
@@ -296,135 +1215,81 @@ public class DBHelper extends SQLiteOpenHelper {
      */
     public long addSale(Sale sale) {
         SQLiteDatabase db = this.getWritableDatabase();
-        ContentValues values = new ContentValues();
+        long result = db.insert(TABLE_SALES, null, saleValues(sale));
+        return result;
+    }
 
+    /**
+     * Build the column values for a sale row.
+     * @param sale The sale to store
+     * @return The values to insert
+     */
+    private ContentValues saleValues(Sale sale) {
+        ContentValues values = new ContentValues();
+        putProductId(values, COLUMN_PRODUCT_ID, sale.getProductId());
         values.put(COLUMN_PRODUCT_NAME, sale.getProductName());
         values.put(COLUMN_QUANTITY_SOLD, sale.getQuantitySold());
-        values.put(COLUMN_UNIT_PRICE, sale.getUnitPrice());
-        values.put(COLUMN_TOTAL_AMOUNT, sale.getTotalAmount());
+        values.put(COLUMN_UNIT_PRICE, sale.getUnitPrice().getCents());
+        values.put(COLUMN_TOTAL_AMOUNT, sale.getTotalAmount().getCents());
         values.put(COLUMN_DATE, sale.getDate());
-
-        long result = db.insert(TABLE_SALES, null, values);
-        db.close();
-        return result;
+        return values;
     }
 
     /**
-     * Retrieve all sales from the database.
+     * Retrieve all sales, live and archived.
      * @return List of all sales
      */
     public List<Sale> getAllSales() {
-        List<Sale> saleList = new ArrayList<>();
         String selectQuery = "SELECT * FROM " + TABLE_SALES + " ORDER BY " + COLUMN_SALE_ID + " DESC";
 
-        SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.rawQuery(selectQuery, null);
-
-        if (cursor.moveToFirst()) {
-            do {
-                Sale sale = new Sale(
-                        cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_SALE_ID)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_PRODUCT_NAME)),
-                        cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_QUANTITY_SOLD)),
-                        cursor.getDouble(cursor.getColumnIndexOrThrow(COLUMN_UNIT_PRICE)),
-                        cursor.getDouble(cursor.getColumnIndexOrThrow(COLUMN_TOTAL_AMOUNT)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_DATE))
-                );
-                saleList.add(sale);
-            } while (cursor.moveToNext());
-        }
-
-        cursor.close();
-        db.close();
-        return saleList;
+        return readSales(queryHistory((db, limit) -> db.rawQuery(selectQuery, null),
+                Integer.MAX_VALUE, Integer.MAX_VALUE, 0));
     }
 
     /**
-     * Search sales by product name (case-insensitive partial match).
-     * @param query The search query (product name)
+     * Get the sales made in a time range, reading the archives of the months it covers.
+     * @param from Start of the range in epoch milliseconds (inclusive)
+     * @param to End of the range in epoch milliseconds (exclusive)
      * @return List of matching sales
      */
-    public List<Sale> searchSalesByProductName(String query) {
-        List<Sale> saleList = new ArrayList<>();
-        String selectQuery = "SELECT * FROM " + TABLE_SALES + 
-                " WHERE " + COLUMN_PRODUCT_NAME + " LIKE ?" +
-                " ORDER BY " + COLUMN_SALE_ID + " DESC";
-
-        SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.rawQuery(selectQuery, new String[]{"%" + query + "%"});
-
-        if (cursor.moveToFirst()) {
-            do {
-                Sale sale = new Sale(
-                        cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_SALE_ID)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_PRODUCT_NAME)),
-                        cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_QUANTITY_SOLD)),
-                        cursor.getDouble(cursor.getColumnIndexOrThrow(COLUMN_UNIT_PRICE)),
-                        cursor.getDouble(cursor.getColumnIndexOrThrow(COLUMN_TOTAL_AMOUNT)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_DATE))
-                );
-                saleList.add(sale);
-            } while (cursor.moveToNext());
-        }
-
-        cursor.close();
-        db.close();
-        return saleList;
+    public List<Sale> getSalesBetween(long from, long to) {
+        String[] args = {String.valueOf(from), String.valueOf(to)};
+        return readSales(queryHistory((db, limit) -> db.rawQuery(QUERY_SALES_BETWEEN, args),
+                Integer.MAX_VALUE, monthOf(to - 1), monthOf(from)));
     }
 
     /**
-     * Search sales by date (matches date part, not time).
-     * @param dateQuery The date string to search (e.g., "2024-01-15")
-     * @return List of matching sales
+     * Get total sales amount for a period of whole days, read from the daily summary.
+     * A month costs one summary row per day and product rather than a read of every sale.
+     * @param firstDay First day of the period as yyyyMMdd (inclusive)
+     * @param lastDay Last day of the period as yyyyMMdd (inclusive)
+     * @return Total amount for that period
      */
-    public List<Sale> searchSalesByDate(String dateQuery) {
-        List<Sale> saleList = new ArrayList<>();
-        String selectQuery = "SELECT * FROM " + TABLE_SALES + 
-                " WHERE " + COLUMN_DATE + " LIKE ?" +
-                " ORDER BY " + COLUMN_SALE_ID + " DESC";
-
+    public Money getTotalSalesForDays(int firstDay, int lastDay) {
         SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.rawQuery(selectQuery, new String[]{dateQuery + "%"});
-
-        if (cursor.moveToFirst()) {
-            do {
-                Sale sale = new Sale(
-                        cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_SALE_ID)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_PRODUCT_NAME)),
-                        cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_QUANTITY_SOLD)),
-                        cursor.getDouble(cursor.getColumnIndexOrThrow(COLUMN_UNIT_PRICE)),
-                        cursor.getDouble(cursor.getColumnIndexOrThrow(COLUMN_TOTAL_AMOUNT)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_DATE))
-                );
-                saleList.add(sale);
-            } while (cursor.moveToNext());
+        Cursor cursor = db.rawQuery(QUERY_TOTAL_SALES_FOR_DAYS,
+                new String[]{String.valueOf(firstDay), String.valueOf(lastDay)});
+        
+        long total = 0;
+        if (cursor.moveToFirst() && !cursor.isNull(0)) {
+            total = cursor.getLong(0);
         }
-
+        
         cursor.close();
-        db.close();
-        return saleList;
+        return Money.ofCents(total);
     }
 
     /**
-     * Get total sales amount for a specific date.
-     * @param date The date string (e.g., "2024-01-15")
-     * @return Total amount for that date
+     * Get the local day of a timestamp in the yyyyMMdd form used by the daily summary.
+     * @param epochMillis The timestamp in epoch milliseconds
+     * @return The day, e.g. 20240115
      */
-    public double getTotalSalesByDate(String date) {
-        SQLiteDatabase db = this.getReadableDatabase();
-        String query = "SELECT SUM(" + COLUMN_TOTAL_AMOUNT + ") FROM " + TABLE_SALES +
-                " WHERE " + COLUMN_DATE + " LIKE ?";
-        
-        Cursor cursor = db.rawQuery(query, new String[]{date + "%"});
-        
-        double total = 0.0;
-        if (cursor.moveToFirst() && !cursor.isNull(0)) {
-            total = cursor.getDouble(0);
-        }
-        
-        cursor.close();
-        db.close();
-        return total;
+    public static int dayOf(long epochMillis) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(epochMillis);
+        return calendar.get(Calendar.YEAR) * 10000
+                + (calendar.get(Calendar.MONTH) + 1) * 100
+                + calendar.get(Calendar.DAY_OF_MONTH);
     }
 
     // ==================== ORDER MANAGEMENT ====================
@@ -436,51 +1301,83 @@ public class DBHelper extends SQLiteOpenHelper {
      */
     public long addOrder(Order order) {
         SQLiteDatabase db = this.getWritableDatabase();
-        ContentValues values = new ContentValues();
+        long result = db.insert(TABLE_ORDERS, null, orderValues(order));
+        return result;
+    }
 
+    /**
+     * Build the column values for an order row.
+     * @param order The order to store
+     * @return The values to insert
+     */
+    private ContentValues orderValues(Order order) {
+        ContentValues values = new ContentValues();
         values.put(COLUMN_CUSTOMER_NAME, order.getCustomerName());
+        putProductId(values, COLUMN_ORDER_PRODUCT_ID, order.getProductId());
         values.put(COLUMN_ORDER_PRODUCT_NAME, order.getProductName());
         values.put(COLUMN_QUANTITY_ORDERED, order.getQuantityOrdered());
-        values.put(COLUMN_ORDER_UNIT_PRICE, order.getUnitPrice());
-        values.put(COLUMN_ORDER_TOTAL_AMOUNT, order.getTotalAmount());
+        values.put(COLUMN_ORDER_UNIT_PRICE, order.getUnitPrice().getCents());
+        values.put(COLUMN_ORDER_TOTAL_AMOUNT, order.getTotalAmount().getCents());
         values.put(COLUMN_ORDER_STATUS, order.getStatus());
         values.put(COLUMN_ORDER_DATE, order.getDate());
+        return values;
+    }
+
+    /**
+     * Place an order and take its quantity out of stock in one transaction.
+     * @param order The order to place
+     * @return OK if the order was saved, otherwise the reason nothing was saved
+     */
+    public StockResult placeOrder(Order order) {
+        return insertTakingStock(TABLE_ORDERS, orderValues(order), order.getProductId(),
+                order.getQuantityOrdered(), StockMovement.REASON_ORDER);
+    }
 
-        long result = db.insert(TABLE_ORDERS, null, values);
-        db.close();
+    /**
+     * Cancel a pending order and put its quantity back into stock in one transaction.
+     * Only a pending order can be cancelled, so the stock is never restored twice.
+     * @param order The order to cancel
+     * @return The number of orders cancelled (0 if the order was no longer pending)
+     */
+    public int cancelOrder(Order order) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        int result;
+        int restocked = 0;
+        catalog.beginStockChange();
+        try {
+            db.beginTransaction();
+            try {
+                ContentValues values = new ContentValues();
+                values.put(COLUMN_ORDER_STATUS, Order.STATUS_CANCELLED);
+                result = db.update(TABLE_ORDERS, values,
+                        COLUMN_ORDER_ID + " = ? AND " + COLUMN_ORDER_STATUS + " = ?",
+                        new String[]{String.valueOf(order.getId()), Order.STATUS_PENDING});
+                if (result > 0) {
+                    restocked = incrementStock(db, order.getProductId(), order.getQuantityOrdered(),
+                            StockMovement.REASON_CANCEL);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            if (restocked > 0) {
+                catalog.adjustQuantity(order.getProductId(), order.getQuantityOrdered());
+            }
+        } finally {
+            catalog.endStockChange();
+        }
         return result;
     }
 
     /**
-     * Retrieve all orders from the database.
+     * Retrieve all orders, live and archived.
      * @return List of all orders
      */
     public List<Order> getAllOrders() {
-        List<Order> orderList = new ArrayList<>();
         String selectQuery = "SELECT * FROM " + TABLE_ORDERS + " ORDER BY " + COLUMN_ORDER_ID + " DESC";
 
-        SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.rawQuery(selectQuery, null);
-
-        if (cursor.moveToFirst()) {
-            do {
-                Order order = new Order(
-                        cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_ORDER_ID)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_CUSTOMER_NAME)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_ORDER_PRODUCT_NAME)),
-                        cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_QUANTITY_ORDERED)),
-                        cursor.getDouble(cursor.getColumnIndexOrThrow(COLUMN_ORDER_UNIT_PRICE)),
-                        cursor.getDouble(cursor.getColumnIndexOrThrow(COLUMN_ORDER_TOTAL_AMOUNT)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_ORDER_STATUS)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_ORDER_DATE))
-                );
-                orderList.add(order);
-            } while (cursor.moveToNext());
-        }
-
-        cursor.close();
-        db.close();
-        return orderList;
+        return readOrders(queryHistory((db, limit) -> db.rawQuery(selectQuery, null),
+                Integer.MAX_VALUE, Integer.MAX_VALUE, 0));
     }
 
     /**
@@ -494,23 +1391,8 @@ public class DBHelper extends SQLiteOpenHelper {
 
         Cursor cursor = db.rawQuery(selectQuery, new String[]{String.valueOf(id)});
 
-        Order order = null;
-        if (cursor.moveToFirst()) {
-            order = new Order(
-                    cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_ORDER_ID)),
-                    cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_CUSTOMER_NAME)),
-                    cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_ORDER_PRODUCT_NAME)),
-                    cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_QUANTITY_ORDERED)),
-                    cursor.getDouble(cursor.getColumnIndexOrThrow(COLUMN_ORDER_UNIT_PRICE)),
-                    cursor.getDouble(cursor.getColumnIndexOrThrow(COLUMN_ORDER_TOTAL_AMOUNT)),
-                    cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_ORDER_STATUS)),
-                    cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_ORDER_DATE))
-            );
-        }
-
-        cursor.close();
-        db.close();
-        return order;
+        List<Order> orders = readOrders(cursor);
+        return orders.isEmpty() ? null : orders.get(0);
     }
 
     /**
@@ -526,7 +1408,6 @@ public class DBHelper extends SQLiteOpenHelper {
 
         int result = db.update(TABLE_ORDERS, values, COLUMN_ORDER_ID + " = ?",
                 new String[]{String.valueOf(orderId)});
-        db.close();
         return result;
     }
 
@@ -539,147 +1420,1393 @@ public class DBHelper extends SQLiteOpenHelper {
         SQLiteDatabase db = this.getWritableDatabase();
         int result = db.delete(TABLE_ORDERS, COLUMN_ORDER_ID + " = ?",
                 new String[]{String.valueOf(id)});
-        db.close();
         return result;
     }
 
     /**
-     * Search orders by customer name (case-insensitive partial match).
-     * @param query The search query (customer name)
+     * Get the orders placed in a time range, reading the archives of the months it covers.
+     * @param from Start of the range in epoch milliseconds (inclusive)
+     * @param to End of the range in epoch milliseconds (exclusive)
      * @return List of matching orders
      */
-    public List<Order> searchOrdersByCustomerName(String query) {
-        List<Order> orderList = new ArrayList<>();
-        String selectQuery = "SELECT * FROM " + TABLE_ORDERS + 
-                " WHERE " + COLUMN_CUSTOMER_NAME + " LIKE ?" +
-                " ORDER BY " + COLUMN_ORDER_ID + " DESC";
+    public List<Order> getOrdersBetween(long from, long to) {
+        String[] args = {String.valueOf(from), String.valueOf(to)};
+        return readOrders(queryHistory((db, limit) -> db.rawQuery(QUERY_ORDERS_BETWEEN, args),
+                Integer.MAX_VALUE, monthOf(to - 1), monthOf(from)));
+    }
 
+    /**
+     * Get pending orders only.
+     * @return List of pending orders
+     */
+    public List<Order> getPendingOrders() {
         SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.rawQuery(selectQuery, new String[]{"%" + query + "%"});
-
-        if (cursor.moveToFirst()) {
-            do {
-                Order order = new Order(
-                        cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_ORDER_ID)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_CUSTOMER_NAME)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_ORDER_PRODUCT_NAME)),
-                        cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_QUANTITY_ORDERED)),
-                        cursor.getDouble(cursor.getColumnIndexOrThrow(COLUMN_ORDER_UNIT_PRICE)),
-                        cursor.getDouble(cursor.getColumnIndexOrThrow(COLUMN_ORDER_TOTAL_AMOUNT)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_ORDER_STATUS)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_ORDER_DATE))
-                );
-                orderList.add(order);
-            } while (cursor.moveToNext());
-        }
+        Cursor cursor = db.rawQuery(QUERY_ORDERS_BY_STATUS, new String[]{Order.STATUS_PENDING});
 
-        cursor.close();
-        db.close();
-        return orderList;
+        return readOrders(cursor);
     }
 
+    // ==================== TICKETS ====================
+
     /**
-     * Search orders by product name (case-insensitive partial match).
-     * @param query The search query (product name)
-     * @return List of matching orders
+     * Binds one line of a ticket, including the id of its ticket header.
      */
-    public List<Order> searchOrdersByProductName(String query) {
-        List<Order> orderList = new ArrayList<>();
-        String selectQuery = "SELECT * FROM " + TABLE_ORDERS + 
-                " WHERE " + COLUMN_ORDER_PRODUCT_NAME + " LIKE ?" +
-                " ORDER BY " + COLUMN_ORDER_ID + " DESC";
+    private interface LineBinder<T> {
+        void bind(SQLiteStatement statement, T line, long ticketId);
+    }
 
-        SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.rawQuery(selectQuery, new String[]{"%" + query + "%"});
-
-        if (cursor.moveToFirst()) {
-            do {
-                Order order = new Order(
-                        cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_ORDER_ID)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_CUSTOMER_NAME)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_ORDER_PRODUCT_NAME)),
-                        cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_QUANTITY_ORDERED)),
-                        cursor.getDouble(cursor.getColumnIndexOrThrow(COLUMN_ORDER_UNIT_PRICE)),
-                        cursor.getDouble(cursor.getColumnIndexOrThrow(COLUMN_ORDER_TOTAL_AMOUNT)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_ORDER_STATUS)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_ORDER_DATE))
-                );
-                orderList.add(order);
-            } while (cursor.moveToNext());
+    /**
+     * Record a sale ticket: a header and one sale row per line, all taken out of stock
+     * in one transaction. Nothing is saved unless every line has enough stock.
+     * Every line of a ticket shares the timestamp of its header, as Cart#toSales dates them;
+     * the header is dated from the first line.
+     * @param lines The lines of the ticket, all carrying the ticket date
+     * @return OK if the ticket was saved, otherwise the reason nothing was saved
+     */
+    public StockResult recordSaleTicket(List<Sale> lines) {
+        Money total = Money.ZERO;
+        for (Sale line : lines) {
+            total = total.plus(line.getTotalAmount());
         }
+        long totalCents = total.getCents();
+        return insertTicket(SQL_INSERT_SALE_TICKET, header -> {
+                    header.bindLong(1, totalCents);
+                    // The lines share one date, so the first one dates the ticket
+                    header.bindLong(2, lines.get(0).getDate());
+                }, SQL_INSERT_SALE_LINE, lines, (statement, sale, ticketId) -> {
+                    bindSale(statement, sale);
+                    statement.bindLong(7, ticketId);
+                }, Sale::getProductId, Sale::getQuantitySold, StockMovement.REASON_SALE);
+    }
 
-        cursor.close();
-        db.close();
-        return orderList;
+    /**
+     * Place an order ticket for a customer: a header and one order row per line, all taken
+     * out of stock in one transaction. Nothing is saved unless every line has enough stock.
+     * Every line of a ticket shares the timestamp of its header, as Cart#toOrders dates them;
+     * the header is dated from the first line.
+     * @param customerName The customer the ticket is for
+     * @param lines The lines of the ticket, all carrying the ticket date
+     * @return OK if the ticket was saved, otherwise the reason nothing was saved
+     */
+    public StockResult placeOrderTicket(String customerName, List<Order> lines) {
+        Money total = Money.ZERO;
+        for (Order line : lines) {
+            total = total.plus(line.getTotalAmount());
+        }
+        long totalCents = total.getCents();
+        return insertTicket(SQL_INSERT_ORDER_TICKET, header -> {
+                    bindText(header, 1, customerName);
+                    header.bindLong(2, totalCents);
+                    // The lines share one date, so the first one dates the ticket
+                    header.bindLong(3, lines.get(0).getDate());
+                }, SQL_INSERT_ORDER_LINE, lines, (statement, order, ticketId) -> {
+                    bindOrder(statement, order);
+                    statement.bindLong(9, ticketId);
+                }, Order::getProductId, Order::getQuantityOrdered, StockMovement.REASON_ORDER);
     }
 
     /**
-     * Search orders by date (matches date part, not time).
-     * @param dateQuery The date string to search (e.g., "2024-01-15")
-     * @return List of matching orders
+     * Insert a ticket header and its lines, taking every line out of stock, in one transaction.
+     * The header, line, stock and ledger statements are each compiled once and rebound per
+     * line, so a checkout costs one transaction however many lines it has.
+     * @param insertTicket The INSERT statement of the header
+     * @param ticketBinder Binds the values of the header
+     * @param insertLine The INSERT statement of a line
+     * @param lines The lines to insert, at least one
+     * @param lineBinder Binds the values of one line
+     * @param productIdOf The product a line takes out of stock
+     * @param quantityOf The quantity a line takes out of stock
+     * @param reason The reason recorded in the stock ledger for every line
+     * @return OK if the ticket was saved, otherwise the reason nothing was saved
      */
-    public List<Order> searchOrdersByDate(String dateQuery) {
-        List<Order> orderList = new ArrayList<>();
-        String selectQuery = "SELECT * FROM " + TABLE_ORDERS + 
-                " WHERE " + COLUMN_ORDER_DATE + " LIKE ?" +
-                " ORDER BY " + COLUMN_ORDER_ID + " DESC";
+    private <T> StockResult insertTicket(String insertTicket, Consumer<SQLiteStatement> ticketBinder,
+                                         String insertLine, List<T> lines, LineBinder<T> lineBinder,
+                                         ToIntFunction<T> productIdOf, ToIntFunction<T> quantityOf,
+                                         String reason) {
+        if (lines.isEmpty()) {
+            throw new IllegalArgumentException("A ticket needs at least one line");
+        }
+        SQLiteDatabase db = this.getWritableDatabase();
+        SQLiteStatement ticket = db.compileStatement(insertTicket);
+        SQLiteStatement line = db.compileStatement(insertLine);
+        SQLiteStatement decrement = db.compileStatement(SQL_DECREMENT_STOCK);
+        SQLiteStatement movement = db.compileStatement(SQL_INSERT_STOCK_MOVEMENT);
+        StockResult result = StockResult.OK;
+        catalog.beginStockChange();
+        try {
+            db.beginTransaction();
+            try {
+                ticketBinder.accept(ticket);
+                long ticketId = ticket.executeInsert();
+                for (T item : lines) {
+                    int productId = productIdOf.applyAsInt(item);
+                    int quantity = quantityOf.applyAsInt(item);
+                    decrement.bindLong(1, quantity);
+                    decrement.bindLong(2, productId);
+                    decrement.bindLong(3, quantity);
+                    if (decrement.executeUpdateDelete() == 0) {
+                        result = stockFailureReason(db, productId);
+                        break;
+                    }
+                    bindMovement(movement, productId, -quantity, reason);
+                    movement.executeInsert();
+                    line.clearBindings();
+                    lineBinder.bind(line, item, ticketId);
+                    line.executeInsert();
+                }
+                if (result == StockResult.OK) {
+                    db.setTransactionSuccessful();
+                }
+            } catch (SQLException e) {
+                result = StockResult.FAILED;
+            } finally {
+                db.endTransaction();
+                ticket.close();
+                line.close();
+                decrement.close();
+                movement.close();
+            }
+            if (result == StockResult.OK) {
+                for (T item : lines) {
+                    catalog.adjustQuantity(productIdOf.applyAsInt(item), -quantityOf.applyAsInt(item));
+                }
+            }
+        } finally {
+            catalog.endStockChange();
+        }
+        return result;
+    }
 
+    // ==================== STOCK LEDGER ====================
+
+    /**
+     * Get the stock of a product as it was at a point in time.
+     * Starts from the last snapshot taken by then and adds the movements made after it,
+     * so at most STOCK_SNAPSHOT_INTERVAL movements are summed however long the ledger grows.
+     * The current stock is still read from the product itself.
+     * @param productId The id of the product
+     * @param epochMillis The point in time in epoch milliseconds (inclusive)
+     * @return The quantity in stock at that time, 0 before the product existed
+     */
+    public int getStockAsOf(int productId, long epochMillis) {
         SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.rawQuery(selectQuery, new String[]{dateQuery + "%"});
-
-        if (cursor.moveToFirst()) {
-            do {
-                Order order = new Order(
-                        cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_ORDER_ID)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_CUSTOMER_NAME)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_ORDER_PRODUCT_NAME)),
-                        cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_QUANTITY_ORDERED)),
-                        cursor.getDouble(cursor.getColumnIndexOrThrow(COLUMN_ORDER_UNIT_PRICE)),
-                        cursor.getDouble(cursor.getColumnIndexOrThrow(COLUMN_ORDER_TOTAL_AMOUNT)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_ORDER_STATUS)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_ORDER_DATE))
-                );
-                orderList.add(order);
-            } while (cursor.moveToNext());
+        String id = String.valueOf(productId);
+        String date = String.valueOf(epochMillis);
+        long fromMovement = 0;
+        long quantity = 0;
+        Cursor cursor = db.rawQuery(QUERY_STOCK_SNAPSHOT_AT, new String[]{id, date});
+        try {
+            if (cursor.moveToFirst()) {
+                fromMovement = cursor.getLong(0);
+                quantity = cursor.getLong(1);
+            }
+        } finally {
+            cursor.close();
         }
+        // Movements past the next snapshot were all made after the date, so the tail stops there
+        long toMovement = Long.MAX_VALUE;
+        cursor = db.rawQuery(QUERY_NEXT_STOCK_SNAPSHOT, new String[]{id, String.valueOf(fromMovement)});
+        try {
+            if (cursor.moveToFirst()) {
+                toMovement = cursor.getLong(0);
+            }
+        } finally {
+            cursor.close();
+        }
+        quantity += DatabaseUtils.longForQuery(db, QUERY_STOCK_MOVEMENTS_SUM, new String[]{
+                id, String.valueOf(fromMovement), String.valueOf(toMovement), date});
+        return (int) quantity;
+    }
 
-        cursor.close();
-        db.close();
-        return orderList;
+    /**
+     * Get the stock movements of a product made in a time range.
+     * @param productId The id of the product
+     * @param from Start of the range in epoch milliseconds (inclusive)
+     * @param to End of the range in epoch milliseconds (exclusive)
+     * @return The movements, oldest first
+     */
+    public List<StockMovement> getStockMovements(int productId, long from, long to) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery(QUERY_STOCK_MOVEMENTS_BETWEEN, new String[]{
+                String.valueOf(productId), String.valueOf(from), String.valueOf(to)});
+
+        List<StockMovement> movements = new ArrayList<>(cursor.getCount());
+        try {
+            int idIndex = cursor.getColumnIndexOrThrow(COLUMN_MOVEMENT_ID);
+            int productIdIndex = cursor.getColumnIndexOrThrow(COLUMN_MOVEMENT_PRODUCT_ID);
+            int deltaIndex = cursor.getColumnIndexOrThrow(COLUMN_MOVEMENT_DELTA);
+            int reasonIndex = cursor.getColumnIndexOrThrow(COLUMN_MOVEMENT_REASON);
+            int dateIndex = cursor.getColumnIndexOrThrow(COLUMN_MOVEMENT_DATE);
+            while (cursor.moveToNext()) {
+                movements.add(new StockMovement(
+                        cursor.getLong(idIndex),
+                        cursor.getInt(productIdIndex),
+                        cursor.getInt(deltaIndex),
+                        cursor.getString(reasonIndex),
+                        cursor.getLong(dateIndex)
+                ));
+            }
+        } finally {
+            cursor.close();
+        }
+        return movements;
     }
 
     /**
-     * Get pending orders only.
-     * @return List of pending orders
+     * Append a movement to the stock ledger, after the stock change it records.
+     * Must be called inside the transaction making that change.
+     * @param db The writable database
+     * @param productId The id of the product
+     * @param delta The quantity added (positive) or taken (negative)
+     * @param reason Why the stock changed, one of the StockMovement reasons
      */
-    public List<Order> getPendingOrders() {
-        List<Order> orderList = new ArrayList<>();
-        String selectQuery = "SELECT * FROM " + TABLE_ORDERS + 
-                " WHERE " + COLUMN_ORDER_STATUS + " = ?" +
-                " ORDER BY " + COLUMN_ORDER_ID + " DESC";
+    private void recordMovement(SQLiteDatabase db, int productId, int delta, String reason) {
+        SQLiteStatement statement = db.compileStatement(SQL_INSERT_STOCK_MOVEMENT);
+        try {
+            bindMovement(statement, productId, delta, reason);
+            statement.executeInsert();
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Bind a movement dated now, in the order of SQL_INSERT_STOCK_MOVEMENT.
+     */
+    private static void bindMovement(SQLiteStatement statement, int productId, int delta, String reason) {
+        statement.bindLong(1, productId);
+        statement.bindLong(2, delta);
+        statement.bindString(3, reason);
+        statement.bindLong(4, System.currentTimeMillis());
+    }
+
+    /**
+     * Read the current stock of a product straight from the database.
+     * @param db The database
+     * @param productId The id of the product
+     * @return The quantity in stock, 0 if the product does not exist
+     */
+    private static int quantityOf(SQLiteDatabase db, int productId) {
+        Cursor cursor = db.rawQuery("SELECT " + COLUMN_QUANTITY + " FROM " + TABLE_PRODUCTS
+                + " WHERE " + COLUMN_ID + " = ?", new String[]{String.valueOf(productId)});
+        try {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * @return The name of a product, or null if there is no such product
+     */
+    private static String nameOf(SQLiteDatabase db, int productId) {
+        Cursor cursor = db.rawQuery("SELECT " + COLUMN_NAME + " FROM " + TABLE_PRODUCTS
+                + " WHERE " + COLUMN_ID + " = ?", new String[]{String.valueOf(productId)});
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // ==================== SEARCH ====================
+
+    /**
+     * Search sales by product name and date using the full-text index.
+     * Every word of the query must match the start of a word in the product name,
+     * or a date typed as yyyy-MM-dd (or its prefix yyyy-MM).
+     * @param query The text typed by the user
+     * @return Matching sales, newest first (at most SEARCH_LIMIT)
+     */
+    public List<Sale> searchSales(String query) {
+        return readSales(querySearchSales(query));
+    }
+
+    /**
+     * Search sales like searchSales, returning the matches as a cursor.
+     * The archives are searched too, newest month first, while fewer than SEARCH_LIMIT sales match.
+     * @param query The text typed by the user
+     * @return A filled cursor over the matching sales, newest first; the caller must close it
+     */
+    public SaleCursor querySearchSales(String query) {
+        String match = buildMatchQuery(query);
+        return new SaleCursor(queryHistory((db, limit) -> db.rawQuery(QUERY_SEARCH_SALES,
+                new String[]{match, String.valueOf(limit)}), SEARCH_LIMIT, Integer.MAX_VALUE, 0));
+    }
+
+    /**
+     * Search orders by customer name, product name and date using the full-text index.
+     * Every word of the query must match the start of a word in one of those fields.
+     * @param query The text typed by the user
+     * @return Matching orders, newest first (at most SEARCH_LIMIT)
+     */
+    public List<Order> searchOrders(String query) {
+        return readOrders(querySearchOrders(query));
+    }
+
+    /**
+     * Search orders like searchOrders, returning the matches as a cursor.
+     * The archives are searched too, newest month first, while fewer than SEARCH_LIMIT orders match.
+     * @param query The text typed by the user
+     * @return A filled cursor over the matching orders, newest first; the caller must close it
+     */
+    public OrderCursor querySearchOrders(String query) {
+        String match = buildMatchQuery(query);
+        return new OrderCursor(queryHistory((db, limit) -> db.rawQuery(QUERY_SEARCH_ORDERS,
+                new String[]{match, String.valueOf(limit)}), SEARCH_LIMIT, Integer.MAX_VALUE, 0));
+    }
+
+    /**
+     * Turn user input into an FTS MATCH expression of prefix terms.
+     * Punctuation is dropped so typed text can never be read as FTS query syntax,
+     * and dates are rewritten to the yyyyMMdd form stored in the day column.
+     * @param query The text typed by the user
+     * @return The MATCH expression, or an empty string if nothing is searchable
+     */
+    static String buildMatchQuery(String query) {
+        if (query == null) {
+            return "";
+        }
+        StringBuilder match = new StringBuilder();
+        for (String word : query.trim().split("\\s+")) {
+            if (DATE_TOKEN.matcher(word).matches()) {
+                word = word.replace("-", "");
+            }
+            for (String term : TERM_SEPARATOR.split(word)) {
+                if (term.isEmpty()) {
+                    continue;
+                }
+                if (match.length() > 0) {
+                    match.append(' ');
+                }
+                // Lower case keeps words like OR/NOT from being read as operators
+                match.append(term.toLowerCase(Locale.ROOT)).append('*');
+            }
+        }
+        return match.toString();
+    }
+
+    // ==================== HISTORY PAGING ====================
+
+    /**
+     * Get one page of sales, newest first.
+     * Pages are keyed on (date, id) rather than OFFSET, so loading a page deep in the
+     * history costs the same as loading the first one.
+     * @param lastSale The last sale of the previous page, or null for the first page
+     * @param pageSize The maximum number of sales to return
+     * @return The next page of sales (empty when the end of the history is reached)
+     */
+    public List<Sale> getSalesPage(Sale lastSale, int pageSize) {
+        HistoryCursor.Key after = lastSale == null ? null : new HistoryCursor.Key(lastSale.getDate(), lastSale.getId());
+        return readSales(querySalesPage(after, pageSize));
+    }
+
+    /**
+     * Get one page of sales as a cursor, for adapters that bind rows straight from it.
+     * Once the live sales run out, the page continues into the archives.
+     * @param after The key of the last row of the previous page, or null for the first page
+     * @param pageSize The maximum number of sales to return
+     * @return A filled cursor over the page; the caller must close it
+     */
+    public SaleCursor querySalesPage(HistoryCursor.Key after, int pageSize) {
+        return new SaleCursor(queryHistory((db, limit) -> queryPage(db, QUERY_SALES_FIRST_PAGE,
+                QUERY_SALES_NEXT_PAGE, after, limit), pageSize, newestMonthAfter(after), 0));
+    }
+
+    /**
+     * Get one page of orders, newest first, keyed on (date, id).
+     * @param lastOrder The last order of the previous page, or null for the first page
+     * @param pageSize The maximum number of orders to return
+     * @return The next page of orders (empty when the end of the history is reached)
+     */
+    public List<Order> getOrdersPage(Order lastOrder, int pageSize) {
+        HistoryCursor.Key after = lastOrder == null ? null : new HistoryCursor.Key(lastOrder.getDate(), lastOrder.getId());
+        return readOrders(queryOrdersPage(after, pageSize));
+    }
+
+    /**
+     * Get one page of orders as a cursor, for adapters that bind rows straight from it.
+     * Once the live orders run out, the page continues into the archives.
+     * @param after The key of the last row of the previous page, or null for the first page
+     * @param pageSize The maximum number of orders to return
+     * @return A filled cursor over the page; the caller must close it
+     */
+    public OrderCursor queryOrdersPage(HistoryCursor.Key after, int pageSize) {
+        return new OrderCursor(queryHistory((db, limit) -> queryPage(db, QUERY_ORDERS_FIRST_PAGE,
+                QUERY_ORDERS_NEXT_PAGE, after, limit), pageSize, newestMonthAfter(after), 0));
+    }
+
+    /**
+     * Get the newest archived month that can hold rows following a history key.
+     * @param after The key of the last row of the previous page, or null for the first page
+     * @return The month as yyyyMM, or Integer.MAX_VALUE for the first page
+     */
+    private static int newestMonthAfter(HistoryCursor.Key after) {
+        return after == null ? Integer.MAX_VALUE : monthOf(after.date);
+    }
+
+    /**
+     * Run the first-page or next-page keyset query of a history.
+     */
+    private static Cursor queryPage(SQLiteDatabase db, String firstPageQuery, String nextPageQuery,
+                                    HistoryCursor.Key after, int pageSize) {
+        if (after == null) {
+            return db.rawQuery(firstPageQuery, new String[]{String.valueOf(pageSize)});
+        }
+        return db.rawQuery(nextPageQuery, new String[]{
+                String.valueOf(after.date), String.valueOf(after.id), String.valueOf(pageSize)});
+    }
+
+    /**
+     * Run a cursor's query now, on the calling database thread.
+     * Cursors are filled lazily on first access; filling them here keeps that work
+     * off the main thread when the cursor is handed to an adapter.
+     * @param cursor A freshly queried cursor
+     * @return The same cursor, with its window filled
+     */
+    private static Cursor fill(Cursor cursor) {
+        cursor.getCount();
+        return cursor;
+    }
+
+    // ==================== ARCHIVE ====================
+
+    /**
+     * Runs one history query against one partition: the live database or a monthly archive.
+     */
+    private interface PartitionQuery {
+        Cursor query(SQLiteDatabase db, int limit);
+    }
+
+    /**
+     * Cursor over rows of a monthly archive, closing the archive along with it.
+     */
+    private static final class ArchiveCursor extends CursorWrapper {
+        private final SQLiteDatabase archiveDb;
+
+        ArchiveCursor(Cursor cursor, SQLiteDatabase archiveDb) {
+            super(cursor);
+            this.archiveDb = archiveDb;
+        }
+
+        @Override
+        public void close() {
+            super.close();
+            archiveDb.close();
+        }
+    }
+
+    /**
+     * Run a history query on the live database, then on the archives that can hold matching
+     * rows, newest month first, until limit rows are found. Archived rows are older than the
+     * live ones, so the rows of each partition simply follow those of the previous one.
+     * An archive is opened only when the live database and the newer archives fall short.
+     * @param query The query to run on each partition
+     * @param limit The maximum number of rows, Integer.MAX_VALUE for all of them
+     * @param newestMonth The newest archived month (yyyyMM) that can hold matching rows
+     * @param oldestMonth The oldest archived month (yyyyMM) that can hold matching rows
+     * @return A filled cursor over the rows of every partition read; the caller must close it
+     */
+    private Cursor queryHistory(PartitionQuery query, int limit, int newestMonth, int oldestMonth) {
+        Cursor live = fill(query.query(this.getReadableDatabase(), limit));
+        List<Cursor> parts = new ArrayList<>();
+        parts.add(live);
+        int remaining = limit - live.getCount();
+        for (int month : archive.getMonths()) {
+            if (remaining <= 0 || month < oldestMonth) {
+                break;
+            }
+            if (month > newestMonth) {
+                continue;
+            }
+            SQLiteDatabase archiveDb = archive.openForReading(month);
+            if (archiveDb == null) {
+                continue;
+            }
+            Cursor part;
+            try {
+                part = fill(query.query(archiveDb, remaining));
+            } catch (RuntimeException e) {
+                archiveDb.close();
+                throw e;
+            }
+            parts.add(new ArchiveCursor(part, archiveDb));
+            remaining -= part.getCount();
+        }
+        return parts.size() == 1 ? live : new MergeCursor(parts.toArray(new Cursor[0]));
+    }
+
+    /**
+     * Move all history due for archiving into the monthly archives.
+     * @param keepMonths The whole months of history to keep live besides the current one
+     * @return The number of sales, orders and tickets moved
+     */
+    public int archiveHistory(int keepMonths) {
+        int total = 0;
+        int moved;
+        while ((moved = archiveOldestMonth(keepMonths)) > 0) {
+            total += moved;
+        }
+        return total;
+    }
+
+    /**
+     * Move the oldest month of history due for archiving into its monthly archive.
+     * Sales, orders and tickets dated before the last keepMonths whole months are due. A pending
+     * order stays live so it can still be completed or cancelled, and so does every order
+     * placed after it, keeping every archived order older than the live ones.
+     * The rows are copied into the archive before they are deleted here, and rows already
+     * archived are skipped, so a move interrupted between the two is finished by the next call.
+     * Archived sales stay counted in the daily sales summary.
+     * @param keepMonths The whole months of history to keep live besides the current one
+     * @return The number of sales, orders and tickets moved, 0 once nothing is due
+     */
+    public int archiveOldestMonth(int keepMonths) {
+        if (keepMonths < 0) {
+            throw new IllegalArgumentException("keepMonths must not be negative");
+        }
+        SQLiteDatabase db = this.getWritableDatabase();
+        Calendar cutoff = monthStart(System.currentTimeMillis());
+        cutoff.add(Calendar.MONTH, -keepMonths);
+        long salesBefore = cutoff.getTimeInMillis();
+        long ordersBefore = Math.min(salesBefore, minDate(db, "SELECT MIN(" + COLUMN_ORDER_DATE + ") FROM "
+                + TABLE_ORDERS + " WHERE " + COLUMN_ORDER_STATUS + " = ?", Order.STATUS_PENDING));
+        long oldest = Math.min(
+                minDate(db, "SELECT MIN(" + COLUMN_DATE + ") FROM " + TABLE_SALES
+                        + " WHERE " + COLUMN_DATE + " < ?", String.valueOf(salesBefore)),
+                minDate(db, "SELECT MIN(" + COLUMN_ORDER_DATE + ") FROM " + TABLE_ORDERS
+                        + " WHERE " + COLUMN_ORDER_DATE + " < ?", String.valueOf(ordersBefore)));
+        if (oldest == Long.MAX_VALUE) {
+            return 0;
+        }
+        Calendar month = monthStart(oldest);
+        long from = month.getTimeInMillis();
+        month.add(Calendar.MONTH, 1);
+        long to = month.getTimeInMillis();
+        return archiveMonth(db, monthOf(from), from, Math.min(to, salesBefore), Math.min(to, ordersBefore));
+    }
+
+    /**
+     * Copy the history of one month into its archive, then delete it from the live database.
+     * @param db The live database
+     * @param month The month as yyyyMM
+     * @param from Start of the month in epoch milliseconds
+     * @param salesTo End of the sales and sale tickets to move, in epoch milliseconds (exclusive)
+     * @param ordersTo End of the orders and order tickets to move, in epoch milliseconds (exclusive)
+     * @return The number of rows moved
+     */
+    private int archiveMonth(SQLiteDatabase db, int month, long from, long salesTo, long ordersTo) {
+        String[] salesRange = {String.valueOf(from), String.valueOf(salesTo)};
+        String[] ordersRange = {String.valueOf(from), String.valueOf(ordersTo)};
+        String salesWhere = COLUMN_DATE + " >= ? AND " + COLUMN_DATE + " < ?";
+        String ordersWhere = COLUMN_ORDER_DATE + " >= ? AND " + COLUMN_ORDER_DATE + " < ?";
+        String ticketsWhere = COLUMN_TICKET_DATE + " >= ? AND " + COLUMN_TICKET_DATE + " < ?";
+
+        int moved = 0;
+        SQLiteDatabase archiveDb = archive.openForWriting(month);
+        try {
+            archiveDb.beginTransaction();
+            try {
+                moved += copyRows(db.query(TABLE_SALE_TICKETS, null, ticketsWhere, salesRange, null, null, null),
+                        archiveDb, TABLE_SALE_TICKETS);
+                moved += copyRows(db.query(TABLE_SALES, null, salesWhere, salesRange, null, null, null),
+                        archiveDb, TABLE_SALES);
+                moved += copyRows(db.query(TABLE_ORDER_TICKETS, null, ticketsWhere, ordersRange, null, null, null),
+                        archiveDb, TABLE_ORDER_TICKETS);
+                moved += copyRows(db.query(TABLE_ORDERS, null, ordersWhere, ordersRange, null, null, null),
+                        archiveDb, TABLE_ORDERS);
+                archiveDb.setTransactionSuccessful();
+            } finally {
+                archiveDb.endTransaction();
+            }
+        } finally {
+            archiveDb.close();
+        }
+
+        db.beginTransaction();
+        try {
+            // Lift the summary delete trigger so archived sales stay in the period totals
+            db.execSQL("DROP TRIGGER IF EXISTS daily_sales_delete");
+            db.delete(TABLE_SALES, salesWhere, salesRange);
+            db.execSQL(CREATE_DAILY_SALES_DELETE_TRIGGER);
+            db.delete(TABLE_SALE_TICKETS, ticketsWhere, salesRange);
+            db.delete(TABLE_ORDERS, ordersWhere, ordersRange);
+            db.delete(TABLE_ORDER_TICKETS, ticketsWhere, ordersRange);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return moved;
+    }
+
+    /**
+     * Insert every row of a cursor into the same table of another database, then close it.
+     * Rows whose id is already there are skipped.
+     * @param rows The rows to copy
+     * @param target The database to copy into
+     * @param table The table to copy into, with the columns of the cursor
+     * @return The number of rows read
+     */
+    private static int copyRows(Cursor rows, SQLiteDatabase target, String table) {
+        String[] columns = rows.getColumnNames();
+        String sql = "INSERT OR IGNORE INTO " + table + " (" + String.join(", ", columns) + ") VALUES ("
+                + String.join(", ", Collections.nCopies(columns.length, "?")) + ")";
+        SQLiteStatement statement = target.compileStatement(sql);
+        int count = 0;
+        try {
+            while (rows.moveToNext()) {
+                statement.clearBindings();
+                for (int i = 0; i < columns.length; i++) {
+                    switch (rows.getType(i)) {
+                        case Cursor.FIELD_TYPE_NULL:
+                            statement.bindNull(i + 1);
+                            break;
+                        case Cursor.FIELD_TYPE_INTEGER:
+                            statement.bindLong(i + 1, rows.getLong(i));
+                            break;
+                        case Cursor.FIELD_TYPE_FLOAT:
+                            statement.bindDouble(i + 1, rows.getDouble(i));
+                            break;
+                        case Cursor.FIELD_TYPE_BLOB:
+                            statement.bindBlob(i + 1, rows.getBlob(i));
+                            break;
+                        default:
+                            statement.bindString(i + 1, rows.getString(i));
+                            break;
+                    }
+                }
+                statement.executeInsert();
+                count++;
+            }
+        } finally {
+            statement.close();
+            rows.close();
+        }
+        return count;
+    }
+
+    /**
+     * Run a MIN(date) query.
+     * @return The date, or Long.MAX_VALUE if no row matched
+     */
+    private static long minDate(SQLiteDatabase db, String sql, String... args) {
+        Cursor cursor = db.rawQuery(sql, args);
+        try {
+            return cursor.moveToFirst() && !cursor.isNull(0) ? cursor.getLong(0) : Long.MAX_VALUE;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Get the local month of a timestamp in the yyyyMM form naming the archives.
+     * @param epochMillis The timestamp in epoch milliseconds
+     * @return The month, e.g. 202401
+     */
+    static int monthOf(long epochMillis) {
+        return dayOf(epochMillis) / 100;
+    }
+
+    /**
+     * Get the start of the local month of a timestamp.
+     * @param epochMillis The timestamp in epoch milliseconds
+     * @return A calendar set to midnight on the first day of that month
+     */
+    private static Calendar monthStart(long epochMillis) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(epochMillis);
+        calendar.set(Calendar.DAY_OF_MONTH, 1);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        return calendar;
+    }
+
+    // ==================== EXPORT ====================
+
+    /**
+     * Receives the rows of an export one chunk at a time.
+     */
+    public interface ChunkVisitor<C extends Cursor> {
+        void visit(C chunk) throws IOException;
+    }
+
+    /**
+     * Count the sales of a time range, live and archived.
+     * @param from Start of the range in epoch milliseconds (inclusive)
+     * @param to End of the range in epoch milliseconds (exclusive)
+     * @return The number of sales
+     */
+    public int countSalesBetween(long from, long to) {
+        return countBetween(TABLE_SALES, COLUMN_DATE, from, to);
+    }
+
+    /**
+     * Count the orders of a time range, live and archived.
+     * @param from Start of the range in epoch milliseconds (inclusive)
+     * @param to End of the range in epoch milliseconds (exclusive)
+     * @return The number of orders
+     */
+    public int countOrdersBetween(long from, long to) {
+        return countBetween(TABLE_ORDERS, COLUMN_ORDER_DATE, from, to);
+    }
+
+    /**
+     * Read the sales of a time range, live and archived, oldest first.
+     * Each chunk is a separate keyset query of at most EXPORT_CHUNK_SIZE rows, closed once
+     * visited, so memory use stays the same however many sales the range holds.
+     * @param from Start of the range in epoch milliseconds (inclusive)
+     * @param to End of the range in epoch milliseconds (exclusive)
+     * @param visitor Receives each chunk
+     * @throws IOException if the visitor failed
+     */
+    public void forEachSaleChunk(long from, long to, ChunkVisitor<SaleCursor> visitor) throws IOException {
+        forEachHistoryChunk(QUERY_SALES_EXPORT_CHUNK, from, to, SaleCursor::new, visitor);
+    }
+
+    /**
+     * Read the orders of a time range, live and archived, oldest first, like forEachSaleChunk.
+     * @param from Start of the range in epoch milliseconds (inclusive)
+     * @param to End of the range in epoch milliseconds (exclusive)
+     * @param visitor Receives each chunk
+     * @throws IOException if the visitor failed
+     */
+    public void forEachOrderChunk(long from, long to, ChunkVisitor<OrderCursor> visitor) throws IOException {
+        forEachHistoryChunk(QUERY_ORDERS_EXPORT_CHUNK, from, to, OrderCursor::new, visitor);
+    }
 
+    /**
+     * Count the products in the database.
+     * @return The number of products
+     */
+    public int countProducts() {
+        return (int) DatabaseUtils.queryNumEntries(this.getReadableDatabase(), TABLE_PRODUCTS);
+    }
+
+    /**
+     * Read every product from the database, by id, in chunks of at most EXPORT_CHUNK_SIZE rows.
+     * @param visitor Receives each chunk, a cursor over the products table
+     * @throws IOException if the visitor failed
+     */
+    public void forEachProductChunk(ChunkVisitor<Cursor> visitor) throws IOException {
         SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.rawQuery(selectQuery, new String[]{Order.STATUS_PENDING});
-
-        if (cursor.moveToFirst()) {
-            do {
-                Order order = new Order(
-                        cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_ORDER_ID)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_CUSTOMER_NAME)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_ORDER_PRODUCT_NAME)),
-                        cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_QUANTITY_ORDERED)),
-                        cursor.getDouble(cursor.getColumnIndexOrThrow(COLUMN_ORDER_UNIT_PRICE)),
-                        cursor.getDouble(cursor.getColumnIndexOrThrow(COLUMN_ORDER_TOTAL_AMOUNT)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_ORDER_STATUS)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_ORDER_DATE))
-                );
-                orderList.add(order);
-            } while (cursor.moveToNext());
+        long lastId = 0;
+        int count;
+        do {
+            Cursor chunk = db.rawQuery(QUERY_PRODUCTS_EXPORT_CHUNK, new String[]{
+                    String.valueOf(lastId), String.valueOf(EXPORT_CHUNK_SIZE)});
+            try {
+                count = chunk.getCount();
+                if (count > 0) {
+                    visitor.visit(chunk);
+                    chunk.moveToLast();
+                    lastId = chunk.getLong(chunk.getColumnIndexOrThrow(COLUMN_ID));
+                }
+            } finally {
+                chunk.close();
+            }
+        } while (count == EXPORT_CHUNK_SIZE);
+    }
+
+    /**
+     * Count the rows of a history table in a time range, in every partition covering it.
+     */
+    private int countBetween(String table, String dateColumn, long from, long to) {
+        String sql = "SELECT COUNT(*) FROM " + table + " WHERE " + dateColumn + " >= ? AND " + dateColumn + " < ?";
+        String[] args = {String.valueOf(from), String.valueOf(to)};
+        long count = DatabaseUtils.longForQuery(this.getReadableDatabase(), sql, args);
+        for (int month : archive.getMonths()) {
+            if (month > monthOf(to - 1) || month < monthOf(from)) {
+                continue;
+            }
+            SQLiteDatabase archiveDb = archive.openForReading(month);
+            if (archiveDb != null) {
+                try {
+                    count += DatabaseUtils.longForQuery(archiveDb, sql, args);
+                } finally {
+                    archiveDb.close();
+                }
+            }
         }
+        return (int) count;
+    }
 
-        cursor.close();
-        db.close();
-        return orderList;
+    /**
+     * Visit the rows of a history table in a time range, oldest first: the archives of the
+     * months it covers, oldest month first, then the live database.
+     * @param chunkQuery The keyset query of one chunk, taking (date, id) after, end date and limit
+     * @param wrap Wraps each chunk in its history cursor
+     */
+    private <C extends HistoryCursor> void forEachHistoryChunk(String chunkQuery, long from, long to,
+                                                               Function<Cursor, C> wrap, ChunkVisitor<C> visitor)
+            throws IOException {
+        List<Integer> months = archive.getMonths();
+        Collections.reverse(months);
+        for (int month : months) {
+            if (month > monthOf(to - 1) || month < monthOf(from)) {
+                continue;
+            }
+            SQLiteDatabase archiveDb = archive.openForReading(month);
+            if (archiveDb != null) {
+                try {
+                    forEachChunk(archiveDb, chunkQuery, from, to, wrap, visitor);
+                } finally {
+                    archiveDb.close();
+                }
+            }
+        }
+        forEachChunk(this.getReadableDatabase(), chunkQuery, from, to, wrap, visitor);
+    }
+
+    /**
+     * Visit the rows of one partition in a time range, one keyset chunk at a time.
+     */
+    private static <C extends HistoryCursor> void forEachChunk(SQLiteDatabase db, String chunkQuery, long from,
+                                                               long to, Function<Cursor, C> wrap,
+                                                               ChunkVisitor<C> visitor) throws IOException {
+        // Row ids start at 1, so (from, 0) comes just before the first row dated from
+        HistoryCursor.Key after = new HistoryCursor.Key(from, 0);
+        int count;
+        do {
+            C chunk = wrap.apply(db.rawQuery(chunkQuery, new String[]{String.valueOf(after.date),
+                    String.valueOf(after.id), String.valueOf(to), String.valueOf(EXPORT_CHUNK_SIZE)}));
+            try {
+                count = chunk.getCount();
+                if (count > 0) {
+                    visitor.visit(chunk);
+                    after = chunk.getLastKey();
+                }
+            } finally {
+                chunk.close();
+            }
+        } while (count == EXPORT_CHUNK_SIZE);
+    }
+
+    // ==================== IMAGES ====================
+
+    /**
+     * @return The products with a photo but no thumbnail, saved before photos were downsampled
+     */
+    public List<Product> getProductsWithoutThumbnail() {
+        List<Product> products = new ArrayList<>();
+        for (Product product : getAllProducts()) {
+            if (product.hasImage() && !product.hasThumbnail()) {
+                products.add(product);
+            }
+        }
+        return products;
+    }
+
+    /**
+     * The image files in use: every image and thumbnail path a product refers to.
+     * Products share the file of a photo stored for each of them, which stays in use
+     * while at least one of them refers to it; see ProductImages#findOrphans.
+     * @return The distinct paths
+     */
+    public Set<String> getImagePaths() {
+        Cursor cursor = this.getReadableDatabase().rawQuery(QUERY_IMAGE_PATHS, null);
+        Set<String> paths = new HashSet<>(cursor.getCount() * 2);
+        try {
+            while (cursor.moveToNext()) {
+                paths.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return paths;
+    }
+
+    /**
+     * Point a product at new renditions of its photo, unless its photo changed meanwhile.
+     * @param id The id of the product
+     * @param previousImagePath The image path the renditions were made from
+     * @param renditions The new renditions
+     * @return true if the product was updated
+     */
+    public boolean replaceProductImages(int id, String previousImagePath, ProductImages.Renditions renditions) {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_IMAGE_PATH, renditions.getImagePath());
+        values.put(COLUMN_THUMBNAIL_PATH, renditions.getThumbnailPath());
+        int result = this.getWritableDatabase().update(TABLE_PRODUCTS, values,
+                COLUMN_ID + " = ? AND " + COLUMN_IMAGE_PATH + " = ?",
+                new String[]{String.valueOf(id), previousImagePath});
+        if (result == 0) {
+            return false;
+        }
+        Product product = getProductById(id);
+        if (product != null) {
+            product.setImagePath(renditions.getImagePath());
+            product.setThumbnailPath(renditions.getThumbnailPath());
+            catalog.put(product);
+        }
+        return true;
+    }
+
+    // ==================== BACKUP ====================
+
+    /**
+     * Move every commit from the write-ahead log into the database file and empty the log,
+     * so that the file alone holds the whole database.
+     * Must be called on the database writer thread: no write can land while the caller
+     * reads the file afterwards, and readers never modify it.
+     * @return The database file
+     * @throws IOException if readers kept the log busy
+     */
+    File checkpoint() throws IOException {
+        SQLiteDatabase db = this.getWritableDatabase();
+        checkpoint(db);
+        return new File(db.getPath());
+    }
+
+    /**
+     * Empty the write-ahead log of a database into its file.
+     * @param db The database, opened by the only thread writing to it
+     * @throws IOException if readers kept the log busy
+     */
+    static void checkpoint(SQLiteDatabase db) throws IOException {
+        for (int attempt = 0; attempt < CHECKPOINT_ATTEMPTS; attempt++) {
+            Cursor cursor = db.rawQuery(PRAGMA_CHECKPOINT, null);
+            try {
+                // The first column is 1 when the log could not be fully copied and reset
+                if (cursor.moveToFirst() && cursor.getInt(0) == 0) {
+                    return;
+                }
+            } finally {
+                cursor.close();
+            }
+            try {
+                Thread.sleep(CHECKPOINT_RETRY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        throw new IOException("The write-ahead log of " + db.getPath() + " is busy");
+    }
+
+    /**
+     * @return The image files referenced by products
+     */
+    List<File> getImageFiles() {
+        List<File> files = new ArrayList<>();
+        for (String path : getImagePaths()) {
+            files.add(new File(path));
+        }
+        return files;
+    }
+
+    /**
+     * @return The monthly archives of this database
+     */
+    HistoryArchive getArchive() {
+        return archive;
+    }
+
+    /**
+     * Swap the database and its archives for restored copies.
+     * The database is closed, its log removed so it cannot be replayed onto the new file,
+     * and each file moved into place with a rename, which either fully happens or not at all.
+     * The next access reopens the database. Must be called on the database writer thread.
+     * @param database The restored database, in the directory of the live one
+     * @param archives The restored archive of every month, by yyyyMM; months absent are deleted
+     * @throws IOException if a file could not be moved into place
+     */
+    synchronized void replaceDatabase(File database, Map<Integer, File> archives) throws IOException {
+        File live = new File(this.getWritableDatabase().getPath());
+        close();
+        try {
+            deleteLog(live);
+            if (!database.renameTo(live)) {
+                throw new IOException("Could not move " + database + " into place");
+            }
+            for (int month : archive.getMonths()) {
+                if (!archives.containsKey(month)) {
+                    File file = archive.fileOf(month);
+                    deleteLog(file);
+                    file.delete();
+                }
+            }
+            for (Map.Entry<Integer, File> restored : archives.entrySet()) {
+                File file = archive.fileOf(restored.getKey());
+                deleteLog(file);
+                if (!restored.getValue().renameTo(file)) {
+                    throw new IOException("Could not move " + restored.getValue() + " into place");
+                }
+            }
+        } finally {
+            archive.forget();
+            catalog.invalidate();
+        }
+    }
+
+    /**
+     * Delete the write-ahead log and shared memory files left beside a closed database.
+     */
+    private static void deleteLog(File database) {
+        new File(database.getPath() + "-wal").delete();
+        new File(database.getPath() + "-shm").delete();
+    }
+
+    // ==================== IMPORT ====================
+
+    /**
+     * Add or update products matched by name, all in one transaction.
+     * An existing product takes the price and quantity of the imported one, and its
+     * description unless the imported one has none; its image is kept. A quantity that
+     * changes is recorded in the stock ledger as an adjustment.
+     * @param products The products to import
+     * @return The number of products added and of existing products updated
+     */
+    public ImportCount upsertProducts(List<Product> products) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        SQLiteStatement current = db.compileStatement(SQL_QUANTITY_BY_NAME);
+        SQLiteStatement update = db.compileStatement(SQL_UPDATE_PRODUCT_BY_NAME);
+        SQLiteStatement adjust = db.compileStatement(SQL_ADJUST_IMPORTED_STOCK);
+        SQLiteStatement insert = db.compileStatement(SQL_INSERT_PRODUCT);
+        int added = 0;
+        int updated = 0;
+        long now = System.currentTimeMillis();
+        db.beginTransaction();
+        try {
+            for (Product product : products) {
+                current.bindString(1, product.getName());
+                long previousQuantity = current.simpleQueryForLong();
+
+                update.clearBindings();
+                update.bindLong(1, product.getPrice().getCents());
+                update.bindLong(2, product.getQuantity());
+                // Product turns a missing description into an empty one, which must not erase the current one
+                bindText(update, 3, product.getDescription().isEmpty() ? null : product.getDescription());
+                update.bindString(4, product.getName());
+                int rows = update.executeUpdateDelete();
+                if (rows > 0) {
+                    updated += rows;
+                    // Written after the update, so a snapshot taken on this movement holds the new quantity
+                    adjust.bindLong(1, previousQuantity);
+                    adjust.bindString(2, StockMovement.REASON_ADJUST);
+                    adjust.bindLong(3, now);
+                    adjust.bindString(4, product.getName());
+                    adjust.bindLong(5, previousQuantity);
+                    adjust.executeInsert();
+                } else {
+                    insert.clearBindings();
+                    insert.bindString(1, product.getName());
+                    insert.bindLong(2, product.getPrice().getCents());
+                    insert.bindLong(3, product.getQuantity());
+                    bindText(insert, 4, product.getDescription());
+                    bindText(insert, 5, product.getImagePath());
+                    bindText(insert, 6, product.getThumbnailPath());
+                    insert.executeInsert();
+                    added++;
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            current.close();
+            update.close();
+            adjust.close();
+            insert.close();
+            // Cheaper to reload the catalog once than to track every product touched
+            catalog.invalidate();
+        }
+        return new ImportCount(added, updated);
+    }
+
+    /**
+     * The rows an import added and the existing rows it updated.
+     */
+    public static final class ImportCount {
+        private final int added;
+        private final int updated;
+
+        ImportCount(int added, int updated) {
+            this.added = added;
+            this.updated = updated;
+        }
+
+        public int getAdded() {
+            return added;
+        }
+
+        public int getUpdated() {
+            return updated;
+        }
+    }
+
+    /**
+     * Add historic sales, all in one transaction.
+     * Each sale is linked to the product of the same name if there is one. Like addSales,
+     * this records history only and leaves the stock untouched.
+     * @param sales The sales to import
+     * @return The number of sales inserted
+     */
+    public int importSales(List<Sale> sales) {
+        if (sales.isEmpty()) {
+            return 0;
+        }
+        return insertAll(SQL_IMPORT_SALE, sales, sales.size(), (statement, sale) -> {
+            bindText(statement, 1, sale.getProductName());
+            bindText(statement, 2, sale.getProductName());
+            statement.bindLong(3, sale.getQuantitySold());
+            statement.bindLong(4, sale.getUnitPrice().getCents());
+            statement.bindLong(5, sale.getTotalAmount().getCents());
+            statement.bindLong(6, sale.getDate());
+        });
+    }
+
+    // ==================== BULK INSERTS ====================
+
+    /**
+     * Binds one row to a compiled insert statement.
+     */
+    private interface RowBinder<T> {
+        void bind(SQLiteStatement statement, T row);
+    }
+
+    /**
+     * Add many products using the default batch size.
+     * @param products The products to add
+     * @return The number of products inserted
+     */
+    public int addProducts(List<Product> products) {
+        return addProducts(products, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Add many products, committing one transaction per batch.
+     * Like addProduct, a product whose name is already taken is skipped.
+     * @param products The products to add
+     * @param batchSize The number of rows per transaction
+     * @return The number of products inserted
+     */
+    public int addProducts(List<Product> products, int batchSize) {
+        try {
+            return insertAll(SQL_INSERT_PRODUCT, products, batchSize, (statement, product) -> {
+                bindText(statement, 1, product.getName());
+                statement.bindLong(2, product.getPrice().getCents());
+                statement.bindLong(3, product.getQuantity());
+                bindText(statement, 4, product.getDescription());
+                bindText(statement, 5, product.getImagePath());
+                bindText(statement, 6, product.getThumbnailPath());
+            });
+        } finally {
+            // Cheaper to reload the catalog once than to track every inserted id
+            catalog.invalidate();
+        }
+    }
+
+    /**
+     * Add many sales using the default batch size.
+     * @param sales The sales to add
+     * @return The number of sales inserted
+     */
+    public int addSales(List<Sale> sales) {
+        return addSales(sales, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Add many sales, committing one transaction per batch.
+     * Like addSale, this records history only and leaves the stock untouched.
+     * @param sales The sales to add
+     * @param batchSize The number of rows per transaction
+     * @return The number of sales inserted
+     */
+    public int addSales(List<Sale> sales, int batchSize) {
+        return insertAll(SQL_INSERT_SALE, sales, batchSize, DBHelper::bindSale);
+    }
+
+    /**
+     * Add many orders using the default batch size.
+     * @param orders The orders to add
+     * @return The number of orders inserted
+     */
+    public int addOrders(List<Order> orders) {
+        return addOrders(orders, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Add many orders, committing one transaction per batch.
+     * Like addOrder, this records history only and leaves the stock untouched.
+     * @param orders The orders to add
+     * @param batchSize The number of rows per transaction
+     * @return The number of orders inserted
+     */
+    public int addOrders(List<Order> orders, int batchSize) {
+        return insertAll(SQL_INSERT_ORDER, orders, batchSize, DBHelper::bindOrder);
+    }
+
+    /**
+     * Insert rows with a single compiled statement, one transaction per batch.
+     * Committing per batch rather than per row saves a journal sync for every row,
+     * while bounded batches keep the writer from holding the database for a whole import.
+     * A row rejected by a constraint is skipped; the rest of its batch is still committed.
+     * @param sql The INSERT statement
+     * @param rows The rows to insert
+     * @param batchSize The number of rows per transaction
+     * @param binder Binds the values of one row
+     * @return The number of rows inserted
+     */
+    private <T> int insertAll(String sql, List<T> rows, int batchSize, RowBinder<T> binder) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be at least 1");
+        }
+        SQLiteDatabase db = this.getWritableDatabase();
+        SQLiteStatement statement = db.compileStatement(sql);
+        int inserted = 0;
+        try {
+            for (int start = 0; start < rows.size(); start += batchSize) {
+                int end = Math.min(start + batchSize, rows.size());
+                db.beginTransaction();
+                try {
+                    for (int i = start; i < end; i++) {
+                        statement.clearBindings();
+                        binder.bind(statement, rows.get(i));
+                        try {
+                            statement.executeInsert();
+                            inserted++;
+                        } catch (SQLiteConstraintException e) {
+                            // Skip the row, as db.insert does
+                        }
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+            }
+        } finally {
+            statement.close();
+        }
+        return inserted;
+    }
+
+    /**
+     * Bind the columns of a sale, in the order of SQL_INSERT_SALE.
+     */
+    private static void bindSale(SQLiteStatement statement, Sale sale) {
+        bindProductId(statement, 1, sale.getProductId());
+        bindText(statement, 2, sale.getProductName());
+        statement.bindLong(3, sale.getQuantitySold());
+        statement.bindLong(4, sale.getUnitPrice().getCents());
+        statement.bindLong(5, sale.getTotalAmount().getCents());
+        statement.bindLong(6, sale.getDate());
+    }
+
+    /**
+     * Bind the columns of an order, in the order of SQL_INSERT_ORDER.
+     */
+    private static void bindOrder(SQLiteStatement statement, Order order) {
+        bindText(statement, 1, order.getCustomerName());
+        bindProductId(statement, 2, order.getProductId());
+        bindText(statement, 3, order.getProductName());
+        statement.bindLong(4, order.getQuantityOrdered());
+        statement.bindLong(5, order.getUnitPrice().getCents());
+        statement.bindLong(6, order.getTotalAmount().getCents());
+        bindText(statement, 7, order.getStatus());
+        statement.bindLong(8, order.getDate());
+    }
+
+    /**
+     * Bind a possibly null text value.
+     */
+    private static void bindText(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
     }
-}
 
+    /**
+     * Bind a product reference, storing NULL for a record without a known product.
+     */
+    private static void bindProductId(SQLiteStatement statement, int index, int productId) {
+        if (productId > 0) {
+            statement.bindLong(index, productId);
+        } else {
+            statement.bindNull(index);
+        }
+    }
+
+    /**
+     * Put a product reference, storing NULL for a record without a known product.
+     */
+    private static void putProductId(ContentValues values, String column, int productId) {
+        if (productId > 0) {
+            values.put(column, productId);
+        } else {
+            values.putNull(column);
+        }
+    }
+
+    // ==================== CURSOR MAPPING ====================
+
+    /**
+     * Read every product row of a cursor, then close it.
+     * @param cursor A cursor over the products table
+     * @return The products read
+     */
+    private List<Product> readProducts(Cursor cursor) {
+        List<Product> productList = new ArrayList<>(cursor.getCount());
+        try {
+            int idIndex = cursor.getColumnIndexOrThrow(COLUMN_ID);
+            int nameIndex = cursor.getColumnIndexOrThrow(COLUMN_NAME);
+            int priceIndex = cursor.getColumnIndexOrThrow(COLUMN_PRICE);
+            int quantityIndex = cursor.getColumnIndexOrThrow(COLUMN_QUANTITY);
+            int descriptionIndex = cursor.getColumnIndexOrThrow(COLUMN_DESCRIPTION);
+            int imagePathIndex = cursor.getColumnIndexOrThrow(COLUMN_IMAGE_PATH);
+            int thumbnailPathIndex = cursor.getColumnIndexOrThrow(COLUMN_THUMBNAIL_PATH);
+            while (cursor.moveToNext()) {
+                productList.add(new Product(
+                        cursor.getInt(idIndex),
+                        cursor.getString(nameIndex),
+                        Money.ofCents(cursor.getLong(priceIndex)),
+                        cursor.getInt(quantityIndex),
+                        cursor.getString(descriptionIndex),
+                        cursor.getString(imagePathIndex),
+                        cursor.getString(thumbnailPathIndex)
+                ));
+            }
+        } finally {
+            cursor.close();
+        }
+        return productList;
+    }
+
+    /**
+     * Read every sale row of a cursor, then close it.
+     * @param cursor A cursor over the sales table
+     * @return The sales read
+     */
+    private List<Sale> readSales(Cursor cursor) {
+        SaleCursor sales = cursor instanceof SaleCursor ? (SaleCursor) cursor : new SaleCursor(cursor);
+        List<Sale> saleList = new ArrayList<>(sales.getCount());
+        try {
+            while (sales.moveToNext()) {
+                saleList.add(sales.toSale());
+            }
+        } finally {
+            sales.close();
+        }
+        return saleList;
+    }
+
+    /**
+     * Read every order row of a cursor, then close it.
+     * @param cursor A cursor over the orders table
+     * @return The orders read
+     */
+    private List<Order> readOrders(Cursor cursor) {
+        OrderCursor orders = cursor instanceof OrderCursor ? (OrderCursor) cursor : new OrderCursor(cursor);
+        List<Order> orderList = new ArrayList<>(orders.getCount());
+        try {
+            while (orders.moveToNext()) {
+                orderList.add(orders.toOrder());
+            }
+        } finally {
+            orders.close();
+        }
+        return orderList;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,651 @@
+package com.example.jucygo.model;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+/**
+ * Incremental backups of the database, its monthly archives and the product images.
+ * <p>
+ * Every backed-up file is cut into fixed-size chunks, each stored in its own file and
+ * listed with its CRC-32 in a manifest. A new backup reads each file and writes only the
+ * chunks whose checksum changed; a file not written since the last backup is not even
+ * read. The new manifest replaces the old one with a rename, so a backup interrupted
+ * half-way leaves the previous one intact.
+ * <p>
+ * A backup runs in two steps. The snapshot, taken on the database writer thread so no
+ * write lands in the middle of it, checkpoints the database and archives changed since
+ * the last backup and copies them aside; sales recorded meanwhile wait only for that copy.
+ * The copies and product images are then cut into chunks, checksummed and listed in the
+ * manifest off the writer, on the image thread. Restores must run on the writer thread,
+ * and wait for a backup being stored to finish; a snapshot taken before a restore is
+ * dropped rather than stored, as it no longer matches the live files.
+ */
+public final class DatabaseBackup {
+
+    /**
+     * The outcome of a backup.
+     */
+    public static final class Result {
+        private int files;
+        private int filesUnchanged;
+        private int chunksWritten;
+        private long bytesWritten;
+
+        /**
+         * @return The number of files in the backup
+         */
+        public int getFiles() {
+            return files;
+        }
+
+        /**
+         * @return The files skipped because they were not written since the last backup
+         */
+        public int getFilesUnchanged() {
+            return filesUnchanged;
+        }
+
+        /**
+         * @return The number of chunks written; the others were kept from the last backup
+         */
+        public int getChunksWritten() {
+            return chunksWritten;
+        }
+
+        public long getBytesWritten() {
+            return bytesWritten;
+        }
+    }
+
+    // Bytes per chunk; a change rewrites only the chunks it touches
+    static final int CHUNK_SIZE = 256 * 1024;
+    private static final String MANIFEST = "manifest";
+    private static final String MANIFEST_HEADER = "jucygo-backup 1";
+    private static final String CHUNKS = "chunks";
+    private static final String PARTIAL = ".part";
+    private static final String SNAPSHOT = "snapshot";
+    private static final String RESTORED = ".restore";
+    private static final String KIND_DATABASE = "database";
+    private static final String KIND_ARCHIVE = "archive";
+    private static final String KIND_IMAGE = "image";
+
+    private final DBHelper dbHelper;
+    private final File directory;
+    private final File chunks;
+    private final File snapshots;
+    // Set from a snapshot until its backup is stored, so two backups never share the snapshot copies
+    private final AtomicBoolean running = new AtomicBoolean();
+    // Counts the restores, so a snapshot can tell whether one happened since it was taken
+    private volatile int restores;
+
+    /**
+     * @param dbHelper The database to back up
+     * @param directory The directory holding the backup
+     */
+    public DatabaseBackup(DBHelper dbHelper, File directory) {
+        this.dbHelper = dbHelper;
+        this.directory = directory;
+        this.chunks = new File(directory, CHUNKS);
+        this.snapshots = new File(directory, SNAPSHOT);
+    }
+
+    /**
+     * @return The time of the last complete backup in epoch milliseconds, or 0 if there is none
+     */
+    public long getBackupTime() {
+        File manifest = new File(directory, MANIFEST);
+        return manifest.exists() ? manifest.lastModified() : 0;
+    }
+
+    /**
+     * Back up the database, its archives and the images of its products in one go,
+     * taking the snapshot and storing it on the calling thread.
+     * @return What was written
+     * @throws IOException if a file could not be read or written; the previous backup is kept
+     */
+    public Result backup() throws IOException {
+        return backup(snapshot());
+    }
+
+    /**
+     * Take the snapshot of a backup: checkpoint the database and the archives changed since
+     * the last backup and copy them aside, and list the product images in use.
+     * Must run on the database writer thread; the files are stored afterwards by backup(Snapshot).
+     * @return The snapshot to store
+     * @throws IOException if a file could not be copied, or another backup is still being stored
+     */
+    Snapshot snapshot() throws IOException {
+        if (!running.compareAndSet(false, true)) {
+            throw new IOException("A backup is already running");
+        }
+        try {
+            deleteSnapshotCopies();
+            if (!snapshots.isDirectory() && !snapshots.mkdirs()) {
+                throw new IOException("Could not create " + snapshots);
+            }
+            Map<String, Entry> previous;
+            try {
+                previous = readManifest();
+            } catch (IOException e) {
+                // A damaged manifest only costs a full backup; it is replaced when the snapshot is stored
+                previous = new HashMap<>();
+            }
+            Snapshot snapshot = new Snapshot(previous, dbHelper.getImageFiles(), restores);
+
+            // The write-ahead log is emptied by every backup, so an empty log means no commit since
+            File database = new File(dbHelper.getWritableDatabase().getPath());
+            if (changed(previous, KIND_DATABASE, database)) {
+                dbHelper.checkpoint();
+                snapshot.files.add(copy(KIND_DATABASE, database));
+            } else {
+                snapshot.files.add(new Copy(KIND_DATABASE, database, null));
+            }
+
+            HistoryArchive archive = dbHelper.getArchive();
+            for (int month : archive.getMonths()) {
+                File file = archive.fileOf(month);
+                if (changed(previous, KIND_ARCHIVE, file)) {
+                    SQLiteDatabase db = archive.openForReading(month);
+                    try {
+                        DBHelper.checkpoint(db);
+                    } finally {
+                        db.close();
+                    }
+                    snapshot.files.add(copy(KIND_ARCHIVE, file));
+                } else {
+                    snapshot.files.add(new Copy(KIND_ARCHIVE, file, null));
+                }
+            }
+            return snapshot;
+        } catch (IOException | RuntimeException e) {
+            deleteSnapshotCopies();
+            running.set(false);
+            throw e;
+        }
+    }
+
+    /**
+     * Store a snapshot: write the chunks of the copied files and of the images that changed,
+     * then replace the manifest. Runs off the writer thread, and deletes the snapshot copies.
+     * @param snapshot The snapshot taken by snapshot()
+     * @return What was written
+     * @throws IOException if a file could not be read or written, or the database was restored
+     *                     since the snapshot was taken; the previous backup is kept
+     */
+    synchronized Result backup(Snapshot snapshot) throws IOException {
+        try {
+            if (snapshot.restores != restores) {
+                throw new IOException("The database was restored since the snapshot was taken");
+            }
+            if (!chunks.isDirectory() && !chunks.mkdirs()) {
+                throw new IOException("Could not create " + chunks);
+            }
+            List<Entry> entries = new ArrayList<>();
+            Result result = new Result();
+            for (Copy file : snapshot.files) {
+                entries.add(store(file, snapshot.previous, result));
+            }
+            for (File image : snapshot.images) {
+                if (image.isFile()) {
+                    // Images are never rewritten in place, so they are read where they are
+                    Copy copy = changed(snapshot.previous, KIND_IMAGE, image)
+                            ? new Copy(KIND_IMAGE, image, image) : new Copy(KIND_IMAGE, image, null);
+                    entries.add(store(copy, snapshot.previous, result));
+                }
+            }
+
+            writeManifest(entries);
+            deleteUnusedChunks(entries);
+            result.files = entries.size();
+            return result;
+        } finally {
+            deleteSnapshotCopies();
+            running.set(false);
+        }
+    }
+
+    /**
+     * Restore the last backup. Every chunk is checked against its checksum and the restored
+     * database files are checked by SQLite before anything live is touched, and the changed
+     * images are assembled beside their originals; the database and archives are then swapped
+     * in by renaming, and the images moved into place. An image that cannot be moved once the
+     * database is swapped is left out, and its product shown without one.
+     * @throws IOException if there is no backup, it is damaged, or the files could not be swapped;
+     *                     the live database is left as it was unless the swap itself failed
+     */
+    public synchronized void restore() throws IOException {
+        Map<String, Entry> entries = readManifest();
+        if (entries.isEmpty()) {
+            throw new IOException("No backup in " + directory);
+        }
+        File database = null;
+        Map<Integer, File> archives = new HashMap<>();
+        List<File> restored = new ArrayList<>();
+        Map<File, File> images = new HashMap<>();
+        try {
+            for (Entry entry : entries.values()) {
+                if (entry.kind.equals(KIND_IMAGE)) {
+                    File staged = stageImage(entry);
+                    if (staged != null) {
+                        restored.add(staged);
+                        images.put(staged, new File(entry.path));
+                    }
+                    continue;
+                }
+                File target = new File(entry.path + RESTORED);
+                restored.add(target);
+                assemble(entry, target);
+                checkIntegrity(target);
+                if (entry.kind.equals(KIND_DATABASE)) {
+                    database = target;
+                } else {
+                    archives.put(monthOf(entry), target);
+                }
+            }
+            if (database == null) {
+                throw new IOException("The backup holds no database");
+            }
+            // Snapshots taken before now no longer match the files and must not be stored
+            restores++;
+            dbHelper.replaceDatabase(database, archives);
+            for (Map.Entry<File, File> image : images.entrySet()) {
+                image.getKey().renameTo(image.getValue());
+            }
+        } finally {
+            for (File file : restored) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Store a file as chunks, writing only those missing from the previous backup.
+     * A file left unchanged since the previous backup keeps its entry without being read.
+     */
+    private Entry store(Copy file, Map<String, Entry> previous, Result result) throws IOException {
+        Entry last = previous.get(file.kind + "\t" + file.file.getPath());
+        if (file.source == null) {
+            result.filesUnchanged++;
+            return last;
+        }
+        Entry entry = new Entry(file.kind, file.file.getPath(), file.length, file.modified);
+        byte[] buffer = new byte[CHUNK_SIZE];
+        CRC32 crc = new CRC32();
+        try (InputStream in = new FileInputStream(file.source)) {
+            int length;
+            while ((length = readFully(in, buffer)) > 0) {
+                crc.reset();
+                crc.update(buffer, 0, length);
+                int index = entry.crcs.size();
+                entry.crcs.add(crc.getValue());
+                boolean kept = last != null && index < last.crcs.size() && last.crcs.get(index) == crc.getValue()
+                        && last.chunkLength(index) == length && chunkFile(last, index).isFile();
+                if (!kept) {
+                    writeChunk(chunkFile(entry, index), buffer, length);
+                    result.chunksWritten++;
+                    result.bytesWritten += length;
+                }
+            }
+        }
+        if (entry.crcs.size() != chunkCount(entry.length)) {
+            throw new IOException(file.file + " changed while it was being backed up");
+        }
+        return entry;
+    }
+
+    /**
+     * Write the chunks of a backed-up file back into one file, checking each checksum.
+     */
+    private void assemble(Entry entry, File target) throws IOException {
+        byte[] buffer = new byte[CHUNK_SIZE];
+        CRC32 crc = new CRC32();
+        try (FileOutputStream out = new FileOutputStream(target)) {
+            for (int index = 0; index < entry.crcs.size(); index++) {
+                int length = entry.chunkLength(index);
+                try (InputStream in = new FileInputStream(chunkFile(entry, index))) {
+                    if (readFully(in, buffer) != length) {
+                        throw new IOException("Chunk " + index + " of " + entry.path + " is truncated");
+                    }
+                }
+                crc.reset();
+                crc.update(buffer, 0, length);
+                if (crc.getValue() != entry.crcs.get(index)) {
+                    throw new IOException("Chunk " + index + " of " + entry.path + " is damaged");
+                }
+                out.write(buffer, 0, length);
+            }
+            out.getFD().sync();
+        }
+    }
+
+    /**
+     * Put a product image back where it was, unless it is already there unchanged.
+     */
+    /**
+     * Assemble an image beside the live one, to be moved into place once the database is swapped.
+     * @return The assembled file, or null if the live image already holds the backed-up content
+     */
+    private File stageImage(Entry entry) throws IOException {
+        File image = new File(entry.path);
+        if (image.isFile() && image.length() == entry.length && sameChunks(image, entry)) {
+            return null;
+        }
+        File parent = image.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Could not create " + parent);
+        }
+        File staged = new File(entry.path + RESTORED);
+        try {
+            assemble(entry, staged);
+        } catch (IOException e) {
+            staged.delete();
+            throw e;
+        }
+        return staged;
+    }
+
+    private static boolean sameChunks(File file, Entry entry) throws IOException {
+        byte[] buffer = new byte[CHUNK_SIZE];
+        CRC32 crc = new CRC32();
+        try (InputStream in = new FileInputStream(file)) {
+            for (long expected : entry.crcs) {
+                int length = readFully(in, buffer);
+                crc.reset();
+                crc.update(buffer, 0, length);
+                if (crc.getValue() != expected) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check that a restored database file opens and passes SQLite's structural checks.
+     */
+    private static void checkIntegrity(File file) throws IOException {
+        try (SQLiteDatabase db = SQLiteDatabase.openDatabase(file.getPath(), null, SQLiteDatabase.OPEN_READONLY);
+             Cursor cursor = db.rawQuery("PRAGMA quick_check", null)) {
+            if (!cursor.moveToFirst() || !"ok".equals(cursor.getString(0))) {
+                throw new IOException(file + " failed its integrity check");
+            }
+        } catch (RuntimeException e) {
+            throw new IOException(file + " is not a valid database", e);
+        }
+    }
+
+    // ==================== SNAPSHOT ====================
+
+    /**
+     * The database and archive files of a backup as they were on the writer thread, and the
+     * images the database used then.
+     */
+    static final class Snapshot {
+        final Map<String, Entry> previous;
+        final List<Copy> files = new ArrayList<>();
+        final List<File> images;
+        // The restore count when the snapshot was taken
+        final int restores;
+
+        Snapshot(Map<String, Entry> previous, List<File> images, int restores) {
+            this.previous = previous;
+            this.images = images;
+            this.restores = restores;
+        }
+    }
+
+    /**
+     * A file to back up, with its size and time when the snapshot was taken, and the file
+     * to read its content from: a copy taken aside, or null if it is unchanged since the last backup.
+     */
+    private static final class Copy {
+        final String kind;
+        final File file;
+        final File source;
+        final long length;
+        final long modified;
+
+        Copy(String kind, File file, File source) {
+            this.kind = kind;
+            this.file = file;
+            this.source = source;
+            this.length = file.length();
+            this.modified = file.lastModified();
+        }
+    }
+
+    /**
+     * @return Whether a file was written since the last backup, or is not in it
+     */
+    private static boolean changed(Map<String, Entry> previous, String kind, File file) {
+        Entry last = previous.get(kind + "\t" + file.getPath());
+        return last == null || logLength(file) > 0 || !last.matches(file);
+    }
+
+    /**
+     * Copy a checkpointed database file aside, for its chunks to be stored off the writer thread.
+     */
+    private Copy copy(String kind, File file) throws IOException {
+        File copy = new File(snapshots, kind + "-" + file.getName());
+        byte[] buffer = new byte[CHUNK_SIZE];
+        try (InputStream in = new FileInputStream(file);
+             FileOutputStream out = new FileOutputStream(copy)) {
+            int length;
+            while ((length = in.read(buffer)) > 0) {
+                out.write(buffer, 0, length);
+            }
+        }
+        return new Copy(kind, file, copy);
+    }
+
+    private void deleteSnapshotCopies() {
+        File[] files = snapshots.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    // ==================== CHUNK FILES ====================
+
+    /**
+     * @return The file of a chunk; its name includes its checksum, so a changed chunk is
+     *         written beside the one the current manifest still lists
+     */
+    private File chunkFile(Entry entry, int index) {
+        return new File(chunks, entry.kind + "-" + new File(entry.path).getName() + "-" + index + "-"
+                + Long.toHexString(entry.crcs.get(index)));
+    }
+
+    private static void writeChunk(File file, byte[] buffer, int length) throws IOException {
+        File partial = new File(file.getPath() + PARTIAL);
+        try (FileOutputStream out = new FileOutputStream(partial)) {
+            out.write(buffer, 0, length);
+            out.getFD().sync();
+        }
+        if (!partial.renameTo(file)) {
+            partial.delete();
+            throw new IOException("Could not write " + file);
+        }
+    }
+
+    /**
+     * Delete the chunks no longer listed by the manifest, and any left by an interrupted backup.
+     */
+    private void deleteUnusedChunks(List<Entry> entries) {
+        Set<String> used = new HashSet<>();
+        for (Entry entry : entries) {
+            for (int index = 0; index < entry.crcs.size(); index++) {
+                used.add(chunkFile(entry, index).getName());
+            }
+        }
+        File[] files = chunks.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!used.contains(file.getName())) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    // ==================== MANIFEST ====================
+
+    /**
+     * One backed-up file: where it was, its size and time when backed up, and the checksum of each chunk.
+     */
+    private static final class Entry {
+        final String kind;
+        final String path;
+        final long length;
+        final long modified;
+        final List<Long> crcs = new ArrayList<>();
+
+        Entry(String kind, String path, long length, long modified) {
+            this.kind = kind;
+            this.path = path;
+            this.length = length;
+            this.modified = modified;
+        }
+
+        /**
+         * @return Whether a file still has the size and modification time it had when backed up
+         */
+        boolean matches(File file) {
+            return file.length() == length && file.lastModified() == modified;
+        }
+
+        int chunkLength(int index) {
+            return (int) Math.min(CHUNK_SIZE, length - (long) index * CHUNK_SIZE);
+        }
+    }
+
+    /**
+     * Read the manifest of the last backup.
+     * Lines: the header, then for each file "file", kind, length, modification time and path,
+     * followed by one line of its chunk checksums in hex; fields are separated by tabs.
+     * @return The backed-up files by kind and path, empty if there is no backup
+     */
+    private Map<String, Entry> readManifest() throws IOException {
+        Map<String, Entry> entries = new HashMap<>();
+        File manifest = new File(directory, MANIFEST);
+        if (!manifest.exists()) {
+            return entries;
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(manifest))) {
+            if (!MANIFEST_HEADER.equals(reader.readLine())) {
+                throw new IOException("Unknown backup format in " + manifest);
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", 5);
+                String crcLine = reader.readLine();
+                if (fields.length != 5 || !fields[0].equals("file") || crcLine == null) {
+                    throw new IOException("Damaged manifest in " + manifest);
+                }
+                Entry entry = new Entry(fields[1], fields[4], Long.parseLong(fields[2]), Long.parseLong(fields[3]));
+                if (!crcLine.isEmpty()) {
+                    for (String crc : crcLine.split("\t")) {
+                        entry.crcs.add(Long.parseLong(crc, 16));
+                    }
+                }
+                if (entry.crcs.size() != chunkCount(entry.length)) {
+                    throw new IOException("Damaged manifest in " + manifest);
+                }
+                entries.put(entry.kind + "\t" + entry.path, entry);
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException("Damaged manifest in " + manifest, e);
+        }
+        return entries;
+    }
+
+    /**
+     * Write the manifest beside the current one, then replace it with a rename.
+     */
+    private void writeManifest(List<Entry> entries) throws IOException {
+        File manifest = new File(directory, MANIFEST);
+        File partial = new File(directory, MANIFEST + PARTIAL);
+        try (FileOutputStream out = new FileOutputStream(partial)) {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            writer.write(MANIFEST_HEADER);
+            writer.write('\n');
+            for (Entry entry : entries) {
+                writer.write("file\t" + entry.kind + "\t" + entry.length + "\t" + entry.modified + "\t"
+                        + entry.path + "\n");
+                for (int i = 0; i < entry.crcs.size(); i++) {
+                    if (i > 0) {
+                        writer.write('\t');
+                    }
+                    writer.write(Long.toHexString(entry.crcs.get(i)));
+                }
+                writer.write('\n');
+            }
+            writer.flush();
+            out.getFD().sync();
+        }
+        if (!partial.renameTo(manifest)) {
+            partial.delete();
+            throw new IOException("Could not write " + manifest);
+        }
+    }
+
+    // ==================== HELPERS ====================
+
+    private static int chunkCount(long length) {
+        return (int) ((length + CHUNK_SIZE - 1) / CHUNK_SIZE);
+    }
+
+    /**
+     * @return The size of the write-ahead log of a database, 0 if it has none
+     */
+    private static long logLength(File database) {
+        return new File(database.getPath() + "-wal").length();
+    }
+
+    /**
+     * @return The month of an archive entry, from the yyyyMM ending its file name
+     */
+    private static int monthOf(Entry entry) throws IOException {
+        String path = entry.path;
+        try {
+            return Integer.parseInt(path.substring(path.length() - 6));
+        } catch (RuntimeException e) {
+            throw new IOException("Unexpected archive " + path, e);
+        }
+    }
+
+    /**
+     * Read until the buffer is full or the stream ends.
+     * @return The number of bytes read, 0 at the end of the stream
+     */
+    private static int readFully(InputStream in, byte[] buffer) throws IOException {
+        int total = 0;
+        int n;
+        while (total < buffer.length && (n = in.read(buffer, total, buffer.length - total)) > 0) {
+            total += n;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.jucygo.model;
+
+import android.os.Process;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Background executors used to access the database and the product images.
+ * All writes are funnelled through a single writer thread so they are applied
+ * one at a time in submission order, while reads run in parallel on a small
+ * reader pool. With write-ahead logging enabled in DBHelper, readers never
+ * block the writer and the writer never blocks readers. Storing product photos runs
+ * on a thread of its own, so it never holds up a database read, and the images shown
+ * in lists are decoded on a small pool, so they never wait behind a photo being stored.
+ * CSV exports and imports each run on a thread of their own, so a long transfer never takes
+ * a reader from the screens; an import waiting on the writer for its chunks holds only its own thread.
+ */
+public final class DatabaseExecutors {
+    // Number of reader threads; matches the size of the WAL connection pool
+    private static final int READER_THREADS = 3;
+    // Number of threads decoding images for display
+    private static final int DECODER_THREADS = 2;
+
+    private static DatabaseExecutors instance;
+
+    private final ExecutorService writer;
+    private final ExecutorService readers;
+    private final ExecutorService images;
+    private final ExecutorService decoders;
+    private final ExecutorService exports;
+    private final ExecutorService imports;
+
+    private DatabaseExecutors() {
+        // Sales wait on the writer, so it runs above the threads doing bulk image work
+        writer = Executors.newSingleThreadExecutor(
+                new DatabaseThreadFactory("jucygo-db-writer", Process.THREAD_PRIORITY_DEFAULT));
+        readers = Executors.newFixedThreadPool(READER_THREADS,
+                new DatabaseThreadFactory("jucygo-db-reader", Process.THREAD_PRIORITY_BACKGROUND));
+        images = Executors.newSingleThreadExecutor(
+                new DatabaseThreadFactory("jucygo-images", Process.THREAD_PRIORITY_BACKGROUND));
+        decoders = Executors.newFixedThreadPool(DECODER_THREADS,
+                new DatabaseThreadFactory("jucygo-image-decoder", Process.THREAD_PRIORITY_BACKGROUND));
+        exports = Executors.newSingleThreadExecutor(
+                new DatabaseThreadFactory("jucygo-export", Process.THREAD_PRIORITY_BACKGROUND));
+        imports = Executors.newSingleThreadExecutor(
+                new DatabaseThreadFactory("jucygo-import", Process.THREAD_PRIORITY_BACKGROUND));
+    }
+
+    /**
+     * Get the process-wide database executors.
+     * @return The shared DatabaseExecutors instance
+     */
+    public static synchronized DatabaseExecutors getInstance() {
+        if (instance == null) {
+            instance = new DatabaseExecutors();
+        }
+        return instance;
+    }
+
+    /**
+     * Submit a task that modifies the database to the serialized writer.
+     * @param task The write operation
+     * @return A future holding the task result
+     */
+    public <T> Future<T> write(Callable<T> task) {
+        return writer.submit(task);
+    }
+
+    /**
+     * Submit a read-only task to the reader pool.
+     * @param task The read operation
+     * @return A future holding the task result
+     */
+    public <T> Future<T> read(Callable<T> task) {
+        return readers.submit(task);
+    }
+
+    /**
+     * Run a task that modifies the database on the serialized writer.
+     * @param task The write operation
+     */
+    public void executeWrite(Runnable task) {
+        writer.execute(task);
+    }
+
+    /**
+     * Run a read-only task on the reader pool.
+     * @param task The read operation
+     */
+    public void executeRead(Runnable task) {
+        readers.execute(task);
+    }
+
+    /**
+     * Run a task storing product photos on the image thread.
+     * @param task The image operation
+     */
+    public void executeImage(Runnable task) {
+        images.execute(task);
+    }
+
+    /**
+     * Run a CSV export on the export thread; exports run one at a time.
+     * @param task The export
+     */
+    public void executeExport(Runnable task) {
+        exports.execute(task);
+    }
+
+    /**
+     * Run a CSV import on the import thread; imports run one at a time.
+     * @param task The import, which reads the file and waits for its chunks to be written
+     */
+    public void executeImport(Runnable task) {
+        imports.execute(task);
+    }
+
+    /**
+     * Submit a task decoding an image for display to the decoder pool.
+     * @param task The decode
+     * @return A future holding the task result, cancelled when the image is no longer wanted
+     */
+    public <T> Future<T> decodeImage(Callable<T> task) {
+        return decoders.submit(task);
+    }
+
+    /**
+     * Thread factory naming database threads and setting their priority. Readers and
+     * image threads run at background priority so they never compete with the UI thread;
+     * the writer runs at default priority so decoding and storing images cannot delay
+     * recording a sale.
+     */
+    private static class DatabaseThreadFactory implements ThreadFactory {
+        private final String namePrefix;
+        private final int priority;
+        private final AtomicInteger count = new AtomicInteger(1);
+
+        DatabaseThreadFactory(String namePrefix, int priority) {
+            this.namePrefix = namePrefix;
+            this.priority = priority;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(() -> {
+                Process.setThreadPriority(priority);
+                runnable.run();
+            }, namePrefix + "-" + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
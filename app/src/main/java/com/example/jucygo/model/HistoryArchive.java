@@ -0,0 +1,126 @@
+package com.example.jucygo.model;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The monthly archive files holding the sales and orders moved out of the live database.
+ * Each month is its own SQLite file beside the live database, named after it with the
+ * month appended (e.g. JucygoDB-archive-202401), and holds the history tables of the
+ * live schema with their search index. An archive is opened only while a query or the
+ * archival job needs it, so the live database alone stays small and hot.
+ */
+final class HistoryArchive {
+    private static final String ARCHIVE_SUFFIX = "-archive-";
+    // Version of the archive schema, kept in the user_version of every archive file
+    private static final int ARCHIVE_VERSION = 1;
+
+    private final File directory;
+    private final String databaseName;
+    private final String[] schema;
+    private final Pattern fileName;
+    // Archived months as yyyyMM, newest first; listed from the directory on first use
+    private List<Integer> months;
+
+    /**
+     * @param directory The directory of the live database, or null for an in-memory database without archives
+     * @param databaseName The name of the live database
+     * @param schema The statements creating the tables of an archive
+     */
+    HistoryArchive(File directory, String databaseName, String[] schema) {
+        this.directory = directory;
+        this.databaseName = databaseName;
+        this.schema = schema;
+        this.fileName = Pattern.compile(Pattern.quote(databaseName + ARCHIVE_SUFFIX) + "(\\d{6})");
+    }
+
+    /**
+     * @return The archived months as yyyyMM, newest first
+     */
+    synchronized List<Integer> getMonths() {
+        if (months == null) {
+            months = new ArrayList<>();
+            File[] files = directory == null ? null : directory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    Matcher matcher = fileName.matcher(file.getName());
+                    if (matcher.matches()) {
+                        months.add(Integer.parseInt(matcher.group(1)));
+                    }
+                }
+            }
+            months.sort(Collections.reverseOrder());
+        }
+        return new ArrayList<>(months);
+    }
+
+    /**
+     * Forget the archived months, so they are listed from the directory again on next use.
+     * Called once the archive files have been replaced.
+     */
+    synchronized void forget() {
+        months = null;
+    }
+
+    /**
+     * Open the archive of a month to read it. The caller must close it.
+     * @param month The month as yyyyMM
+     * @return The archive, or null if that month has none
+     */
+    SQLiteDatabase openForReading(int month) {
+        if (!getMonths().contains(month)) {
+            return null;
+        }
+        return SQLiteDatabase.openDatabase(fileOf(month).getPath(), null,
+                SQLiteDatabase.OPEN_READWRITE | SQLiteDatabase.ENABLE_WRITE_AHEAD_LOGGING);
+    }
+
+    /**
+     * Open the archive of a month to add to it, creating it if needed. The caller must close it.
+     * @param month The month as yyyyMM
+     * @return The archive
+     */
+    SQLiteDatabase openForWriting(int month) {
+        if (directory == null) {
+            throw new IllegalStateException("An in-memory database cannot be archived");
+        }
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(fileOf(month).getPath(), null,
+                SQLiteDatabase.OPEN_READWRITE | SQLiteDatabase.CREATE_IF_NECESSARY
+                        | SQLiteDatabase.ENABLE_WRITE_AHEAD_LOGGING);
+        if (db.getVersion() == 0) {
+            db.beginTransaction();
+            try {
+                for (String statement : schema) {
+                    db.execSQL(statement);
+                }
+                db.setVersion(ARCHIVE_VERSION);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
+        synchronized (this) {
+            List<Integer> known = getMonths();
+            if (!known.contains(month)) {
+                known.add(month);
+                known.sort(Collections.reverseOrder());
+                months = known;
+            }
+        }
+        return db;
+    }
+
+    /**
+     * @param month The month as yyyyMM
+     * @return The file holding the archive of that month, whether it exists or not
+     */
+    File fileOf(int month) {
+        return new File(directory, databaseName + ARCHIVE_SUFFIX + month);
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.jucygo.model;
+
+import android.database.Cursor;
+import android.database.CursorWrapper;
+
+/**
+ * Cursor over sales or orders in history order, newest first.
+ * Column indices are looked up once when the cursor is created, so showing a row
+ * reads just that row's columns from the cursor window without building a model object.
+ */
+public abstract class HistoryCursor extends CursorWrapper {
+
+    /**
+     * Position in the history after which the next page starts.
+     */
+    public static final class Key {
+        final long date;
+        final int id;
+
+        Key(long date, int id) {
+            this.date = date;
+            this.id = id;
+        }
+    }
+
+    private final int idIndex;
+    private final int dateIndex;
+
+    HistoryCursor(Cursor cursor, String idColumn, String dateColumn) {
+        super(cursor);
+        idIndex = cursor.getColumnIndexOrThrow(idColumn);
+        dateIndex = cursor.getColumnIndexOrThrow(dateColumn);
+    }
+
+    public int getId() {
+        return getInt(idIndex);
+    }
+
+    public long getDate() {
+        return getLong(dateIndex);
+    }
+
+    /**
+     * Get the key of the last row, where the page following this one starts.
+     * Moves the cursor to its last row.
+     * @return The key of the last row, or null if the cursor is empty
+     */
+    public Key getLastKey() {
+        if (!moveToLast()) {
+            return null;
+        }
+        return new Key(getDate(), getId());
+    }
+}
@@ -0,0 +1,191 @@
+package com.example.jucygo.model;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
+
+import java.util.concurrent.Future;
+
+/**
+ * Decodes product images in the background and keeps the decoded bitmaps in memory.
+ * Two levels: an LRU cache of bitmaps keyed by path and size, bounded in bytes, in front
+ * of the image files themselves, small renditions written by ProductImages. A miss is
+ * decoded on the decoder threads of DatabaseExecutors at the size asked for, so scrolling
+ * back over a list decodes nothing and the main thread never touches the files.
+ * The memory level shrinks when the system asks the app to trim its memory.
+ */
+public final class ImageLoader {
+    // Share of the heap given to decoded bitmaps
+    private static final int CACHE_FRACTION = 8;
+
+    /**
+     * A decode that has not delivered its bitmap yet.
+     */
+    public static final class Request {
+        private volatile boolean cancelled;
+        private Future<?> future;
+
+        private Request() {
+        }
+
+        /**
+         * Drop the request: its bitmap is not delivered, and it is not decoded at all
+         * if no decoder thread has picked it up yet.
+         * Must be called on the main thread.
+         */
+        public void cancel() {
+            cancelled = true;
+            future.cancel(false);
+        }
+    }
+
+    private static ImageLoader instance;
+
+    private final LruCache<String, Bitmap> cache;
+    private final DatabaseExecutors executors;
+    private final Handler mainHandler;
+    private long hitCount;
+    private long missCount;
+    private long decodeCount;
+    private long decodeNanos;
+
+    private ImageLoader(int maxBytes) {
+        cache = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getAllocationByteCount();
+            }
+        };
+        executors = DatabaseExecutors.getInstance();
+        mainHandler = new Handler(Looper.getMainLooper());
+    }
+
+    /**
+     * Get the process-wide image loader, its cache sized from the heap limit.
+     * @return The shared ImageLoader instance
+     */
+    public static synchronized ImageLoader getInstance() {
+        if (instance == null) {
+            instance = new ImageLoader((int) Math.min(Integer.MAX_VALUE,
+                    Runtime.getRuntime().maxMemory() / CACHE_FRACTION));
+        }
+        return instance;
+    }
+
+    /**
+     * Look an image up in memory only.
+     * @param path The image file
+     * @param size The side of the view in pixels
+     * @return The decoded bitmap, or null if it has to be loaded
+     */
+    public Bitmap getCached(String path, int size) {
+        Bitmap bitmap = cache.get(key(path, size));
+        synchronized (this) {
+            if (bitmap != null) {
+                hitCount++;
+            } else {
+                missCount++;
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * Decode an image on a decoder thread and keep it in memory.
+     * @param path The image file
+     * @param size The side of the view in pixels; see ProductImages#decode
+     * @param callback Receives the bitmap on the main thread, or null if the file
+     *                 cannot be decoded; never called once the request is cancelled
+     * @return The request, to cancel it when its view is recycled
+     */
+    public Request load(String path, int size, JucygoRepository.Callback<Bitmap> callback) {
+        Request request = new Request();
+        request.future = executors.decodeImage(() -> {
+            String key = key(path, size);
+            // Decoded meanwhile for another view
+            Bitmap bitmap = cache.get(key);
+            if (bitmap == null) {
+                long start = System.nanoTime();
+                bitmap = ProductImages.decode(path, size);
+                long elapsed = System.nanoTime() - start;
+                synchronized (this) {
+                    decodeCount++;
+                    decodeNanos += elapsed;
+                }
+                if (bitmap != null) {
+                    cache.put(key, bitmap);
+                }
+            }
+            Bitmap result = bitmap;
+            mainHandler.post(() -> {
+                if (!request.cancelled) {
+                    callback.onResult(result);
+                }
+            });
+            return null;
+        });
+        return request;
+    }
+
+    /**
+     * Release memory as asked by ComponentCallbacks2#onTrimMemory: everything once the app
+     * is in the background and the system runs short, half the cache when its UI is hidden
+     * or the system runs low while the app is in the foreground.
+     * @param level The trim level passed to onTrimMemory
+     */
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            cache.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            cache.trimToSize(cache.maxSize() / 2);
+        }
+    }
+
+    /**
+     * @return The number of lookups answered from memory
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return The number of lookups that had to be loaded
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return The number of image files decoded
+     */
+    public synchronized long getDecodeCount() {
+        return decodeCount;
+    }
+
+    /**
+     * @return The mean time taken by a decode, in milliseconds
+     */
+    public synchronized double getAverageDecodeMillis() {
+        return decodeCount == 0 ? 0 : decodeNanos / 1e6 / decodeCount;
+    }
+
+    /**
+     * @return The bytes held by decoded bitmaps
+     */
+    public int getCacheBytes() {
+        return cache.size();
+    }
+
+    /**
+     * @return The most bytes decoded bitmaps may take
+     */
+    public int getMaxCacheBytes() {
+        return cache.maxSize();
+    }
+
+    private static String key(String path, int size) {
+        return size + ":" + path;
+    }
+}
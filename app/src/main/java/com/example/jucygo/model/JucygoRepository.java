@@ -0,0 +1,542 @@
+package com.example.jucygo.model;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Environment;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Asynchronous access to the database for the controllers.
+ * Every call runs its DBHelper work on DatabaseExecutors (reads on the reader pool,
+ * writes on the serialized writer) and delivers the result to a callback on the
+ * main thread, so no controller ever touches SQLite on the UI thread.
+ * A call whose database work throws is still called back, with the failure value it
+ * documents (FAILED, 0, -1, false, an empty list or null), so no screen waits forever.
+ */
+public final class JucygoRepository {
+
+    /**
+     * Receives the result of a repository call on the main thread.
+     */
+    public interface Callback<T> {
+        void onResult(T result);
+    }
+
+    /**
+     * A DBHelper call run on a database thread.
+     */
+    private interface Task<T> {
+        T run();
+    }
+
+    /**
+     * A CSV export run on a database thread, reporting its progress.
+     */
+    private interface ExportTask {
+        int run(CsvExporter.ProgressListener listener) throws IOException;
+    }
+
+    /**
+     * A CSV import run on a database thread, reporting its progress.
+     */
+    private interface ImportTask {
+        CsvImporter.Result run(CsvImporter.ProgressListener listener) throws IOException;
+    }
+
+    private static final String TAG = "JucygoRepository";
+    private static final String BACKUP_DIRECTORY = "Backups";
+    // Orphan image files deleted per task of the image thread
+    private static final int SWEEP_BATCH = 100;
+
+    private static JucygoRepository instance;
+
+    private final DBHelper dbHelper;
+    private final CsvExporter exporter;
+    private final CsvImporter importer;
+    private final Context context;
+    // Created on first use, on a database thread, as finding its directory touches the disk
+    private DatabaseBackup backup;
+    // Created on first use on the image thread, for the same reason
+    private ProductImages images;
+    private final DatabaseExecutors executors;
+    private final Handler mainHandler;
+
+    private JucygoRepository(Context context, DBHelper dbHelper) {
+        this.context = context;
+        this.dbHelper = dbHelper;
+        this.exporter = new CsvExporter(dbHelper);
+        this.executors = DatabaseExecutors.getInstance();
+        this.importer = new CsvImporter(dbHelper, executors);
+        this.mainHandler = new Handler(Looper.getMainLooper());
+    }
+
+    /**
+     * Get the process-wide repository.
+     * @param context Any context; only the application context is retained
+     * @return The shared JucygoRepository instance
+     */
+    public static synchronized JucygoRepository getInstance(Context context) {
+        if (instance == null) {
+            instance = new JucygoRepository(context.getApplicationContext(), DBHelper.getInstance(context));
+        }
+        return instance;
+    }
+
+    // ==================== PRODUCTS ====================
+
+    /** Load all products, newest first. */
+    public void getAllProducts(Callback<List<Product>> callback) {
+        read(dbHelper::getAllProducts, Collections.emptyList(), callback);
+    }
+
+    /** Load a product by id; the callback receives null if it does not exist. */
+    public void getProductById(int id, Callback<Product> callback) {
+        read(() -> dbHelper.getProductById(id), null, callback);
+    }
+
+    /** Add a product; the callback receives its row id, or -1 on failure. */
+    public void addProduct(Product product, Callback<Long> callback) {
+        write(() -> dbHelper.addProduct(product), -1L, callback);
+    }
+
+    /** Add many products in batches; the callback receives the number inserted. */
+    public void addProducts(List<Product> products, Callback<Integer> callback) {
+        write(() -> dbHelper.addProducts(products), 0, callback);
+    }
+
+    /**
+     * Update a product, changing its stock by the amount edited by hand;
+     * the callback receives the number of rows updated.
+     * A replaced photo is left to the orphan sweep, as other products may share it.
+     */
+    public void updateProduct(Product product, int stockChange, Callback<Integer> callback) {
+        write(() -> {
+            Product previous = dbHelper.getProductById(product.getId());
+            int updated = dbHelper.updateProduct(product, stockChange);
+            if (updated > 0 && previous != null && !previous.getImagePath().equals(product.getImagePath())) {
+                sweepImages(null);
+            }
+            return updated;
+        }, 0, callback);
+    }
+
+    /**
+     * Delete a product; the callback receives the number of rows deleted.
+     * Its photo is left to the orphan sweep, as other products may share it.
+     */
+    public void deleteProduct(int id, Callback<Integer> callback) {
+        write(() -> {
+            Product previous = dbHelper.getProductById(id);
+            int deleted = dbHelper.deleteProduct(id);
+            if (deleted > 0 && previous != null && previous.hasImage()) {
+                sweepImages(null);
+            }
+            return deleted;
+        }, 0, callback);
+    }
+
+    // ==================== IMAGES ====================
+
+    /**
+     * Store a photo as its detail rendition and thumbnail; see ProductImages#save.
+     * Runs on the image thread; the callback receives null if the photo could not be stored.
+     */
+    public void saveProductImage(Uri source, Callback<ProductImages.Renditions> callback) {
+        executors.executeImage(() -> {
+            ProductImages.Renditions renditions;
+            try {
+                renditions = images().save(source);
+            } catch (IOException e) {
+                renditions = null;
+            }
+            deliver(renditions, callback);
+        });
+    }
+
+    /**
+     * Store a photo taken with the camera like saveProductImage, then delete the full-size
+     * file the camera wrote. The file is kept if the photo could not be stored.
+     */
+    public void saveCapturedImage(File capture, Callback<ProductImages.Renditions> callback) {
+        executors.executeImage(() -> {
+            ProductImages.Renditions renditions;
+            try {
+                renditions = images().save(Uri.fromFile(capture));
+                capture.delete();
+            } catch (IOException e) {
+                renditions = null;
+            }
+            deliver(renditions, callback);
+        });
+    }
+
+    /**
+     * Replace the full-size photos stored before photos were downsampled by their renditions.
+     * The products are found on the reader pool, their photos converted one at a time on
+     * the image thread, and each product updated on the writer, unless it was given another
+     * photo meanwhile. The originals are left to the orphan sweep; the callback receives
+     * the number of photos converted.
+     */
+    public void createMissingThumbnails(Callback<Integer> callback) {
+        executors.executeRead(() -> {
+            List<Product> products = dbHelper.getProductsWithoutThumbnail();
+            if (products.isEmpty()) {
+                deliver(0, callback);
+                return;
+            }
+            executors.executeImage(() -> deliver(convertImages(products), callback));
+        });
+    }
+
+    private int convertImages(List<Product> products) {
+        int converted = 0;
+        for (Product product : products) {
+            String previousPath = product.getImagePath();
+            // Photos taken with the camera used to be stored as their content URI
+            Uri original = previousPath.startsWith("content:") ? Uri.parse(previousPath)
+                    : Uri.fromFile(new File(previousPath));
+            ProductImages.Renditions renditions;
+            try {
+                renditions = images().save(original);
+            } catch (IOException e) {
+                // Missing or unreadable; the product keeps its placeholder
+                continue;
+            }
+            boolean replaced;
+            try {
+                replaced = executors.write(() ->
+                        dbHelper.replaceProductImages(product.getId(), previousPath, renditions)).get();
+            } catch (ExecutionException e) {
+                replaced = false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return converted;
+            }
+            if (replaced) {
+                converted++;
+            }
+        }
+        return converted;
+    }
+
+    /**
+     * Delete the image files no product refers to any more; see ProductImages#findOrphans.
+     * The paths in use are read on the reader pool, then the orphans deleted on the image
+     * thread SWEEP_BATCH files per task, so a photo being stored waits for one batch at
+     * most. The paths are read again before each batch, so a file a product took up
+     * meanwhile is kept whatever its modification time. The directory then holds the
+     * files of the live catalog and of the last day only.
+     * The callback receives the number of files deleted.
+     */
+    public void sweepImages(Callback<Integer> callback) {
+        executors.executeRead(() -> {
+            Set<String> referenced = dbHelper.getImagePaths();
+            executors.executeImage(() -> sweepBatch(images().findOrphans(referenced), 0, 0, callback));
+        });
+    }
+
+    private void sweepBatch(List<File> orphans, int from, int deletedSoFar, Callback<Integer> callback) {
+        if (from >= orphans.size()) {
+            deliver(deletedSoFar, callback);
+            return;
+        }
+        executors.executeRead(() -> {
+            Set<String> referenced = dbHelper.getImagePaths();
+            executors.executeImage(() -> {
+                int to = Math.min(orphans.size(), from + SWEEP_BATCH);
+                int deleted = deletedSoFar + images().deleteOrphans(orphans.subList(from, to), referenced);
+                sweepBatch(orphans, to, deleted, callback);
+            });
+        });
+    }
+
+    private synchronized ProductImages images() {
+        if (images == null) {
+            File directory = context.getExternalFilesDir(Environment.DIRECTORY_PICTURES);
+            if (directory == null) {
+                directory = new File(context.getFilesDir(), Environment.DIRECTORY_PICTURES);
+            }
+            images = new ProductImages(context.getContentResolver(), directory);
+        }
+        return images;
+    }
+
+    // ==================== SALES ====================
+
+    /** Record a sale and take it out of stock; see DBHelper#recordSale. */
+    public void recordSale(Sale sale, Callback<StockResult> callback) {
+        write(() -> dbHelper.recordSale(sale), StockResult.FAILED, callback);
+    }
+
+    /** Record every line of a sale ticket in one transaction; see DBHelper#recordSaleTicket. */
+    public void recordSaleTicket(List<Sale> lines, Callback<StockResult> callback) {
+        write(() -> dbHelper.recordSaleTicket(lines), StockResult.FAILED, callback);
+    }
+
+    /** Add many sales in batches; the callback receives the number inserted. */
+    public void addSales(List<Sale> sales, Callback<Integer> callback) {
+        write(() -> dbHelper.addSales(sales), 0, callback);
+    }
+
+    /** Load the page of sales after a history key as a cursor, or null on failure; see DBHelper#querySalesPage. */
+    public void querySalesPage(HistoryCursor.Key after, int pageSize, Callback<SaleCursor> callback) {
+        read(() -> dbHelper.querySalesPage(after, pageSize), null, callback);
+    }
+
+    /** Full-text search of the sales as a cursor, or null on failure; see DBHelper#querySearchSales. */
+    public void querySearchSales(String query, Callback<SaleCursor> callback) {
+        read(() -> dbHelper.querySearchSales(query), null, callback);
+    }
+
+    /** Total sales amount for a period of days, or null on failure; see DBHelper#getTotalSalesForDays. */
+    public void getTotalSalesForDays(int firstDay, int lastDay, Callback<Money> callback) {
+        read(() -> dbHelper.getTotalSalesForDays(firstDay, lastDay), null, callback);
+    }
+
+    // ==================== ORDERS ====================
+
+    /** Place an order and take it out of stock; see DBHelper#placeOrder. */
+    public void placeOrder(Order order, Callback<StockResult> callback) {
+        write(() -> dbHelper.placeOrder(order), StockResult.FAILED, callback);
+    }
+
+    /** Place every line of an order ticket in one transaction; see DBHelper#placeOrderTicket. */
+    public void placeOrderTicket(String customerName, List<Order> lines, Callback<StockResult> callback) {
+        write(() -> dbHelper.placeOrderTicket(customerName, lines), StockResult.FAILED, callback);
+    }
+
+    /** Add many orders in batches; the callback receives the number inserted. */
+    public void addOrders(List<Order> orders, Callback<Integer> callback) {
+        write(() -> dbHelper.addOrders(orders), 0, callback);
+    }
+
+    /** Change the status of an order; the callback receives the number of rows updated. */
+    public void updateOrderStatus(int orderId, String newStatus, Callback<Integer> callback) {
+        write(() -> dbHelper.updateOrderStatus(orderId, newStatus), 0, callback);
+    }
+
+    /** Cancel a pending order and restore its stock; see DBHelper#cancelOrder. */
+    public void cancelOrder(Order order, Callback<Integer> callback) {
+        write(() -> dbHelper.cancelOrder(order), 0, callback);
+    }
+
+    /** Load the page of orders after a history key as a cursor, or null on failure; see DBHelper#queryOrdersPage. */
+    public void queryOrdersPage(HistoryCursor.Key after, int pageSize, Callback<OrderCursor> callback) {
+        read(() -> dbHelper.queryOrdersPage(after, pageSize), null, callback);
+    }
+
+    /** Full-text search of the orders as a cursor, or null on failure; see DBHelper#querySearchOrders. */
+    public void querySearchOrders(String query, Callback<OrderCursor> callback) {
+        read(() -> dbHelper.querySearchOrders(query), null, callback);
+    }
+
+    // ==================== STOCK LEDGER ====================
+
+    /** Stock of a product at a point in time, or null on failure; see DBHelper#getStockAsOf. */
+    public void getStockAsOf(int productId, long epochMillis, Callback<Integer> callback) {
+        read(() -> dbHelper.getStockAsOf(productId, epochMillis), null, callback);
+    }
+
+    /** Stock movements of a product in a time range, oldest first; see DBHelper#getStockMovements. */
+    public void getStockMovements(int productId, long from, long to, Callback<List<StockMovement>> callback) {
+        read(() -> dbHelper.getStockMovements(productId, from, to), Collections.emptyList(), callback);
+    }
+
+    // ==================== ARCHIVE ====================
+
+    /**
+     * Move the history older than keepMonths whole months into the monthly archives.
+     * Each month is moved by its own write task, so sales recorded meanwhile wait for
+     * one month at most; the callback receives the number of rows moved.
+     */
+    public void archiveHistory(int keepMonths, Callback<Integer> callback) {
+        archiveNextMonth(keepMonths, 0, callback);
+    }
+
+    private void archiveNextMonth(int keepMonths, int movedSoFar, Callback<Integer> callback) {
+        executors.executeWrite(() -> {
+            int moved = run(() -> dbHelper.archiveOldestMonth(keepMonths), 0);
+            if (moved > 0) {
+                archiveNextMonth(keepMonths, movedSoFar + moved, callback);
+            } else {
+                deliver(movedSoFar, callback);
+            }
+        });
+    }
+
+    // ==================== EXPORT ====================
+
+    /** Export the sales of a time range to a CSV file; see CsvExporter#exportSales. */
+    public void exportSalesCsv(File target, long from, long to, CsvExporter.ProgressListener progress,
+                               Callback<Integer> callback) {
+        export(listener -> exporter.exportSales(target, from, to, listener), progress, callback);
+    }
+
+    /** Export the orders of a time range to a CSV file; see CsvExporter#exportOrders. */
+    public void exportOrdersCsv(File target, long from, long to, CsvExporter.ProgressListener progress,
+                                Callback<Integer> callback) {
+        export(listener -> exporter.exportOrders(target, from, to, listener), progress, callback);
+    }
+
+    /** Export every product to a CSV file; see CsvExporter#exportProducts. */
+    public void exportProductsCsv(File target, CsvExporter.ProgressListener progress, Callback<Integer> callback) {
+        export(listener -> exporter.exportProducts(target, listener), progress, callback);
+    }
+
+    /**
+     * Run an export on the export thread, so the screens keep their readers while a long file
+     * is written. Progress is delivered on the main thread; the callback receives the number of
+     * rows written, or -1 if the file could not be written.
+     */
+    private void export(ExportTask task, CsvExporter.ProgressListener progress, Callback<Integer> callback) {
+        executors.executeExport(() -> deliver(run(() -> {
+            try {
+                return task.run((written, total) ->
+                        mainHandler.post(() -> progress.onProgress(written, total)));
+            } catch (IOException e) {
+                return -1;
+            }
+        }, -1), callback));
+    }
+
+    // ==================== IMPORT ====================
+
+    /** Import products from a CSV file; see CsvImporter#importProducts. */
+    public void importProductsCsv(InputStream in, long totalBytes, CsvImporter.ProgressListener progress,
+                                  Callback<CsvImporter.Result> callback) {
+        importCsv(listener -> importer.importProducts(in, totalBytes, listener), progress, callback);
+    }
+
+    /** Import historic sales from a CSV file; see CsvImporter#importSales. */
+    public void importSalesCsv(InputStream in, long totalBytes, CsvImporter.ProgressListener progress,
+                               Callback<CsvImporter.Result> callback) {
+        importCsv(listener -> importer.importSales(in, totalBytes, listener), progress, callback);
+    }
+
+    /**
+     * Run an import on the import thread: it reads the file and waits for the parsed
+     * chunks, written one transaction at a time by the serialized writer between the
+     * other writes of the app, without holding a reader. Progress is delivered on the
+     * main thread; the callback receives null if the file could not be read.
+     */
+    private void importCsv(ImportTask task, CsvImporter.ProgressListener progress,
+                           Callback<CsvImporter.Result> callback) {
+        executors.executeImport(() -> deliver(run(() -> {
+            try {
+                return task.run((read, total) ->
+                        mainHandler.post(() -> progress.onProgress(read, total)));
+            } catch (IOException e) {
+                return null;
+            }
+        }, null), callback));
+    }
+
+    // ==================== BACKUP ====================
+
+    /**
+     * Back up the database, its archives and product images; see DatabaseBackup#backup.
+     * The snapshot is taken on the serialized writer, so the backup sees every write queued
+     * before it and none after; the snapshot is then stored on the image thread, leaving the
+     * writer free for sales. The callback receives null if the backup failed.
+     */
+    public void backup(Callback<DatabaseBackup.Result> callback) {
+        executors.executeWrite(() -> {
+            DatabaseBackup.Snapshot snapshot;
+            try {
+                snapshot = backup().snapshot();
+            } catch (IOException | RuntimeException e) {
+                deliver(null, callback);
+                return;
+            }
+            executors.executeImage(() -> {
+                DatabaseBackup.Result result;
+                try {
+                    result = backup().backup(snapshot);
+                } catch (IOException | RuntimeException e) {
+                    result = null;
+                }
+                deliver(result, callback);
+            });
+        });
+    }
+
+    /**
+     * Restore the last backup; see DatabaseBackup#restore.
+     * The callback receives true once the restored database is in place.
+     */
+    public void restoreBackup(Callback<Boolean> callback) {
+        write(() -> {
+            try {
+                backup().restore();
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        }, false, callback);
+    }
+
+    /** Load the time of the last backup in epoch milliseconds; 0 if there is none. */
+    public void getBackupTime(Callback<Long> callback) {
+        read(() -> backup().getBackupTime(), 0L, callback);
+    }
+
+    private synchronized DatabaseBackup backup() {
+        if (backup == null) {
+            // Kept in the app's external files so a backup can be copied off the device
+            File directory = context.getExternalFilesDir(BACKUP_DIRECTORY);
+            if (directory == null) {
+                directory = new File(context.getFilesDir(), BACKUP_DIRECTORY);
+            }
+            backup = new DatabaseBackup(dbHelper, directory);
+        }
+        return backup;
+    }
+
+    // ==================== DISPATCH ====================
+
+    /**
+     * Run a read-only task on the reader pool and deliver its result on the main thread.
+     * @param failed The result delivered if the task throws
+     */
+    private <T> void read(Task<T> task, T failed, Callback<T> callback) {
+        executors.executeRead(() -> deliver(run(task, failed), callback));
+    }
+
+    /**
+     * Run a modifying task on the serialized writer and deliver its result on the main thread.
+     * @param failed The result delivered if the task throws
+     */
+    private <T> void write(Task<T> task, T failed, Callback<T> callback) {
+        executors.executeWrite(() -> deliver(run(task, failed), callback));
+    }
+
+    /**
+     * Run a task, turning an exception into its failure result. The exception must not
+     * escape: it would end the database thread and the callback would never be called,
+     * leaving the screen waiting for it.
+     */
+    private static <T> T run(Task<T> task, T failed) {
+        try {
+            return task.run();
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Database task failed", e);
+            return failed;
+        }
+    }
+
+    private <T> void deliver(T result, Callback<T> callback) {
+        if (callback != null) {
+            mainHandler.post(() -> callback.onResult(result));
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.jucygo.model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * An amount of money held as a whole number of cents (hundredths of the currency unit).
+ * Prices, totals and the daily summary are all integer cents, so sums are exact
+ * and can be maintained incrementally without rounding drift.
+ */
+public final class Money implements Comparable<Money> {
+    public static final Money ZERO = new Money(0);
+
+    private final long cents;
+
+    private Money(long cents) {
+        this.cents = cents;
+    }
+
+    /**
+     * @param cents The amount in cents
+     * @return The amount
+     */
+    public static Money ofCents(long cents) {
+        return cents == 0 ? ZERO : new Money(cents);
+    }
+
+    /**
+     * Parse an amount typed in currency units, e.g. "2.5", rounding to the nearest cent.
+     * @param amount The amount as text
+     * @return The amount
+     * @throws NumberFormatException if the text is not a number or is out of range
+     */
+    public static Money parse(String amount) {
+        try {
+            return ofCents(new BigDecimal(amount.trim()).movePointRight(2)
+                    .setScale(0, RoundingMode.HALF_UP).longValueExact());
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Amount out of range: " + amount);
+        }
+    }
+
+    public long getCents() {
+        return cents;
+    }
+
+    public boolean isNegative() {
+        return cents < 0;
+    }
+
+    /**
+     * @param quantity The number of units
+     * @return This unit amount multiplied by a quantity
+     */
+    public Money times(int quantity) {
+        return ofCents(Math.multiplyExact(cents, quantity));
+    }
+
+    public Money plus(Money other) {
+        return ofCents(Math.addExact(cents, other.cents));
+    }
+
+    /**
+     * @return The exact amount in currency units, for formatting with a DecimalFormat
+     */
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(cents, 2);
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(cents, other.cents);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Money && ((Money) o).cents == cents;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(cents);
+    }
+
+    /**
+     * @return The amount in currency units without grouping, e.g. "2.50", as typed into a price field
+     */
+    @Override
+    public String toString() {
+        return toBigDecimal().toPlainString();
+    }
+}
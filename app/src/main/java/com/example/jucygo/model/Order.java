@@ -1,23 +1,21 @@
 package com.example.jucygo.model;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Locale;
-
 /**
  * Model class representing an Order (Commande) in the Juice Sales Management system.
  * An order is a manual command placed by the vendor for a customer.
- * Contains order attributes: id, customerName, productName, quantityOrdered, unitPrice, totalAmount, status, and date.
+ * Contains order attributes: id, customerName, productId, productName, quantityOrdered, unitPrice, totalAmount, status, and date.
+ * The product name is a copy kept for display; the product itself is referenced by productId.
  */
 public class Order {
     private int id;
     private String customerName;
+    private int productId;
     private String productName;
     private int quantityOrdered;
-    private double unitPrice;
-    private double totalAmount;
+    private Money unitPrice;
+    private Money totalAmount;
     private String status; // "pending", "completed", "cancelled"
-    private String date;
+    private long date; // epoch milliseconds
 
     // Status constants
     public static final String STATUS_PENDING = "pending";
@@ -25,21 +23,24 @@ public class Order {
     public static final String STATUS_CANCELLED = "cancelled";
 
     // Constructor for creating a new order (without id, date auto-generated)
-    public Order(String customerName, String productName, int quantityOrdered, double unitPrice, double totalAmount) {
+    public Order(String customerName, int productId, String productName, int quantityOrdered, Money unitPrice,
+                 Money totalAmount) {
         this.customerName = customerName;
+        this.productId = productId;
         this.productName = productName;
         this.quantityOrdered = quantityOrdered;
         this.unitPrice = unitPrice;
         this.totalAmount = totalAmount;
         this.status = STATUS_PENDING;
-        this.date = generateCurrentDate();
+        this.date = System.currentTimeMillis();
     }
 
-    // Constructor for existing order (with id and date)
-    public Order(int id, String customerName, String productName, int quantityOrdered, 
-                 double unitPrice, double totalAmount, String status, String date) {
+    // Constructor for existing order (with id and date in epoch milliseconds)
+    public Order(int id, String customerName, int productId, String productName, int quantityOrdered,
+                 Money unitPrice, Money totalAmount, String status, long date) {
         this.id = id;
         this.customerName = customerName;
+        this.productId = productId;
         this.productName = productName;
         this.quantityOrdered = quantityOrdered;
         this.unitPrice = unitPrice;
@@ -48,15 +49,6 @@ public class Order {
         this.date = date;
     }
 
-    /**
-     * Generates the current date and time in a readable format.
-     * @return Formatted date string
-     */
-    private String generateCurrentDate() {
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault());
-        return sdf.format(new Date());
-    }
-
     // Getters and Setters
     public int getId() {
         return id;
@@ -74,6 +66,14 @@ public class Order {
         this.customerName = customerName;
     }
 
+    public int getProductId() {
+        return productId;
+    }
+
+    public void setProductId(int productId) {
+        this.productId = productId;
+    }
+
     public String getProductName() {
         return productName;
     }
@@ -90,19 +90,19 @@ public class Order {
         this.quantityOrdered = quantityOrdered;
     }
 
-    public double getUnitPrice() {
+    public Money getUnitPrice() {
         return unitPrice;
     }
 
-    public void setUnitPrice(double unitPrice) {
+    public void setUnitPrice(Money unitPrice) {
         this.unitPrice = unitPrice;
     }
 
-    public double getTotalAmount() {
+    public Money getTotalAmount() {
         return totalAmount;
     }
 
-    public void setTotalAmount(double totalAmount) {
+    public void setTotalAmount(Money totalAmount) {
         this.totalAmount = totalAmount;
     }
 
@@ -114,11 +114,11 @@ public class Order {
         this.status = status;
     }
 
-    public String getDate() {
+    public long getDate() {
         return date;
     }
 
-    public void setDate(String date) {
+    public void setDate(long date) {
         this.date = date;
     }
 
@@ -0,0 +1,64 @@
+package com.example.jucygo.model;
+
+import android.database.Cursor;
+
+/**
+ * Cursor over rows of the orders table, read through cached column indices.
+ */
+public class OrderCursor extends HistoryCursor {
+    private final int customerNameIndex;
+    private final int productIdIndex;
+    private final int productNameIndex;
+    private final int quantityOrderedIndex;
+    private final int unitPriceIndex;
+    private final int totalAmountIndex;
+    private final int statusIndex;
+
+    OrderCursor(Cursor cursor) {
+        super(cursor, DBHelper.COLUMN_ORDER_ID, DBHelper.COLUMN_ORDER_DATE);
+        customerNameIndex = cursor.getColumnIndexOrThrow(DBHelper.COLUMN_CUSTOMER_NAME);
+        productIdIndex = cursor.getColumnIndexOrThrow(DBHelper.COLUMN_ORDER_PRODUCT_ID);
+        productNameIndex = cursor.getColumnIndexOrThrow(DBHelper.COLUMN_ORDER_PRODUCT_NAME);
+        quantityOrderedIndex = cursor.getColumnIndexOrThrow(DBHelper.COLUMN_QUANTITY_ORDERED);
+        unitPriceIndex = cursor.getColumnIndexOrThrow(DBHelper.COLUMN_ORDER_UNIT_PRICE);
+        totalAmountIndex = cursor.getColumnIndexOrThrow(DBHelper.COLUMN_ORDER_TOTAL_AMOUNT);
+        statusIndex = cursor.getColumnIndexOrThrow(DBHelper.COLUMN_ORDER_STATUS);
+    }
+
+    public String getCustomerName() {
+        return getString(customerNameIndex);
+    }
+
+    public int getProductId() {
+        return getInt(productIdIndex);
+    }
+
+    public String getProductName() {
+        return getString(productNameIndex);
+    }
+
+    public int getQuantityOrdered() {
+        return getInt(quantityOrderedIndex);
+    }
+
+    public Money getUnitPrice() {
+        return Money.ofCents(getLong(unitPriceIndex));
+    }
+
+    public Money getTotalAmount() {
+        return Money.ofCents(getLong(totalAmountIndex));
+    }
+
+    public String getStatus() {
+        return getString(statusIndex);
+    }
+
+    /**
+     * Build an Order from the current row.
+     * @return The order at the cursor position
+     */
+    public Order toOrder() {
+        return new Order(getId(), getCustomerName(), getProductId(), getProductName(), getQuantityOrdered(),
+                getUnitPrice(), getTotalAmount(), getStatus(), getDate());
+    }
+}
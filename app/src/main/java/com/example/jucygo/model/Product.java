@@ -2,52 +2,73 @@ package com.example.jucygo.model;
 
 /**
  * Model class representing a Product in the Juice Sales Management system.
- * Contains product attributes: id, name, price, quantity, description, and imagePath.
+ * Contains product attributes: id, name, price, quantity, description, imagePath and thumbnailPath.
+ * The image path points at the bounded detail rendition of the photo, the thumbnail path
+ * at the small rendition shown in lists; see ProductImages.
  */
 public class Product {
     private int id;
     private String name;
-    private double price;
+    private Money price;
     private int quantity;
     private String description;
     private String imagePath;
+    private String thumbnailPath;
 
     // Constructor for creating a new product (without id)
-    public Product(String name, double price, int quantity, String description) {
+    public Product(String name, Money price, int quantity, String description) {
         this.name = name;
         this.price = price;
         this.quantity = quantity;
         this.description = description != null ? description : "";
         this.imagePath = "";
+        this.thumbnailPath = "";
     }
 
     // Constructor for creating a new product with image (without id)
-    public Product(String name, double price, int quantity, String description, String imagePath) {
+    public Product(String name, Money price, int quantity, String description, String imagePath) {
         this.name = name;
         this.price = price;
         this.quantity = quantity;
         this.description = description != null ? description : "";
         this.imagePath = imagePath != null ? imagePath : "";
+        this.thumbnailPath = "";
+    }
+
+    // Constructor for creating a new product with both image renditions (without id)
+    public Product(String name, Money price, int quantity, String description, String imagePath,
+                   String thumbnailPath) {
+        this(name, price, quantity, description, imagePath);
+        this.thumbnailPath = thumbnailPath != null ? thumbnailPath : "";
     }
 
     // Constructor for existing product (with id)
-    public Product(int id, String name, double price, int quantity, String description) {
+    public Product(int id, String name, Money price, int quantity, String description) {
         this.id = id;
         this.name = name;
         this.price = price;
         this.quantity = quantity;
         this.description = description != null ? description : "";
         this.imagePath = "";
+        this.thumbnailPath = "";
     }
 
     // Constructor for existing product with image (with id)
-    public Product(int id, String name, double price, int quantity, String description, String imagePath) {
+    public Product(int id, String name, Money price, int quantity, String description, String imagePath) {
         this.id = id;
         this.name = name;
         this.price = price;
         this.quantity = quantity;
         this.description = description != null ? description : "";
         this.imagePath = imagePath != null ? imagePath : "";
+        this.thumbnailPath = "";
+    }
+
+    // Constructor for existing product with both image renditions (with id)
+    public Product(int id, String name, Money price, int quantity, String description, String imagePath,
+                   String thumbnailPath) {
+        this(id, name, price, quantity, description, imagePath);
+        this.thumbnailPath = thumbnailPath != null ? thumbnailPath : "";
     }
 
     // Getters and Setters
@@ -67,11 +88,11 @@ public class Product {
         this.name = name;
     }
 
-    public double getPrice() {
+    public Money getPrice() {
         return price;
     }
 
-    public void setPrice(double price) {
+    public void setPrice(Money price) {
         this.price = price;
     }
 
@@ -99,9 +120,21 @@ public class Product {
         this.imagePath = imagePath != null ? imagePath : "";
     }
 
+    public String getThumbnailPath() {
+        return thumbnailPath;
+    }
+
+    public void setThumbnailPath(String thumbnailPath) {
+        this.thumbnailPath = thumbnailPath != null ? thumbnailPath : "";
+    }
+
     public boolean hasImage() {
         return imagePath != null && !imagePath.isEmpty();
     }
+
+    public boolean hasThumbnail() {
+        return thumbnailPath != null && !thumbnailPath.isEmpty();
+    }
 }
 
 
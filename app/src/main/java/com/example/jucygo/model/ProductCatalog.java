@@ -0,0 +1,187 @@
+package com.example.jucygo.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * In-memory copy of the products table, indexed by id and by name.
+ * The catalog is small, so DBHelper loads it once and answers product lookups from
+ * memory afterwards. DBHelper writes every committed product and stock change
+ * through to it, so it never has to be reloaded while all writes go through DBHelper.
+ * Products are copied in and out, so callers can never modify the cached ones.
+ */
+public final class ProductCatalog {
+    // Newest product first, the order getAllProducts has always returned
+    private final TreeMap<Integer, Product> byId = new TreeMap<>(Collections.reverseOrder());
+    private final Map<String, Product> byName = new HashMap<>();
+    private boolean loaded;
+    // Incremented by every change, so a load racing a write can be detected and discarded
+    private long version;
+    // Stock changes being committed. A load overlapping one may already hold the new stock
+    // that adjustQuantity is about to apply again, so loads are discarded until none is left.
+    private int pendingStockChanges;
+    private long hitCount;
+    private long missCount;
+
+    ProductCatalog() {
+    }
+
+    /**
+     * Build a catalog answering lookups from products read once. It is not kept in step
+     * with later writes, so it must serve one lookup only.
+     * @param products Every product, as read from the database
+     * @return The loaded catalog
+     */
+    static ProductCatalog of(List<Product> products) {
+        ProductCatalog catalog = new ProductCatalog();
+        catalog.load(products, catalog.getVersion());
+        return catalog;
+    }
+
+    /**
+     * @return The number of lookups answered from memory
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return The number of times the catalog had to be loaded from the database
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    synchronized boolean isLoaded() {
+        return loaded;
+    }
+
+    synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * Fill the catalog from the database, unless it changed since the products were read.
+     * @param products Every product, as read from the database
+     * @param readVersion The catalog version when the products were read
+     * @return Whether the catalog was filled; false if a write landed or is still being committed
+     */
+    synchronized boolean load(List<Product> products, long readVersion) {
+        missCount++;
+        if (readVersion != version || pendingStockChanges > 0) {
+            return false;
+        }
+        byId.clear();
+        byName.clear();
+        for (Product product : products) {
+            byId.put(product.getId(), product);
+            byName.put(product.getName(), product);
+        }
+        loaded = true;
+        return true;
+    }
+
+    /**
+     * Forget everything, so the next lookup reloads from the database.
+     */
+    synchronized void invalidate() {
+        version++;
+        loaded = false;
+        byId.clear();
+        byName.clear();
+    }
+
+    synchronized List<Product> getAll() {
+        hitCount++;
+        List<Product> products = new ArrayList<>(byId.size());
+        for (Product product : byId.values()) {
+            products.add(copy(product));
+        }
+        return products;
+    }
+
+    synchronized Product getById(int id) {
+        hitCount++;
+        return copy(byId.get(id));
+    }
+
+    synchronized Product getByName(String name) {
+        hitCount++;
+        return copy(byName.get(name));
+    }
+
+    /**
+     * Add or replace a product after it was committed.
+     */
+    synchronized void put(Product product) {
+        version++;
+        if (!loaded) {
+            return;
+        }
+        Product previous = byId.put(product.getId(), copy(product));
+        if (previous != null) {
+            byName.remove(previous.getName());
+        }
+        byName.put(product.getName(), byId.get(product.getId()));
+    }
+
+    /**
+     * Remove a product after its deletion was committed.
+     */
+    synchronized void remove(int id) {
+        version++;
+        if (!loaded) {
+            return;
+        }
+        Product previous = byId.remove(id);
+        if (previous != null) {
+            byName.remove(previous.getName());
+        }
+    }
+
+    /**
+     * Announce a stock change about to be committed, before its transaction starts.
+     * Every call must be followed by endStockChange once the change is committed or rolled back.
+     */
+    synchronized void beginStockChange() {
+        version++;
+        pendingStockChanges++;
+    }
+
+    /**
+     * Mark a stock change announced by beginStockChange as finished, after its committed
+     * quantities were applied with adjustQuantity.
+     */
+    synchronized void endStockChange() {
+        pendingStockChanges--;
+        version++;
+    }
+
+    /**
+     * Apply a committed stock change, between beginStockChange and endStockChange.
+     * @param id The id of the product
+     * @param delta The quantity added to (positive) or taken from (negative) stock
+     */
+    synchronized void adjustQuantity(int id, int delta) {
+        version++;
+        if (!loaded) {
+            return;
+        }
+        Product product = byId.get(id);
+        if (product != null) {
+            product.setQuantity(product.getQuantity() + delta);
+        }
+    }
+
+    private static Product copy(Product product) {
+        if (product == null) {
+            return null;
+        }
+        return new Product(product.getId(), product.getName(), product.getPrice(), product.getQuantity(),
+                product.getDescription(), product.getImagePath(), product.getThumbnailPath());
+    }
+}
@@ -0,0 +1,358 @@
+package com.example.jucygo.model;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.media.ExifInterface;
+import android.net.Uri;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stores product photos as two downsampled JPEG renditions instead of the original:
+ * a detail rendition, at most DETAIL_SIZE pixels on its longer side, shown when editing
+ * a product, and a square thumbnail of THUMBNAIL_SIZE pixels for the product list.
+ * A camera photo of 12 megapixels takes about 48 MB once decoded. The source is decoded
+ * once, with the largest inSampleSize that keeps it above the detail size so the decoder
+ * skips most of its pixels, and both renditions are scaled down from that bitmap.
+ * Renditions are named after the hash of the photo, so storing a photo again, for
+ * the same product or another, reuses its files. A file is in use while a product row
+ * refers to it; the others are deleted by the orphan sweep, findOrphans and deleteOrphans.
+ * Every method reads or writes files and must run off the main thread.
+ */
+public final class ProductImages {
+    // Longer side of the detail rendition
+    public static final int DETAIL_SIZE = 1280;
+    // Side of the thumbnail: covers the 100dp list image up to xxhdpi screens
+    public static final int THUMBNAIL_SIZE = 320;
+    private static final int JPEG_QUALITY = 85;
+    private static final String FILE_PREFIX = "IMG_";
+    private static final String THUMBNAIL_SUFFIX = "_thumb.jpg";
+    // Bytes of the SHA-256 hash kept in file names; 128 bits rule out collisions
+    private static final int HASH_BYTES = 16;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // An unreferenced file younger than this may belong to a product still being edited
+    static final long ORPHAN_GRACE_MILLIS = TimeUnit.HOURS.toMillis(24);
+
+    /**
+     * The files written for one photo.
+     */
+    public static final class Renditions {
+        private final String imagePath;
+        private final String thumbnailPath;
+
+        Renditions(String imagePath, String thumbnailPath) {
+            this.imagePath = imagePath;
+            this.thumbnailPath = thumbnailPath;
+        }
+
+        /** @return The path of the detail rendition, stored as the product image path */
+        public String getImagePath() {
+            return imagePath;
+        }
+
+        /** @return The path of the thumbnail */
+        public String getThumbnailPath() {
+            return thumbnailPath;
+        }
+    }
+
+    private final ContentResolver resolver;
+    private final File directory;
+
+    /**
+     * @param resolver Opens the photos to store
+     * @param directory The directory the renditions are written to
+     */
+    public ProductImages(ContentResolver resolver, File directory) {
+        this.resolver = resolver;
+        this.directory = directory;
+    }
+
+    /**
+     * Write the renditions of a photo, unless they were stored before. The source is left in place.
+     * @param source A content or file URI of the photo
+     * @return The renditions written
+     * @throws IOException If the source cannot be read or decoded, or a rendition cannot be written
+     */
+    public Renditions save(Uri source) throws IOException {
+        String hash = hash(source);
+        File detailFile = new File(directory, FILE_PREFIX + hash + ".jpg");
+        File thumbnailFile = new File(directory, FILE_PREFIX + hash + THUMBNAIL_SUFFIX);
+        Renditions renditions = new Renditions(detailFile.getAbsolutePath(), thumbnailFile.getAbsolutePath());
+        if (detailFile.isFile() && thumbnailFile.isFile()) {
+            // Stored before, maybe for another product. Until the product being edited
+            // is saved nothing refers to them, so they get a new grace period. Where the
+            // time cannot be set they are written again below, which sets it too.
+            long now = System.currentTimeMillis();
+            boolean detailTouched = detailFile.setLastModified(now);
+            boolean thumbnailTouched = thumbnailFile.setLastModified(now);
+            if (detailTouched && thumbnailTouched) {
+                return renditions;
+            }
+        }
+
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        try (InputStream in = open(source)) {
+            BitmapFactory.decodeStream(in, null, bounds);
+        }
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            throw new IOException("Not an image: " + source);
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize(Math.max(bounds.outWidth, bounds.outHeight), DETAIL_SIZE);
+        Bitmap sampled;
+        try (InputStream in = open(source)) {
+            sampled = BitmapFactory.decodeStream(in, null, options);
+        }
+        if (sampled == null) {
+            throw new IOException("Cannot decode " + source);
+        }
+
+        Bitmap detail = scale(sampled, DETAIL_SIZE, readOrientation(source));
+        Bitmap thumbnail = null;
+        try {
+            thumbnail = squareThumbnail(detail);
+            write(detail, detailFile);
+            write(thumbnail, thumbnailFile);
+            return renditions;
+        } finally {
+            sampled.recycle();
+            detail.recycle();
+            if (thumbnail != null) {
+                thumbnail.recycle();
+            }
+        }
+    }
+
+    /**
+     * List the files of the store no product refers to, older than ORPHAN_GRACE_MILLIS:
+     * renditions of replaced or deleted photos, camera photos that were never stored and
+     * writes cut short. Younger files may belong to a product still being edited.
+     * @param referencedPaths The image and thumbnail paths of every product
+     * @return The orphans
+     */
+    public List<File> findOrphans(Set<String> referencedPaths) {
+        Set<String> referencedNames = fileNames(referencedPaths);
+        List<File> orphans = new ArrayList<>();
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return orphans;
+        }
+        long cutoff = System.currentTimeMillis() - ORPHAN_GRACE_MILLIS;
+        for (File file : files) {
+            if (file.isFile() && !referencedNames.contains(file.getName()) && file.lastModified() < cutoff) {
+                orphans.add(file);
+            }
+        }
+        return orphans;
+    }
+
+    /**
+     * Delete orphans listed by findOrphans, except those a product refers to since and those
+     * a save has given a new grace period since.
+     * Must run on the thread storing photos, so no save reuses a file while it is deleted.
+     * @param orphans The files to delete
+     * @param referencedPaths The image and thumbnail paths of every product, read after the orphans were listed
+     * @return The number of files deleted
+     */
+    public int deleteOrphans(List<File> orphans, Set<String> referencedPaths) {
+        Set<String> referencedNames = fileNames(referencedPaths);
+        long cutoff = System.currentTimeMillis() - ORPHAN_GRACE_MILLIS;
+        int deleted = 0;
+        for (File file : orphans) {
+            if (!referencedNames.contains(file.getName()) && file.lastModified() < cutoff && file.delete()) {
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * @param paths Image and thumbnail paths of products
+     * @return The names of the files of this store they refer to
+     */
+    private static Set<String> fileNames(Set<String> paths) {
+        Set<String> names = new HashSet<>();
+        for (String path : paths) {
+            // Camera photos used to be stored as the FileProvider URI of a file of this directory
+            names.add(path.startsWith("content:") ? Uri.parse(path).getLastPathSegment()
+                    : new File(path).getName());
+        }
+        return names;
+    }
+
+    /**
+     * Decode an image file no larger than needed to fill a view.
+     * @param path The image file
+     * @param size The side of the view in pixels
+     * @return The bitmap, or null if the file cannot be decoded
+     */
+    public static Bitmap decode(String path, int size) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        // centerCrop fills the view with the shorter side
+        options.inSampleSize = sampleSize(Math.min(options.outWidth, options.outHeight), size);
+        options.inJustDecodeBounds = false;
+        return BitmapFactory.decodeFile(path, options);
+    }
+
+    /**
+     * Largest power of two dividing a side while keeping it at or above a target size,
+     * the sample sizes decoders handle fastest.
+     */
+    static int sampleSize(int side, int target) {
+        int sampleSize = 1;
+        while (side / (sampleSize * 2) >= target) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private InputStream open(Uri source) throws IOException {
+        InputStream in = resolver.openInputStream(source);
+        if (in == null) {
+            throw new IOException("Cannot open " + source);
+        }
+        return in;
+    }
+
+    /**
+     * Read the orientation a camera recorded instead of rotating its pixels.
+     * Images without EXIF data, such as PNG files, are taken as they are.
+     */
+    private int readOrientation(Uri source) {
+        try (InputStream in = open(source)) {
+            return new ExifInterface(in).getAttributeInt(ExifInterface.TAG_ORIENTATION,
+                    ExifInterface.ORIENTATION_NORMAL);
+        } catch (IOException e) {
+            return ExifInterface.ORIENTATION_NORMAL;
+        }
+    }
+
+    /**
+     * Scale a bitmap so its longer side fits a size, turning it upright on the way.
+     * @return A new bitmap, or the same one if it already fits and is upright
+     */
+    private static Bitmap scale(Bitmap bitmap, int maxSize, int orientation) {
+        Matrix matrix = new Matrix();
+        int longer = Math.max(bitmap.getWidth(), bitmap.getHeight());
+        if (longer > maxSize) {
+            float factor = (float) maxSize / longer;
+            matrix.setScale(factor, factor);
+        }
+        switch (orientation) {
+            case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_180:
+                matrix.postRotate(180);
+                break;
+            case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+                matrix.postScale(1, -1);
+                break;
+            case ExifInterface.ORIENTATION_TRANSPOSE:
+                matrix.postRotate(90);
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_90:
+                matrix.postRotate(90);
+                break;
+            case ExifInterface.ORIENTATION_TRANSVERSE:
+                matrix.postRotate(-90);
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_270:
+                matrix.postRotate(-90);
+                break;
+            default:
+                break;
+        }
+        if (matrix.isIdentity()) {
+            return bitmap;
+        }
+        return Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+    }
+
+    /**
+     * Crop the centre square of a bitmap and scale it to the thumbnail size.
+     */
+    private static Bitmap squareThumbnail(Bitmap bitmap) {
+        int side = Math.min(bitmap.getWidth(), bitmap.getHeight());
+        Matrix matrix = new Matrix();
+        if (side > THUMBNAIL_SIZE) {
+            float factor = (float) THUMBNAIL_SIZE / side;
+            matrix.setScale(factor, factor);
+        }
+        return Bitmap.createBitmap(bitmap, (bitmap.getWidth() - side) / 2, (bitmap.getHeight() - side) / 2,
+                side, side, matrix, true);
+    }
+
+    /**
+     * Hash the bytes of a photo, naming its renditions, so a photo stored twice,
+     * for one product or several, is kept once.
+     */
+    private String hash(Uri source) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = open(source)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        byte[] hash = digest.digest();
+        StringBuilder hex = new StringBuilder(HASH_BYTES * 2);
+        for (int i = 0; i < HASH_BYTES; i++) {
+            hex.append(Character.forDigit((hash[i] >> 4) & 0xF, 16)).append(Character.forDigit(hash[i] & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Write a rendition beside its final name and rename it into place, so a file
+     * named after a hash is always complete.
+     */
+    private void write(Bitmap bitmap, File file) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        File part = File.createTempFile(file.getName(), ".part", directory);
+        try {
+            try (OutputStream out = new FileOutputStream(part)) {
+                if (!bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out)) {
+                    throw new IOException("Cannot encode " + file);
+                }
+            }
+            if (!part.renameTo(file)) {
+                throw new IOException("Cannot rename " + part);
+            }
+        } catch (IOException e) {
+            part.delete();
+            throw e;
+        }
+    }
+}
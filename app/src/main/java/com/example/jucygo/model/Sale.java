@@ -1,33 +1,34 @@
 package com.example.jucygo.model;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Locale;
-
 /**
  * Model class representing a Sale in the Juice Sales Management system.
- * Contains sale attributes: id, productName, quantitySold, unitPrice, totalAmount, and date.
+ * Contains sale attributes: id, productId, productName, quantitySold, unitPrice, totalAmount, and date.
+ * The product name is a copy kept for display; the product itself is referenced by productId.
  */
 public class Sale {
     private int id;
+    private int productId;
     private String productName;
     private int quantitySold;
-    private double unitPrice;
-    private double totalAmount;
-    private String date;
+    private Money unitPrice;
+    private Money totalAmount;
+    private long date; // epoch milliseconds
 
     // Constructor for creating a new sale (without id, date auto-generated)
-    public Sale(String productName, int quantitySold, double unitPrice, double totalAmount) {
+    public Sale(int productId, String productName, int quantitySold, Money unitPrice, Money totalAmount) {
+        this.productId = productId;
         this.productName = productName;
         this.quantitySold = quantitySold;
         this.unitPrice = unitPrice;
         this.totalAmount = totalAmount;
-        this.date = generateCurrentDate();
+        this.date = System.currentTimeMillis();
     }
 
-    // Constructor for existing sale (with id and date)
-    public Sale(int id, String productName, int quantitySold, double unitPrice, double totalAmount, String date) {
+    // Constructor for existing sale (with id and date in epoch milliseconds)
+    public Sale(int id, int productId, String productName, int quantitySold, Money unitPrice, Money totalAmount,
+                long date) {
         this.id = id;
+        this.productId = productId;
         this.productName = productName;
         this.quantitySold = quantitySold;
         this.unitPrice = unitPrice;
@@ -35,15 +36,6 @@ public class Sale {
         this.date = date;
     }
 
-    /**
-     * Generates the current date and time in a readable format.
-     * @return Formatted date string
-     */
-    private String generateCurrentDate() {
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault());
-        return sdf.format(new Date());
-    }
-
     // Getters and Setters
     public int getId() {
         return id;
@@ -53,6 +45,14 @@ public class Sale {
         this.id = id;
     }
 
+    public int getProductId() {
+        return productId;
+    }
+
+    public void setProductId(int productId) {
+        this.productId = productId;
+    }
+
     public String getProductName() {
         return productName;
     }
@@ -69,27 +69,27 @@ public class Sale {
         this.quantitySold = quantitySold;
     }
 
-    public double getUnitPrice() {
+    public Money getUnitPrice() {
         return unitPrice;
     }
 
-    public void setUnitPrice(double unitPrice) {
+    public void setUnitPrice(Money unitPrice) {
         this.unitPrice = unitPrice;
     }
 
-    public double getTotalAmount() {
+    public Money getTotalAmount() {
         return totalAmount;
     }
 
-    public void setTotalAmount(double totalAmount) {
+    public void setTotalAmount(Money totalAmount) {
         this.totalAmount = totalAmount;
     }
 
-    public String getDate() {
+    public long getDate() {
         return date;
     }
 
-    public void setDate(String date) {
+    public void setDate(long date) {
         this.date = date;
     }
 }
@@ -0,0 +1,52 @@
+package com.example.jucygo.model;
+
+import android.database.Cursor;
+
+/**
+ * Cursor over rows of the sales table, read through cached column indices.
+ */
+public class SaleCursor extends HistoryCursor {
+    private final int productIdIndex;
+    private final int productNameIndex;
+    private final int quantitySoldIndex;
+    private final int unitPriceIndex;
+    private final int totalAmountIndex;
+
+    SaleCursor(Cursor cursor) {
+        super(cursor, DBHelper.COLUMN_SALE_ID, DBHelper.COLUMN_DATE);
+        productIdIndex = cursor.getColumnIndexOrThrow(DBHelper.COLUMN_PRODUCT_ID);
+        productNameIndex = cursor.getColumnIndexOrThrow(DBHelper.COLUMN_PRODUCT_NAME);
+        quantitySoldIndex = cursor.getColumnIndexOrThrow(DBHelper.COLUMN_QUANTITY_SOLD);
+        unitPriceIndex = cursor.getColumnIndexOrThrow(DBHelper.COLUMN_UNIT_PRICE);
+        totalAmountIndex = cursor.getColumnIndexOrThrow(DBHelper.COLUMN_TOTAL_AMOUNT);
+    }
+
+    public int getProductId() {
+        return getInt(productIdIndex);
+    }
+
+    public String getProductName() {
+        return getString(productNameIndex);
+    }
+
+    public int getQuantitySold() {
+        return getInt(quantitySoldIndex);
+    }
+
+    public Money getUnitPrice() {
+        return Money.ofCents(getLong(unitPriceIndex));
+    }
+
+    public Money getTotalAmount() {
+        return Money.ofCents(getLong(totalAmountIndex));
+    }
+
+    /**
+     * Build a Sale from the current row.
+     * @return The sale at the cursor position
+     */
+    public Sale toSale() {
+        return new Sale(getId(), getProductId(), getProductName(), getQuantitySold(),
+                getUnitPrice(), getTotalAmount(), getDate());
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.jucygo.model;
+
+/**
+ * Model class representing one change to the stock of a product.
+ * Movements are appended to the stock ledger in the same transaction as the change
+ * itself and are never modified afterwards, so the stock of a product at any past
+ * time is the sum of its movements up to then.
+ */
+public class StockMovement {
+    private long id;
+    private int productId;
+    private int delta; // units added (positive) or taken (negative)
+    private String reason; // "initial", "sale", "order", "cancel", "adjust"
+    private long date; // epoch milliseconds
+
+    // Reason constants
+    public static final String REASON_INITIAL = "initial";
+    public static final String REASON_SALE = "sale";
+    public static final String REASON_ORDER = "order";
+    public static final String REASON_CANCEL = "cancel";
+    public static final String REASON_ADJUST = "adjust";
+
+    // Constructor for a movement read from the ledger
+    public StockMovement(long id, int productId, int delta, String reason, long date) {
+        this.id = id;
+        this.productId = productId;
+        this.delta = delta;
+        this.reason = reason;
+        this.date = date;
+    }
+
+    // Getters only: the ledger is append-only
+    public long getId() {
+        return id;
+    }
+
+    public int getProductId() {
+        return productId;
+    }
+
+    public int getDelta() {
+        return delta;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public long getDate() {
+        return date;
+    }
+}
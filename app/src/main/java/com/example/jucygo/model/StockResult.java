@@ -0,0 +1,16 @@
+package com.example.jucygo.model;
+
+/**
+ * Outcome of an operation that records a sale or an order and takes the sold
+ * quantity out of stock in the same transaction.
+ */
+public enum StockResult {
+    /** The record was saved and the stock was decremented. */
+    OK,
+    /** The product exists but does not have enough units left; nothing was saved. */
+    INSUFFICIENT_STOCK,
+    /** No product with the given id exists; nothing was saved. */
+    UNKNOWN_PRODUCT,
+    /** The database rejected the write; nothing was saved. */
+    FAILED
+}
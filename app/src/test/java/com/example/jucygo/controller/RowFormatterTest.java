@@ -0,0 +1,157 @@
+package com.example.jucygo.controller;
+
+import com.example.jucygo.model.Money;
+import com.example.jucygo.model.Order;
+import com.example.jucygo.model.Product;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.text.DecimalFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of RowFormatter: the rows it formats once per load must show the same
+ * text the adapters used to format in onBindViewHolder. The time saved per bind is
+ * measured on a device by BindFormattingBenchmark.
+ */
+public class RowFormatterTest {
+
+    private static final int ORANGE = 1;
+    private static final int GREEN = 2;
+    private static final int PURPLE = 3;
+    private static final int TEAL = 4;
+    private static final int RED = 5;
+    private static final String[] NAMES = {"Orange Juice", "Green Apple", "Strawberry Mix", "Lemonade"};
+    private static final String[] STATUSES = {Order.STATUS_PENDING, Order.STATUS_COMPLETED, Order.STATUS_CANCELLED};
+    private static final int ROWS = 1000;
+
+    private final RowFormatter formatter = new RowFormatter(Locale.getDefault(), ORANGE, GREEN, PURPLE, TEAL, RED);
+    private final List<Product> products = new ArrayList<>();
+    private final List<ProductRow> productRows = new ArrayList<>();
+    private final List<Order> orders = new ArrayList<>();
+    private final List<OrderRow> orderRows = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        for (int i = 0; i < ROWS; i++) {
+            Product product = new Product(i + 1, NAMES[i % NAMES.length] + " " + i, Money.ofCents(150 + i),
+                    i % 40, i % 3 == 0 ? null : "Fresh juice " + i);
+            products.add(product);
+            productRows.add(formatter.formatProduct(product));
+
+            Order order = new Order(i + 1, "Customer " + i, i + 1, NAMES[i % NAMES.length], 1 + i % 5,
+                    Money.ofCents(250), Money.ofCents(250L * (1 + i % 5)), STATUSES[i % STATUSES.length],
+                    1_700_000_000_000L + i * 60_000L);
+            orders.add(order);
+            orderRows.add(formatOrder(order));
+        }
+    }
+
+    @Test
+    public void productRows_showWhatTheAdapterFormattedOnBind() {
+        OldProductBind old = new OldProductBind();
+        for (int i = 0; i < ROWS; i++) {
+            Product product = products.get(i);
+            ProductRow row = productRows.get(i);
+            assertEquals(old.price(product), row.getPrice());
+            assertEquals(String.valueOf(product.getQuantity()), row.getQuantity());
+            assertEquals(old.description(product), row.getDescription());
+            assertEquals(old.tint(product), row.getPlaceholderTint());
+        }
+    }
+
+    @Test
+    public void orderRows_showWhatTheAdapterFormattedOnBind() {
+        OldOrderBind old = new OldOrderBind();
+        for (int i = 0; i < ROWS; i++) {
+            Order order = orders.get(i);
+            OrderRow row = orderRows.get(i);
+            assertEquals(old.price(order.getTotalAmount()), row.getTotalAmount());
+            assertEquals(old.date(order), row.getDate());
+            assertEquals(old.statusText(order.getStatus()), row.getStatusText());
+            assertEquals(old.statusColor(order.getStatus()), row.getStatusColor());
+        }
+    }
+
+    private OrderRow formatOrder(Order order) {
+        // The fields RowFormatter#formatOrder reads from an OrderCursor, taken from an Order here
+        String status = order.getStatus();
+        return new OrderRow(order.getId(), order.getCustomerName(), order.getProductName(),
+                String.valueOf(order.getQuantityOrdered()), formatter.formatPrice(order.getTotalAmount()),
+                formatter.formatPrice(order.getUnitPrice()), formatter.formatDate(order.getDate()),
+                formatter.statusText(status), formatter.statusColor(status),
+                Order.STATUS_PENDING.equals(status) ? order : null);
+    }
+
+    /**
+     * The formatting ProductAdapter did on every bind.
+     */
+    private static final class OldProductBind {
+        String price(Product product) {
+            DecimalFormat priceFormat = new DecimalFormat("DT #,##0.00");
+            return priceFormat.format(product.getPrice().toBigDecimal());
+        }
+
+        String description(Product product) {
+            String description = product.getDescription();
+            return description == null || description.trim().isEmpty() ? "No description" : description;
+        }
+
+        int tint(Product product) {
+            String productName = product.getName().toLowerCase();
+            if (productName.contains("orange") || productName.contains("mango") || productName.contains("peach")) {
+                return ORANGE;
+            } else if (productName.contains("apple") || productName.contains("green")) {
+                return GREEN;
+            } else if (productName.contains("strawberry") || productName.contains("berry") || productName.contains("grape")) {
+                return PURPLE;
+            }
+            return TEAL;
+        }
+    }
+
+    /**
+     * The formatting OrderHistoryAdapter did on every bind.
+     */
+    private static final class OldOrderBind {
+        private final DecimalFormat priceFormat = new DecimalFormat("DT #,##0.00");
+        private final SimpleDateFormat outputFormat = new SimpleDateFormat("MMM dd, yyyy 'at' HH:mm", Locale.getDefault());
+
+        String price(Money amount) {
+            return priceFormat.format(amount.toBigDecimal());
+        }
+
+        String date(Order order) {
+            return outputFormat.format(new Date(order.getDate()));
+        }
+
+        String statusText(String status) {
+            switch (status) {
+                case Order.STATUS_COMPLETED:
+                    return "✓ Completed";
+                case Order.STATUS_CANCELLED:
+                    return "✗ Cancelled";
+                default:
+                    return "⏳ Pending";
+            }
+        }
+
+        int statusColor(String status) {
+            switch (status) {
+                case Order.STATUS_COMPLETED:
+                    return GREEN;
+                case Order.STATUS_CANCELLED:
+                    return RED;
+                default:
+                    return ORANGE;
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.jucygo.model;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of Money: parsing typed amounts to whole cents, arithmetic that must
+ * never wrap around, and the text typed back into a price field.
+ */
+public class MoneyTest {
+
+    @Test
+    public void parse_roundsHalfCentsUp() {
+        assertEquals(101, Money.parse("1.005").getCents());
+        assertEquals(100, Money.parse("1.004").getCents());
+        assertEquals(250, Money.parse(" 2.5 ").getCents());
+    }
+
+    @Test
+    public void parse_negativeAmount_isNegative() {
+        Money amount = Money.parse("-2.5");
+
+        assertEquals(-250, amount.getCents());
+        assertTrue(amount.isNegative());
+        assertFalse(Money.parse("0").isNegative());
+        assertEquals(-101, Money.parse("-1.005").getCents());
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void parse_notANumber_throws() {
+        Money.parse("2,50");
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void parse_outOfRange_throws() {
+        Money.parse("100000000000000000000");
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void times_overflow_throws() {
+        Money.ofCents(Long.MAX_VALUE / 2 + 1).times(2);
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void plus_overflow_throws() {
+        Money.ofCents(Long.MAX_VALUE).plus(Money.ofCents(1));
+    }
+
+    @Test
+    public void timesAndPlus_areExact() {
+        assertEquals(Money.ofCents(750), Money.ofCents(250).times(3));
+        assertEquals(Money.ofCents(30), Money.parse("0.1").plus(Money.parse("0.2")));
+        assertSame(Money.ZERO, Money.ofCents(250).times(0));
+    }
+
+    @Test
+    public void toString_parsesBackToTheSameAmount() {
+        long[] amounts = {0, 1, 5, 10, 250, 101, -250, -1, Long.MAX_VALUE, Long.MIN_VALUE};
+        for (long cents : amounts) {
+            Money amount = Money.ofCents(cents);
+            assertEquals(amount, Money.parse(amount.toString()));
+        }
+        assertEquals("2.50", Money.ofCents(250).toString());
+        assertEquals("-0.01", Money.ofCents(-1).toString());
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.jucygo.model;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of the catalog loads racing stock changes, replaying the interleavings
+ * of a reader thread loading the catalog and the writer committing a sale.
+ */
+public class ProductCatalogTest {
+
+    private static final int ID = 1;
+
+    private final ProductCatalog catalog = new ProductCatalog();
+
+    @Test
+    public void load_readingAStockChangeBeingCommitted_isDiscarded() {
+        catalog.beginStockChange();
+        // The reader starts, and its query already sees the committed sale
+        long version = catalog.getVersion();
+        assertFalse(catalog.load(products(9), version));
+        catalog.adjustQuantity(ID, -1);
+        catalog.endStockChange();
+
+        assertFalse(catalog.isLoaded());
+    }
+
+    @Test
+    public void load_startedBeforeAStockChange_isDiscarded() {
+        long version = catalog.getVersion();
+        catalog.beginStockChange();
+        catalog.adjustQuantity(ID, -1);
+        catalog.endStockChange();
+        catalog.load(products(9), version);
+
+        assertFalse(catalog.isLoaded());
+    }
+
+    @Test
+    public void discardedLoad_canStillServeTheProductsRead() {
+        catalog.beginStockChange();
+        long version = catalog.getVersion();
+        List<Product> read = products(9);
+
+        assertFalse(catalog.load(read, version));
+        ProductCatalog uncached = ProductCatalog.of(read);
+        assertTrue(uncached.isLoaded());
+        assertEquals(9, uncached.getById(ID).getQuantity());
+        assertEquals(9, uncached.getByName("Orange").getQuantity());
+        catalog.endStockChange();
+        assertFalse(catalog.isLoaded());
+    }
+
+    @Test
+    public void stockChange_afterALoad_isAppliedOnce() {
+        catalog.load(products(10), catalog.getVersion());
+        catalog.beginStockChange();
+        catalog.adjustQuantity(ID, -1);
+        catalog.endStockChange();
+
+        assertTrue(catalog.isLoaded());
+        assertEquals(9, catalog.getById(ID).getQuantity());
+    }
+
+    private static List<Product> products(int quantity) {
+        return Collections.singletonList(new Product(ID, "Orange", Money.ofCents(250), quantity, null));
+    }
+}